@@ -0,0 +1,109 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceCohortAggregator;
+import com.byu.pmedia.analytics.StillFaceCohortSummary;
+import com.byu.pmedia.model.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * CohortAggregationBenchmark
+ * Measures how the StillFaceCohortAggregator scales with the number of threads. Every import of a synthetic data set
+ * held in a columnar event store is aggregated on ForkJoinPools of 1, 2, 4... threads, up to the number of available
+ * processors or the provided maximum, and the time per run and the speedup over one thread are reported. The codes
+ * 'Begin Still Face' and 'Begin Reconciliation' are used as the boundaries of the protocol.
+ * <p>
+ * The sums of the aggregator are exact, so every pool must give the same checksum.
+ * <p>
+ * Usage: CohortAggregationBenchmark [data directory] [multiplier] [rounds] [threads]. The defaults are ./data, 105
+ * (about one million entries), 10 and the number of available processors.
+ *
+ * @author Braden Hitchcock
+ */
+public class CohortAggregationBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 105;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+        int maxThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceCode> codes = new ArrayList<>();
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : dataSet.getCodes()){
+            int delimiterIndex = code.getName().equals("Begin Still Face") ? 1
+                    : code.getName().equals("Begin Reconciliation") ? 2 : 0;
+            StillFaceCode boundaryCode = code.withDelimiterIndex(delimiterIndex);
+            codes.add(boundaryCode);
+            builder.registerCode(boundaryCode);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        StillFaceEventStore store = builder.build();
+        StillFaceCodeIndex index = StillFaceCodeIndex.of(codes);
+        int[] importIDs = new int[dataSet.getImportCount()];
+        for(int i = 0; i < importIDs.length; i++){
+            importIDs[i] = i + 1;
+        }
+        System.out.printf("Synthetic data set: %d entries in %d imports, %d codes, %d processors%n",
+                dataSet.getData().size(), importIDs.length, index.size(),
+                Runtime.getRuntime().availableProcessors());
+
+        // Warm up on the common pool, so the single thread run is not slowed down by compilation
+        for(int round = 0; round < rounds; round++){
+            new StillFaceCohortAggregator().aggregate(store, index, importIDs);
+        }
+
+        System.out.printf("%-8s %12s %10s %22s%n", "threads", "ms per run", "speedup", "checksum");
+        double single = 0;
+        for(int threads = 1; threads <= maxThreads; threads *= 2){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            StillFaceCohortAggregator aggregator = new StillFaceCohortAggregator(pool);
+            long time = 0;
+            long checksum = 0;
+            // One warm-up round, then the measured rounds
+            for(int round = 0; round <= rounds; round++){
+                long start = System.nanoTime();
+                StillFaceCohortSummary summary = aggregator.aggregate(store, index, importIDs);
+                long elapsed = System.nanoTime() - start;
+                if(round > 0){
+                    time += elapsed;
+                    checksum = checksum(summary);
+                }
+            }
+            pool.shutdown();
+            double milliseconds = time / 1e6 / rounds;
+            if(threads == 1){
+                single = milliseconds;
+            }
+            System.out.printf("%-8d %12.2f %10.2f %22d%n", threads, milliseconds, single / milliseconds, checksum);
+        }
+    }
+
+    private static long checksum(StillFaceCohortSummary summary){
+        long checksum = summary.getImportCount();
+        for(int segment = StillFaceCohortSummary.WHOLE_VIDEO; segment < summary.getSegmentCount(); segment++){
+            for(int ordinal = 0; ordinal < summary.getIndex().size(); ordinal++){
+                checksum = 31 * checksum + summary.getTotal(segment, ordinal);
+                checksum = 31 * checksum + Double.doubleToLongBits(summary.getVariance(segment, ordinal));
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.IndexedCollection;
+
+import java.util.*;
+
+import static com.googlecode.cqengine.query.QueryFactory.equal;
+
+/**
+ * ColumnarStoreBenchmark
+ * Compares the heap used per cached entry, and the time taken to compute a per-import summary (the total duration of
+ * each code), between the HEAP data collection and the COLUMNAR event store. As when they are loaded by the DAO,
+ * the StillFaceData objects each get their own StillFaceCode.
+ * <p>
+ * Usage: ColumnarStoreBenchmark [data directory] [multiplier] [rounds]. The defaults are ./data, 100 and 5.
+ *
+ * @author Braden Hitchcock
+ */
+public class ColumnarStoreBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 5;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        int entries = dataSet.getData().size();
+        int maxCodeID = dataSet.getCodes().size();
+        System.out.printf("Synthetic data set: %d entries in %d imports%n", entries, dataSet.getImportCount());
+
+        // The heap collection, built the way the DAO builds it
+        long heapBefore = SyntheticDataSet.measureUsedHeap();
+        IndexedCollection<StillFaceData> collection =
+                StillFaceCollectionFactory.createDataCollection(PersistenceMode.HEAP, null);
+        List<StillFaceData> copies = new ArrayList<>(entries);
+        for(StillFaceData d : dataSet.getData()){
+            StillFaceCode code = d.getCode();
+            copies.add(new StillFaceData(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(),
+                    new StillFaceCode(code.getCodeID(), code.getName(), code.getDelimiterIndex()), d.getComment()));
+        }
+        collection.addAll(copies);
+        copies = null;
+        long collectionBytes = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+        // The columnar store, built the way the DAO builds it
+        heapBefore = SyntheticDataSet.measureUsedHeap();
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : dataSet.getCodes()){
+            builder.registerCode(code);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        StillFaceEventStore store = builder.build();
+        long storeBytes = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+        System.out.printf("%-12s %14s %16s%n", "structure", "heap (MB)", "bytes per entry");
+        System.out.printf("%-12s %14.1f %16.1f%n", "HEAP", collectionBytes / (1024.0 * 1024.0),
+                (double)collectionBytes / entries);
+        System.out.printf("%-12s %14.1f %16.1f%n", "COLUMNAR", storeBytes / (1024.0 * 1024.0),
+                (double)storeBytes / entries);
+
+        // Summaries: total duration of each code in every import
+        long checksum = 0;
+        long collectionTime = 0;
+        long storeTime = 0;
+        for(int round = 0; round < rounds; round++){
+            long start = System.nanoTime();
+            for(int importID = 1; importID <= dataSet.getImportCount(); importID++){
+                Map<StillFaceCode, Integer> totals = new HashMap<>();
+                for(StillFaceData d : collection.retrieve(equal(StillFaceData.IMPORT_ID, importID))){
+                    totals.merge(d.getCode(), d.getDuration(), Integer::sum);
+                }
+                for(int total : totals.values()){
+                    checksum += total;
+                }
+            }
+            collectionTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int[] totals = new int[maxCodeID + 1];
+            for(int importID = 1; importID <= dataSet.getImportCount(); importID++){
+                StillFaceEventSegment segment = store.getSegment(importID);
+                Arrays.fill(totals, 0);
+                for(int i = 0; i < segment.size(); i++){
+                    totals[segment.getCodeID(i)] += segment.getDuration(i);
+                }
+                for(int total : totals){
+                    checksum -= total;
+                }
+            }
+            storeTime += System.nanoTime() - start;
+        }
+        System.out.printf("%-12s %14s%n", "structure", "summary (ms)");
+        System.out.printf("%-12s %14.1f%n", "HEAP", collectionTime / 1e6 / rounds);
+        System.out.printf("%-12s %14.1f%n", "COLUMNAR", storeTime / 1e6 / rounds);
+        // Both summaries add up the same durations, so this is 0 when they agree
+        System.out.println("checksum: " + checksum);
+        // Also keeps both structures reachable until the end of the run
+        System.out.printf("entries: HEAP=%d COLUMNAR=%d%n", collection.size(), store.size());
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.model.PersistenceMode;
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceCollectionFactory;
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceRegistry;
+import com.googlecode.cqengine.IndexedCollection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DataFootprintBenchmark
+ * Measures the heap used per cached StillFaceData entry, both for the entries alone and for the entries held in a
+ * HEAP data collection with its indexes, along with the time taken to build the collection. This is done twice: once
+ * with a separate StillFaceCode for every entry, and once with the canonical codes from the StillFaceRegistry, as
+ * the DAO resolves them.
+ * <p>
+ * Usage: DataFootprintBenchmark [data directory] [multiplier]. The defaults are ./data and 100.
+ *
+ * @author Braden Hitchcock
+ */
+public class DataFootprintBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        System.out.printf("Synthetic data set: %d entries in %d imports%n", dataSet.getData().size(),
+                dataSet.getImportCount());
+        System.out.printf("%-12s %16s %24s %16s%n", "codes", "bytes per entry", "bytes with collection",
+                "build (ms)");
+        measure("per entry", dataSet, false);
+        measure("canonical", dataSet, true);
+    }
+
+    private static void measure(String label, SyntheticDataSet dataSet, boolean canonical){
+        int entries = dataSet.getData().size();
+        long heapBefore = SyntheticDataSet.measureUsedHeap();
+        List<StillFaceData> data = new ArrayList<>(entries);
+        for(StillFaceData d : dataSet.getData()){
+            StillFaceCode code = d.getCode();
+            code = (canonical)
+                    ? StillFaceRegistry.getInstance().code(code.getCodeID(), code.getName(), code.getDelimiterIndex())
+                    : new StillFaceCode(code.getCodeID(), code.getName(), code.getDelimiterIndex());
+            data.add(new StillFaceData(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), code,
+                    d.getComment()));
+        }
+        long entryBytes = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+        heapBefore = SyntheticDataSet.measureUsedHeap();
+        long start = System.nanoTime();
+        IndexedCollection<StillFaceData> collection =
+                StillFaceCollectionFactory.createDataCollection(PersistenceMode.HEAP, null);
+        collection.addAll(data);
+        long buildTime = System.nanoTime() - start;
+        long indexBytes = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+        System.out.printf("%-12s %16.1f %24.1f %16d   (%d)%n", label, (double)entryBytes / entries,
+                (double)(entryBytes + indexBytes) / entries, buildTime / 1000000, collection.size() + data.size());
+    }
+}
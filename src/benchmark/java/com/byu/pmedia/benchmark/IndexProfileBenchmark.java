@@ -0,0 +1,119 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.resultset.ResultSet;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.googlecode.cqengine.query.QueryFactory.*;
+
+/**
+ * IndexProfileBenchmark
+ * Compares the index profiles of the heap data collection. For each profile, the synthetic data set is loaded into a
+ * new collection and the following are reported:
+ * <ul>
+ *     <li>the time taken to add the entries to the collection</li>
+ *     <li>the heap retained by the collection</li>
+ *     <li>the mean latency of each of the queries the DataCenter runs: one import ordered by time (the data table),
+ *     one entry by data ID (editing an entry), the entries of one code (deleting a code), the entries of one code in
+ *     one import (code counts) and a time range across all imports</li>
+ *     <li>the number of times each index was used to answer those queries</li>
+ * </ul>
+ * Usage: IndexProfileBenchmark [data directory] [multiplier] [query count]. The defaults are ./data, 100 and 500.
+ *
+ * @author Braden Hitchcock
+ */
+public class IndexProfileBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        int queries = (args.length > 2) ? Integer.parseInt(args[2]) : 500;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceData> data = dataSet.getData();
+        List<StillFaceCode> codes = dataSet.getCodes();
+        System.out.printf("Synthetic data set: %d entries in %d imports%n", data.size(), dataSet.getImportCount());
+        System.out.printf("%-10s %10s %10s %12s %12s %12s %12s %12s%n", "profile", "add (ms)", "heap (MB)",
+                "import (us)", "id (us)", "code (us)", "imp+code (us)", "range (us)");
+
+        for(IndexProfile profile : IndexProfile.values()){
+            StillFaceIndexUsage.getInstance().reset();
+            long heapBefore = SyntheticDataSet.measureUsedHeap();
+            long start = System.nanoTime();
+            IndexedCollection<StillFaceData> collection =
+                    StillFaceCollectionFactory.createDataCollection(PersistenceMode.HEAP, null, profile);
+            collection.addAll(data);
+            long addTime = System.nanoTime() - start;
+            long heapUsed = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+            // Use the same sequence of queries for every profile
+            Random random = new Random(42);
+            long[] times = new long[5];
+            long checksum = 0;
+            for(int i = 0; i < queries; i++){
+                int importID = random.nextInt(dataSet.getImportCount()) + 1;
+                int dataID = data.get(random.nextInt(data.size())).getDataID();
+                StillFaceCode code = codes.get(random.nextInt(codes.size()));
+                int from = random.nextInt(370000);
+
+                start = System.nanoTime();
+                ResultSet<StillFaceData> result = collection.retrieve(equal(StillFaceData.IMPORT_ID, importID),
+                        queryOptions(orderBy(ascending(StillFaceData.TIME), ascending(StillFaceData.DATA_ID))));
+                for(StillFaceData d : result){
+                    checksum += d.getDuration();
+                }
+                result.close();
+                times[0] += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                result = collection.retrieve(equal(StillFaceData.DATA_ID, dataID));
+                checksum += result.size();
+                result.close();
+                times[1] += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                result = collection.retrieve(equal(StillFaceData.CODE, code));
+                checksum += result.size();
+                result.close();
+                times[2] += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                result = collection.retrieve(and(equal(StillFaceData.IMPORT_ID, importID),
+                        equal(StillFaceData.CODE, code)));
+                checksum += result.size();
+                result.close();
+                times[3] += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                result = collection.retrieve(between(StillFaceData.TIME, from, from + 1000));
+                checksum += result.size();
+                result.close();
+                times[4] += System.nanoTime() - start;
+            }
+
+            System.out.printf("%-10s %10d %10.1f %12.1f %12.1f %12.1f %12.1f %12.1f   (checksum %d)%n", profile,
+                    addTime / 1000000, heapUsed / (1024.0 * 1024.0), times[0] / 1000.0 / queries,
+                    times[1] / 1000.0 / queries, times[2] / 1000.0 / queries, times[3] / 1000.0 / queries,
+                    times[4] / 1000.0 / queries, checksum);
+            for(Map.Entry<String, Long> usage : StillFaceIndexUsage.getInstance().getCounts().entrySet()){
+                System.out.printf("           %-30s %8d%n", usage.getKey(), usage.getValue());
+            }
+            collection.clear();
+        }
+    }
+}
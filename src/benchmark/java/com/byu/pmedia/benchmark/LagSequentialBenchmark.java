@@ -0,0 +1,107 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.analytics.StillFaceAnalysisProgress;
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceLagSequentialAnalyzer;
+import com.byu.pmedia.analytics.StillFaceLagSequentialResult;
+import com.byu.pmedia.model.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * LagSequentialBenchmark
+ * Measures how the permutations of the StillFaceLagSequentialAnalyzer scale with the number of threads. The whole
+ * videos of every import of a synthetic data set held in a columnar event store are analyzed at lag 1 on
+ * ForkJoinPools of 1, 2, 4... threads, up to the number of available processors or the provided maximum, and the time
+ * per permutation and the speedup over one thread are reported.
+ * <p>
+ * Every permutation has its own random generator split from the same seed, so every pool must give the same checksum.
+ * <p>
+ * Usage: LagSequentialBenchmark [data directory] [multiplier] [permutations] [threads]. The defaults are ./data, 105
+ * (about one million entries), 200 and the number of available processors.
+ *
+ * @author Braden Hitchcock
+ */
+public class LagSequentialBenchmark {
+
+    private static final long SEED = 42;
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 105;
+        int permutations = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+        int maxThreads = (args.length > 3) ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceCode> codes = new ArrayList<>();
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : dataSet.getCodes()){
+            int delimiterIndex = code.getName().equals("Begin Still Face") ? 1
+                    : code.getName().equals("Begin Reconciliation") ? 2 : 0;
+            StillFaceCode boundaryCode = code.withDelimiterIndex(delimiterIndex);
+            codes.add(boundaryCode);
+            builder.registerCode(boundaryCode);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        StillFaceEventStore store = builder.build();
+        StillFaceCodeIndex index = StillFaceCodeIndex.of(codes);
+        int[] importIDs = new int[dataSet.getImportCount()];
+        for(int i = 0; i < importIDs.length; i++){
+            importIDs[i] = i + 1;
+        }
+        System.out.printf("Synthetic data set: %d entries in %d imports, %d codes, %d processors%n",
+                dataSet.getData().size(), importIDs.length, index.size(),
+                Runtime.getRuntime().availableProcessors());
+
+        // Warm up on the common pool, so the single thread run is not slowed down by compilation
+        new StillFaceLagSequentialAnalyzer(StillFaceModel.getInstance()).analyze(store, index, importIDs,
+                StillFaceLagSequentialResult.WHOLE_VIDEO, 1, Math.max(1, permutations / 4), SEED,
+                StillFaceAnalysisProgress.NONE);
+
+        System.out.printf("%-8s %12s %18s %10s %22s%n", "threads", "ms per run", "ms per permutation", "speedup",
+                "checksum");
+        double single = 0;
+        for(int threads = 1; threads <= maxThreads; threads *= 2){
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            StillFaceLagSequentialAnalyzer analyzer = new StillFaceLagSequentialAnalyzer(StillFaceModel.getInstance(),
+                    pool);
+            long start = System.nanoTime();
+            StillFaceLagSequentialResult result = analyzer.analyze(store, index, importIDs,
+                    StillFaceLagSequentialResult.WHOLE_VIDEO, 1, permutations, SEED, StillFaceAnalysisProgress.NONE);
+            double milliseconds = (System.nanoTime() - start) / 1e6;
+            pool.shutdown();
+            if(threads == 1){
+                single = milliseconds;
+            }
+            System.out.printf("%-8d %12.2f %18.3f %10.2f %22d%n", threads, milliseconds,
+                    milliseconds / Math.max(1, permutations), single / milliseconds, checksum(result));
+        }
+    }
+
+    private static long checksum(StillFaceLagSequentialResult result){
+        long checksum = result.getPairCount();
+        for(int from = 0; from < result.getIndex().size(); from++){
+            for(int to = 0; to < result.getIndex().size(); to++){
+                checksum = 31 * checksum + result.getObserved(from, to);
+                checksum = 31 * checksum + Double.doubleToLongBits(result.getPermutationMean(from, to));
+                checksum = 31 * checksum + Double.doubleToLongBits(result.getPValue(from, to));
+            }
+        }
+        return checksum;
+    }
+}
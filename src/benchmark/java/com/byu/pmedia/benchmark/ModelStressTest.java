@@ -0,0 +1,323 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.config.StillFaceConfig;
+import com.byu.pmedia.database.StillFaceDAO;
+import com.byu.pmedia.model.*;
+
+import java.sql.Date;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * ModelStressTest
+ * Runs the operations of the DataCenter against the StillFaceModel at the same time, the way several background tasks
+ * and the JavaFX application thread would, and checks that the model is never corrupted. For the duration of the run,
+ * the following threads work without any coordination:
+ * <ul>
+ *     <li>two import threads, each writing small imports to the database and adding them to the model</li>
+ *     <li>a selection thread that plays the GUI: it selects imports and edits entries of the visible data</li>
+ *     <li>a save thread that writes the edit journal to the database, as the save task does</li>
+ *     <li>a sync thread that reloads the model from the database</li>
+ *     <li>two reader threads that read the model as the data table and the export task do, and check that every
+ *     import added before the read is visible with all of its entries</li>
+ * </ul>
+ * Like the tasks of the DataCenter, each thread has its own DAO. Writes made while a reload is being built are applied
+ * to the reloaded state, so a reload that fails is an error.
+ * <p>
+ * After the run, the edits are saved one last time and every import written by the test is compared against the
+ * database, then deleted from the database and the model.
+ * <p>
+ * The test writes to the configured database, so it should be pointed at a development database.
+ * Usage: ModelStressTest [seconds]. The default is 30.
+ *
+ * @author Braden Hitchcock
+ */
+public class ModelStressTest {
+
+    /* The number of entries written with each import */
+    private static final int ENTRIES_PER_IMPORT = 50;
+
+    private final StillFaceModel model = StillFaceModel.getInstance();
+    private final Supplier<StillFaceDAO> daoFactory;
+
+    /* The imports written by the test, with the number of entries each one has. An import is only added once it has
+     * been added to the model. */
+    private final Map<Integer, Integer> imports = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong errors = new AtomicLong();
+    private final Map<String, AtomicLong> operations = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 30;
+        if(!StillFaceConfig.getInstance().initialize("projectmedia.datacenter.config")){
+            System.err.println("Unable to read the configuration");
+            System.exit(1);
+        }
+        StillFaceDAO dao = StillFaceDAO.generateFromConfig();
+        if(dao == null || !StillFaceModel.getInstance().initialize(dao)){
+            System.err.println("Unable to initialize the model from the database");
+            System.exit(1);
+        }
+        System.exit(new ModelStressTest(StillFaceDAO::generateFromConfig).run(seconds) ? 0 : 1);
+    }
+
+    /**
+     * @param daoFactory Creates the DAO each test thread uses to write to the database. The model must already be
+     *                   initialized.
+     */
+    public ModelStressTest(Supplier<StillFaceDAO> daoFactory){
+        this.daoFactory = daoFactory;
+    }
+
+    /**
+     * Runs the threads for the provided time, then checks and removes the data written by the test
+     *
+     * @param seconds How long to run the threads for
+     * @return True if no errors were found
+     * @throws InterruptedException If interrupted while waiting for the threads
+     */
+    public boolean run(int seconds) throws InterruptedException {
+        List<StillFaceCode> codes = StillFaceModel.getCodeList();
+        StillFaceTag tag = null;
+        for(StillFaceTag t : model.getTagCollection()){
+            tag = t;
+            break;
+        }
+        if(codes.isEmpty() || tag == null){
+            System.err.println("The database needs at least one code and one tag");
+            return false;
+        }
+        StillFaceTag importTag = tag;
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(start("import", dao -> importOnce(dao, codes, importTag)));
+        threads.add(start("import", dao -> importOnce(dao, codes, importTag)));
+        threads.add(start("select+edit", dao -> selectAndEdit()));
+        threads.add(start("save", this::save));
+        threads.add(start("sync", dao -> sync()));
+        threads.add(start("read", dao -> read()));
+        threads.add(start("read", dao -> read()));
+
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        for(Thread thread : threads){
+            thread.join();
+        }
+        for(Map.Entry<String, AtomicLong> entry : new TreeMap<>(operations).entrySet()){
+            System.out.printf("%-12s %10d%n", entry.getKey(), entry.getValue().get());
+        }
+
+        StillFaceDAO dao = daoFactory.get();
+        save(dao);
+        if(!model.getEditedDataMap().isEmpty()){
+            error("Edits were left in the journal after the final save: " + model.getEditedDataMap().size());
+        }
+        verifyAndClean(dao);
+        System.out.printf("%d imports written, %d errors, model version %d%n", imports.size(), errors.get(),
+                model.getState().getVersion());
+        return errors.get() == 0;
+    }
+
+    /**
+     * Starts a thread that repeats an operation until the run is over, counting the operations and any exception
+     * they throw. The operation is given the DAO of the thread.
+     */
+    private Thread start(String name, Consumer<StillFaceDAO> operation){
+        AtomicLong count = operations.computeIfAbsent(name, n -> new AtomicLong());
+        Thread thread = new Thread(() -> {
+            StillFaceDAO dao = daoFactory.get();
+            while(running.get()){
+                try{
+                    operation.accept(dao);
+                    count.incrementAndGet();
+                }
+                catch(RuntimeException e){
+                    error(name + " threw " + e);
+                    e.printStackTrace();
+                }
+            }
+        }, "ModelStressTest " + name);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Writes an import to the database and adds it to the model, as the import task does
+     */
+    private void importOnce(StillFaceDAO dao, List<StillFaceCode> codes, StillFaceTag tag){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StillFaceImport importData = new StillFaceImport("stress-test.csv", 2000, random.nextInt(1000, 10000),
+                random.nextInt(1, 10), tag, "stress test", new Date(System.currentTimeMillis()));
+        int key = dao.insertImportData(importData);
+        if(key < 0){
+            error("Failed to insert an import");
+            return;
+        }
+        List<StillFaceData> data = new ArrayList<>();
+        for(int i = 0; i < ENTRIES_PER_IMPORT; i++){
+            StillFaceData inserted = dao.insertCodeData(new StillFaceData(key, i * 1000, 1000,
+                    codes.get(random.nextInt(codes.size())), null));
+            if(inserted == null){
+                dao.cleanImportData(key);
+                error("Failed to insert data for import " + key);
+                return;
+            }
+            data.add(inserted);
+        }
+        model.addImport(new StillFaceImport(key, importData.getFilename(), importData.getYear(),
+                importData.getFamilyID(), importData.getParticipantNumber(), tag, importData.getAlias(),
+                importData.getDate()), data);
+        imports.put(key, data.size());
+    }
+
+    /**
+     * Selects one of the imports written by the test and edits a few of its entries, as the GUI does
+     */
+    private void selectAndEdit(){
+        List<Integer> ids = new ArrayList<>(imports.keySet());
+        if(ids.isEmpty()){
+            Thread.yield();
+            return;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int importID = ids.get(random.nextInt(ids.size()));
+        for(StillFaceImport i : model.getState().getImportDataCollection()){
+            if(i.getImportID() == importID){
+                model.setVisibleImport(i);
+                break;
+            }
+        }
+        model.setVisibleData(model.getDataForImport(importID));
+        for(int i = 0; i < 5; i++){
+            List<StillFaceData> visible = model.getVisibleDataList();
+            if(visible.isEmpty()){
+                break;
+            }
+            StillFaceData data = visible.get(random.nextInt(visible.size()));
+            model.addEditedData(data.withDuration(data.getDuration() + 1));
+        }
+    }
+
+    /**
+     * Writes the edit journal to the database, as the save task does
+     */
+    private void save(StillFaceDAO dao){
+        List<StillFaceData> edits = model.getEdits();
+        if(edits.isEmpty()){
+            Thread.yield();
+            return;
+        }
+        for(StillFaceData data : edits){
+            if(!dao.updateCodeData(data)){
+                error("Failed to save data entry " + data.getDataID());
+                return;
+            }
+        }
+        model.updateData(edits);
+        model.clearEdits(edits);
+    }
+
+    /**
+     * Reloads the model from the database, as the automatic refresh does
+     */
+    private void sync(){
+        if(!model.reload()){
+            error("Reload failed");
+        }
+        try{
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the model as the data table and the export task do. Every import that was added before the read started
+     * must be visible with all of its entries.
+     */
+    private void read(){
+        Map<Integer, Integer> added = new HashMap<>(imports);
+        StillFaceModelState state = model.getState();
+        Set<Integer> visibleImports = new HashSet<>();
+        for(StillFaceImport i : state.getImportDataCollection()){
+            visibleImports.add(i.getImportID());
+        }
+        for(Map.Entry<Integer, Integer> entry : added.entrySet()){
+            if(!visibleImports.contains(entry.getKey())){
+                error("Import " + entry.getKey() + " is missing from model version " + state.getVersion());
+            }
+        }
+        if(!added.isEmpty()){
+            List<Integer> ids = new ArrayList<>(added.keySet());
+            int importID = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+            int size = model.getDataForImport(importID).size();
+            if(size != added.get(importID)){
+                error("Import " + importID + " has " + size + " entries instead of " + added.get(importID));
+            }
+        }
+        StillFaceImport visibleImport = model.getVisibleImport();
+        int count = 0;
+        for(StillFaceData data : model.getVisibleDataList()){
+            if(data.getCode() == null){
+                error("Visible entry " + data.getDataID() + " has no code");
+            }
+            count++;
+        }
+        if(visibleImport != null && count > ENTRIES_PER_IMPORT){
+            error("Visible data has " + count + " entries for a single import");
+        }
+        List<StillFaceCode> codes = StillFaceModel.getCodeList();
+        for(int i = 1; i < codes.size(); i++){
+            if(codes.get(i - 1).getName().compareTo(codes.get(i).getName()) > 0){
+                error("Code list is out of order");
+            }
+        }
+    }
+
+    /**
+     * Compares every import written by the test against the database, then deletes it
+     */
+    private void verifyAndClean(StillFaceDAO dao){
+        for(int importID : new TreeSet<>(imports.keySet())){
+            List<StillFaceData> stored = dao.getCodeDataListFromImport(importID);
+            List<StillFaceData> cached = model.getDataForImport(importID);
+            if(stored == null || stored.size() != cached.size()){
+                error("Import " + importID + " does not match the database");
+            }
+            else{
+                for(int i = 0; i < stored.size(); i++){
+                    if(stored.get(i).getDataID() != cached.get(i).getDataID() ||
+                            stored.get(i).getDuration() != cached.get(i).getDuration()){
+                        error("Data entry " + stored.get(i).getDataID() + " does not match the database");
+                    }
+                }
+            }
+            dao.cleanImportData(importID);
+            model.removeImport(importID);
+        }
+    }
+
+    private void error(String message){
+        errors.incrementAndGet();
+        System.err.println(message);
+    }
+}
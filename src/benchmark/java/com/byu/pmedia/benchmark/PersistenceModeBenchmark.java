@@ -0,0 +1,93 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.model.PersistenceMode;
+import com.byu.pmedia.model.StillFaceCollectionFactory;
+import com.byu.pmedia.model.StillFaceData;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.resultset.ResultSet;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.googlecode.cqengine.query.QueryFactory.*;
+
+/**
+ * PersistenceModeBenchmark
+ * Compares the HEAP, OFF_HEAP and DISK persistence modes of the data collection. For each mode, the synthetic data
+ * set is loaded into a new collection and the following are reported:
+ * <ul>
+ *     <li>the time taken to load the collection</li>
+ *     <li>the heap retained by the collection</li>
+ *     <li>the mean latency of retrieving one import ordered by time, as the data table does</li>
+ *     <li>the mean latency of a time range query across all imports</li>
+ * </ul>
+ * Usage: PersistenceModeBenchmark [data directory] [multiplier] [query count]. The defaults are ./data, 100 and 500.
+ *
+ * @author Braden Hitchcock
+ */
+public class PersistenceModeBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 100;
+        int queries = (args.length > 2) ? Integer.parseInt(args[2]) : 500;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceData> data = dataSet.getData();
+        System.out.printf("Synthetic data set: %d entries in %d imports%n", data.size(), dataSet.getImportCount());
+        System.out.printf("%-10s %12s %12s %16s %16s%n", "mode", "load (ms)", "heap (MB)", "import (us)",
+                "range (us)");
+
+        for(PersistenceMode mode : PersistenceMode.values()){
+            long heapBefore = SyntheticDataSet.measureUsedHeap();
+            long start = System.nanoTime();
+            IndexedCollection<StillFaceData> collection = StillFaceCollectionFactory.createDataCollection(mode, null);
+            collection.addAll(data);
+            long loadTime = System.nanoTime() - start;
+            long heapUsed = SyntheticDataSet.measureUsedHeap() - heapBefore;
+
+            // Use the same sequence of queries for every mode
+            Random random = new Random(42);
+            long importTime = 0;
+            long rangeTime = 0;
+            long checksum = 0;
+            for(int i = 0; i < queries; i++){
+                Query<StillFaceData> importQuery = equal(StillFaceData.IMPORT_ID,
+                        random.nextInt(dataSet.getImportCount()) + 1);
+                start = System.nanoTime();
+                ResultSet<StillFaceData> importResult = collection.retrieve(importQuery,
+                        queryOptions(orderBy(ascending(StillFaceData.TIME), ascending(StillFaceData.DATA_ID))));
+                for(StillFaceData d : importResult){
+                    checksum += d.getDuration();
+                }
+                importResult.close();
+                importTime += System.nanoTime() - start;
+
+                int from = random.nextInt(370000);
+                Query<StillFaceData> rangeQuery = between(StillFaceData.TIME, from, from + 1000);
+                start = System.nanoTime();
+                ResultSet<StillFaceData> rangeResult = collection.retrieve(rangeQuery);
+                checksum += rangeResult.size();
+                rangeResult.close();
+                rangeTime += System.nanoTime() - start;
+            }
+
+            System.out.printf("%-10s %12d %12.1f %16.1f %16.1f   (checksum %d)%n", mode,
+                    loadTime / 1000000, heapUsed / (1024.0 * 1024.0),
+                    importTime / 1000.0 / queries, rangeTime / 1000.0 / queries, checksum);
+            collection.clear();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceSegmentCounter;
+import com.byu.pmedia.model.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SegmentSummaryBenchmark
+ * Compares the time of building the segment summary (the code counts in each of the three segments of a video,
+ * sorted by count) of a large list of entries in three ways: with a HashMap of code names per segment, as the summary
+ * tables used to be filled; with the StillFaceSegmentCounter over the list; and with the StillFaceSegmentCounter over
+ * the imports of a columnar event store. The codes 'Begin Still Face' and 'Begin Reconciliation' are used as the
+ * boundaries of the protocol. The list is also counted with a protocol of six boundaries, to show that the number of
+ * segments does not change the cost per entry.
+ * <p>
+ * The benchmark runs on JMH, so the warm-up, forking and dead code elimination are taken care of. Each method returns
+ * a checksum of its summaries so that the work cannot be optimized away. Allocation is reported by the GC profiler,
+ * which the main method adds (-prof gc on the JMH command line).
+ * <p>
+ * Usage: SegmentSummaryBenchmark [data directory] [multiplier], or any JMH command line through org.openjdk.jmh.Main
+ * with -p directory=... -p multiplier=... The defaults are ./data and 105 (about one million entries).
+ *
+ * @author Braden Hitchcock
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentSummaryBenchmark {
+
+    /* The directory of the synthetic data set and how many times its imports are repeated */
+    @Param({"data"})
+    public String directory;
+    @Param({"105"})
+    public int multiplier;
+
+    private List<StillFaceData> data;
+    private StillFaceEventStore store;
+    private StillFaceSegmentCounter counter;
+    private StillFaceSegmentCounter episodeCounter;
+
+    public static void main(String[] args) throws RunnerException {
+        OptionsBuilder options = new OptionsBuilder();
+        options.include(SegmentSummaryBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class);
+        if(args.length > 0){
+            options.param("directory", args[0]);
+        }
+        if(args.length > 1){
+            options.param("multiplier", args[1]);
+        }
+        new Runner(options.build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        Map<Integer, StillFaceCode> codes = new HashMap<>();
+        for(StillFaceCode code : dataSet.getCodes()){
+            int delimiterIndex = code.getName().equals("Begin Still Face") ? 1
+                    : code.getName().equals("Begin Reconciliation") ? 2 : 0;
+            codes.put(code.getCodeID(), new StillFaceCode(code.getCodeID(), code.getName(), delimiterIndex));
+        }
+        this.data = new ArrayList<>(dataSet.getData().size());
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : codes.values()){
+            builder.registerCode(code);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            this.data.add(new StillFaceData(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(),
+                    codes.get(d.getCode().getCodeID()), d.getComment()));
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        this.store = builder.build();
+        StillFaceCodeIndex index = StillFaceCodeIndex.of(codes.values());
+        this.counter = new StillFaceSegmentCounter(index);
+        // The same codes, with four more boundaries
+        List<String> boundaryNames = Arrays.asList("Begin Still Face", "Begin Reconciliation", "Escape", "Crying",
+                "Smile", "Stop");
+        List<StillFaceCode> episodeCodes = new ArrayList<>();
+        for(StillFaceCode code : codes.values()){
+            episodeCodes.add(code.withDelimiterIndex(boundaryNames.indexOf(code.getName()) + 1));
+        }
+        this.episodeCounter = new StillFaceSegmentCounter(StillFaceCodeIndex.of(episodeCodes));
+        System.out.printf("Synthetic data set: %d entries in %d imports, %d codes%n", this.data.size(),
+                dataSet.getImportCount(), index.size());
+    }
+
+    @Benchmark
+    public long hashMap(){
+        return checksum(summarizeWithMaps(this.data));
+    }
+
+    @Benchmark
+    public long counterList(){
+        return checksum(toCodeCounts(this.counter.summarize(this.data)));
+    }
+
+    /**
+     * Summarizes each import on its own, so its checksum differs from the ones over the whole list
+     */
+    @Benchmark
+    public long counterColumnar(){
+        long checksum = 0;
+        for(StillFaceEventSegment segment : this.store.getSegments()){
+            this.counter.count(segment);
+            checksum += checksum(toCodeCounts(this.counter.toSummary()));
+        }
+        return checksum;
+    }
+
+    @Benchmark
+    public long counterSevenSegments(){
+        return checksum(toCodeCounts(this.episodeCounter.summarize(this.data)));
+    }
+
+    /**
+     * The summary tables as they were filled before the StillFaceSegmentCounter: a map of code names per segment
+     */
+    private static List<List<StillFaceCodeCount>> summarizeWithMaps(List<StillFaceData> data){
+        List<Map<String, Integer>> segments = new ArrayList<>();
+        for(int i = 0; i < 3; i++){
+            segments.add(new HashMap<>());
+        }
+        int delimiterIndex = 0;
+        for(StillFaceData d : data){
+            delimiterIndex = Math.max(delimiterIndex, d.getCode().getDelimiterIndex());
+            Map<String, Integer> counts = segments.get(delimiterIndex);
+            String codeName = d.getCode().getName();
+            if(counts.containsKey(codeName)){
+                counts.put(codeName, counts.get(codeName) + 1);
+            }
+            else{
+                counts.put(codeName, 1);
+            }
+        }
+        List<List<StillFaceCodeCount>> result = new ArrayList<>();
+        for(Map<String, Integer> counts : segments){
+            List<StillFaceCodeCount> list = new ArrayList<>();
+            for(Map.Entry<String, Integer> entry : counts.entrySet()){
+                list.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
+            }
+            Collections.sort(list);
+            result.add(list);
+        }
+        return result;
+    }
+
+    private static List<List<StillFaceCodeCount>> toCodeCounts(StillFaceImportSummary summary){
+        List<List<StillFaceCodeCount>> result = new ArrayList<>();
+        for(int i = 0; i < summary.getSegmentCount(); i++){
+            result.add(summary.getCodeCounts(i));
+        }
+        return result;
+    }
+
+    private static long checksum(List<List<StillFaceCodeCount>> segments){
+        long checksum = 0;
+        for(int i = 0; i < segments.size(); i++){
+            for(StillFaceCodeCount count : segments.get(i)){
+                checksum += (i + 1) * (long)count.getCount() * count.getName().hashCode();
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceVideoData;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * SyntheticDataSet
+ * Builds a data set for benchmarks by reading the coded video files in a directory (normally ./data) and repeating
+ * them a number of times, as though every file had been imported that many times. Each repetition gets its own
+ * import IDs and data IDs, and codes are given IDs in the order they are first seen, so the result looks like the
+ * contents of the sf_data and sf_code tables after a large number of imports.
+ *
+ * @author Braden Hitchcock
+ */
+public class SyntheticDataSet {
+
+    private final List<StillFaceData> data = new ArrayList<>();
+    private final Map<String, StillFaceCode> codes = new LinkedHashMap<>();
+    private int importCount = 0;
+
+    /**
+     * Reads every file in the directory and repeats its entries the provided number of times
+     *
+     * @param directory The directory containing the coded video files
+     * @param multiplier The number of times each file is repeated
+     */
+    public SyntheticDataSet(String directory, int multiplier){
+        File[] files = new File(directory).listFiles(File::isFile);
+        if(files == null || files.length == 0){
+            throw new IllegalArgumentException("No data files found in " + directory);
+        }
+        Arrays.sort(files);
+        StillFaceCSVParser parser = new StillFaceCSVParser();
+        List<List<StillFaceData>> templates = new ArrayList<>();
+        for(File file : files){
+            StillFaceVideoData videoData = new StillFaceVideoData();
+            if(parser.parseFromCSVIntoCodedVideoData(file.getPath(), videoData)){
+                templates.add(videoData.getData());
+            }
+        }
+        int dataID = 1;
+        for(int copy = 0; copy < multiplier; copy++){
+            for(List<StillFaceData> template : templates){
+                int importID = ++importCount;
+                for(StillFaceData d : template){
+                    StillFaceCode code = codes.computeIfAbsent(d.getCode().getName(),
+                            name -> new StillFaceCode(codes.size() + 1, name, 0));
+                    data.add(new StillFaceData(dataID++, importID, d.getTime(), d.getDuration(), code,
+                            d.getComment()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Every entry in the data set, ordered by import and then by the order of the source file
+     */
+    public List<StillFaceData> getData() { return data; }
+
+    /**
+     * @return The codes used by the data set, ordered by code ID
+     */
+    public List<StillFaceCode> getCodes() { return new ArrayList<>(codes.values()); }
+
+    /**
+     * @return The number of imports in the data set. Import IDs run from 1 to this number.
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * Forces a few garbage collections and returns the amount of heap in use afterwards. Good enough to compare the
+     * footprint of data structures that are several megabytes in size.
+     *
+     * @return The number of bytes of heap in use
+     */
+    public static long measureUsedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 4; i++){
+            System.gc();
+            try{
+                Thread.sleep(50);
+            }
+            catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.analytics.*;
+import com.byu.pmedia.model.*;
+
+import java.util.*;
+
+/**
+ * TimingSketchBenchmark
+ * Measures how fast the timing sketches of single imports merge into the sketches of cohorts, and how close their
+ * percentiles come to the true ones. The sketches of every import of a synthetic data set held in a columnar event
+ * store are built, encoded and decoded as they would be stored in the sf_timing_stats table, and then cohorts of
+ * growing size are merged from the decoded sketches. The medians and 90th percentiles of the intervals of every code
+ * in the largest cohort are compared with those of a reference sketch of the whole data set whose compression is so
+ * high that it keeps nearly every interval.
+ * <p>
+ * Usage: TimingSketchBenchmark [data directory] [multiplier]. The defaults are ./data and 105 (about one million
+ * entries).
+ *
+ * @author Braden Hitchcock
+ */
+public class TimingSketchBenchmark {
+
+    private static final int REFERENCE_COMPRESSION = 100000;
+    private static final int REPETITIONS = 20;
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 105;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceCode> codes = new ArrayList<>();
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : dataSet.getCodes()){
+            int delimiterIndex = code.getName().equals("Begin Still Face") ? 1
+                    : code.getName().equals("Begin Reconciliation") ? 2 : 0;
+            StillFaceCode boundaryCode = code.withDelimiterIndex(delimiterIndex);
+            codes.add(boundaryCode);
+            builder.registerCode(boundaryCode);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        StillFaceEventStore store = builder.build();
+        StillFaceCodeIndex index = StillFaceCodeIndex.of(codes);
+        StillFaceCodeGroups groups = StillFaceCodeGroups.getConfigured();
+        int imports = dataSet.getImportCount();
+        System.out.printf("Synthetic data set: %d entries in %d imports, %d codes%n", dataSet.getData().size(),
+                imports, index.size());
+
+        // Build, encode and decode the sketches of every import
+        long start = System.nanoTime();
+        StillFaceTimingCounter counter = new StillFaceTimingCounter(index, groups,
+                StillFaceQuantileSketch.DEFAULT_COMPRESSION);
+        StillFaceTimingSketches[] sketches = new StillFaceTimingSketches[imports];
+        long encodedLength = 0;
+        int stored = 0;
+        for(int importID = 1; importID <= imports; importID++){
+            StillFaceEventSegment segment = store.getSegment(importID);
+            StillFaceTimingSketches built = counter.count(segment);
+            StillFaceTimingSketches decoded = new StillFaceTimingSketches(index, 1);
+            for(StillFaceTimingMetric metric : StillFaceTimingMetric.values()){
+                for(int s = 0; s < index.getSegmentCount(); s++){
+                    for(int ordinal = 0; ordinal < index.size(); ordinal++){
+                        StillFaceQuantileSketch sketch = built.getSketch(metric, s, ordinal);
+                        if(sketch != null){
+                            String encoded = sketch.encode();
+                            encodedLength += encoded.length();
+                            stored++;
+                            decoded.merge(metric, s, ordinal, StillFaceQuantileSketch.decode(encoded));
+                        }
+                    }
+                }
+            }
+            sketches[importID - 1] = decoded;
+        }
+        System.out.printf("Built %d sketches in %.1f ms, %.0f characters each on average%n", stored,
+                (System.nanoTime() - start) / 1e6, (double)encodedLength / Math.max(1, stored));
+
+        System.out.printf("%-10s %14s%n", "imports", "ms per merge");
+        StillFaceTimingSketches cohort = null;
+        for(int size = 10; ; size = Math.min(size * 10, imports)){
+            double milliseconds = 0;
+            for(int repetition = 0; repetition < REPETITIONS; repetition++){
+                start = System.nanoTime();
+                cohort = new StillFaceTimingSketches(index, 0);
+                for(int i = 0; i < size; i++){
+                    cohort.merge(sketches[i]);
+                }
+                // Reading a percentile merges the buffers of the sketches it reads
+                cohort.getQuantile(StillFaceTimingMetric.INTERVAL, 0, 0, 0.5);
+                milliseconds += (System.nanoTime() - start) / 1e6;
+            }
+            System.out.printf("%-10d %14.2f%n", size, milliseconds / REPETITIONS);
+            if(size == imports){
+                break;
+            }
+        }
+
+        // Compare the percentiles of the whole video with a reference that keeps nearly every interval
+        StillFaceTimingCounter referenceCounter = new StillFaceTimingCounter(index, groups, REFERENCE_COMPRESSION);
+        StillFaceTimingSketches reference = new StillFaceTimingSketches(index, 0);
+        for(int importID = 1; importID <= imports; importID++){
+            reference.merge(referenceCounter.count(store.getSegment(importID)));
+        }
+        System.out.printf("%-30s %12s %12s %12s %12s%n", "code", "p50", "p50 ref", "p90", "p90 ref");
+        for(int ordinal = 0; ordinal < index.size(); ordinal++){
+            StillFaceQuantileSketch sketch = cohort.getSketch(StillFaceTimingMetric.INTERVAL, ordinal);
+            StillFaceQuantileSketch exact = reference.getSketch(StillFaceTimingMetric.INTERVAL, ordinal);
+            if(sketch == null || exact == null){
+                continue;
+            }
+            System.out.printf("%-30s %12.1f %12.1f %12.1f %12.1f%n", index.getName(ordinal), sketch.getQuantile(0.5),
+                    exact.getQuantile(0.5), sketch.getQuantile(0.9), exact.getQuantile(0.9));
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.benchmark;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceTiePolicy;
+import com.byu.pmedia.analytics.StillFaceTransitionCounter;
+import com.byu.pmedia.analytics.StillFaceTransitionMatrix;
+import com.byu.pmedia.model.*;
+
+import java.util.*;
+
+/**
+ * TransitionBenchmark
+ * Compares the time of counting the code-to-code transitions of every import of a large synthetic data set in two
+ * ways: with a HashMap keyed by the names of the two codes, as the transitions used to be counted by scripts over an
+ * exported CSV file, and with the StillFaceTransitionCounter over the segments of a columnar event store, once for
+ * each StillFaceTiePolicy. The codes 'Begin Still Face' and 'Begin Reconciliation' are used as the boundaries of the
+ * protocol. Everything runs on one thread.
+ * <p>
+ * Usage: TransitionBenchmark [data directory] [multiplier] [rounds]. The defaults are ./data, 105 (about one million
+ * entries) and 10.
+ *
+ * @author Braden Hitchcock
+ */
+public class TransitionBenchmark {
+
+    public static void main(String[] args){
+        String directory = (args.length > 0) ? args[0] : "data";
+        int multiplier = (args.length > 1) ? Integer.parseInt(args[1]) : 105;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+        SyntheticDataSet dataSet = new SyntheticDataSet(directory, multiplier);
+        List<StillFaceCode> codes = new ArrayList<>();
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        for(StillFaceCode code : dataSet.getCodes()){
+            int delimiterIndex = code.getName().equals("Begin Still Face") ? 1
+                    : code.getName().equals("Begin Reconciliation") ? 2 : 0;
+            StillFaceCode boundaryCode = code.withDelimiterIndex(delimiterIndex);
+            codes.add(boundaryCode);
+            builder.registerCode(boundaryCode);
+        }
+        for(StillFaceData d : dataSet.getData()){
+            builder.add(d.getDataID(), d.getImportID(), d.getTime(), d.getDuration(), d.getCode().getCodeID(),
+                    d.getComment());
+        }
+        StillFaceEventStore store = builder.build();
+        StillFaceCodeIndex index = StillFaceCodeIndex.of(codes);
+        int entries = dataSet.getData().size();
+        System.out.printf("Synthetic data set: %d entries in %d imports, %d codes%n", entries,
+                dataSet.getImportCount(), index.size());
+
+        System.out.printf("%-22s %12s %14s %14s%n", "method", "ms per run", "ns per entry", "transitions");
+        report("HashMap", rounds, entries, () -> {
+            Map<String, Integer> counts = new HashMap<>();
+            for(StillFaceEventSegment segment : store.getSegments()){
+                for(int position = 1; position < segment.size(); position++){
+                    String key = store.getCode(segment.getCodeID(position - 1)).getName() + "->"
+                            + store.getCode(segment.getCodeID(position)).getName();
+                    counts.merge(key, 1, Integer::sum);
+                }
+            }
+            long total = 0;
+            for(int count : counts.values()){
+                total += count;
+            }
+            return total;
+        });
+        for(StillFaceTiePolicy policy : StillFaceTiePolicy.values()){
+            StillFaceTransitionCounter counter = new StillFaceTransitionCounter(index, policy);
+            report("counter (" + policy + ")", rounds, entries, () -> {
+                counter.clear();
+                for(StillFaceEventSegment segment : store.getSegments()){
+                    counter.add(segment);
+                }
+                StillFaceTransitionMatrix matrix = counter.toMatrix();
+                long total = 0;
+                for(int from = 0; from < index.size(); from++){
+                    total += matrix.getTotal(StillFaceTransitionMatrix.WHOLE_VIDEO, from);
+                }
+                return total;
+            });
+        }
+    }
+
+    /**
+     * Runs the work once to warm up and then for the measured rounds, and prints the time per run
+     */
+    private static void report(String name, int rounds, int entries, Counting work){
+        long transitions = work.count();
+        long start = System.nanoTime();
+        for(int round = 0; round < rounds; round++){
+            transitions = work.count();
+        }
+        long time = System.nanoTime() - start;
+        System.out.printf("%-22s %12.2f %14.2f %14d%n", name, time / 1e6 / rounds, (double)time / rounds / entries,
+                transitions);
+    }
+
+    @FunctionalInterface
+    private interface Counting {
+        long count();
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+/**
+ * StillFaceAgreement
+ * How well two codings of the same video agree, as found by the StillFaceAgreementCounter: a confusion matrix of the
+ * code of each entry of the first import against the code of the entry of the second import it was matched with,
+ * with a row and a column for entries that were not matched. From the matrix come the overall Cohen's kappa, and a
+ * kappa per code that takes the code against every other one.
+ * <p>
+ * The matrix is kept in one int array indexed by first * (n + 1) + second, where n is the size of the code index and
+ * ordinal n stands for no entry. The no entry cell of both imports is always 0, since every counted pair has at least
+ * one entry.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceAgreement {
+
+    /* Pass as an ordinal to get the entries that were not matched with an entry of the other import */
+    public static final int UNMATCHED = -1;
+
+    private final StillFaceCodeIndex index;
+    private final int firstImportID;
+    private final int secondImportID;
+    private final int tolerance;
+    private final int[] counts;
+    private final long total;
+
+    StillFaceAgreement(StillFaceCodeIndex index, int firstImportID, int secondImportID, int tolerance, int[] counts){
+        this.index = index;
+        this.firstImportID = firstImportID;
+        this.secondImportID = secondImportID;
+        this.tolerance = tolerance;
+        this.counts = counts;
+        long sum = 0;
+        for(int count : counts){
+            sum += count;
+        }
+        this.total = sum;
+    }
+
+    /**
+     * Adds up the confusion matrices of many pairs of imports, so that their agreement can be taken as a whole
+     *
+     * @param agreements The agreements of the pairs, all kept by the same index and found with the same tolerance
+     * @return The pooled agreement, with import IDs of 0, or null if there are no agreements
+     */
+    public static StillFaceAgreement pool(StillFaceAgreement[] agreements){
+        if(agreements.length == 0){
+            return null;
+        }
+        int[] counts = new int[agreements[0].counts.length];
+        for(StillFaceAgreement agreement : agreements){
+            if(agreement.index != agreements[0].index){
+                throw new IllegalArgumentException("Agreements kept by different indexes can not be pooled");
+            }
+            for(int position = 0; position < counts.length; position++){
+                counts[position] += agreement.counts[position];
+            }
+        }
+        return new StillFaceAgreement(agreements[0].index, 0, 0, agreements[0].tolerance, counts);
+    }
+
+    /**
+     * @return The index the counts are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The ID of the import whose codes are the rows of the matrix, or 0 if the agreement is pooled
+     */
+    public int getFirstImportID() { return firstImportID; }
+
+    /**
+     * @return The ID of the import whose codes are the columns of the matrix, or 0 if the agreement is pooled
+     */
+    public int getSecondImportID() { return secondImportID; }
+
+    /**
+     * @return How far apart in time, in milliseconds, two entries could be and still be matched
+     */
+    public int getTolerance() { return tolerance; }
+
+    /**
+     * @return The number of pairs counted, where an unmatched entry counts as a pair on its own
+     */
+    public long getTotal() { return total; }
+
+    /**
+     * @param first The ordinal of the code of the entry of the first import, or UNMATCHED
+     * @param second The ordinal of the code of the entry of the second import, or UNMATCHED
+     * @return The number of times an entry with the first code was matched with an entry with the second
+     */
+    public int getCount(int first, int second){
+        return counts[position(first) * (index.size() + 1) + position(second)];
+    }
+
+    /**
+     * @return The share of the pairs whose codes are the same
+     */
+    public double getObservedAgreement(){
+        long agreed = 0;
+        for(int ordinal = 0; ordinal < index.size(); ordinal++){
+            agreed += getCount(ordinal, ordinal);
+        }
+        return (total == 0) ? 0 : agreed / (double)total;
+    }
+
+    /**
+     * @return Cohen's kappa over every code, with unmatched entries taken as a code of their own, or NaN if the codes
+     * of the pairs could only agree by chance
+     */
+    public double getKappa(){
+        if(total == 0){
+            return Double.NaN;
+        }
+        double expected = 0;
+        for(int ordinal = UNMATCHED; ordinal < index.size(); ordinal++){
+            expected += getRowTotal(ordinal) * (double)getColumnTotal(ordinal);
+        }
+        expected /= (double)total * total;
+        return kappa(getObservedAgreement(), expected);
+    }
+
+    /**
+     * @param ordinal The ordinal of a code
+     * @return Cohen's kappa of the code against every other code and unmatched entries, or NaN if the code could only
+     * agree by chance, e.g. because neither import has it
+     */
+    public double getKappa(int ordinal){
+        if(total == 0){
+            return Double.NaN;
+        }
+        long both = getCount(ordinal, ordinal);
+        long first = getRowTotal(ordinal);
+        long second = getColumnTotal(ordinal);
+        long neither = total - first - second + both;
+        double observed = (both + neither) / (double)total;
+        double expected = (first * (double)second + (total - first) * (double)(total - second))
+                / ((double)total * total);
+        return kappa(observed, expected);
+    }
+
+    /**
+     * @param ordinal The ordinal of a code, or UNMATCHED
+     * @return The number of entries of the first import with the code. For UNMATCHED, the number of entries of the
+     * second import that were not matched.
+     */
+    public long getRowTotal(int ordinal){
+        int n = index.size() + 1;
+        long sum = 0;
+        for(int position = position(ordinal) * n; position < (position(ordinal) + 1) * n; position++){
+            sum += counts[position];
+        }
+        return sum;
+    }
+
+    /**
+     * @param ordinal The ordinal of a code, or UNMATCHED
+     * @return The number of entries of the second import with the code. For UNMATCHED, the number of entries of the
+     * first import that were not matched.
+     */
+    public long getColumnTotal(int ordinal){
+        int n = index.size() + 1;
+        long sum = 0;
+        for(int position = position(ordinal); position < counts.length; position += n){
+            sum += counts[position];
+        }
+        return sum;
+    }
+
+    private int position(int ordinal){
+        return (ordinal == UNMATCHED) ? index.size() : ordinal;
+    }
+
+    private static double kappa(double observed, double expected){
+        return (expected >= 1) ? Double.NaN : (observed - expected) / (1 - expected);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.config.StillFaceConfig;
+import com.byu.pmedia.model.*;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceAgreementAnalyzer
+ * Finds the imports that code the same video twice and measures how well each pair agrees. Reliability coders code
+ * the same participant again, so a pair is two imports with the same year, family and participant but different
+ * tags. The pairs are split between the threads of a ForkJoinPool in the same way as the imports are in the other
+ * analyzers, and each task matches its pairs with its own StillFaceAgreementCounter. Entries are only matched with
+ * entries of the same group of the configured StillFaceCodeGroups.
+ * <p>
+ * Only saved entries are matched: unsaved edits are left out.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceAgreementAnalyzer {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    /* The tolerance used when the analytics.agreement.tolerance option is not set, in milliseconds */
+    public static final int DEFAULT_TOLERANCE = 1000;
+
+    private final StillFaceModel model;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an analyzer that runs on the common ForkJoinPool
+     *
+     * @param model The model holding the entries
+     */
+    public StillFaceAgreementAnalyzer(StillFaceModel model){
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param model The model holding the entries
+     * @param pool The pool to split the pairs between
+     */
+    public StillFaceAgreementAnalyzer(StillFaceModel model, ForkJoinPool pool){
+        this.model = model;
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the tolerance from the analytics.agreement.tolerance configuration option
+     *
+     * @return How far apart in time, in milliseconds, two entries can be and still be matched
+     */
+    public static int getConfiguredTolerance(){
+        int tolerance = StillFaceConfig.getInstance().getAsInt("analytics.agreement.tolerance");
+        if(tolerance < 0){
+            logger.warning("Invalid analytics.agreement.tolerance. Using default of " + DEFAULT_TOLERANCE);
+            return DEFAULT_TOLERANCE;
+        }
+        return tolerance;
+    }
+
+    /**
+     * Finds every pair of imports with the same year, family and participant and different tags
+     *
+     * @return The IDs of the imports of each pair, the lower ID first, ordered by the first and then the second
+     * ID. Null if the model is not initialized.
+     */
+    public int[][] findDoubleCodedPairs(){
+        Collection<StillFaceImport> importData = this.model.getImportDataCollection();
+        if(importData == null){
+            logger.warning("Unable to find double coded imports before the model is initialized");
+            return null;
+        }
+        Map<List<Integer>, List<StillFaceImport>> participants = new HashMap<>();
+        for(StillFaceImport i : importData){
+            participants.computeIfAbsent(Arrays.asList(i.getYear(), i.getFamilyID(), i.getParticipantNumber()),
+                    key -> new ArrayList<>()).add(i);
+        }
+        List<int[]> pairs = new ArrayList<>();
+        for(List<StillFaceImport> imports : participants.values()){
+            for(int i = 0; i < imports.size(); i++){
+                for(int j = i + 1; j < imports.size(); j++){
+                    StillFaceImport a = imports.get(i);
+                    StillFaceImport b = imports.get(j);
+                    if(!Objects.equals(a.getTag(), b.getTag())){
+                        pairs.add(new int[]{Math.min(a.getImportID(), b.getImportID()),
+                                Math.max(a.getImportID(), b.getImportID())});
+                    }
+                }
+            }
+        }
+        pairs.sort(Comparator.<int[]>comparingInt(pair -> pair[0]).thenComparingInt(pair -> pair[1]));
+        return pairs.toArray(new int[0][]);
+    }
+
+    /**
+     * @param firstImportID The ID of the first import
+     * @param secondImportID The ID of the second import
+     * @param tolerance How far apart in time, in milliseconds, two entries can be and still be matched
+     * @return The agreement of the imports, or null if the codes changed while they were matched
+     */
+    public StillFaceAgreement getAgreement(int firstImportID, int secondImportID, int tolerance){
+        StillFaceAgreement[] agreements = getAgreements(new int[][]{{firstImportID, secondImportID}}, tolerance);
+        return (agreements == null) ? null : agreements[0];
+    }
+
+    /**
+     * @param pairs The IDs of the two imports of each pair
+     * @param tolerance How far apart in time, in milliseconds, two entries can be and still be matched
+     * @return The agreement of each pair, in the order of the pairs, or null if the codes changed while they were
+     * matched
+     */
+    public StillFaceAgreement[] getAgreements(int[][] pairs, int tolerance){
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        StillFaceCodeGroups groups = StillFaceCodeGroups.getConfigured();
+        StillFaceAgreement[] agreements = new StillFaceAgreement[pairs.length];
+        int threshold = Math.max(1, pairs.length / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        try{
+            this.pool.invoke(new MatchingTask(pairs, agreements, 0, pairs.length, threshold, index, groups,
+                    tolerance));
+            return agreements;
+        }
+        catch(IllegalArgumentException e){
+            logger.warning("Unable to match imports while the codes are changing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Matches the saved entries of two imports
+     */
+    private StillFaceAgreement match(int[] pair, StillFaceAgreementCounter counter){
+        StillFaceEventStore store = this.model.getEventStore();
+        if(store != null){
+            // An import without a segment has no entries
+            return counter.count(pair[0], store.getSegment(pair[0]), pair[1], store.getSegment(pair[1]));
+        }
+        return counter.count(pair[0], this.model.getDataForImport(pair[0]), pair[1],
+                this.model.getDataForImport(pair[1]));
+    }
+
+    /**
+     * Matches a range of the pairs, splitting it in two while it is above the threshold
+     */
+    private class MatchingTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[][] pairs;
+        private final StillFaceAgreement[] agreements;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceCodeIndex index;
+        private final StillFaceCodeGroups groups;
+        private final int tolerance;
+
+        MatchingTask(int[][] pairs, StillFaceAgreement[] agreements, int from, int to, int threshold,
+                     StillFaceCodeIndex index, StillFaceCodeGroups groups, int tolerance){
+            this.pairs = pairs;
+            this.agreements = agreements;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.index = index;
+            this.groups = groups;
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        protected void compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new MatchingTask(this.pairs, this.agreements, this.from, middle, this.threshold,
+                                this.index, this.groups, this.tolerance),
+                        new MatchingTask(this.pairs, this.agreements, middle, this.to, this.threshold, this.index,
+                                this.groups, this.tolerance));
+                return;
+            }
+            // Each task writes its own range of the agreements
+            StillFaceAgreementCounter counter = new StillFaceAgreementCounter(this.index, this.groups,
+                    this.tolerance);
+            for(int i = this.from; i < this.to; i++){
+                this.agreements[i] = match(this.pairs[i], counter);
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceEventSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceAgreementCounter
+ * Matches the entries of two codings of the same video by time and counts the StillFaceAgreement of their codes. The
+ * entries of each import are first split into streams, one per group of the StillFaceCodeGroups and one for the codes
+ * in no group, so that a facial code is only ever matched with another facial code. The two streams of each group are
+ * then merged in one linear pass: entries that are no more than the tolerance apart are matched, and an entry with
+ * nothing of the other import close enough is counted as unmatched.
+ * <p>
+ * When two close entries have different codes, the merge looks one entry ahead in each stream. If the next entry of
+ * one import has the same code as the current entry of the other and is also close enough, the current entry is
+ * counted as unmatched so that the entries with the same code are matched instead. Otherwise, or when the next entries
+ * of both imports match each other's current entry, the two entries are matched as a disagreement.
+ * <p>
+ * A counter is not thread safe. Create one per thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceAgreementCounter {
+
+    private final StillFaceCodeIndex index;
+    private final int tolerance;
+    /* The stream of each code by ordinal: its group, or the last stream for codes in no group */
+    private final int[] streamOf;
+    private final int streams;
+
+    /* The entries of the two imports being matched, reused from one pair to the next */
+    private final Streams first;
+    private final Streams second;
+
+    /**
+     * @param index The index of every code the matched entries can have
+     * @param groups The groups whose codes are only matched with each other
+     * @param tolerance How far apart in time, in milliseconds, two entries can be and still be matched
+     */
+    public StillFaceAgreementCounter(StillFaceCodeIndex index, StillFaceCodeGroups groups, int tolerance){
+        if(tolerance < 0){
+            throw new IllegalArgumentException("The tolerance can not be negative");
+        }
+        this.index = index;
+        this.tolerance = tolerance;
+        this.streams = groups.getGroupCount() + 1;
+        this.streamOf = groups.getGroups(index);
+        for(int ordinal = 0; ordinal < this.streamOf.length; ordinal++){
+            if(this.streamOf[ordinal] < 0){
+                this.streamOf[ordinal] = this.streams - 1;
+            }
+        }
+        this.first = new Streams(this.streams);
+        this.second = new Streams(this.streams);
+    }
+
+    /**
+     * Matches the entries of two imports
+     *
+     * @param firstImportID The ID of the first import
+     * @param firstData The entries of the first import, ordered by time
+     * @param secondImportID The ID of the second import
+     * @param secondData The entries of the second import, ordered by time
+     * @return The agreement of the two imports
+     */
+    public StillFaceAgreement count(int firstImportID, List<StillFaceData> firstData, int secondImportID,
+                                    List<StillFaceData> secondData){
+        load(this.first, firstData);
+        load(this.second, secondData);
+        return merge(firstImportID, secondImportID);
+    }
+
+    /**
+     * Matches the entries of two imports held by the columnar event store
+     *
+     * @param firstImportID The ID of the first import
+     * @param firstSegment The entries of the first import, or null if it has no entries
+     * @param secondImportID The ID of the second import
+     * @param secondSegment The entries of the second import, or null if it has no entries
+     * @return The agreement of the two imports
+     */
+    public StillFaceAgreement count(int firstImportID, StillFaceEventSegment firstSegment, int secondImportID,
+                                    StillFaceEventSegment secondSegment){
+        load(this.first, firstSegment);
+        load(this.second, secondSegment);
+        return merge(firstImportID, secondImportID);
+    }
+
+    public int getTolerance() { return tolerance; }
+
+    private void load(Streams streams, List<StillFaceData> data){
+        streams.clear(data.size());
+        for(StillFaceData d : data){
+            streams.count(this.streamOf[ordinal(d)]);
+        }
+        streams.start();
+        for(StillFaceData d : data){
+            int ordinal = ordinal(d);
+            streams.add(this.streamOf[ordinal], d.getTime(), ordinal);
+        }
+    }
+
+    private void load(Streams streams, StillFaceEventSegment segment){
+        if(segment == null){
+            streams.clear(0);
+            streams.start();
+            return;
+        }
+        streams.clear(segment.size());
+        for(int position = 0; position < segment.size(); position++){
+            streams.count(this.streamOf[ordinal(segment.getCodeID(position))]);
+        }
+        streams.start();
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = ordinal(segment.getCodeID(position));
+            streams.add(this.streamOf[ordinal], segment.getTime(position), ordinal);
+        }
+    }
+
+    private int ordinal(StillFaceData data){
+        int ordinal = this.index.ordinal(data.getCode());
+        if(ordinal < 0){
+            throw new IllegalArgumentException("Code " + data.getCode().getName() + " is not in the index");
+        }
+        return ordinal;
+    }
+
+    private int ordinal(int codeID){
+        int ordinal = this.index.ordinal(codeID);
+        if(ordinal < 0){
+            throw new IllegalArgumentException("Code " + codeID + " is not in the index");
+        }
+        return ordinal;
+    }
+
+    /**
+     * Merges the streams of each group of the two imports and counts the pairs
+     */
+    private StillFaceAgreement merge(int firstImportID, int secondImportID){
+        int none = this.index.size();
+        int n = none + 1;
+        int[] counts = new int[n * n];
+        int[] t1 = this.first.times;
+        int[] c1 = this.first.ordinals;
+        int[] t2 = this.second.times;
+        int[] c2 = this.second.ordinals;
+        for(int stream = 0; stream < this.streams; stream++){
+            int i = this.first.starts[stream];
+            int end1 = this.first.starts[stream + 1];
+            int j = this.second.starts[stream];
+            int end2 = this.second.starts[stream + 1];
+            while(i < end1 || j < end2){
+                if(j == end2 || (i < end1 && t1[i] < t2[j] - this.tolerance)){
+                    counts[c1[i++] * n + none]++;
+                }
+                else if(i == end1 || t2[j] < t1[i] - this.tolerance){
+                    counts[none * n + c2[j++]]++;
+                }
+                else if(c1[i] != c2[j] && skipSecond(i, j, end2) != skipFirst(i, j, end1)){
+                    // The next entry of one import matches the current entry of the other. When both match, the
+                    // codes crossed and the current entries are matched as a disagreement instead.
+                    if(skipSecond(i, j, end2)){
+                        counts[none * n + c2[j++]]++;
+                    }
+                    else{
+                        counts[c1[i++] * n + none]++;
+                    }
+                }
+                else{
+                    counts[c1[i++] * n + c2[j++]]++;
+                }
+            }
+        }
+        return new StillFaceAgreement(this.index, firstImportID, secondImportID, this.tolerance, counts);
+    }
+
+    /**
+     * @return True if the next entry of the second import has the code of the current entry of the first and is close
+     * enough to be matched with it
+     */
+    private boolean skipSecond(int i, int j, int end2){
+        return j + 1 < end2 && this.second.ordinals[j + 1] == this.first.ordinals[i]
+                && close(this.first.times[i], this.second.times[j + 1]);
+    }
+
+    /**
+     * @return True if the next entry of the first import has the code of the current entry of the second and is close
+     * enough to be matched with it
+     */
+    private boolean skipFirst(int i, int j, int end1){
+        return i + 1 < end1 && this.first.ordinals[i + 1] == this.second.ordinals[j]
+                && close(this.first.times[i + 1], this.second.times[j]);
+    }
+
+    private boolean close(int time, int other){
+        return Math.abs((long)time - other) <= this.tolerance;
+    }
+
+    /**
+     * The times and ordinals of the entries of one import, grouped by stream and ordered by time within each. The
+     * entries of stream s are those from starts[s] up to starts[s + 1].
+     */
+    private static class Streams {
+
+        private int[] times = new int[0];
+        private int[] ordinals = new int[0];
+        private final int[] starts;
+        /* Where the next entry of each stream goes while the streams are filled */
+        private final int[] next;
+
+        Streams(int streams){
+            this.starts = new int[streams + 1];
+            this.next = new int[streams];
+        }
+
+        void clear(int size){
+            if(size > this.times.length){
+                this.times = new int[size];
+                this.ordinals = new int[size];
+            }
+            Arrays.fill(this.starts, 0);
+        }
+
+        /**
+         * Counts an entry of a stream, before the streams are started
+         */
+        void count(int stream){
+            this.starts[stream + 1]++;
+        }
+
+        /**
+         * Turns the counts into the start of each stream
+         */
+        void start(){
+            for(int stream = 0; stream < this.next.length; stream++){
+                this.starts[stream + 1] += this.starts[stream];
+                this.next[stream] = this.starts[stream];
+            }
+        }
+
+        void add(int stream, int time, int ordinal){
+            int position = this.next[stream]++;
+            this.times[position] = time;
+            this.ordinals[position] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+/**
+ * StillFaceAnalysisProgress
+ * Receives the progress of a long analysis and tells it whether to stop. The analysis may report progress from
+ * several threads at once, so an implementation must be thread safe. A javafx Task can forward both to its own
+ * updateProgress and isCancelled methods.
+ *
+ * @author Braden Hitchcock
+ */
+public interface StillFaceAnalysisProgress {
+
+    /* Progress that is not reported, of an analysis that is never cancelled */
+    StillFaceAnalysisProgress NONE = new StillFaceAnalysisProgress() {
+        @Override
+        public void update(long done, long total) {}
+
+        @Override
+        public boolean isCancelled() { return false; }
+    };
+
+    /**
+     * @param done The number of steps of the analysis that are done
+     * @param total The number of steps of the analysis
+     */
+    void update(long done, long total);
+
+    /**
+     * @return True if the analysis should stop as soon as it can
+     */
+    boolean isCancelled();
+}
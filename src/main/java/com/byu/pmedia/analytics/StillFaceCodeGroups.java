@@ -0,0 +1,158 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.config.StillFaceConfig;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceCodeGroups
+ * Groups of codes that describe the same track of behavior, such as the facial, vocal or orientation codes. Within a
+ * group, each entry is taken as the start of a state that lasts until the next entry of the group replaces it, which
+ * is how the StillFaceStateCounter measures the time spent in each state. Codes that are in no group are not states.
+ * <p>
+ * The groups are read from a file with one group per line: the name of the group, a colon, and the names of its codes
+ * separated by commas. Lines starting with # are comments. The file is etc/codegroups.config unless the
+ * analytics.code.groups configuration option names another one.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceCodeGroups {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The file the groups are read from if the analytics.code.groups option is not set */
+    private static final String DEFAULT_FILE = "./etc/codegroups.config";
+
+    /* The groups read from the configured file, and the file they were read from */
+    private static StillFaceCodeGroups configured = null;
+    private static String configuredFile = null;
+
+    /* The names of the groups, and the group of each code by code name */
+    private final List<String> names;
+    private final Map<String, Integer> groups;
+
+    /**
+     * Creates groups from their names and codes
+     *
+     * @param groups The names of the codes of each group by group name, in the order of the groups
+     */
+    public StillFaceCodeGroups(LinkedHashMap<String, List<String>> groups){
+        this.names = Collections.unmodifiableList(new ArrayList<>(groups.keySet()));
+        this.groups = new HashMap<>();
+        int group = 0;
+        for(List<String> codes : groups.values()){
+            for(String code : codes){
+                Integer old = this.groups.putIfAbsent(code, group);
+                if(old != null && old != group){
+                    logger.warning("Code " + code + " is in more than one group. It is kept in " +
+                            this.names.get(old));
+                }
+            }
+            group++;
+        }
+    }
+
+    /**
+     * Reads groups from a file
+     *
+     * @param filename The path of the file
+     * @return The groups in the file, or null if the file could not be read
+     */
+    public static StillFaceCodeGroups load(String filename){
+        LinkedHashMap<String, List<String>> groups = new LinkedHashMap<>();
+        try(BufferedReader br = new BufferedReader(new FileReader(filename))){
+            String line;
+            while((line = br.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) continue;
+                int colon = line.indexOf(":");
+                if(colon < 0){
+                    logger.warning("Skipped a code group without a name: " + line);
+                    continue;
+                }
+                List<String> codes = groups.computeIfAbsent(line.substring(0, colon).trim(),
+                        name -> new ArrayList<>());
+                for(String code : line.substring(colon + 1).split(",")){
+                    if(!code.trim().isEmpty()){
+                        codes.add(code.trim());
+                    }
+                }
+            }
+        }
+        catch(IOException e){
+            logger.severe("Unable to read code groups from " + filename + ": " + e.getMessage());
+            return null;
+        }
+        return new StillFaceCodeGroups(groups);
+    }
+
+    /**
+     * Provides the groups of the file named by the analytics.code.groups configuration option, or of
+     * etc/codegroups.config if the option is not set. The file is read again whenever the option changes. If it
+     * cannot be read, there are no groups.
+     *
+     * @return The configured groups
+     */
+    public static synchronized StillFaceCodeGroups getConfigured(){
+        String filename = StillFaceConfig.getInstance().getAsString("analytics.code.groups");
+        if(filename == null || filename.isEmpty()){
+            filename = DEFAULT_FILE;
+        }
+        if(configured == null || !filename.equals(configuredFile)){
+            StillFaceCodeGroups groups = load(filename);
+            configured = (groups == null) ? new StillFaceCodeGroups(new LinkedHashMap<>()) : groups;
+            configuredFile = filename;
+        }
+        return configured;
+    }
+
+    /**
+     * @return The number of groups
+     */
+    public int getGroupCount() { return names.size(); }
+
+    /**
+     * @param group The number of a group, in the order the groups were listed
+     * @return The name of the group
+     */
+    public String getGroupName(int group) { return names.get(group); }
+
+    /**
+     * @param codeName The name of a code
+     * @return The number of the group of the code, or -1 if it is in no group
+     */
+    public int getGroup(String codeName){
+        Integer group = groups.get(codeName);
+        return (group == null) ? -1 : group;
+    }
+
+    /**
+     * Finds the group of every code of an index
+     *
+     * @param index An index of codes
+     * @return A new array of the group of each code by ordinal, -1 for codes in no group
+     */
+    public int[] getGroups(StillFaceCodeIndex index){
+        int[] result = new int[index.size()];
+        for(int ordinal = 0; ordinal < result.length; ordinal++){
+            result[ordinal] = getGroup(index.getName(ordinal));
+        }
+        return result;
+    }
+}
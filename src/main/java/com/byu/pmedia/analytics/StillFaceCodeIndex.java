@@ -0,0 +1,191 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceProtocol;
+
+import java.util.*;
+
+/**
+ * StillFaceCodeIndex
+ * Gives each code a dense ordinal, from 0 to size() - 1, so that per-code figures can be kept in int arrays instead of
+ * maps keyed by StillFaceCode. Ordinals follow the names of the codes, so sorting by ordinal is sorting by name.
+ * <p>
+ * An index is a snapshot: it keeps the names and delimiter indexes the codes had when it was built, even if the
+ * canonical instances are changed afterwards. The index of the canonical codes is kept by the StillFaceRegistry,
+ * which replaces it whenever a code is added or changed, so comparing indexes by identity tells whether the codes
+ * changed.
+ * <p>
+ * The index also holds the StillFaceProtocol stored in the delimiters of the codes, and the boundary number of each
+ * code in it, so that the segment of every entry can be found from the ordinal of its code.
+ *
+ * @author Braden Hitchcock
+ */
+public final class StillFaceCodeIndex {
+
+    /* Code IDs below this size are looked up in a table, larger ones by binary search */
+    private static final int MAX_TABLE_SIZE = 1 << 16;
+
+    private final StillFaceCode[] codes;
+    private final String[] names;
+    private final int[] delimiterIndexes;
+
+    /* The position of each code in the boundaries of the protocol, from 1, or 0 if it is not a boundary */
+    private final int[] boundaries;
+    private final StillFaceProtocol protocol;
+
+    /* Ordinal of each code ID, or -1. Null if the IDs are too large for a table. */
+    private final int[] ordinalsByID;
+    /* The code IDs in ascending order and the ordinal of each, used when there is no table */
+    private final int[] sortedIDs;
+    private final int[] sortedOrdinals;
+
+    private StillFaceCodeIndex(List<StillFaceCode> codes){
+        int size = codes.size();
+        this.codes = codes.toArray(new StillFaceCode[size]);
+        this.names = new String[size];
+        this.delimiterIndexes = new int[size];
+        for(int i = 0; i < size; i++){
+            this.names[i] = this.codes[i].getName();
+            this.delimiterIndexes[i] = this.codes[i].getDelimiterIndex();
+        }
+        // The boundaries are the codes with a delimiter, by delimiter and then by name, as in StillFaceProtocol
+        long[] keys = new long[size];
+        int boundaryCount = 0;
+        for(int i = 0; i < size; i++){
+            if(this.delimiterIndexes[i] > 0){
+                keys[boundaryCount++] = ((long)this.delimiterIndexes[i] << 32) | i;
+            }
+        }
+        Arrays.sort(keys, 0, boundaryCount);
+        this.boundaries = new int[size];
+        List<StillFaceCode> boundaryCodes = new ArrayList<>(boundaryCount);
+        for(int i = 0; i < boundaryCount; i++){
+            int ordinal = (int)keys[i];
+            this.boundaries[ordinal] = i + 1;
+            boundaryCodes.add(this.codes[ordinal]);
+        }
+        this.protocol = new StillFaceProtocol(boundaryCodes);
+
+        // Sort the IDs with their ordinals packed into the low bits
+        int maxID = 0;
+        for(int i = 0; i < size; i++){
+            keys[i] = ((long)this.codes[i].getCodeID() << 32) | i;
+            maxID = Math.max(maxID, this.codes[i].getCodeID());
+        }
+        Arrays.sort(keys);
+        this.sortedIDs = new int[size];
+        this.sortedOrdinals = new int[size];
+        for(int i = 0; i < size; i++){
+            this.sortedIDs[i] = (int)(keys[i] >>> 32);
+            this.sortedOrdinals[i] = (int)keys[i];
+        }
+        if(maxID < MAX_TABLE_SIZE){
+            this.ordinalsByID = new int[maxID + 1];
+            Arrays.fill(this.ordinalsByID, -1);
+            for(int i = 0; i < size; i++){
+                if(this.codes[i].getCodeID() >= 0){
+                    this.ordinalsByID[this.codes[i].getCodeID()] = i;
+                }
+            }
+        }
+        else{
+            this.ordinalsByID = null;
+        }
+    }
+
+    /**
+     * Builds an index of the provided codes. Codes that are equal (see StillFaceCode.equals) get one ordinal.
+     *
+     * @param codes The codes to index
+     * @return A new index of the codes
+     */
+    public static StillFaceCodeIndex of(Collection<StillFaceCode> codes){
+        List<StillFaceCode> distinct = new ArrayList<>(new LinkedHashSet<>(codes));
+        distinct.sort(Comparator.comparing(StillFaceCode::getName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparingInt(StillFaceCode::getCodeID));
+        return new StillFaceCodeIndex(distinct);
+    }
+
+    /**
+     * @return The number of codes in the index
+     */
+    public int size() { return codes.length; }
+
+    /**
+     * Looks up the ordinal of a code by its ID
+     *
+     * @param codeID The ID of the code
+     * @return The ordinal of the code, or -1 if it is not in the index
+     */
+    public int ordinal(int codeID){
+        if(this.ordinalsByID != null){
+            return (codeID >= 0 && codeID < this.ordinalsByID.length) ? this.ordinalsByID[codeID] : -1;
+        }
+        int position = Arrays.binarySearch(this.sortedIDs, codeID);
+        return (position >= 0) ? this.sortedOrdinals[position] : -1;
+    }
+
+    /**
+     * Looks up the ordinal of a code. Codes that have not been stored in the database (ID 0) are looked up by name.
+     *
+     * @param code The code
+     * @return The ordinal of the code, or -1 if it is not in the index
+     */
+    public int ordinal(StillFaceCode code){
+        if(code.getCodeID() != 0){
+            return ordinal(code.getCodeID());
+        }
+        for(int i = 0; i < this.codes.length; i++){
+            if(this.codes[i].getCodeID() == 0 && Objects.equals(this.names[i], code.getName())){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param ordinal The ordinal of a code
+     * @return The code with the ordinal
+     */
+    public StillFaceCode getCode(int ordinal) { return codes[ordinal]; }
+
+    /**
+     * @param ordinal The ordinal of a code
+     * @return The name the code had when the index was built
+     */
+    public String getName(int ordinal) { return names[ordinal]; }
+
+    /**
+     * @param ordinal The ordinal of a code
+     * @return The delimiter index the code had when the index was built
+     */
+    public int getDelimiterIndex(int ordinal) { return delimiterIndexes[ordinal]; }
+
+    /**
+     * @param ordinal The ordinal of a code
+     * @return The position of the code in the boundaries of the protocol, from 1, or 0 if it is not a boundary. This
+     *         is the segment that the code starts.
+     */
+    public int getBoundary(int ordinal) { return boundaries[ordinal]; }
+
+    /**
+     * @return The protocol stored in the delimiters of the codes when the index was built
+     */
+    public StillFaceProtocol getProtocol() { return protocol; }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return protocol.getSegmentCount(); }
+}
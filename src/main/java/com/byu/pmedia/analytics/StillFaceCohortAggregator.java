@@ -0,0 +1,288 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.database.StillFaceDAO;
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.query.Query;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceCohortAggregator
+ * Builds the StillFaceCohortSummary of the imports matching a query on the StillFaceImport attributes, for example
+ * and(equal(StillFaceImport.YEAR, 2017), equal(StillFaceImport.TAG, tag)). The imports are split between the threads
+ * of a ForkJoinPool. Each task counts its imports with its own StillFaceSegmentCounter and adds the counts into its
+ * own sums, and the sums of the tasks are added together as they join, so the threads share nothing while they
+ * count.
+ * <p>
+ * Only saved entries are aggregated: unsaved edits are left out. Where the entries come from depends on the
+ * persistence mode of the model. The segments of the columnar event store are counted in place, and the cached
+ * entries are taken from the model. When the model is not cached, the counts are read from the sf_import_stats table
+ * in one query instead of loading the entries of every import.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceCohortAggregator {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final ForkJoinPool pool;
+    private StillFaceDAO dao;
+
+    /**
+     * Creates an aggregator that runs on the common ForkJoinPool
+     */
+    public StillFaceCohortAggregator(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool The pool to split the imports between
+     */
+    public StillFaceCohortAggregator(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    /**
+     * Aggregates the imports of the model that match a query
+     *
+     * @param cohort A query on the attributes of StillFaceImport
+     * @return The summary of the matching imports, or null if the model is not initialized or the counts could not be
+     * read
+     */
+    public StillFaceCohortSummary aggregate(Query<StillFaceImport> cohort){
+        StillFaceModel model = StillFaceModel.getInstance();
+        int[] importIDs = model.getImportIDs(cohort);
+        if(importIDs == null){
+            logger.warning("Unable to aggregate a cohort before the model is initialized");
+            return null;
+        }
+
+        // The index is taken after the imports, so it holds the code of every entry of them
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        StillFaceEventStore store = model.getEventStore();
+        try{
+            if(store != null){
+                return aggregate(store, index, importIDs);
+            }
+            else if(model.isCached()){
+                return aggregate(importIDs, index, (importID, counter) -> {
+                    counter.count(model.getDataForImport(importID));
+                    return counter.getSegmentCounts();
+                });
+            }
+            return aggregateStoredStats(importIDs, index);
+        }
+        catch(IllegalArgumentException e){
+            logger.warning("Unable to aggregate a cohort while its codes are changing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Aggregates imports held by a columnar event store. Imports without a segment in the store count as imports
+     * without entries.
+     *
+     * @param store The store holding the entries
+     * @param index The index of every code of the entries, with the protocol that decides the segments
+     * @param importIDs The IDs of the imports of the cohort
+     * @return The summary of the imports
+     */
+    public StillFaceCohortSummary aggregate(StillFaceEventStore store, StillFaceCodeIndex index, int[] importIDs){
+        return aggregate(importIDs, index, (importID, counter) -> {
+            StillFaceEventSegment segment = store.getSegment(importID);
+            if(segment == null){
+                return null;
+            }
+            counter.count(segment);
+            return counter.getSegmentCounts();
+        });
+    }
+
+    /**
+     * Aggregates the per-import counts stored in the sf_import_stats table
+     */
+    private StillFaceCohortSummary aggregateStoredStats(int[] importIDs, StillFaceCodeIndex index){
+        if(this.dao == null){
+            this.dao = StillFaceDAO.generateFromConfig();
+        }
+        List<StillFaceImportStat> stats = this.dao.getImportStats(0);
+        if(stats == null){
+            return null;
+        }
+        Map<Integer, int[]> counts = new HashMap<>();
+        for(int importID : importIDs){
+            counts.put(importID, new int[index.getSegmentCount() * index.size()]);
+        }
+        boolean skipped = false;
+        for(StillFaceImportStat stat : stats){
+            int[] importCounts = counts.get(stat.getImportID());
+            if(importCounts == null){
+                continue;
+            }
+            int ordinal = index.ordinal(stat.getCodeID());
+            if(ordinal < 0 || stat.getSegment() >= index.getSegmentCount()){
+                skipped = true;
+                continue;
+            }
+            importCounts[stat.getSegment() * index.size() + ordinal] += stat.getCount();
+        }
+        if(skipped){
+            logger.warning("Some import statistics do not match the current protocol. They may need to be rebuilt.");
+        }
+        return aggregate(importIDs, index, (importID, counter) -> counts.get(importID));
+    }
+
+    /**
+     * Splits the imports between the tasks of the pool and adds up their sums
+     */
+    private StillFaceCohortSummary aggregate(int[] importIDs, StillFaceCodeIndex index, ImportCounts source){
+        int threshold = Math.max(1, importIDs.length / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        Sums sums = this.pool.invoke(new AggregationTask(importIDs, 0, importIDs.length, threshold, index, source));
+        return new StillFaceCohortSummary(index, sums.imports, sums.sums, sums.sumsOfSquares, sums.importsWithCode);
+    }
+
+    /**
+     * Provides the per-segment counts of an import, as an array indexed by segment * index.size() + ordinal
+     */
+    @FunctionalInterface
+    private interface ImportCounts {
+        /**
+         * @param importID The ID of the import
+         * @param counter A counter owned by the calling task, which the counts may be kept in
+         * @return The counts, or null if the import has no entries
+         */
+        int[] get(int importID, StillFaceSegmentCounter counter);
+    }
+
+    /**
+     * Counts a range of the imports, splitting it in two while it is above the threshold
+     */
+    private static class AggregationTask extends RecursiveTask<Sums> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] importIDs;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceCodeIndex index;
+        private final ImportCounts source;
+
+        AggregationTask(int[] importIDs, int from, int to, int threshold, StillFaceCodeIndex index,
+                        ImportCounts source){
+            this.importIDs = importIDs;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.index = index;
+            this.source = source;
+        }
+
+        @Override
+        protected Sums compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                AggregationTask left = new AggregationTask(this.importIDs, this.from, middle, this.threshold,
+                        this.index, this.source);
+                left.fork();
+                Sums sums = new AggregationTask(this.importIDs, middle, this.to, this.threshold, this.index,
+                        this.source).compute();
+                sums.add(left.join());
+                return sums;
+            }
+            Sums sums = new Sums(this.index);
+            StillFaceSegmentCounter counter = new StillFaceSegmentCounter(this.index);
+            for(int i = this.from; i < this.to; i++){
+                sums.add(this.source.get(this.importIDs[i], counter));
+            }
+            return sums;
+        }
+    }
+
+    /**
+     * The sums of the counts of some imports, per row and code as in StillFaceCohortSummary
+     */
+    private static class Sums {
+
+        private final int codes;
+        private final int segments;
+        private final long[] sums;
+        private final long[] sumsOfSquares;
+        private final int[] importsWithCode;
+        /* The counts of the current import over the whole video */
+        private final int[] wholeVideo;
+        private int imports = 0;
+
+        Sums(StillFaceCodeIndex index){
+            this.codes = index.size();
+            this.segments = index.getSegmentCount();
+            int size = (this.segments + 1) * this.codes;
+            this.sums = new long[size];
+            this.sumsOfSquares = new long[size];
+            this.importsWithCode = new int[size];
+            this.wholeVideo = new int[this.codes];
+        }
+
+        /**
+         * Adds the counts of one import
+         *
+         * @param counts The counts per segment and code, or null if the import has no entries
+         */
+        void add(int[] counts){
+            this.imports++;
+            if(counts == null){
+                return;
+            }
+            Arrays.fill(this.wholeVideo, 0);
+            for(int position = 0; position < this.segments * this.codes; position++){
+                int count = counts[position];
+                if(count != 0){
+                    addCount(position, count);
+                    this.wholeVideo[position % this.codes] += count;
+                }
+            }
+            int offset = this.segments * this.codes;
+            for(int ordinal = 0; ordinal < this.codes; ordinal++){
+                if(this.wholeVideo[ordinal] != 0){
+                    addCount(offset + ordinal, this.wholeVideo[ordinal]);
+                }
+            }
+        }
+
+        /**
+         * Adds the sums of other imports
+         */
+        void add(Sums other){
+            this.imports += other.imports;
+            for(int position = 0; position < this.sums.length; position++){
+                this.sums[position] += other.sums[position];
+                this.sumsOfSquares[position] += other.sumsOfSquares[position];
+                this.importsWithCode[position] += other.importsWithCode[position];
+            }
+        }
+
+        private void addCount(int position, int count){
+            this.sums[position] += count;
+            this.sumsOfSquares[position] += (long)count * count;
+            this.importsWithCode[position]++;
+        }
+    }
+}
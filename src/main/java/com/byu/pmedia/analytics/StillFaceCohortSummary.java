@@ -0,0 +1,155 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceCohortSummary
+ * The code counts of a cohort of imports, as built by the StillFaceCohortAggregator: for each code, in each segment
+ * of the protocol and in the whole video, the total number of entries over the cohort, and the mean and variance of
+ * the number of entries per import. Imports in which a code does not occur count as zero, so the means are taken over
+ * every import of the cohort.
+ * <p>
+ * The sums are kept as exact longs, so the figures do not depend on how the imports were split between threads.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceCohortSummary {
+
+    /* Pass as the segment to get the figures of the whole video */
+    public static final int WHOLE_VIDEO = -1;
+
+    private final StillFaceCodeIndex index;
+    private final int importCount;
+
+    /* Per row and code (row * index.size() + ordinal), where the rows are the segments followed by the whole video:
+     * the sum of the counts, the sum of their squares, and the number of imports with a count above zero */
+    private final long[] sums;
+    private final long[] sumsOfSquares;
+    private final int[] importsWithCode;
+
+    StillFaceCohortSummary(StillFaceCodeIndex index, int importCount, long[] sums, long[] sumsOfSquares,
+                           int[] importsWithCode){
+        this.index = index;
+        this.importCount = importCount;
+        this.sums = sums;
+        this.sumsOfSquares = sumsOfSquares;
+        this.importsWithCode = importsWithCode;
+    }
+
+    /**
+     * @return The index the figures are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return index.getSegmentCount(); }
+
+    /**
+     * @return The number of imports in the cohort
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of entries with the code in the segment, over every import of the cohort
+     */
+    public long getTotal(int segment, int ordinal) { return sums[position(segment, ordinal)]; }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of imports with at least one entry with the code in the segment
+     */
+    public int getImportsWithCode(int segment, int ordinal) { return importsWithCode[position(segment, ordinal)]; }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The mean number of entries with the code in the segment per import, or 0 if the cohort is empty
+     */
+    public double getMean(int segment, int ordinal){
+        return (importCount == 0) ? 0 : (double)sums[position(segment, ordinal)] / importCount;
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The sample variance of the number of entries with the code in the segment per import, or 0 if the
+     * cohort has fewer than two imports
+     */
+    public double getVariance(int segment, int ordinal){
+        if(importCount < 2){
+            return 0;
+        }
+        int position = position(segment, ordinal);
+        // n * sum(x^2) - sum(x)^2 is computed exactly before the division
+        long n = importCount;
+        long numerator = n * sumsOfSquares[position] - sums[position] * sums[position];
+        return (double)numerator / (n * (n - 1));
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The sample standard deviation of the number of entries with the code in the segment per import
+     */
+    public double getStandardDeviation(int segment, int ordinal){
+        return Math.sqrt(getVariance(segment, ordinal));
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param code A code
+     * @return The number of entries with the code in the segment over the cohort, or 0 if the code is not indexed
+     */
+    public long getTotal(int segment, StillFaceCode code){
+        int ordinal = index.ordinal(code);
+        return (ordinal < 0) ? 0 : getTotal(segment, ordinal);
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param code A code
+     * @return The mean number of entries with the code in the segment per import, or 0 if the code is not indexed
+     */
+    public double getMean(int segment, StillFaceCode code){
+        int ordinal = index.ordinal(code);
+        return (ordinal < 0) ? 0 : getMean(segment, ordinal);
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param code A code
+     * @return The sample variance of the number of entries with the code in the segment per import, or 0 if the
+     * code is not indexed
+     */
+    public double getVariance(int segment, StillFaceCode code){
+        int ordinal = index.ordinal(code);
+        return (ordinal < 0) ? 0 : getVariance(segment, ordinal);
+    }
+
+    private int position(int segment, int ordinal){
+        int row = (segment == WHOLE_VIDEO) ? index.getSegmentCount() : segment;
+        return row * index.size() + ordinal;
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.query.Query;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceLagSequentialAnalyzer
+ * Computes the StillFaceLagSequentialResult of a set of imports: for every pair of codes, how often the second was
+ * coded a given number of entries (the lag) after the first, compared to chance. Entries are taken in the order they
+ * are stored, so entries coded at the same time follow each other in that order. Pairs are never counted from one
+ * import to the next, and when one segment is analyzed, never from one segment to the next.
+ * <p>
+ * The codes of each import are read once into one int array, by their ordinals in the code index. The significance of
+ * the counts is then found by shuffling the codes within each import many times and counting the pairs of each
+ * shuffle, which keeps how often each code occurs in each import. The shuffles are split between the threads of a
+ * ForkJoinPool in the same way as the imports are in the other analyzers. Every shuffle has its own SplittableRandom,
+ * split from the seed in order before the shuffles start, and starts from the observed codes, so a seed gives the
+ * same result whatever the number of threads.
+ * <p>
+ * Progress is reported after every shuffle, and a cancelled analysis stops after the shuffles being done. Only saved
+ * entries are analyzed: unsaved edits are left out.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceLagSequentialAnalyzer {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final StillFaceModel model;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an analyzer that runs on the common ForkJoinPool
+     *
+     * @param model The model holding the entries
+     */
+    public StillFaceLagSequentialAnalyzer(StillFaceModel model){
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param model The model holding the entries
+     * @param pool The pool to split the shuffles between
+     */
+    public StillFaceLagSequentialAnalyzer(StillFaceModel model, ForkJoinPool pool){
+        this.model = model;
+        this.pool = pool;
+    }
+
+    /**
+     * @param cohort A query on the attributes of StillFaceImport
+     * @param segment The segment whose entries to analyze, or StillFaceLagSequentialResult.WHOLE_VIDEO
+     * @param lag How many entries after the first entry of a pair the second one is, at least 1
+     * @param permutations The number of shuffles to find the significance from, 0 for none
+     * @param seed The seed of the shuffles
+     * @param progress Receives the number of shuffles done, and cancels the analysis
+     * @return The statistics of the matching imports, or null if the model is not initialized, the codes changed
+     * while they were read, or the analysis was cancelled
+     */
+    public StillFaceLagSequentialResult analyze(Query<StillFaceImport> cohort, int segment, int lag, int permutations,
+                                                long seed, StillFaceAnalysisProgress progress){
+        int[] importIDs = this.model.getImportIDs(cohort);
+        if(importIDs == null){
+            logger.warning("Unable to run a lag sequential analysis before the model is initialized");
+            return null;
+        }
+        return analyze(importIDs, segment, lag, permutations, seed, progress);
+    }
+
+    /**
+     * @param importIDs The IDs of the imports
+     * @param segment The segment whose entries to analyze, or StillFaceLagSequentialResult.WHOLE_VIDEO
+     * @param lag How many entries after the first entry of a pair the second one is, at least 1
+     * @param permutations The number of shuffles to find the significance from, 0 for none
+     * @param seed The seed of the shuffles
+     * @param progress Receives the number of shuffles done, and cancels the analysis
+     * @return The statistics of the imports, or null if the codes changed while they were read or the analysis was
+     * cancelled
+     */
+    public StillFaceLagSequentialResult analyze(int[] importIDs, int segment, int lag, int permutations, long seed,
+                                                StillFaceAnalysisProgress progress){
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        Sequences sequences;
+        try{
+            sequences = read(this.model.getEventStore(), index, importIDs, segment);
+        }
+        catch(IllegalArgumentException e){
+            logger.warning("Unable to run a lag sequential analysis while the codes are changing: " + e.getMessage());
+            return null;
+        }
+        return analyze(sequences, index, importIDs.length, segment, lag, permutations, seed, progress);
+    }
+
+    /**
+     * Analyzes imports held by a columnar event store. Imports without a segment in the store have no entries.
+     *
+     * @param store The store holding the entries
+     * @param index The index of every code of the entries, with the protocol that decides the segments
+     * @param importIDs The IDs of the imports
+     * @param segment The segment whose entries to analyze, or StillFaceLagSequentialResult.WHOLE_VIDEO
+     * @param lag How many entries after the first entry of a pair the second one is, at least 1
+     * @param permutations The number of shuffles to find the significance from, 0 for none
+     * @param seed The seed of the shuffles
+     * @param progress Receives the number of shuffles done, and cancels the analysis
+     * @return The statistics of the imports, or null if the analysis was cancelled
+     */
+    public StillFaceLagSequentialResult analyze(StillFaceEventStore store, StillFaceCodeIndex index, int[] importIDs,
+                                                int segment, int lag, int permutations, long seed,
+                                                StillFaceAnalysisProgress progress){
+        return analyze(read(store, index, importIDs, segment), index, importIDs.length, segment, lag, permutations,
+                seed, progress);
+    }
+
+    /**
+     * Counts the pairs of the sequences, then shuffles them on the pool
+     */
+    private StillFaceLagSequentialResult analyze(Sequences sequences, StillFaceCodeIndex index, int importCount,
+                                                 int segment, int lag, int permutations, long seed,
+                                                 StillFaceAnalysisProgress progress){
+        if(lag < 1){
+            throw new IllegalArgumentException("The lag must be at least 1");
+        }
+        if(permutations < 0){
+            throw new IllegalArgumentException("The number of permutations can not be negative");
+        }
+        int n = index.size();
+        int[] observed = new int[n * n];
+        sequences.count(sequences.codes, lag, n, observed);
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[permutations];
+        for(int i = 0; i < permutations; i++){
+            randoms[i] = root.split();
+        }
+        progress.update(0, permutations);
+        int threshold = Math.max(1, permutations / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        Tallies tallies = this.pool.invoke(new ShuffleTask(sequences, observed, lag, n, randoms, 0, permutations,
+                threshold, progress, new AtomicLong()));
+        if(progress.isCancelled()){
+            logger.info("Lag sequential analysis cancelled after " + tallies.permutations + " of " + permutations +
+                    " permutations");
+            return null;
+        }
+        return new StillFaceLagSequentialResult(index, segment, lag, importCount, tallies.permutations, observed,
+                tallies.atLeast, tallies.atMost, tallies.sums, tallies.sumsOfSquares);
+    }
+
+    /**
+     * Reads the ordinals of the codes of the entries of each import in the segment, one sequence after another. The
+     * entries are read from the store if there is one, and from the model otherwise.
+     */
+    private Sequences read(StillFaceEventStore store, StillFaceCodeIndex index, int[] importIDs, int segment){
+        Sequences sequences = new Sequences(importIDs.length);
+        for(int importID : importIDs){
+            int current = 0;
+            if(store != null){
+                StillFaceEventSegment entries = store.getSegment(importID);
+                for(int position = 0; entries != null && position < entries.size(); position++){
+                    int ordinal = index.ordinal(entries.getCodeID(position));
+                    if(ordinal < 0){
+                        throw new IllegalArgumentException("Code " + entries.getCodeID(position) +
+                                " is not in the index");
+                    }
+                    current = Math.max(current, index.getBoundary(ordinal));
+                    if(segment == StillFaceLagSequentialResult.WHOLE_VIDEO || segment == current){
+                        sequences.add(ordinal);
+                    }
+                }
+            }
+            else{
+                List<StillFaceData> data = this.model.getDataForImport(importID);
+                for(StillFaceData d : data){
+                    int ordinal = index.ordinal(d.getCode());
+                    if(ordinal < 0){
+                        throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+                    }
+                    current = Math.max(current, index.getBoundary(ordinal));
+                    if(segment == StillFaceLagSequentialResult.WHOLE_VIDEO || segment == current){
+                        sequences.add(ordinal);
+                    }
+                }
+            }
+            sequences.end();
+        }
+        return sequences;
+    }
+
+    /**
+     * The codes of the entries of every import, by ordinal, in one array. The codes of import i are those from
+     * starts[i] up to starts[i + 1]. Imports without entries in the segment have
+     * empty sequences.
+     */
+    private static class Sequences {
+
+        private int[] codes = new int[1024];
+        private int size = 0;
+        private final int[] starts;
+        private int imports = 0;
+
+        Sequences(int imports){
+            this.starts = new int[imports + 1];
+        }
+
+        void add(int ordinal){
+            if(this.size == this.codes.length){
+                this.codes = Arrays.copyOf(this.codes, this.size * 2);
+            }
+            this.codes[this.size++] = ordinal;
+        }
+
+        /**
+         * Ends the sequence of the current import
+         */
+        void end(){
+            this.starts[++this.imports] = this.size;
+        }
+
+        /**
+         * Counts the pairs of codes at a lag in the sequences, with the provided codes in place of the stored ones
+         */
+        void count(int[] codes, int lag, int n, int[] counts){
+            for(int i = 0; i < this.imports; i++){
+                for(int position = this.starts[i]; position + lag < this.starts[i + 1]; position++){
+                    counts[codes[position] * n + codes[position + lag]]++;
+                }
+            }
+        }
+
+        /**
+         * Shuffles each sequence of the provided codes in place
+         */
+        void shuffle(int[] codes, SplittableRandom random){
+            for(int i = 0; i < this.imports; i++){
+                int start = this.starts[i];
+                for(int position = this.starts[i + 1] - 1; position > start; position--){
+                    int other = start + random.nextInt(position - start + 1);
+                    int code = codes[position];
+                    codes[position] = codes[other];
+                    codes[other] = code;
+                }
+            }
+        }
+    }
+
+    /**
+     * Shuffles a range of the permutations, splitting it in two while it is above the threshold
+     */
+    private static class ShuffleTask extends RecursiveTask<Tallies> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Sequences sequences;
+        private final int[] observed;
+        private final int lag;
+        private final int n;
+        private final SplittableRandom[] randoms;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceAnalysisProgress progress;
+        private final AtomicLong done;
+
+        ShuffleTask(Sequences sequences, int[] observed, int lag, int n, SplittableRandom[] randoms, int from, int to,
+                    int threshold, StillFaceAnalysisProgress progress, AtomicLong done){
+            this.sequences = sequences;
+            this.observed = observed;
+            this.lag = lag;
+            this.n = n;
+            this.randoms = randoms;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.progress = progress;
+            this.done = done;
+        }
+
+        @Override
+        protected Tallies compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                ShuffleTask left = new ShuffleTask(this.sequences, this.observed, this.lag, this.n, this.randoms,
+                        this.from, middle, this.threshold, this.progress, this.done);
+                left.fork();
+                Tallies tallies = new ShuffleTask(this.sequences, this.observed, this.lag, this.n, this.randoms,
+                        middle, this.to, this.threshold, this.progress, this.done).compute();
+                tallies.add(left.join());
+                return tallies;
+            }
+            Tallies tallies = new Tallies(this.n * this.n);
+            int[] shuffled = new int[this.sequences.size];
+            int[] counts = new int[this.n * this.n];
+            for(int permutation = this.from; permutation < this.to && !this.progress.isCancelled(); permutation++){
+                System.arraycopy(this.sequences.codes, 0, shuffled, 0, shuffled.length);
+                this.sequences.shuffle(shuffled, this.randoms[permutation]);
+                Arrays.fill(counts, 0);
+                this.sequences.count(shuffled, this.lag, this.n, counts);
+                tallies.add(counts, this.observed);
+                this.progress.update(this.done.incrementAndGet(), this.randoms.length);
+            }
+            return tallies;
+        }
+    }
+
+    /**
+     * How the counts of some shuffles compare to the observed counts, per pair of codes
+     */
+    private static class Tallies {
+
+        private int permutations = 0;
+        private final int[] atLeast;
+        private final int[] atMost;
+        private final long[] sums;
+        private final long[] sumsOfSquares;
+
+        Tallies(int size){
+            this.atLeast = new int[size];
+            this.atMost = new int[size];
+            this.sums = new long[size];
+            this.sumsOfSquares = new long[size];
+        }
+
+        /**
+         * Adds the counts of one shuffle
+         */
+        void add(int[] counts, int[] observed){
+            this.permutations++;
+            for(int position = 0; position < counts.length; position++){
+                int count = counts[position];
+                if(count >= observed[position]){
+                    this.atLeast[position]++;
+                }
+                if(count <= observed[position]){
+                    this.atMost[position]++;
+                }
+                this.sums[position] += count;
+                this.sumsOfSquares[position] += (long)count * count;
+            }
+        }
+
+        /**
+         * Adds the tallies of other shuffles
+         */
+        void add(Tallies other){
+            this.permutations += other.permutations;
+            for(int position = 0; position < this.sums.length; position++){
+                this.atLeast[position] += other.atLeast[position];
+                this.atMost[position] += other.atMost[position];
+                this.sums[position] += other.sums[position];
+                this.sumsOfSquares[position] += other.sumsOfSquares[position];
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceLagSequentialResult
+ * The lag sequential statistics of a set of imports, as computed by the StillFaceLagSequentialAnalyzer. For every
+ * pair of codes A and B, the result holds how often B was coded lag entries after A, how often that was expected if
+ * the codes followed each other by chance, and the adjusted residual (z-score) of Allison and Liker. When the
+ * sequences were shuffled, it also holds how the observed count ranks among the counts of the shuffled sequences,
+ * which gives a significance that does not depend on the z-score being normal.
+ * <p>
+ * Counts are kept in n * n arrays indexed by from * n + to, where n is the size of the code index.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceLagSequentialResult {
+
+    /* The segment of a result over the entries of the whole video */
+    public static final int WHOLE_VIDEO = -1;
+
+    private final StillFaceCodeIndex index;
+    private final int segment;
+    private final int lag;
+    private final int importCount;
+    private final int permutations;
+    private final int[] observed;
+    /* The number of pairs whose first entry has each code (rows) and whose second entry has each code (columns) */
+    private final int[] antecedents;
+    private final int[] targets;
+    private final long pairs;
+    /* Per pair of codes, the number of shuffles that counted at least and at most as many as were observed, and the
+     * sum and sum of squares of their counts */
+    private final int[] atLeast;
+    private final int[] atMost;
+    private final long[] sums;
+    private final long[] sumsOfSquares;
+
+    StillFaceLagSequentialResult(StillFaceCodeIndex index, int segment, int lag, int importCount, int permutations,
+                                 int[] observed, int[] atLeast, int[] atMost, long[] sums, long[] sumsOfSquares){
+        this.index = index;
+        this.segment = segment;
+        this.lag = lag;
+        this.importCount = importCount;
+        this.permutations = permutations;
+        this.observed = observed;
+        this.atLeast = atLeast;
+        this.atMost = atMost;
+        this.sums = sums;
+        this.sumsOfSquares = sumsOfSquares;
+        int n = index.size();
+        this.antecedents = new int[n];
+        this.targets = new int[n];
+        long total = 0;
+        for(int from = 0; from < n; from++){
+            for(int to = 0; to < n; to++){
+                int count = observed[from * n + to];
+                this.antecedents[from] += count;
+                this.targets[to] += count;
+                total += count;
+            }
+        }
+        this.pairs = total;
+    }
+
+    /**
+     * @return The index the counts are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The segment whose entries were analyzed, or WHOLE_VIDEO
+     */
+    public int getSegment() { return segment; }
+
+    /**
+     * @return How many entries after the first entry of a pair the second one was coded
+     */
+    public int getLag() { return lag; }
+
+    /**
+     * @return The number of imports analyzed
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * @return The number of shuffles the significance was found from, 0 if none were done
+     */
+    public int getPermutations() { return permutations; }
+
+    /**
+     * @return The number of pairs counted, over every pair of codes
+     */
+    public long getPairCount() { return pairs; }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The number of times the pair was coded
+     */
+    public int getObserved(int from, int to) { return observed[from * index.size() + to]; }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The number of times the pair would be coded if the codes followed each other by chance
+     */
+    public double getExpected(int from, int to){
+        return (pairs == 0) ? 0 : antecedents[from] * (double)targets[to] / pairs;
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The share of the pairs starting with the first code that end with the second, or 0 if the first code
+     * starts no pair
+     */
+    public double getProbability(int from, int to){
+        return (antecedents[from] == 0) ? 0 : getObserved(from, to) / (double)antecedents[from];
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The adjusted residual of the pair, or 0 if either code covers every pair or none of them
+     */
+    public double getZScore(int from, int to){
+        double expected = getExpected(from, to);
+        double variance = expected * (1 - antecedents[from] / (double)pairs) * (1 - targets[to] / (double)pairs);
+        return (variance > 0) ? (getObserved(from, to) - expected) / Math.sqrt(variance) : 0;
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The mean count of the pair in the shuffled sequences, or NaN if none were shuffled
+     */
+    public double getPermutationMean(int from, int to){
+        return (permutations == 0) ? Double.NaN : sums[from * index.size() + to] / (double)permutations;
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The standard deviation of the count of the pair in the shuffled sequences, or NaN if fewer than two
+     * were shuffled
+     */
+    public double getPermutationStandardDeviation(int from, int to){
+        if(permutations < 2){
+            return Double.NaN;
+        }
+        int position = from * index.size() + to;
+        double mean = sums[position] / (double)permutations;
+        double variance = (sumsOfSquares[position] - mean * sums[position]) / (permutations - 1);
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The share of shuffles, counting the observed sequences as one, that coded the pair at least as often as
+     * was observed, or NaN if none were shuffled
+     */
+    public double getUpperPValue(int from, int to){
+        return (permutations == 0) ? Double.NaN
+                : (atLeast[from * index.size() + to] + 1) / (double)(permutations + 1);
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The share of shuffles, counting the observed sequences as one, that coded the pair at most as often as
+     * was observed, or NaN if none were shuffled
+     */
+    public double getLowerPValue(int from, int to){
+        return (permutations == 0) ? Double.NaN
+                : (atMost[from * index.size() + to] + 1) / (double)(permutations + 1);
+    }
+
+    /**
+     * @param from The ordinal of the code of the first entry
+     * @param to The ordinal of the code of the entry lag entries later
+     * @return The two-sided significance of the pair from the shuffles, or NaN if none were shuffled
+     */
+    public double getPValue(int from, int to){
+        return Math.min(1, 2 * Math.min(getUpperPValue(from, to), getLowerPValue(from, to)));
+    }
+}
@@ -0,0 +1,396 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * StillFaceQuantileSketch
+ * A compact summary of a set of values that answers quantile queries, such as the median, without keeping the values.
+ * It is a merging t-digest: the values are kept as centroids, each a mean and the number of values it stands for, and
+ * centroids near the middle of the distribution are allowed to grow larger than those near the ends, so that the
+ * extreme percentiles stay accurate. The number of centroids is bounded by about the compression, whatever the number
+ * of values.
+ * <p>
+ * Sketches can be merged, so the sketches of single imports can be stored once and combined into the sketch of any
+ * cohort. Values are added to a buffer that is merged into the centroids when it fills or when the sketch is queried.
+ * While there are only a few values, every value keeps a centroid of its own and quantiles are interpolated between
+ * the values themselves.
+ * <p>
+ * A sketch is not thread safe.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceQuantileSketch {
+
+    /* The compression used when none is provided. About this many centroids are kept. */
+    public static final int DEFAULT_COMPRESSION = 100;
+
+    /* The version of the encoded form, written first so that it can change later */
+    private static final byte ENCODING_VERSION = 1;
+
+    /* The size of the buffer when the first value is added. It doubles as it fills, up to BUFFER_FACTOR times the
+     * compression, so the sketches of the few timings of a code in one import stay small. */
+    private static final int INITIAL_BUFFER = 16;
+    private static final int BUFFER_FACTOR = 5;
+
+    private final int compression;
+
+    /* The merged centroids, ordered by mean. The arrays are no longer than the number of centroids. */
+    private double[] means = new double[0];
+    private long[] weights = new long[0];
+    private int centroids = 0;
+
+    /* Values and centroids added since the last merge, in no order, or null before the first is added */
+    private double[] bufferMeans;
+    private long[] bufferWeights;
+    private int buffered = 0;
+
+    private long count = 0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Creates an empty sketch with the default compression
+     */
+    public StillFaceQuantileSketch(){
+        this(DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates an empty sketch
+     *
+     * @param compression About how many centroids to keep. Higher is more accurate and larger.
+     */
+    public StillFaceQuantileSketch(int compression){
+        if(compression < 10){
+            throw new IllegalArgumentException("The compression must be at least 10");
+        }
+        this.compression = compression;
+    }
+
+    /**
+     * Adds a value
+     *
+     * @param value The value to add
+     */
+    public void add(double value){
+        add(value, 1);
+    }
+
+    /**
+     * Adds the values of another sketch. Its centroids and any values it has buffered are added to the buffer of this
+     * sketch, so the other sketch is only read and is not changed.
+     *
+     * @param other The sketch to add
+     */
+    public void add(StillFaceQuantileSketch other){
+        // Taken before adding anything, since a sketch added to itself changes its arrays as it goes
+        double[] otherMeans = other.means;
+        long[] otherWeights = other.weights;
+        int otherCentroids = other.centroids;
+        double[] otherBufferMeans = (other.buffered > 0) ? Arrays.copyOf(other.bufferMeans, other.buffered) : null;
+        long[] otherBufferWeights = (other.buffered > 0) ? Arrays.copyOf(other.bufferWeights, other.buffered) : null;
+        double otherMin = other.min;
+        double otherMax = other.max;
+        for(int i = 0; i < otherCentroids; i++){
+            add(otherMeans[i], otherWeights[i]);
+        }
+        for(int i = 0; otherBufferMeans != null && i < otherBufferMeans.length; i++){
+            add(otherBufferMeans[i], otherBufferWeights[i]);
+        }
+        this.min = Math.min(this.min, otherMin);
+        this.max = Math.max(this.max, otherMax);
+    }
+
+    /**
+     * @param q The quantile, from 0 to 1. 0.5 is the median.
+     * @return The estimated value at the quantile, or NaN if the sketch is empty
+     */
+    public double getQuantile(double q){
+        if(q < 0 || q > 1){
+            throw new IllegalArgumentException("The quantile must be from 0 to 1");
+        }
+        compress();
+        if(this.centroids == 0){
+            return Double.NaN;
+        }
+        if(this.centroids == 1){
+            return this.means[0];
+        }
+        // The rank of the value, where the centroid i covers the ranks around the middle of its weight
+        double rank = q * this.count;
+        double firstHalf = this.weights[0] / 2.0;
+        if(rank <= firstHalf){
+            return (this.weights[0] == 1) ? this.means[0]
+                    : this.min + (this.means[0] - this.min) * rank / firstHalf;
+        }
+        double lastHalf = this.weights[this.centroids - 1] / 2.0;
+        if(rank >= this.count - lastHalf){
+            double mean = this.means[this.centroids - 1];
+            return (this.weights[this.centroids - 1] == 1) ? mean
+                    : mean + (this.max - mean) * (rank - (this.count - lastHalf)) / lastHalf;
+        }
+        double center = firstHalf;
+        for(int i = 0; i < this.centroids - 1; i++){
+            double step = (this.weights[i] + this.weights[i + 1]) / 2.0;
+            if(rank <= center + step){
+                double fraction = (rank - center) / step;
+                return this.means[i] + (this.means[i + 1] - this.means[i]) * fraction;
+            }
+            center += step;
+        }
+        return this.means[this.centroids - 1];
+    }
+
+    /**
+     * @return The number of values added
+     */
+    public long getCount() { return count; }
+
+    /**
+     * @return The smallest value added, or positive infinity if the sketch is empty
+     */
+    public double getMin() { return min; }
+
+    /**
+     * @return The largest value added, or negative infinity if the sketch is empty
+     */
+    public double getMax() { return max; }
+
+    public int getCompression() { return compression; }
+
+    /**
+     * @return The number of centroids kept once the buffer is merged
+     */
+    public int getCentroidCount(){
+        compress();
+        return centroids;
+    }
+
+    /**
+     * Encodes the sketch as text, so that it can be stored in a database column
+     *
+     * @return The sketch in Base64
+     */
+    public String encode(){
+        compress();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 12 * this.centroids);
+        try(DataOutputStream out = new DataOutputStream(bytes)){
+            out.writeByte(ENCODING_VERSION);
+            out.writeShort(this.compression);
+            out.writeDouble(this.min);
+            out.writeDouble(this.max);
+            out.writeInt(this.centroids);
+            for(int i = 0; i < this.centroids; i++){
+                out.writeDouble(this.means[i]);
+                writeVarLong(out, this.weights[i]);
+            }
+        }
+        catch(IOException e){
+            // Writing to memory does not fail
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Reads a sketch encoded with encode()
+     *
+     * @param encoded The sketch in Base64
+     * @return The sketch, or null if the text is not an encoded sketch
+     */
+    public static StillFaceQuantileSketch decode(String encoded){
+        try(DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))){
+            if(in.readByte() != ENCODING_VERSION){
+                return null;
+            }
+            StillFaceQuantileSketch sketch = new StillFaceQuantileSketch(in.readShort());
+            sketch.min = in.readDouble();
+            sketch.max = in.readDouble();
+            int centroids = in.readInt();
+            // A merge keeps no more centroids than the compression, see the scale function
+            if(centroids < 0 || centroids > 2 * sketch.compression){
+                return null;
+            }
+            sketch.means = new double[centroids];
+            sketch.weights = new long[centroids];
+            for(int i = 0; i < centroids; i++){
+                sketch.means[i] = in.readDouble();
+                sketch.weights[i] = readVarLong(in);
+                sketch.count += sketch.weights[i];
+            }
+            sketch.centroids = centroids;
+            return sketch;
+        }
+        catch(IOException | IllegalArgumentException e){
+            return null;
+        }
+    }
+
+    private void add(double mean, long weight){
+        if(this.bufferMeans == null){
+            int size = Math.min(INITIAL_BUFFER, BUFFER_FACTOR * this.compression);
+            this.bufferMeans = new double[size];
+            this.bufferWeights = new long[size];
+        }
+        else if(this.buffered == this.bufferMeans.length){
+            if(this.buffered < BUFFER_FACTOR * this.compression){
+                int size = Math.min(2 * this.buffered, BUFFER_FACTOR * this.compression);
+                this.bufferMeans = Arrays.copyOf(this.bufferMeans, size);
+                this.bufferWeights = Arrays.copyOf(this.bufferWeights, size);
+            }
+            else{
+                compress();
+            }
+        }
+        this.bufferMeans[this.buffered] = mean;
+        this.bufferWeights[this.buffered] = weight;
+        this.buffered++;
+        this.count += weight;
+        this.min = Math.min(this.min, mean);
+        this.max = Math.max(this.max, mean);
+    }
+
+    /**
+     * Merges the buffer into the centroids. The buffer is sorted and merged with the centroids, which are already in
+     * order, and then neighbouring centroids are combined as long as the scale function allows.
+     */
+    private void compress(){
+        if(this.buffered == 0){
+            return;
+        }
+        sort(this.bufferMeans, this.bufferWeights, 0, this.buffered - 1);
+        int total = this.centroids + this.buffered;
+        double[] allMeans = new double[total];
+        long[] allWeights = new long[total];
+        int i = 0;
+        int j = 0;
+        for(int k = 0; k < total; k++){
+            if(j == this.buffered || (i < this.centroids && this.means[i] <= this.bufferMeans[j])){
+                allMeans[k] = this.means[i];
+                allWeights[k] = this.weights[i++];
+            }
+            else{
+                allMeans[k] = this.bufferMeans[j];
+                allWeights[k] = this.bufferWeights[j++];
+            }
+        }
+        this.buffered = 0;
+
+        // Combine neighbours while the combined centroid spans no more than one unit of the scale function. The
+        // combined centroids are written over the merged arrays, which are never read again behind the write.
+        int merged = 0;
+        double mean = allMeans[0];
+        long weight = allWeights[0];
+        long before = 0;
+        double limit = this.count * inverseScale(scale(0) + 1);
+        for(int k = 1; k < total; k++){
+            if(before + weight + allWeights[k] <= limit){
+                weight += allWeights[k];
+                mean += (allMeans[k] - mean) * allWeights[k] / weight;
+            }
+            else{
+                allMeans[merged] = mean;
+                allWeights[merged] = weight;
+                merged++;
+                before += weight;
+                limit = this.count * inverseScale(scale((double)before / this.count) + 1);
+                mean = allMeans[k];
+                weight = allWeights[k];
+            }
+        }
+        allMeans[merged] = mean;
+        allWeights[merged] = weight;
+        this.centroids = merged + 1;
+        this.means = Arrays.copyOf(allMeans, this.centroids);
+        this.weights = Arrays.copyOf(allWeights, this.centroids);
+    }
+
+    /**
+     * The k1 scale function of the t-digest, which maps a quantile to a number of units. Centroids may span at most
+     * one unit, and units are narrow near the ends of the distribution.
+     */
+    private double scale(double q){
+        return this.compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+    }
+
+    private double inverseScale(double k){
+        if(k >= this.compression / 4.0){
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / this.compression) + 1) / 2;
+    }
+
+    /**
+     * Sorts the means and their weights together by mean
+     */
+    private static void sort(double[] means, long[] weights, int from, int to){
+        while(to - from > 16){
+            double pivot = means[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while(i <= j){
+                while(means[i] < pivot) i++;
+                while(means[j] > pivot) j--;
+                if(i <= j){
+                    swap(means, weights, i++, j--);
+                }
+            }
+            // Recurse into the smaller part, so the stack stays shallow
+            if(j - from < to - i){
+                sort(means, weights, from, j);
+                from = i;
+            }
+            else{
+                sort(means, weights, i, to);
+                to = j;
+            }
+        }
+        for(int i = from + 1; i <= to; i++){
+            for(int j = i; j > from && means[j - 1] > means[j]; j--){
+                swap(means, weights, j - 1, j);
+            }
+        }
+    }
+
+    private static void swap(double[] means, long[] weights, int i, int j){
+        double mean = means[i];
+        means[i] = means[j];
+        means[j] = mean;
+        long weight = weights[i];
+        weights[i] = weights[j];
+        weights[j] = weight;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException{
+        while((value & ~0x7FL) != 0){
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException{
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("Malformed weight");
+    }
+}
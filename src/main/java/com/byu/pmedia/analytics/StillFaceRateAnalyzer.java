@@ -0,0 +1,232 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.query.Query;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceRateAnalyzer
+ * Builds the StillFaceRateSeries of one import or of many. The series of each import is built in one pass by a
+ * StillFaceRateBinner and kept in a StillFaceRateSeriesCache, so changing the set of imports or going back to an
+ * earlier bin width only bins the imports that are not cached. Many imports are split between the threads of a
+ * ForkJoinPool, in the same way as in the StillFaceCohortAggregator, and their series are summed as the tasks join.
+ * <p>
+ * Only saved entries are binned: unsaved edits are left out.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRateAnalyzer {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final StillFaceModel model;
+    private final ForkJoinPool pool;
+    private final StillFaceRateSeriesCache cache;
+
+    /**
+     * Creates an analyzer that runs on the common ForkJoinPool
+     *
+     * @param model The model holding the entries
+     * @param cacheCapacity The number of per-import series to cache
+     */
+    public StillFaceRateAnalyzer(StillFaceModel model, int cacheCapacity){
+        this(model, ForkJoinPool.commonPool(), cacheCapacity);
+    }
+
+    /**
+     * @param model The model holding the entries
+     * @param pool The pool to split the imports between
+     * @param cacheCapacity The number of per-import series to cache
+     */
+    public StillFaceRateAnalyzer(StillFaceModel model, ForkJoinPool pool, int cacheCapacity){
+        this.model = model;
+        this.pool = pool;
+        this.cache = new StillFaceRateSeriesCache(model, cacheCapacity);
+    }
+
+    /**
+     * @param importID The ID of the import
+     * @param binWidth The width of each bin, in milliseconds
+     * @return The series of the import, or null if the codes changed while it was built
+     */
+    public StillFaceRateSeries getSeries(int importID, int binWidth){
+        return getSeries(new int[]{importID}, binWidth);
+    }
+
+    /**
+     * @param cohort A query on the attributes of StillFaceImport
+     * @param binWidth The width of each bin, in milliseconds
+     * @return The series summed over the matching imports, or null if the model is not initialized or the codes
+     * changed while it was built
+     */
+    public StillFaceRateSeries getSeries(Query<StillFaceImport> cohort, int binWidth){
+        int[] importIDs = this.model.getImportIDs(cohort);
+        if(importIDs == null){
+            logger.warning("Unable to build a rate series before the model is initialized");
+            return null;
+        }
+        return getSeries(importIDs, binWidth);
+    }
+
+    /**
+     * @param importIDs The IDs of the imports
+     * @param binWidth The width of each bin, in milliseconds
+     * @return The series summed over the imports, or null if the codes changed while it was built
+     */
+    public StillFaceRateSeries getSeries(int[] importIDs, int binWidth){
+        if(binWidth <= 0){
+            throw new IllegalArgumentException("The bin width must be positive");
+        }
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        int threshold = Math.max(1, importIDs.length / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        try{
+            return this.pool.invoke(new BinningTask(importIDs, 0, importIDs.length, threshold, index, binWidth))
+                    .toSeries();
+        }
+        catch(IllegalArgumentException e){
+            logger.warning("Unable to build a rate series while the codes are changing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public StillFaceRateSeriesCache getCache() { return cache; }
+
+    /**
+     * Bins the saved entries of an import
+     */
+    private StillFaceRateSeries bin(int importID, StillFaceRateBinner binner){
+        StillFaceEventStore store = this.model.getEventStore();
+        if(store != null){
+            StillFaceEventSegment segment = store.getSegment(importID);
+            return (segment == null) ? binner.bin(Collections.emptyList()) : binner.bin(segment);
+        }
+        return binner.bin(this.model.getDataForImport(importID));
+    }
+
+    /**
+     * Bins a range of the imports, splitting it in two while it is above the threshold
+     */
+    private class BinningTask extends RecursiveTask<Sums> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] importIDs;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceCodeIndex index;
+        private final int binWidth;
+
+        BinningTask(int[] importIDs, int from, int to, int threshold, StillFaceCodeIndex index, int binWidth){
+            this.importIDs = importIDs;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.index = index;
+            this.binWidth = binWidth;
+        }
+
+        @Override
+        protected Sums compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                BinningTask left = new BinningTask(this.importIDs, this.from, middle, this.threshold, this.index,
+                        this.binWidth);
+                left.fork();
+                Sums sums = new BinningTask(this.importIDs, middle, this.to, this.threshold, this.index,
+                        this.binWidth).compute();
+                sums.add(left.join());
+                return sums;
+            }
+            Sums sums = new Sums(this.index, this.binWidth);
+            // Only created if an import is not cached
+            StillFaceRateBinner[] binner = new StillFaceRateBinner[1];
+            for(int i = this.from; i < this.to; i++){
+                sums.add(cache.get(this.importIDs[i], this.binWidth, this.index, importID -> {
+                    if(binner[0] == null){
+                        binner[0] = new StillFaceRateBinner(this.index, this.binWidth);
+                    }
+                    return bin(importID, binner[0]);
+                }));
+            }
+            return sums;
+        }
+    }
+
+    /**
+     * The series of some imports summed together. The arrays grow to the longest segment added.
+     */
+    private static class Sums {
+
+        private final StillFaceCodeIndex index;
+        private final int binWidth;
+        private final int[][] counts;
+        private final int[][] coverage;
+        private int imports = 0;
+
+        Sums(StillFaceCodeIndex index, int binWidth){
+            this.index = index;
+            this.binWidth = binWidth;
+            this.counts = new int[index.getSegmentCount()][0];
+            this.coverage = new int[index.getSegmentCount()][0];
+        }
+
+        void add(StillFaceRateSeries series){
+            this.imports += series.getImportCount();
+            int codes = this.index.size();
+            for(int segment = 0; segment < this.counts.length; segment++){
+                int bins = series.getBinCount(segment);
+                grow(segment, bins);
+                for(int bin = 0; bin < bins; bin++){
+                    this.coverage[segment][bin] += series.getImportCount(segment, bin);
+                    for(int ordinal = 0; ordinal < codes; ordinal++){
+                        this.counts[segment][bin * codes + ordinal] += series.getCount(segment, bin, ordinal);
+                    }
+                }
+            }
+        }
+
+        void add(Sums other){
+            this.imports += other.imports;
+            for(int segment = 0; segment < this.counts.length; segment++){
+                grow(segment, other.coverage[segment].length);
+                for(int i = 0; i < other.coverage[segment].length; i++){
+                    this.coverage[segment][i] += other.coverage[segment][i];
+                }
+                for(int i = 0; i < other.counts[segment].length; i++){
+                    this.counts[segment][i] += other.counts[segment][i];
+                }
+            }
+        }
+
+        StillFaceRateSeries toSeries(){
+            return new StillFaceRateSeries(this.index, this.binWidth, this.imports, this.counts, this.coverage);
+        }
+
+        private void grow(int segment, int bins){
+            if(bins > this.coverage[segment].length){
+                this.coverage[segment] = Arrays.copyOf(this.coverage[segment], bins);
+                this.counts[segment] = Arrays.copyOf(this.counts[segment], bins * this.index.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceEventSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceRateBinner
+ * Builds the StillFaceRateSeries of one import in a single pass over its entries. The segment of each entry is found
+ * from the boundaries of the protocol as it is counted, in the same way as in the StillFaceSegmentCounter, and each
+ * segment's bins are counted from the time of the entry that started it. The histograms are int arrays that grow as
+ * later bins are reached and are reused from one import to the next.
+ * <p>
+ * A binner is not thread safe. Create one per thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRateBinner {
+
+    private final StillFaceCodeIndex index;
+    private final int binWidth;
+
+    /* Per segment: the counts, by bin * index.size() + ordinal, the number of bins covered and the start time */
+    private final int[][] counts;
+    private final int[] bins;
+    private final int[] starts;
+
+    /**
+     * @param index The index of every code the binned entries can have, with the protocol that decides the segments
+     * @param binWidth The width of each bin, in milliseconds
+     */
+    public StillFaceRateBinner(StillFaceCodeIndex index, int binWidth){
+        if(binWidth <= 0){
+            throw new IllegalArgumentException("The bin width must be positive");
+        }
+        this.index = index;
+        this.binWidth = binWidth;
+        this.counts = new int[index.getSegmentCount()][0];
+        this.bins = new int[index.getSegmentCount()];
+        this.starts = new int[index.getSegmentCount()];
+    }
+
+    /**
+     * Bins the entries of an import
+     *
+     * @param data The entries, ordered by time
+     * @return The series of the import
+     */
+    public StillFaceRateSeries bin(List<StillFaceData> data){
+        clear();
+        int current = 0;
+        for(StillFaceData d : data){
+            int ordinal = this.index.ordinal(d.getCode());
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+            }
+            current = add(current, ordinal, d.getTime());
+        }
+        return toSeries();
+    }
+
+    /**
+     * Bins the entries of an import held by the columnar event store
+     *
+     * @param segment The entries of the import
+     * @return The series of the import
+     */
+    public StillFaceRateSeries bin(StillFaceEventSegment segment){
+        clear();
+        int current = 0;
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = this.index.ordinal(segment.getCodeID(position));
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + segment.getCodeID(position) + " is not in the index");
+            }
+            current = add(current, ordinal, segment.getTime(position));
+        }
+        return toSeries();
+    }
+
+    public int getBinWidth() { return binWidth; }
+
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * Counts one entry, starting a new segment first if its code is a later boundary
+     *
+     * @return The segment of the entry
+     */
+    private int add(int current, int ordinal, int time){
+        int boundary = this.index.getBoundary(ordinal);
+        if(boundary > current){
+            // The segment that ends here covers every bin it started, up to the start of the next one
+            int length = time - this.starts[current];
+            this.bins[current] = Math.max(this.bins[current], (length + this.binWidth - 1) / this.binWidth);
+            current = boundary;
+            this.starts[current] = time;
+        }
+        int bin = Math.max(0, time - this.starts[current]) / this.binWidth;
+        int codes = this.index.size();
+        if((bin + 1) * codes > this.counts[current].length){
+            this.counts[current] = Arrays.copyOf(this.counts[current],
+                    Math.max((bin + 1) * codes, this.counts[current].length * 2));
+        }
+        this.counts[current][bin * codes + ordinal]++;
+        this.bins[current] = Math.max(this.bins[current], bin + 1);
+        return current;
+    }
+
+    private void clear(){
+        for(int segment = 0; segment < this.counts.length; segment++){
+            Arrays.fill(this.counts[segment], 0);
+        }
+        Arrays.fill(this.bins, 0);
+        Arrays.fill(this.starts, 0);
+    }
+
+    /**
+     * Copies the counts of the covered bins into a new series
+     */
+    private StillFaceRateSeries toSeries(){
+        int segments = this.counts.length;
+        int[][] seriesCounts = new int[segments][];
+        int[][] coverage = new int[segments][];
+        for(int segment = 0; segment < segments; segment++){
+            // A segment can cover bins past its last entry, which copyOf fills with zeros
+            seriesCounts[segment] = Arrays.copyOf(this.counts[segment], this.bins[segment] * this.index.size());
+            coverage[segment] = new int[this.bins[segment]];
+            Arrays.fill(coverage[segment], 1);
+        }
+        return new StillFaceRateSeries(this.index, this.binWidth, 1, seriesCounts, coverage);
+    }
+}
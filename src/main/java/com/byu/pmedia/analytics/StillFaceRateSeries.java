@@ -0,0 +1,133 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceRateSeries
+ * How often each code occurs over time, in bins of a fixed width, in one import or summed over many. Bins are counted
+ * from the start of each segment of the protocol, so bin 0 of the still face segment of every import starts when its
+ * still face began, and series of several imports line up by segment. The first segment starts at time 0.
+ * <p>
+ * A segment of an import covers its bins up to the start of the next segment, or up to its last entry if it is the
+ * last segment coded. When imports are summed, each bin keeps the number of imports that cover it, so the rate of a
+ * bin is an average over the imports that reached it rather than over every import.
+ * <p>
+ * Counts are kept in one int array per segment, indexed by bin * index.size() + ordinal.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRateSeries {
+
+    private static final double MILLISECONDS_PER_MINUTE = 60000.0;
+
+    private final StillFaceCodeIndex index;
+    private final int binWidth;
+    private final int importCount;
+    private final int[][] counts;
+    /* Per segment and bin, the number of imports covering the bin */
+    private final int[][] coverage;
+
+    StillFaceRateSeries(StillFaceCodeIndex index, int binWidth, int importCount, int[][] counts, int[][] coverage){
+        this.index = index;
+        this.binWidth = binWidth;
+        this.importCount = importCount;
+        this.counts = counts;
+        this.coverage = coverage;
+    }
+
+    /**
+     * @return The index the counts are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return counts.length; }
+
+    /**
+     * @return The width of each bin, in milliseconds
+     */
+    public int getBinWidth() { return binWidth; }
+
+    /**
+     * @return The number of imports summed into the series
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * @param segment The segment
+     * @return The number of bins of the segment in the import that covers the most of them
+     */
+    public int getBinCount(int segment) { return coverage[segment].length; }
+
+    /**
+     * @param segment The segment
+     * @param bin The bin, from the start of the segment
+     * @return The number of imports whose segment reaches the bin
+     */
+    public int getImportCount(int segment, int bin) { return coverage[segment][bin]; }
+
+    /**
+     * @param segment The segment
+     * @param bin The bin, from the start of the segment
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of entries with the code in the bin, summed over the imports
+     */
+    public int getCount(int segment, int bin, int ordinal) { return counts[segment][bin * index.size() + ordinal]; }
+
+    /**
+     * @param segment The segment
+     * @param bin The bin, from the start of the segment
+     * @param ordinal The ordinal of a code in the index
+     * @return The mean number of entries with the code per minute in the bin, over the imports that reach it
+     */
+    public double getRate(int segment, int bin, int ordinal){
+        int imports = coverage[segment][bin];
+        if(imports == 0){
+            return 0;
+        }
+        return getCount(segment, bin, ordinal) * MILLISECONDS_PER_MINUTE / ((double)binWidth * imports);
+    }
+
+    /**
+     * @param segment The segment
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of entries with the code in the segment, summed over the imports
+     */
+    public int getTotal(int segment, int ordinal){
+        int total = 0;
+        for(int position = ordinal; position < counts[segment].length; position += index.size()){
+            total += counts[segment][position];
+        }
+        return total;
+    }
+
+    /**
+     * @param segment The segment
+     * @param bin The bin, from the start of the segment
+     * @param code A code
+     * @return The mean number of entries with the code per minute in the bin, or 0 if the code is not indexed
+     */
+    public double getRate(int segment, int bin, StillFaceCode code){
+        int ordinal = index.ordinal(code);
+        return (ordinal < 0) ? 0 : getRate(segment, bin, ordinal);
+    }
+}
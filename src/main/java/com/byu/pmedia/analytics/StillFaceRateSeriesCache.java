@@ -0,0 +1,114 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceModel;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceRateSeriesCache
+ * A least recently used cache of the StillFaceRateSeries of single imports, keyed by import and bin width. As with the
+ * StillFaceSearchCache, every series is dropped as soon as the data version of the model changes. A series is also
+ * only served for the code index it was built with, so changing the codes or the protocol rebuilds it.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRateSeriesCache {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The model whose data version the series are validated against */
+    private final StillFaceModel model;
+
+    /* The cached series by import ID (high bits) and bin width (low bits), least recently used first */
+    private final LinkedHashMap<Long, StillFaceRateSeries> series = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* The data version every cached series was computed from */
+    private long dataVersion = -1;
+
+    /* The maximum number of series held by the cache */
+    private final int capacity;
+
+    /* Statistics about how well the cache is performing */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new, empty cache
+     *
+     * @param model The model the series are computed from
+     * @param capacity The maximum number of series to hold
+     */
+    public StillFaceRateSeriesCache(StillFaceModel model, int capacity){
+        this.model = model;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached series of an import, building it with the provided loader if it is not cached, was built
+     * with another index, or the data changed since it was cached. The loader runs without holding the cache lock.
+     *
+     * @param importID The ID of the import
+     * @param binWidth The width of each bin, in milliseconds
+     * @param index The index the series must be kept by
+     * @param loader Builds the series of an import with the index and bin width
+     * @return The series of the import
+     */
+    public StillFaceRateSeries get(int importID, int binWidth, StillFaceCodeIndex index,
+                                   IntFunction<StillFaceRateSeries> loader){
+        long key = ((long)importID << 32) | binWidth;
+        long version = this.model.getState().getDataVersion();
+        synchronized(this){
+            if(this.dataVersion != version){
+                this.series.clear();
+                this.dataVersion = version;
+            }
+            StillFaceRateSeries result = this.series.get(key);
+            if(result != null && result.getIndex() == index){
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        StillFaceRateSeries result = loader.apply(importID);
+        synchronized(this){
+            if(this.dataVersion == version && this.model.getState().getDataVersion() == version){
+                this.series.put(key, result);
+                if(this.series.size() > this.capacity){
+                    Iterator<Long> eldest = this.series.keySet().iterator();
+                    logger.fine("Evicted the series of import " + (eldest.next() >> 32) + " from the rate cache");
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every series from the cache. Statistics are kept.
+     */
+    public synchronized void clear(){
+        this.series.clear();
+    }
+
+    public synchronized int getSize() { return series.size(); }
+
+    public int getCapacity() { return capacity; }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+}
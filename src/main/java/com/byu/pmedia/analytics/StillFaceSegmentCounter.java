@@ -0,0 +1,230 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceSegmentCounter
+ * Counts how often each code occurs in a list of entries, overall and in each segment of the video, and builds the
+ * StillFaceImportSummary from the counts. The segments are those of the StillFaceProtocol held by the code index: an
+ * entry belongs to the segment of the highest boundary that was coded at or before it, so the segments are found in
+ * the same pass as the counts, whatever their number. Counts are kept in int arrays indexed by the ordinals of a
+ * StillFaceCodeIndex, and are reused from one list to the next, so counting does not allocate.
+ * <p>
+ * A counter is not thread safe. Create one per thread, or use StillFaceImportSummary.of for a one-off summary.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceSegmentCounter {
+
+    /* The index the counts are kept by, and whether it was provided rather than taken from the registry */
+    private StillFaceCodeIndex index;
+    private final boolean fixedIndex;
+
+    /* The counts of the last list: per code, and per segment and code (segment * index.size() + ordinal) */
+    private int[] codeCounts = new int[0];
+    private int[] segmentCounts = new int[0];
+    private int count = 0;
+    private int totalDuration = 0;
+
+    /**
+     * Creates a counter that keeps its counts by the index of the canonical codes in the StillFaceRegistry. Codes
+     * that are not in the registry yet are added to it.
+     */
+    public StillFaceSegmentCounter(){
+        this.fixedIndex = false;
+    }
+
+    /**
+     * Creates a counter that keeps its counts by the provided index. Counting an entry whose code is not in the
+     * index fails.
+     *
+     * @param index The index of every code the counted entries can have
+     */
+    public StillFaceSegmentCounter(StillFaceCodeIndex index){
+        this.index = index;
+        this.fixedIndex = true;
+    }
+
+    /**
+     * Counts a list of entries and builds their summary
+     *
+     * @param data The entries, ordered by time
+     * @return The summary of the entries
+     */
+    public StillFaceImportSummary summarize(List<StillFaceData> data){
+        count(data);
+        return toSummary();
+    }
+
+    /**
+     * Counts a list of entries, replacing the counts of the previous list. The entries are taken in list order, so
+     * the segments are only meaningful if the list is ordered by time.
+     *
+     * @param data The entries to count
+     */
+    public void count(List<StillFaceData> data){
+        prepare(this.fixedIndex ? this.index : StillFaceRegistry.getInstance().getCodeIndex());
+        if(!countCodes(data)){
+            if(this.fixedIndex){
+                throw new IllegalArgumentException("An entry has a code that is not in the index");
+            }
+            prepare(resolveCodes(data));
+            countCodes(data);
+        }
+        this.count = data.size();
+        this.totalDuration = data.isEmpty() ? 0 : data.get(data.size() - 1).getTime();
+    }
+
+    /**
+     * Counts the entries of an import held by the columnar event store, replacing the counts of the previous list.
+     * The entries of a segment are ordered by time.
+     *
+     * @param segment The entries of the import
+     */
+    public void count(StillFaceEventSegment segment){
+        prepare(this.fixedIndex ? this.index : StillFaceRegistry.getInstance().getCodeIndex());
+        int codes = this.index.size();
+        int current = 0;
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = this.index.ordinal(segment.getCodeID(position));
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + segment.getCodeID(position) + " is not in the index");
+            }
+            current = Math.max(current, this.index.getBoundary(ordinal));
+            this.codeCounts[ordinal]++;
+            this.segmentCounts[current * codes + ordinal]++;
+        }
+        this.count = segment.size();
+        this.totalDuration = (segment.size() == 0) ? 0 : segment.getTime(segment.size() - 1);
+    }
+
+    /**
+     * @return A summary of the last list that was counted
+     */
+    public StillFaceImportSummary toSummary(){
+        return new StillFaceImportSummary(this.count, this.totalDuration, this.index, this.codeCounts,
+                this.segmentCounts);
+    }
+
+    /**
+     * @return The index the last list was counted by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of entries of the last list with the code
+     */
+    public int getCount(int ordinal) { return codeCounts[ordinal]; }
+
+    /**
+     * @param segment The segment
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of entries of the last list with the code in the segment
+     */
+    public int getCount(int segment, int ordinal) { return segmentCounts[segment * index.size() + ordinal]; }
+
+    /**
+     * @return The array of the per-segment counts of the last list, without a copy. It is overwritten by the next
+     * count.
+     */
+    int[] getSegmentCounts() { return segmentCounts; }
+
+    /**
+     * Orders codes by their counts, most frequent first. Codes with equal counts are ordered by ordinal, i.e. by
+     * name, and codes with no entries are left out. The counts and ordinals are packed into one long each and sorted
+     * as primitives.
+     *
+     * @param counts An array holding a count for each ordinal
+     * @param offset The position in the array of the count of ordinal 0
+     * @param length The number of ordinals
+     * @return The ordinals of the codes with a count above 0, most frequent first
+     */
+    public static int[] rank(int[] counts, int offset, int length){
+        long[] keys = new long[length];
+        int used = 0;
+        for(int ordinal = 0; ordinal < length; ordinal++){
+            int count = counts[offset + ordinal];
+            if(count > 0){
+                // Negated counts sort the most frequent first
+                keys[used++] = ((long)-count << 32) | ordinal;
+            }
+        }
+        Arrays.sort(keys, 0, used);
+        int[] ordinals = new int[used];
+        for(int i = 0; i < used; i++){
+            ordinals[i] = (int)keys[i];
+        }
+        return ordinals;
+    }
+
+    /**
+     * Counts every entry into the arrays. Returns false as soon as an entry has a code that is not in the index.
+     */
+    private boolean countCodes(List<StillFaceData> data){
+        int codes = this.index.size();
+        int current = 0;
+        for(StillFaceData d : data){
+            int ordinal = this.index.ordinal(d.getCode());
+            if(ordinal < 0){
+                return false;
+            }
+            current = Math.max(current, this.index.getBoundary(ordinal));
+            this.codeCounts[ordinal]++;
+            this.segmentCounts[current * codes + ordinal]++;
+        }
+        return true;
+    }
+
+    /**
+     * Switches to an index and clears the counts
+     */
+    private void prepare(StillFaceCodeIndex index){
+        if(index != this.index || this.codeCounts.length != index.size()
+                || this.segmentCounts.length != index.size() * index.getSegmentCount()){
+            this.index = index;
+            this.codeCounts = new int[index.size()];
+            this.segmentCounts = new int[index.size() * index.getSegmentCount()];
+        }
+        else{
+            Arrays.fill(this.codeCounts, 0);
+            Arrays.fill(this.segmentCounts, 0);
+        }
+    }
+
+    /**
+     * Finds an index that holds the code of every entry. The registry adds the codes from the database that it has
+     * not seen, which is enough unless some entries have codes that have not been stored yet, in which case the index
+     * is built from the registry and the entries.
+     */
+    private static StillFaceCodeIndex resolveCodes(List<StillFaceData> data){
+        StillFaceRegistry registry = StillFaceRegistry.getInstance();
+        StillFaceCodeIndex index = registry.getCodeIndex(data);
+        boolean unstored = false;
+        for(StillFaceData d : data){
+            unstored |= d.getCode().getCodeID() == 0;
+        }
+        if(!unstored){
+            return index;
+        }
+        List<StillFaceCode> codes = registry.getCodes();
+        for(StillFaceData d : data){
+            codes.add(d.getCode());
+        }
+        return StillFaceCodeIndex.of(codes);
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceEventSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceStateCounter
+ * Measures how long each code lasts as a state, in each segment of the protocol, in one pass over the entries of an
+ * import. Most entries are coded with no duration, so an entry of a StillFaceCodeGroups group is taken to last until
+ * the next entry of its group. An entry that was coded with a duration ends no later than its time plus the duration,
+ * leaving the group without a state until its next entry. Another entry with the same code carries the state on
+ * rather than starting a new one, unless the state had already ended. The states still open at the end of the import
+ * end with its last entry.
+ * <p>
+ * The segments are found as the entries are counted, in the same way as in the StillFaceSegmentCounter. A state that
+ * is open when a boundary is coded is split at the time of the boundary, so each segment holds the part of the state
+ * that falls in it, and the state counts as an episode in each segment it lasts in. Parts that last no time, such as
+ * an entry replaced by another at the same time, are not episodes.
+ * <p>
+ * A counter is not thread safe. Create one per thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceStateCounter {
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceCodeGroups groups;
+    /* The group of each code by ordinal, -1 for codes in no group */
+    private final int[] groupOf;
+
+    /* The time in state and the number of episodes of the last import, at segment * index.size() + ordinal */
+    private final int[] times;
+    private final int[] episodes;
+
+    /* The state of the import being counted: its current segment and the time it ends, and per group the ordinal of
+     * the open state (-1 if none), when the part of it in the current segment started and when it ends at the
+     * latest */
+    private int segment;
+    private int end;
+    private final int[] open;
+    private final int[] since;
+    private final int[] until;
+
+    /* Told of every episode as it ends, if set */
+    private EpisodeListener listener;
+
+    /**
+     * @param index The index of every code the counted entries can have, with the protocol that decides the segments
+     * @param groups The groups of the codes that are states
+     */
+    public StillFaceStateCounter(StillFaceCodeIndex index, StillFaceCodeGroups groups){
+        this.index = index;
+        this.groups = groups;
+        this.groupOf = groups.getGroups(index);
+        this.times = new int[index.getSegmentCount() * index.size()];
+        this.episodes = new int[this.times.length];
+        this.open = new int[groups.getGroupCount()];
+        this.since = new int[groups.getGroupCount()];
+        this.until = new int[groups.getGroupCount()];
+    }
+
+    /**
+     * Measures the states of an import
+     *
+     * @param data The entries of the import, ordered by time
+     * @return The durations of the states of the import
+     */
+    public StillFaceStateDurations count(List<StillFaceData> data){
+        start();
+        for(StillFaceData d : data){
+            add(d);
+        }
+        return finish();
+    }
+
+    /**
+     * Measures the states of an import held by the columnar event store
+     *
+     * @param segment The entries of the import
+     * @return The durations of the states of the import
+     */
+    public StillFaceStateDurations count(StillFaceEventSegment segment){
+        start();
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = this.index.ordinal(segment.getCodeID(position));
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + segment.getCodeID(position) + " is not in the index");
+            }
+            add(ordinal, segment.getTime(position), segment.getDuration(position));
+        }
+        return finish();
+    }
+
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    public StillFaceCodeGroups getGroups() { return groups; }
+
+    /**
+     * @param listener Told of every episode as it ends, or null to stop telling
+     */
+    public void setEpisodeListener(EpisodeListener listener) { this.listener = listener; }
+
+    /**
+     * Receives the length of each episode as the counter ends it, for measures that need every episode rather than
+     * their sum, such as the quantiles of the StillFaceTimingCounter
+     */
+    @FunctionalInterface
+    public interface EpisodeListener {
+        /**
+         * @param segment The segment the episode is in. A state split at a boundary is one episode in each segment.
+         * @param ordinal The ordinal of the code of the state
+         * @param length How long the episode lasted, in milliseconds. Always positive.
+         */
+        void onEpisode(int segment, int ordinal, int length);
+    }
+
+    /**
+     * Starts measuring an import whose entries are then added one at a time with add, for callers that see the
+     * entries one by one, such as the StillFaceImportStatAccumulator
+     */
+    public void start(){
+        Arrays.fill(this.times, 0);
+        Arrays.fill(this.episodes, 0);
+        Arrays.fill(this.open, -1);
+        this.segment = 0;
+        this.end = 0;
+    }
+
+    /**
+     * Adds the next entry of the import being measured
+     *
+     * @param d The entry. Must not be earlier than the entries added before it.
+     */
+    public void add(StillFaceData d){
+        int ordinal = this.index.ordinal(d.getCode());
+        if(ordinal < 0){
+            throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+        }
+        add(ordinal, d.getTime(), d.getDuration());
+    }
+
+    /**
+     * Moves to a later segment if the code is a later boundary, then replaces the state of the group of the code
+     */
+    private void add(int ordinal, int time, int duration){
+        int boundary = this.index.getBoundary(ordinal);
+        if(boundary > this.segment){
+            for(int group = 0; group < this.open.length; group++){
+                if(this.open[group] >= 0){
+                    int state = this.open[group];
+                    close(group, time);
+                    if(this.until[group] > time){
+                        // The rest of the state belongs to the new segment
+                        this.open[group] = state;
+                        this.since[group] = time;
+                        this.episodes[boundary * this.index.size() + state]++;
+                    }
+                }
+            }
+            this.segment = boundary;
+        }
+        this.end = Math.max(this.end, (duration > 0) ? time + duration : time);
+        int group = this.groupOf[ordinal];
+        if(group < 0){
+            return;
+        }
+        int limit = (duration > 0) ? time + duration : Integer.MAX_VALUE;
+        if(this.open[group] == ordinal && this.until[group] >= time){
+            // The same state goes on, until the end of this entry
+            this.until[group] = limit;
+            return;
+        }
+        if(this.open[group] >= 0){
+            close(group, time);
+        }
+        this.open[group] = ordinal;
+        this.since[group] = time;
+        this.until[group] = limit;
+        this.episodes[this.segment * this.index.size() + ordinal]++;
+    }
+
+    /**
+     * Adds the part of the open state of a group in the current segment, up to a time or to its own end
+     */
+    private void close(int group, int time){
+        int position = this.segment * this.index.size() + this.open[group];
+        int length = Math.min(time, this.until[group]) - this.since[group];
+        if(length > 0){
+            this.times[position] += length;
+            if(this.listener != null){
+                this.listener.onEpisode(this.segment, this.open[group], length);
+            }
+        }
+        else{
+            this.episodes[position]--;
+        }
+        this.open[group] = -1;
+    }
+
+    /**
+     * Ends the states still open in the import being measured
+     *
+     * @return The durations of the states of the import
+     */
+    public StillFaceStateDurations finish(){
+        for(int group = 0; group < this.open.length; group++){
+            if(this.open[group] >= 0){
+                close(group, this.end);
+            }
+        }
+        return new StillFaceStateDurations(this.index, this.groups, this.groupOf, this.times, this.episodes);
+    }
+}
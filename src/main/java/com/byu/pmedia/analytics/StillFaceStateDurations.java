@@ -0,0 +1,138 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceCode;
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceStateDurations
+ * How long the codes of an import lasted as states, and in how many episodes, in each segment of the protocol, as
+ * measured by the StillFaceStateCounter. Only codes of a StillFaceCodeGroups group have a duration. A duration never
+ * changes once it is measured.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceStateDurations {
+
+    /* The segment argument that stands for the whole video */
+    public static final int WHOLE_VIDEO = -1;
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceCodeGroups groups;
+    /* The group of each code by ordinal, -1 for codes in no group */
+    private final int[] groupOf;
+    /* The time in state, in milliseconds, and the number of episodes, at segment * index.size() + ordinal */
+    private final int[] times;
+    private final int[] episodes;
+
+    /**
+     * Creates durations from counts that were already collected. The arrays are copied.
+     */
+    StillFaceStateDurations(StillFaceCodeIndex index, StillFaceCodeGroups groups, int[] groupOf, int[] times,
+                            int[] episodes){
+        this.index = index;
+        this.groups = groups;
+        this.groupOf = groupOf.clone();
+        this.times = times.clone();
+        this.episodes = episodes.clone();
+    }
+
+    /**
+     * @return The index the durations are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The groups that decided which codes are states
+     */
+    public StillFaceCodeGroups getGroups() { return groups; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return index.getSegmentCount(); }
+
+    /**
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of the group of the code, or -1 if the code is not a state
+     */
+    public int getGroup(int ordinal) { return groupOf[ordinal]; }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The time spent in the state of the code in the segment, in milliseconds
+     */
+    public int getTime(int segment, int ordinal){
+        if(segment != WHOLE_VIDEO){
+            return times[segment * index.size() + ordinal];
+        }
+        int total = 0;
+        for(int position = ordinal; position < times.length; position += index.size()){
+            total += times[position];
+        }
+        return total;
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The number of episodes of the state of the code in the segment. An episode that goes on over a
+     * boundary counts in both segments.
+     */
+    public int getEpisodes(int segment, int ordinal){
+        if(segment != WHOLE_VIDEO){
+            return episodes[segment * index.size() + ordinal];
+        }
+        int total = 0;
+        for(int position = ordinal; position < episodes.length; position += index.size()){
+            total += episodes[position];
+        }
+        return total;
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param ordinal The ordinal of a code in the index
+     * @return The share of the time some state of the group of the code was coded in the segment that was spent in
+     * the state of the code, or 0 if the group had no state in the segment
+     */
+    public double getProportion(int segment, int ordinal){
+        int group = groupOf[ordinal];
+        if(group < 0){
+            return 0;
+        }
+        long groupTime = 0;
+        for(int other = 0; other < groupOf.length; other++){
+            if(groupOf[other] == group){
+                groupTime += getTime(segment, other);
+            }
+        }
+        return (groupTime == 0) ? 0 : getTime(segment, ordinal) / (double)groupTime;
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param code A code
+     * @return The time spent in the state of the code in the segment, or 0 if the code is not indexed
+     */
+    public int getTime(int segment, StillFaceCode code){
+        int ordinal = index.ordinal(code);
+        return (ordinal < 0) ? 0 : getTime(segment, ordinal);
+    }
+}
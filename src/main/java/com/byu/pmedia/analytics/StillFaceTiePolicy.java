@@ -0,0 +1,56 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.config.StillFaceConfig;
+
+/**
+ * StillFaceTiePolicy
+ * Enumerated type describing how transitions are counted between entries coded at the same time. This is read from
+ * the analytics.transitions.ties configuration option.
+ * <p>
+ * SEQUENTIAL takes tied entries in the order they are stored, as though each followed the one before it. SKIP does
+ * not count a transition between two entries with the same time, but still counts the transition into the first of
+ * them and out of the last. ALL_PAIRS treats the entries at one time as a group and counts a transition from every
+ * entry of a group to every entry of the next one.
+ */
+public enum StillFaceTiePolicy {
+
+    SEQUENTIAL,
+    SKIP,
+    ALL_PAIRS;
+
+    /**
+     * Parses a tie policy from a configuration value. Missing or unknown values fall back to SEQUENTIAL, which counts
+     * transitions the way the entries are listed in an import.
+     *
+     * @param value The configuration value to parse
+     * @return The matching StillFaceTiePolicy, or SEQUENTIAL if there is no match
+     */
+    public static StillFaceTiePolicy fromString(String value){
+        try{
+            return StillFaceTiePolicy.valueOf(value.trim().toUpperCase());
+        }
+        catch(IllegalArgumentException | NullPointerException e){
+            return SEQUENTIAL;
+        }
+    }
+
+    /**
+     * Reads the tie policy from the analytics.transitions.ties configuration option. Defaults to SEQUENTIAL.
+     *
+     * @return The configured StillFaceTiePolicy
+     */
+    public static StillFaceTiePolicy getConfiguredPolicy(){
+        return fromString(StillFaceConfig.getInstance().getAsString("analytics.transitions.ties"));
+    }
+}
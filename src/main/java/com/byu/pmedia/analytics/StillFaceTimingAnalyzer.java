@@ -0,0 +1,227 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.database.StillFaceDAO;
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.query.Query;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceTimingAnalyzer
+ * Builds the StillFaceTimingSketches of any set of imports, such as the imports matching a query on the
+ * StillFaceImport attributes, from the sketches stored in the sf_timing_stats table. The stored sketches are read and
+ * decoded once and kept until the data version of the model or the code index of the StillFaceRegistry changes, so
+ * later cohorts only merge sketches and never read entries. Rebuilding the statistics advances the data version (see
+ * StillFaceModel.statisticsRebuilt), so sketches computed for an old protocol are read again once they are rebuilt. The imports are split between the threads of a ForkJoinPool, in the same way as in the
+ * StillFaceCohortAggregator, and the sketches of the tasks are merged as they join.
+ * <p>
+ * Only saved entries are measured: unsaved edits are left out.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTimingAnalyzer {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final StillFaceModel model;
+    private final ForkJoinPool pool;
+    private StillFaceDAO dao;
+
+    /* The decoded sketches of every import by import ID, and the data version and code index they were read at */
+    private Map<Integer, List<Stored>> stored = null;
+    private long dataVersion = -1;
+    private StillFaceCodeIndex index = null;
+
+    /**
+     * Creates an analyzer that runs on the common ForkJoinPool
+     *
+     * @param model The model whose imports are analyzed
+     */
+    public StillFaceTimingAnalyzer(StillFaceModel model){
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param model The model whose imports are analyzed
+     * @param pool The pool to split the imports between
+     */
+    public StillFaceTimingAnalyzer(StillFaceModel model, ForkJoinPool pool){
+        this.model = model;
+        this.pool = pool;
+    }
+
+    /**
+     * @param cohort A query on the attributes of StillFaceImport
+     * @return The sketches merged over the matching imports, or null if the model is not initialized or the sketches
+     * could not be read
+     */
+    public StillFaceTimingSketches getSketches(Query<StillFaceImport> cohort){
+        int[] importIDs = this.model.getImportIDs(cohort);
+        if(importIDs == null){
+            logger.warning("Unable to merge timing sketches before the model is initialized");
+            return null;
+        }
+        return getSketches(importIDs);
+    }
+
+    /**
+     * @param importIDs The IDs of the imports. Imports without stored sketches count as imports without timings.
+     * @return The sketches merged over the imports, or null if the sketches could not be read
+     */
+    public StillFaceTimingSketches getSketches(int[] importIDs){
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        Map<Integer, List<Stored>> sketches = load(index);
+        if(sketches == null){
+            return null;
+        }
+        AtomicBoolean skipped = new AtomicBoolean(false);
+        int threshold = Math.max(1, importIDs.length / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        StillFaceTimingSketches merged = this.pool.invoke(new MergingTask(importIDs, 0, importIDs.length, threshold,
+                index, sketches, skipped));
+        if(skipped.get()){
+            logger.warning("Some timing statistics do not match the current protocol. They may need to be rebuilt.");
+        }
+        return merged;
+    }
+
+    /**
+     * Drops the decoded sketches, so that they are read again on the next merge
+     */
+    public synchronized void clear(){
+        this.stored = null;
+    }
+
+    /**
+     * Reads and decodes the stored sketches of every import, unless they were read at the current data version with
+     * the same code index
+     *
+     * @param index The current code index
+     * @return The sketches by import ID, or null if they could not be read
+     */
+    private synchronized Map<Integer, List<Stored>> load(StillFaceCodeIndex index){
+        long version = this.model.getState().getDataVersion();
+        if(this.stored != null && this.dataVersion == version && this.index == index){
+            return this.stored;
+        }
+        if(this.dao == null){
+            this.dao = StillFaceDAO.generateFromConfig();
+        }
+        List<StillFaceTimingStat> stats = this.dao.getTimingStats(0);
+        if(stats == null){
+            return null;
+        }
+        Map<Integer, List<Stored>> sketches = new HashMap<>();
+        int malformed = 0;
+        for(StillFaceTimingStat stat : stats){
+            StillFaceQuantileSketch sketch = stat.decodeSketch();
+            if(sketch == null){
+                malformed++;
+                continue;
+            }
+            sketches.computeIfAbsent(stat.getImportID(), importID -> new ArrayList<>())
+                    .add(new Stored(stat.getSegment(), stat.getCodeID(), stat.getMetric(), sketch));
+        }
+        if(malformed > 0){
+            logger.warning("Skipped " + malformed + " timing statistics that could not be decoded");
+        }
+        this.stored = sketches;
+        this.dataVersion = version;
+        this.index = index;
+        return sketches;
+    }
+
+    /**
+     * A decoded row of the sf_timing_stats table. Merging a sketch into another only reads it, so the tasks can share
+     * the decoded sketches.
+     */
+    private static class Stored {
+
+        private final int segment;
+        private final int codeID;
+        private final StillFaceTimingMetric metric;
+        private final StillFaceQuantileSketch sketch;
+
+        Stored(int segment, int codeID, StillFaceTimingMetric metric, StillFaceQuantileSketch sketch){
+            this.segment = segment;
+            this.codeID = codeID;
+            this.metric = metric;
+            this.sketch = sketch;
+        }
+    }
+
+    /**
+     * Merges the sketches of a range of the imports, splitting it in two while it is above the threshold
+     */
+    private static class MergingTask extends RecursiveTask<StillFaceTimingSketches> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] importIDs;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceCodeIndex index;
+        private final Map<Integer, List<Stored>> stored;
+        private final AtomicBoolean skipped;
+
+        MergingTask(int[] importIDs, int from, int to, int threshold, StillFaceCodeIndex index,
+                    Map<Integer, List<Stored>> stored, AtomicBoolean skipped){
+            this.importIDs = importIDs;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.index = index;
+            this.stored = stored;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected StillFaceTimingSketches compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                MergingTask left = new MergingTask(this.importIDs, this.from, middle, this.threshold, this.index,
+                        this.stored, this.skipped);
+                left.fork();
+                StillFaceTimingSketches sketches = new MergingTask(this.importIDs, middle, this.to, this.threshold,
+                        this.index, this.stored, this.skipped).compute();
+                sketches.merge(left.join());
+                return sketches;
+            }
+            StillFaceTimingSketches sketches = new StillFaceTimingSketches(this.index, this.to - this.from);
+            for(int i = this.from; i < this.to; i++){
+                List<Stored> importSketches = this.stored.get(this.importIDs[i]);
+                if(importSketches == null){
+                    continue;
+                }
+                for(Stored s : importSketches){
+                    int ordinal = this.index.ordinal(s.codeID);
+                    if(ordinal < 0 || s.segment >= this.index.getSegmentCount()){
+                        this.skipped.set(true);
+                        continue;
+                    }
+                    sketches.merge(s.metric, s.segment, ordinal, s.sketch);
+                }
+            }
+            return sketches;
+        }
+    }
+}
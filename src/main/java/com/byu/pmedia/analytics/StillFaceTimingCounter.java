@@ -0,0 +1,166 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceEventSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceTimingCounter
+ * Builds the StillFaceTimingSketches of one import. The intervals between the entries of each code are measured in
+ * one pass over the entries, finding the segment of each entry from the boundaries of the protocol in the same way as
+ * in the StillFaceSegmentCounter. An interval never spans a boundary: the first entry of a code in a segment starts
+ * its intervals afresh. The durations of the states are the episodes of a StillFaceStateCounter with the same code
+ * groups, which are added to the sketches as the counter ends them.
+ * <p>
+ * A counter is not thread safe. Create one per thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTimingCounter {
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceStateCounter stateCounter;
+    private final int compression;
+
+    /* The time of the last entry of each code in the current segment, at segment * index.size() + ordinal, or -1 */
+    private final int[] lastTimes;
+    private StillFaceTimingSketches sketches;
+    /* The segment of the last entry added one at a time, and the state durations of the last import measured */
+    private int segment;
+    private StillFaceStateDurations stateDurations;
+
+    /**
+     * @param index The index of every code the counted entries can have, with the protocol that decides the segments
+     * @param groups The groups of the codes that are states
+     * @param compression The compression of the sketches
+     */
+    public StillFaceTimingCounter(StillFaceCodeIndex index, StillFaceCodeGroups groups, int compression){
+        this.index = index;
+        this.compression = compression;
+        this.lastTimes = new int[index.getSegmentCount() * index.size()];
+        this.stateCounter = new StillFaceStateCounter(index, groups);
+        this.stateCounter.setEpisodeListener((segment, ordinal, length) ->
+                add(StillFaceTimingMetric.STATE_DURATION, segment, ordinal, length));
+    }
+
+    /**
+     * Measures the timings of an import
+     *
+     * @param data The entries of the import, ordered by time
+     * @return The sketches of the timings of the import
+     */
+    public StillFaceTimingSketches count(List<StillFaceData> data){
+        start();
+        int current = 0;
+        for(StillFaceData d : data){
+            int ordinal = this.index.ordinal(d.getCode());
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+            }
+            current = add(current, ordinal, d.getTime());
+        }
+        this.stateDurations = this.stateCounter.count(data);
+        return this.sketches;
+    }
+
+    /**
+     * Measures the timings of an import held by the columnar event store
+     *
+     * @param segment The entries of the import
+     * @return The sketches of the timings of the import
+     */
+    public StillFaceTimingSketches count(StillFaceEventSegment segment){
+        start();
+        int current = 0;
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = this.index.ordinal(segment.getCodeID(position));
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + segment.getCodeID(position) + " is not in the index");
+            }
+            current = add(current, ordinal, segment.getTime(position));
+        }
+        this.stateDurations = this.stateCounter.count(segment);
+        return this.sketches;
+    }
+
+    /**
+     * Starts measuring an import whose entries are then added one at a time with add, for callers that see the
+     * entries one by one, such as the StillFaceImportStatAccumulator
+     */
+    public void start(){
+        Arrays.fill(this.lastTimes, -1);
+        this.sketches = new StillFaceTimingSketches(this.index, 1);
+        this.segment = 0;
+        this.stateDurations = null;
+        this.stateCounter.start();
+    }
+
+    /**
+     * Adds the next entry of the import being measured
+     *
+     * @param d The entry. Must not be earlier than the entries added before it.
+     */
+    public void add(StillFaceData d){
+        int ordinal = this.index.ordinal(d.getCode());
+        if(ordinal < 0){
+            throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+        }
+        this.segment = add(this.segment, ordinal, d.getTime());
+        this.stateCounter.add(d);
+    }
+
+    /**
+     * Ends the states still open in the import being measured
+     *
+     * @return The sketches of the timings of the import
+     */
+    public StillFaceTimingSketches finish(){
+        this.stateDurations = this.stateCounter.finish();
+        return this.sketches;
+    }
+
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The durations of the states of the last import measured, which the state duration sketches were built
+     * from, or null if no import has been measured to the end
+     */
+    public StillFaceStateDurations getStateDurations() { return stateDurations; }
+
+    /**
+     * Measures the interval since the last entry of the code in its segment
+     *
+     * @return The segment of the entry
+     */
+    private int add(int current, int ordinal, int time){
+        current = Math.max(current, this.index.getBoundary(ordinal));
+        int position = current * this.index.size() + ordinal;
+        if(this.lastTimes[position] >= 0){
+            add(StillFaceTimingMetric.INTERVAL, current, ordinal, time - this.lastTimes[position]);
+        }
+        this.lastTimes[position] = time;
+        return current;
+    }
+
+    private void add(StillFaceTimingMetric metric, int segment, int ordinal, int length){
+        StillFaceQuantileSketch sketch = this.sketches.getSketch(metric, segment, ordinal);
+        if(sketch == null){
+            sketch = new StillFaceQuantileSketch(this.compression);
+            this.sketches.setSketch(metric, segment, ordinal, sketch);
+        }
+        sketch.add(length);
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+/**
+ * StillFaceTimingMetric
+ * The timings measured by the StillFaceTimingCounter, whose distributions are kept as StillFaceQuantileSketch objects
+ */
+public enum StillFaceTimingMetric {
+
+    /* The time from one entry of a code to the next entry of the same code in the same segment */
+    INTERVAL,
+    /* How long each episode of a code lasted as a state, as measured by the StillFaceStateCounter */
+    STATE_DURATION;
+
+    /**
+     * Converts the enumerated type machine name to a more user-friendly name
+     * @return A string representing the pretty-printed, user-friendly type name
+     */
+    public String toPrettyString(){
+        switch(this){
+            case INTERVAL: return "Interval";
+            case STATE_DURATION: return "State Duration";
+            default: return "Unknown Metric";
+        }
+    }
+}
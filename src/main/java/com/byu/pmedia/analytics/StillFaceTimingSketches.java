@@ -0,0 +1,152 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceTimingSketches
+ * The distributions of the timings of each code, in each segment of the protocol, of one import or merged over many.
+ * Each distribution is a StillFaceQuantileSketch, so the median or any other percentile of a timing can be read
+ * without the timings themselves. Sketches are kept per metric in an array indexed by segment * index.size() +
+ * ordinal, and codes without a timing in a segment have no sketch.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTimingSketches {
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceQuantileSketch[][] sketches;
+    private int importCount;
+
+    /**
+     * Creates an empty set of sketches
+     *
+     * @param index The index the sketches are kept by
+     * @param importCount The number of imports the sketches are of
+     */
+    public StillFaceTimingSketches(StillFaceCodeIndex index, int importCount){
+        this.index = index;
+        this.sketches = new StillFaceQuantileSketch[StillFaceTimingMetric.values().length]
+                [index.getSegmentCount() * index.size()];
+        this.importCount = importCount;
+    }
+
+    /**
+     * @return The index the sketches are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return index.getSegmentCount(); }
+
+    /**
+     * @return The number of imports merged into the sketches
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * @param metric The timing
+     * @param segment The segment
+     * @param ordinal The ordinal of a code in the index
+     * @return The sketch of the timing of the code in the segment, or null if the code has no such timing
+     */
+    public StillFaceQuantileSketch getSketch(StillFaceTimingMetric metric, int segment, int ordinal){
+        return sketches[metric.ordinal()][segment * index.size() + ordinal];
+    }
+
+    /**
+     * @param metric The timing
+     * @param ordinal The ordinal of a code in the index
+     * @return A new sketch of the timing of the code over the whole video, or null if the code has no such timing
+     */
+    public StillFaceQuantileSketch getSketch(StillFaceTimingMetric metric, int ordinal){
+        StillFaceQuantileSketch merged = null;
+        for(int segment = 0; segment < getSegmentCount(); segment++){
+            StillFaceQuantileSketch sketch = getSketch(metric, segment, ordinal);
+            if(sketch != null){
+                if(merged == null){
+                    merged = new StillFaceQuantileSketch(sketch.getCompression());
+                }
+                merged.add(sketch);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * @param metric The timing
+     * @param segment The segment
+     * @param ordinal The ordinal of a code in the index
+     * @param q The quantile, from 0 to 1
+     * @return The estimated timing at the quantile, in milliseconds, or NaN if the code has no such timing
+     */
+    public double getQuantile(StillFaceTimingMetric metric, int segment, int ordinal, double q){
+        StillFaceQuantileSketch sketch = getSketch(metric, segment, ordinal);
+        return (sketch == null) ? Double.NaN : sketch.getQuantile(q);
+    }
+
+    /**
+     * Sets the sketch of a timing, replacing any sketch it had
+     */
+    void setSketch(StillFaceTimingMetric metric, int segment, int ordinal, StillFaceQuantileSketch sketch){
+        sketches[metric.ordinal()][segment * index.size() + ordinal] = sketch;
+    }
+
+    /**
+     * Merges a sketch into the sketch of a timing. The sketch is copied, so it is not changed by later merges.
+     *
+     * @param metric The timing
+     * @param segment The segment
+     * @param ordinal The ordinal of a code in the index
+     * @param sketch The sketch to merge, such as one read from the sf_timing_stats table
+     */
+    public void merge(StillFaceTimingMetric metric, int segment, int ordinal, StillFaceQuantileSketch sketch){
+        int position = segment * index.size() + ordinal;
+        StillFaceQuantileSketch[] metricSketches = sketches[metric.ordinal()];
+        if(metricSketches[position] == null){
+            metricSketches[position] = new StillFaceQuantileSketch(sketch.getCompression());
+        }
+        metricSketches[position].add(sketch);
+    }
+
+    /**
+     * Merges the sketches of other imports into these. The other sketches are not changed.
+     *
+     * @param other The sketches of other imports, kept by the same index
+     */
+    public void merge(StillFaceTimingSketches other){
+        if(other.index != this.index){
+            throw new IllegalArgumentException("Only sketches kept by the same index can be merged");
+        }
+        this.importCount += other.importCount;
+        for(int metric = 0; metric < this.sketches.length; metric++){
+            for(int position = 0; position < this.sketches[metric].length; position++){
+                StillFaceQuantileSketch sketch = other.sketches[metric][position];
+                if(sketch == null){
+                    continue;
+                }
+                if(this.sketches[metric][position] == null){
+                    this.sketches[metric][position] = new StillFaceQuantileSketch(sketch.getCompression());
+                }
+                this.sketches[metric][position].add(sketch);
+            }
+        }
+    }
+}
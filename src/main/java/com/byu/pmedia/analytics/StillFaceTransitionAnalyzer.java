@@ -0,0 +1,198 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.*;
+import com.googlecode.cqengine.query.Query;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceTransitionAnalyzer
+ * Builds the StillFaceTransitionMatrix of single imports, or pooled over a cohort. The imports are split between the
+ * threads of a ForkJoinPool, in the same way as in the StillFaceCohortAggregator: each task counts its imports into
+ * its own StillFaceTransitionCounter, and the counters are added together as the tasks join. The events of the
+ * columnar event store are counted in place.
+ * <p>
+ * Only saved entries are counted: unsaved edits are left out.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTransitionAnalyzer {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger = Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Each thread of the pool gets about this many tasks, so that threads that finish early can steal work */
+    private static final int TASKS_PER_THREAD = 8;
+
+    private final StillFaceModel model;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an analyzer that runs on the common ForkJoinPool
+     *
+     * @param model The model holding the entries
+     */
+    public StillFaceTransitionAnalyzer(StillFaceModel model){
+        this(model, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param model The model holding the entries
+     * @param pool The pool to split the imports between
+     */
+    public StillFaceTransitionAnalyzer(StillFaceModel model, ForkJoinPool pool){
+        this.model = model;
+        this.pool = pool;
+    }
+
+    /**
+     * @param importID The ID of the import
+     * @param policy How entries coded at the same time are handled
+     * @return The transitions of the import, or null if the codes changed while they were counted
+     */
+    public StillFaceTransitionMatrix getMatrix(int importID, StillFaceTiePolicy policy){
+        return getMatrix(new int[]{importID}, policy);
+    }
+
+    /**
+     * @param cohort A query on the attributes of StillFaceImport
+     * @param policy How entries coded at the same time are handled
+     * @return The transitions pooled over the matching imports, or null if the model is not initialized or the codes
+     * changed while they were counted
+     */
+    public StillFaceTransitionMatrix getMatrix(Query<StillFaceImport> cohort, StillFaceTiePolicy policy){
+        int[] importIDs = this.model.getImportIDs(cohort);
+        if(importIDs == null){
+            logger.warning("Unable to count transitions before the model is initialized");
+            return null;
+        }
+        return getMatrix(importIDs, policy);
+    }
+
+    /**
+     * @param importIDs The IDs of the imports
+     * @param policy How entries coded at the same time are handled
+     * @return The transitions pooled over the imports, or null if the codes changed while they were counted
+     */
+    public StillFaceTransitionMatrix getMatrix(int[] importIDs, StillFaceTiePolicy policy){
+        StillFaceTransitionCounter counter = count(importIDs, policy, null);
+        return (counter == null) ? null : counter.toMatrix();
+    }
+
+    /**
+     * Counts the transitions of each import on its own
+     *
+     * @param importIDs The IDs of the imports
+     * @param policy How entries coded at the same time are handled
+     * @return The transitions of each import, in the order of the IDs, or null if the codes changed while they were
+     * counted
+     */
+    public StillFaceTransitionMatrix[] getMatrices(int[] importIDs, StillFaceTiePolicy policy){
+        StillFaceTransitionMatrix[] matrices = new StillFaceTransitionMatrix[importIDs.length];
+        return (count(importIDs, policy, matrices) == null) ? null : matrices;
+    }
+
+    /**
+     * Splits the imports between the tasks of the pool and adds up their counters
+     *
+     * @param matrices Receives the matrix of each import, or null if only the pooled counts are needed
+     */
+    private StillFaceTransitionCounter count(int[] importIDs, StillFaceTiePolicy policy,
+                                             StillFaceTransitionMatrix[] matrices){
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex();
+        int threshold = Math.max(1, importIDs.length / (this.pool.getParallelism() * TASKS_PER_THREAD));
+        try{
+            return this.pool.invoke(new CountingTask(importIDs, 0, importIDs.length, threshold, index, policy,
+                    matrices));
+        }
+        catch(IllegalArgumentException e){
+            logger.warning("Unable to count transitions while the codes are changing: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Counts the saved entries of an import
+     */
+    private void add(int importID, StillFaceTransitionCounter counter){
+        StillFaceEventStore store = this.model.getEventStore();
+        if(store != null){
+            StillFaceEventSegment segment = store.getSegment(importID);
+            if(segment != null){
+                counter.add(segment);
+                return;
+            }
+        }
+        counter.add(this.model.getDataForImport(importID));
+    }
+
+    /**
+     * Counts a range of the imports, splitting it in two while it is above the threshold
+     */
+    private class CountingTask extends RecursiveTask<StillFaceTransitionCounter> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] importIDs;
+        private final int from;
+        private final int to;
+        private final int threshold;
+        private final StillFaceCodeIndex index;
+        private final StillFaceTiePolicy policy;
+        private final StillFaceTransitionMatrix[] matrices;
+
+        CountingTask(int[] importIDs, int from, int to, int threshold, StillFaceCodeIndex index,
+                     StillFaceTiePolicy policy, StillFaceTransitionMatrix[] matrices){
+            this.importIDs = importIDs;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+            this.index = index;
+            this.policy = policy;
+            this.matrices = matrices;
+        }
+
+        @Override
+        protected StillFaceTransitionCounter compute(){
+            if(this.to - this.from > this.threshold){
+                int middle = (this.from + this.to) >>> 1;
+                CountingTask left = new CountingTask(this.importIDs, this.from, middle, this.threshold, this.index,
+                        this.policy, this.matrices);
+                left.fork();
+                StillFaceTransitionCounter counter = new CountingTask(this.importIDs, middle, this.to,
+                        this.threshold, this.index, this.policy, this.matrices).compute();
+                counter.add(left.join());
+                return counter;
+            }
+            StillFaceTransitionCounter counter = new StillFaceTransitionCounter(this.index, this.policy);
+            StillFaceTransitionCounter single = (this.matrices == null) ? null
+                    : new StillFaceTransitionCounter(this.index, this.policy);
+            for(int i = this.from; i < this.to; i++){
+                if(single == null){
+                    add(this.importIDs[i], counter);
+                }
+                else{
+                    // Each task writes its own positions of the array, which the join makes visible to the caller
+                    single.clear();
+                    add(this.importIDs[i], single);
+                    this.matrices[i] = single.toMatrix();
+                    counter.add(single);
+                }
+            }
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceEventSegment;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * StillFaceTransitionCounter
+ * Counts first-order transitions between codes, from each entry to the one that follows it, in one pass over the
+ * entries of an import. The counts are kept in a dense int matrix per segment of the protocol, indexed by
+ * (segment * n + from) * n + to where n is the size of the code index. A transition is counted in the segment of the
+ * entry it leads to, so the transition into a boundary code belongs to the segment the boundary starts. Entries
+ * coded at the same time are handled by a StillFaceTiePolicy.
+ * <p>
+ * Counts accumulate over every import added until the counter is cleared, and transitions are never counted from one
+ * import to the next. A counter is not thread safe. Create one per thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTransitionCounter {
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceTiePolicy policy;
+    private final int[] counts;
+    private int importCount = 0;
+
+    /* The state of the import being added: its current segment, and the time and ordinals of the entries of the
+     * current time and of the time before it (only one of each unless the policy is ALL_PAIRS) */
+    private int segment;
+    private int time;
+    private int[] previous = new int[4];
+    private int previousSize;
+    private int[] current = new int[4];
+    private int currentSize;
+
+    /**
+     * @param index The index of every code the counted entries can have, with the protocol that decides the segments
+     * @param policy How entries coded at the same time are handled
+     */
+    public StillFaceTransitionCounter(StillFaceCodeIndex index, StillFaceTiePolicy policy){
+        this.index = index;
+        this.policy = policy;
+        this.counts = new int[index.getSegmentCount() * index.size() * index.size()];
+    }
+
+    /**
+     * Adds the transitions of an import
+     *
+     * @param data The entries of the import, ordered by time
+     */
+    public void add(List<StillFaceData> data){
+        start();
+        for(StillFaceData d : data){
+            int ordinal = this.index.ordinal(d.getCode());
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + d.getCode().getName() + " is not in the index");
+            }
+            add(d.getTime(), ordinal);
+        }
+    }
+
+    /**
+     * Adds the transitions of an import held by the columnar event store
+     *
+     * @param segment The entries of the import
+     */
+    public void add(StillFaceEventSegment segment){
+        start();
+        for(int position = 0; position < segment.size(); position++){
+            int ordinal = this.index.ordinal(segment.getCodeID(position));
+            if(ordinal < 0){
+                throw new IllegalArgumentException("Code " + segment.getCodeID(position) + " is not in the index");
+            }
+            add(segment.getTime(position), ordinal);
+        }
+    }
+
+    /**
+     * Adds the counts of another counter with the same index
+     *
+     * @param other The counter to add
+     */
+    public void add(StillFaceTransitionCounter other){
+        if(other.index != this.index){
+            throw new IllegalArgumentException("The counters have different code indexes");
+        }
+        for(int i = 0; i < this.counts.length; i++){
+            this.counts[i] += other.counts[i];
+        }
+        this.importCount += other.importCount;
+    }
+
+    /**
+     * Removes every count
+     */
+    public void clear(){
+        Arrays.fill(this.counts, 0);
+        this.importCount = 0;
+    }
+
+    /**
+     * @return A copy of the counts of every import added since the counter was cleared
+     */
+    public StillFaceTransitionMatrix toMatrix(){
+        return new StillFaceTransitionMatrix(this.index, this.policy, this.importCount, this.counts.clone());
+    }
+
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    public StillFaceTiePolicy getPolicy() { return policy; }
+
+    private void start(){
+        this.importCount++;
+        this.segment = 0;
+        this.previousSize = 0;
+        this.currentSize = 0;
+    }
+
+    /**
+     * Counts the transitions into one entry
+     */
+    private void add(int time, int ordinal){
+        this.segment = Math.max(this.segment, this.index.getBoundary(ordinal));
+        int codes = this.index.size();
+        int offset = this.segment * codes * codes + ordinal;
+        if(this.currentSize == 0 || time != this.time){
+            // The entry starts a new time, so the entries of the last time become the ones transitions come from
+            int[] swap = this.previous;
+            this.previous = this.current;
+            this.current = swap;
+            this.previousSize = this.currentSize;
+            this.currentSize = 0;
+            this.time = time;
+            if(this.policy == StillFaceTiePolicy.ALL_PAIRS){
+                for(int i = 0; i < this.previousSize; i++){
+                    this.counts[offset + this.previous[i] * codes]++;
+                }
+            }
+            else if(this.previousSize > 0){
+                this.counts[offset + this.previous[this.previousSize - 1] * codes]++;
+            }
+        }
+        else if(this.policy == StillFaceTiePolicy.ALL_PAIRS){
+            // Tied with the entries before it, so it follows the same entries they do
+            for(int i = 0; i < this.previousSize; i++){
+                this.counts[offset + this.previous[i] * codes]++;
+            }
+        }
+        else if(this.policy == StillFaceTiePolicy.SEQUENTIAL){
+            this.counts[offset + this.current[this.currentSize - 1] * codes]++;
+        }
+        if(this.policy == StillFaceTiePolicy.ALL_PAIRS){
+            if(this.currentSize == this.current.length){
+                this.current = Arrays.copyOf(this.current, this.currentSize * 2);
+            }
+            this.current[this.currentSize++] = ordinal;
+        }
+        else{
+            // Only the last entry of a time is ever followed
+            this.current[0] = ordinal;
+            this.currentSize = 1;
+        }
+    }
+}
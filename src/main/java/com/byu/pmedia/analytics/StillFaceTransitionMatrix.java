@@ -0,0 +1,108 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.analytics;
+
+import com.byu.pmedia.model.StillFaceProtocol;
+
+/**
+ * StillFaceTransitionMatrix
+ * The first-order transition counts between codes of one import or of many, in each segment of the protocol, as
+ * counted by a StillFaceTransitionCounter. Rows are the codes transitions come from and columns the codes they lead
+ * to, both by their ordinals in the code index. The probability of a transition is its count divided by the number of
+ * transitions out of the same code in the same segment.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTransitionMatrix {
+
+    /* Pass as the segment to get the figures of the whole video */
+    public static final int WHOLE_VIDEO = -1;
+
+    private final StillFaceCodeIndex index;
+    private final StillFaceTiePolicy policy;
+    private final int importCount;
+    private final int[] counts;
+
+    StillFaceTransitionMatrix(StillFaceCodeIndex index, StillFaceTiePolicy policy, int importCount, int[] counts){
+        this.index = index;
+        this.policy = policy;
+        this.importCount = importCount;
+        this.counts = counts;
+    }
+
+    /**
+     * @return The index the rows and columns are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol that decided the segments
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments of the protocol
+     */
+    public int getSegmentCount() { return index.getSegmentCount(); }
+
+    /**
+     * @return How entries coded at the same time were handled
+     */
+    public StillFaceTiePolicy getPolicy() { return policy; }
+
+    /**
+     * @return The number of imports counted
+     */
+    public int getImportCount() { return importCount; }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param from The ordinal of the code the transitions come from
+     * @param to The ordinal of the code the transitions lead to
+     * @return The number of transitions from one code to the other
+     */
+    public int getCount(int segment, int from, int to){
+        if(segment == WHOLE_VIDEO){
+            int count = 0;
+            for(int s = 0; s < getSegmentCount(); s++){
+                count += getCount(s, from, to);
+            }
+            return count;
+        }
+        int codes = index.size();
+        return counts[(segment * codes + from) * codes + to];
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param from The ordinal of a code
+     * @return The number of transitions out of the code
+     */
+    public int getTotal(int segment, int from){
+        int total = 0;
+        for(int to = 0; to < index.size(); to++){
+            total += getCount(segment, from, to);
+        }
+        return total;
+    }
+
+    /**
+     * @param segment The segment, or WHOLE_VIDEO
+     * @param from The ordinal of the code the transitions come from
+     * @param to The ordinal of the code the transitions lead to
+     * @return The share of the transitions out of the first code that lead to the second, or 0 if there are none
+     */
+    public double getProbability(int segment, int from, int to){
+        int total = getTotal(segment, from);
+        return (total == 0) ? 0 : (double)getCount(segment, from, to) / total;
+    }
+}
@@ -13,12 +13,14 @@ package com.byu.pmedia.client;
 
 import com.byu.pmedia.log.PMLoggerInitializer;
 import com.byu.pmedia.model.StillFaceModel;
+import com.byu.pmedia.model.StillFaceModelEventBus;
 import com.byu.pmedia.tasks.StillFaceSaveTask;
 import com.byu.pmedia.tasks.StillFaceSyncTask;
 import com.byu.pmedia.tasks.StillFaceTaskCallback;
 import com.byu.pmedia.view.DataCenterSplashScreen;
 import com.byu.pmedia.view.StillFaceErrorNotification;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.event.EventHandler;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -56,6 +58,9 @@ public class DataCenterClientFX extends Application {
         // Initialize the logger
         PMLoggerInitializer.setup();
 
+        // Deliver changes made to the model to the views on the JavaFX application thread, a frame at a time
+        StillFaceModelEventBus.getInstance().setExecutor(Platform::runLater);
+
         // Show splash screen while initializing
         DataCenterSplashScreen splashScreen = new DataCenterSplashScreen();
 
@@ -73,7 +78,7 @@ public class DataCenterClientFX extends Application {
                     new StillFaceSyncTask(new StillFaceTaskCallback() {
                         @Override
                         public void onSuccess() {
-                            StillFaceModel.getInstance().notifyObservers();
+
                         }
 
                         @Override
@@ -93,7 +98,7 @@ public class DataCenterClientFX extends Application {
                     new StillFaceSaveTask(new StillFaceTaskCallback() {
                         @Override
                         public void onSuccess() {
-                            StillFaceModel.getInstance().notifyObservers();
+
                         }
 
                         @Override
@@ -109,6 +114,20 @@ public class DataCenterClientFX extends Application {
 
         // Display the main GUI
         stage.show();
+
+        // Keep the model up to date with changes made by other clients, if configured to
+        StillFaceModel.getInstance().startAutoRefresh();
+    }
+
+    /**
+     * Overrides the default implementation of a JavaFX Application's stop method. Stops the automatic refresh of the
+     * model and writes the local snapshot of the cached data if it has changed, so that the next launch does not have
+     * to load the whole data table.
+     */
+    @Override
+    public void stop() {
+        StillFaceModel.getInstance().stopAutoRefresh();
+        StillFaceModel.getInstance().saveSnapshot();
     }
 
     /**
@@ -11,13 +11,19 @@
  */
 package com.byu.pmedia.controller;
 
+import com.byu.pmedia.analytics.StillFaceAgreementAnalyzer;
+import com.byu.pmedia.analytics.StillFaceLagSequentialAnalyzer;
+import com.byu.pmedia.analytics.StillFaceRateAnalyzer;
+import com.byu.pmedia.analytics.StillFaceRateSeries;
+import com.byu.pmedia.analytics.StillFaceTiePolicy;
+import com.byu.pmedia.analytics.StillFaceTimingAnalyzer;
+import com.byu.pmedia.analytics.StillFaceTransitionAnalyzer;
 import com.byu.pmedia.model.*;
 import com.byu.pmedia.tasks.*;
 import com.byu.pmedia.util.NumericTextFieldTableCell;
 import com.byu.pmedia.view.ConfirmAction;
 import com.byu.pmedia.view.StillFaceConfirmNotification;
 import com.byu.pmedia.view.StillFaceErrorNotification;
-import com.googlecode.cqengine.query.Query;
 import javafx.application.Platform;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
@@ -34,6 +40,8 @@ import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.chart.LineChart;
+import javafx.scene.chart.XYChart;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.ChoiceBoxTableCell;
 import javafx.scene.control.cell.PropertyValueFactory;
@@ -41,9 +49,13 @@ import javafx.scene.control.cell.TextFieldTableCell;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.ColumnConstraints;
 import javafx.scene.layout.GridPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
 import javafx.scene.layout.TilePane;
+import javafx.scene.layout.VBox;
 import javafx.scene.text.Text;
 import javafx.stage.DirectoryChooser;
+import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import javafx.util.converter.IntegerStringConverter;
 
@@ -53,19 +65,19 @@ import java.net.URL;
 import java.text.NumberFormat;
 import java.text.ParsePosition;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 
-import static com.googlecode.cqengine.query.QueryFactory.*;
-
 /**
  * DataCenterController
  * Provides initialization for JavaFX elements as part of the main DataCenter GUI, as well as the program's responses
- * to user interaction with the GUI.
+ * to user interaction with the GUI. The controller listens for changes to the StillFaceModel and updates only the
+ * parts of the window that depend on what changed.
  *
  * @author Braden Hitchcock
  */
-public class DataCenterController implements Initializable, Observer {
+public class DataCenterController implements Initializable, StillFaceModelListener {
 
     /* Grab an instance of the logger */
     private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
@@ -101,15 +113,27 @@ public class DataCenterController implements Initializable, Observer {
     @FXML private Label labelDataTitle;
     @FXML private TilePane tilePaneSummary;
     @FXML private TableView tableData;
-    @FXML private TableView tableViewBeforeDelimiter1;
-    @FXML private TableView tableViewAfterDelimiter1;
-    @FXML private TableView tableViewAfterDelimiter2;
+    @FXML private HBox hBoxSegments;
     @FXML private Button buttonDeleteImport;
-    @FXML private Label labelBeforeDelimiter1;
-    @FXML private Label labelAfterDelimiter1;
-    @FXML private Label labelAfterDelimiter2;
     @FXML private Label labelAlias;
-
+    @FXML private TextField textFieldBinWidth;
+    @FXML private ChoiceBox<String> choiceBoxPlotSegment;
+    @FXML private Button buttonPlot;
+    @FXML private Button buttonExportRates;
+    @FXML private Button buttonExportTransitions;
+    @FXML private Button buttonExportAgreement;
+    @FXML private Button buttonExportTimings;
+    @FXML private TextField textFieldLag;
+    @FXML private TextField textFieldPermutations;
+    @FXML private Button buttonLagSequential;
+    @FXML private ProgressBar progressBarAnalysis;
+    @FXML private Button buttonCancelAnalysis;
+    @FXML private LineChart<Number, Number> lineChartRates;
+
+
+    // The summary tables and their labels, one for each segment of the protocol
+    private final List<TableView<StillFaceCodeCount>> segmentTables = new ArrayList<>();
+    private final List<Label> segmentLabels = new ArrayList<>();
 
     // Initialize the table columns here, so that they can be accessed throughout the class
     private TableColumn tableColumnID = new TableColumn("ID");
@@ -118,6 +142,34 @@ public class DataCenterController implements Initializable, Observer {
     private TableColumn tableColumnCode = new TableColumn("Code");
     private TableColumn tableColumnComment = new TableColumn("Comment");
 
+    /* Results of recent searches on the query tab, so repeating a search does not run it again */
+    private static final int SEARCH_CACHE_SIZE = 16;
+    private final StillFaceSearchCache searchCache = new StillFaceSearchCache(StillFaceModel.getInstance(),
+            SEARCH_CACHE_SIZE);
+
+    /* Rate series of single imports, kept by bin width, so plotting an import again does not bin it again */
+    private static final int RATE_CACHE_SIZE = 1024;
+
+    /* The widest bin the rate series can be built with, in seconds */
+    private static final int MAX_BIN_WIDTH = 3600;
+
+    /* The largest lag, in entries, and the most shuffles the lag sequential analysis can be run with */
+    private static final int MAX_LAG = 1000;
+    private static final int MAX_PERMUTATIONS = 100000;
+    private final StillFaceRateAnalyzer rateAnalyzer = new StillFaceRateAnalyzer(StillFaceModel.getInstance(),
+            RATE_CACHE_SIZE);
+    private final StillFaceTransitionAnalyzer transitionAnalyzer =
+            new StillFaceTransitionAnalyzer(StillFaceModel.getInstance());
+    private final StillFaceAgreementAnalyzer agreementAnalyzer =
+            new StillFaceAgreementAnalyzer(StillFaceModel.getInstance());
+    private final StillFaceLagSequentialAnalyzer lagSequentialAnalyzer =
+            new StillFaceLagSequentialAnalyzer(StillFaceModel.getInstance());
+    private final StillFaceTimingAnalyzer timingAnalyzer = new StillFaceTimingAnalyzer(StillFaceModel.getInstance());
+    /* The lag sequential analysis that is running, or null if none is */
+    private StillFaceLagSequentialTask lagSequentialTask = null;
+    /* The series shown on the plot tab, so that another segment of it can be shown without building it again */
+    private StillFaceRateSeries plottedRates = null;
+
     /**
      * Initializes the controller and sets properties for the view elements when the FXMLLoader.load() method
      * is called. This method implements the Initializable interface method.
@@ -135,6 +187,8 @@ public class DataCenterController implements Initializable, Observer {
 
         initializeSearchTab();
 
+        initializePlotTab();
+
         // Setup miscellaneous FXML element properties
         tilePaneSummary.setHgap(10);
         tilePaneSummary.setVgap(10);
@@ -144,6 +198,12 @@ public class DataCenterController implements Initializable, Observer {
         buttonSaveChanges.setDisable(true);
         buttonExportToCSV.setDisable(true);
         buttonDeleteImport.setDisable(true);
+        buttonPlot.setDisable(true);
+        buttonExportRates.setDisable(true);
+        buttonExportTransitions.setDisable(true);
+        buttonExportTimings.setDisable(true);
+        buttonLagSequential.setDisable(true);
+        buttonCancelAnalysis.setDisable(true);
 
         // Setup import list view listener
         listViewExplorer.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<StillFaceImport>() {
@@ -160,8 +220,8 @@ public class DataCenterController implements Initializable, Observer {
         // Start with a list of available imports
         updateImports();
 
-        // Everything is set up, now register with the observer
-        StillFaceModel.getInstance().addObserver(this);
+        // Everything is set up, now listen for changes to the model
+        StillFaceModelEventBus.getInstance().addListener(this);
 
     }
 
@@ -200,9 +260,10 @@ public class DataCenterController implements Initializable, Observer {
         tableColumnTime.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceData, Integer>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceData, Integer> cellEditEvent) {
-                StillFaceData data = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                data.setTime(cellEditEvent.getNewValue());
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceData data = cellEditEvent.getTableView().getItems().get(row)
+                        .withTime(cellEditEvent.getNewValue());
+                cellEditEvent.getTableView().getItems().set(row, data);
                 StillFaceModel.getInstance().addEditedData(data);
                 buttonSaveChanges.setDisable(false);
             }
@@ -220,9 +281,10 @@ public class DataCenterController implements Initializable, Observer {
         tableColumnDuration.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceData, Integer>>(){
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceData, Integer> cellEditEvent){
-                StillFaceData data = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                data.setDuration(cellEditEvent.getNewValue());
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceData data = cellEditEvent.getTableView().getItems().get(row)
+                        .withDuration(cellEditEvent.getNewValue());
+                cellEditEvent.getTableView().getItems().set(row, data);
                 StillFaceModel.getInstance().addEditedData(data);
                 buttonSaveChanges.setDisable(false);
             }
@@ -235,9 +297,10 @@ public class DataCenterController implements Initializable, Observer {
         tableColumnCode.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceData, StillFaceCode>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceData, StillFaceCode> cellEditEvent) {
-                StillFaceData data = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                data.setCode(cellEditEvent.getNewValue());
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceData data = cellEditEvent.getTableView().getItems().get(row)
+                        .withCode(cellEditEvent.getNewValue());
+                cellEditEvent.getTableView().getItems().set(row, data);
                 StillFaceModel.getInstance().addEditedData(data);
                 buttonSaveChanges.setDisable(false);
             }
@@ -249,9 +312,10 @@ public class DataCenterController implements Initializable, Observer {
         tableColumnComment.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceData, String>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceData, String> cellEditEvent) {
-                StillFaceData data = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                data.setComment(cellEditEvent.getNewValue());
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceData data = cellEditEvent.getTableView().getItems().get(row)
+                        .withComment(cellEditEvent.getNewValue());
+                cellEditEvent.getTableView().getItems().set(row, data);
                 StillFaceModel.getInstance().addEditedData(data);
                 buttonSaveChanges.setDisable(false);
             }
@@ -263,42 +327,11 @@ public class DataCenterController implements Initializable, Observer {
     }
 
     /**
-     * This sets up the columns and properties of the three tables that will show summative code count data for
-     * the video data currently visible to the user
+     * This sets up the tables that will show summative code count data for the video data currently visible to the
+     * user, one for each segment of the protocol
      */
     private void initializeSummaryTables(){
-        // Setup the immutable table columns
-        TableColumn tableColStillFaceCodeName = new TableColumn("Code");
-        tableColStillFaceCodeName.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, String>("name"));
-        tableColStillFaceCodeName.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.90));
-
-        TableColumn tableColStillFaceCount = new TableColumn("Count");
-        tableColStillFaceCount.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, Integer>("count"));
-        tableColStillFaceCount.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.10));
-
-        TableColumn tableColStillFaceCodeName2 = new TableColumn("Code");
-        tableColStillFaceCodeName2.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, String>("name"));
-        tableColStillFaceCodeName2.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.90));
-
-        TableColumn tableColStillFaceCount2 = new TableColumn("Count");
-        tableColStillFaceCount2.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, Integer>("count"));
-        tableColStillFaceCount2.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.10));
-
-        TableColumn tableColStillFaceCodeName3 = new TableColumn("Code");
-        tableColStillFaceCodeName3.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, String>("name"));
-        tableColStillFaceCodeName3.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.90));
-
-        TableColumn tableColStillFaceCount3 = new TableColumn("Count");
-        tableColStillFaceCount3.setCellValueFactory(new PropertyValueFactory<StillFaceCodeCount, Integer>("count"));
-        tableColStillFaceCount3.prefWidthProperty().bind(tableViewBeforeDelimiter1.widthProperty().multiply(0.10));
-
-        tableViewBeforeDelimiter1.getColumns().setAll(tableColStillFaceCodeName, tableColStillFaceCount);
-        tableViewAfterDelimiter1.getColumns().setAll(tableColStillFaceCodeName2, tableColStillFaceCount2);
-        tableViewAfterDelimiter2.getColumns().setAll(tableColStillFaceCodeName3, tableColStillFaceCount3);
-        tableViewBeforeDelimiter1.setEditable(false);
-        tableViewAfterDelimiter1.setEditable(false);
-        tableViewAfterDelimiter2.setEditable(false);
-        updateSummaryTableLabels();
+        updateSummaryTables(StillFaceModel.getProtocol());
     }
 
     /**
@@ -338,6 +371,36 @@ public class DataCenterController implements Initializable, Observer {
         choiceBoxTag.setItems(FXCollections.observableList(StillFaceModel.getTagList()));
     }
 
+    /**
+     * Defines properties for FXML elements on the plot tab, which shows how often each code occurs over time in the
+     * visible import, or in the imports of the search results.
+     */
+    private void initializePlotTab(){
+        textFieldBinWidth.textProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observable, String oldValue,
+                                String newValue) {
+                if (!newValue.matches("\\d*")) {
+                    textFieldBinWidth.setText(newValue.replaceAll("[^\\d]", ""));
+                }
+            }
+        });
+        for(TextField field : Arrays.asList(textFieldLag, textFieldPermutations)){
+            field.textProperty().addListener((observable, oldValue, newValue) -> {
+                if (!newValue.matches("\\d*")) {
+                    field.setText(newValue.replaceAll("[^\\d]", ""));
+                }
+            });
+        }
+        updatePlotSegments(StillFaceModel.getProtocol());
+        choiceBoxPlotSegment.getSelectionModel().selectedIndexProperty().addListener(
+                (observable, oldValue, newValue) -> {
+                    if(plottedRates != null){
+                        plotRates(plottedRates);
+                    }
+                });
+    }
+
     /**
      * Listener triggered when the 'Import' button detects an action from the user. This method will open a new window
      * that allows the user to select a data file to import and define metadata associated with the import.
@@ -417,7 +480,7 @@ public class DataCenterController implements Initializable, Observer {
         new StillFaceSyncTask(new StillFaceTaskCallback() {
             @Override
             public void onSuccess() {
-                StillFaceModel.getInstance().notifyObservers();
+
             }
 
             @Override
@@ -439,7 +502,7 @@ public class DataCenterController implements Initializable, Observer {
         new StillFaceSaveTask(new StillFaceTaskCallback() {
             @Override
             public void onSuccess() {
-                StillFaceModel.getInstance().notifyObservers();
+
             }
 
             @Override
@@ -474,6 +537,183 @@ public class DataCenterController implements Initializable, Observer {
         });
     }
 
+    /**
+     * Listener triggered when the 'Plot' button detects an action from the user. Builds the rate series of the visible
+     * data on a separate thread and plots it.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onPlot(ActionEvent actionEvent) {
+        buildRateSeries(null);
+    }
+
+    /**
+     * Listener triggered when the 'Export Rates' button detects an action from the user. Asks for a file and writes
+     * the rate series of the visible data to it, one row per bin, so that it can be loaded as a matrix.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onExportRates(ActionEvent actionEvent) {
+        File file = showSaveCSVDialog("Export Rates");
+        if(file != null){
+            buildRateSeries(file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Listener triggered when the 'Export Transitions' button detects an action from the user. Asks for a file and
+     * writes the code-to-code transitions of each visible import to it, with ties handled as set by the
+     * analytics.transitions.ties configuration option.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onExportTransitions(ActionEvent actionEvent) {
+        int[] importIDs = getVisibleImportIDs();
+        File file = (importIDs.length == 0) ? null : showSaveCSVDialog("Export Transitions");
+        if(file != null){
+            new StillFaceTransitionExportTask(transitionAnalyzer, importIDs, StillFaceTiePolicy.getConfiguredPolicy(),
+                    file.getAbsolutePath(), new StillFaceTaskCallback() {
+                @Override
+                public void onSuccess() {
+
+                }
+
+                @Override
+                public void onFail(Throwable exception) {
+                    new StillFaceErrorNotification("An error has occured: " + exception.getMessage()).show();
+                }
+            }).execute();
+        }
+    }
+
+    /**
+     * Listener triggered when the 'Export Agreement' button detects an action from the user. Asks for a file and
+     * writes the inter-rater agreement of every participant coded under more than one tag, whatever data is visible.
+     * Entries are matched within the analytics.agreement.tolerance configuration option.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onExportAgreement(ActionEvent actionEvent) {
+        File file = showSaveCSVDialog("Export Agreement");
+        if(file != null){
+            new StillFaceAgreementExportTask(agreementAnalyzer, StillFaceAgreementAnalyzer.getConfiguredTolerance(),
+                    file.getAbsolutePath(), new StillFaceTaskCallback() {
+                @Override
+                public void onSuccess() {
+
+                }
+
+                @Override
+                public void onFail(Throwable exception) {
+                    new StillFaceErrorNotification("An error has occured: " + exception.getMessage()).show();
+                }
+            }).execute();
+        }
+    }
+
+    /**
+     * Listener triggered when the 'Export Timings' button detects an action from the user. Asks for a file and writes
+     * the percentiles of the intervals between entries and of the state durations of each code, over the visible
+     * imports, from their stored timing sketches.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onExportTimings(ActionEvent actionEvent) {
+        int[] importIDs = getVisibleImportIDs();
+        File file = (importIDs.length == 0) ? null : showSaveCSVDialog("Export Timings");
+        if(file != null){
+            new StillFaceTimingExportTask(timingAnalyzer, importIDs, file.getAbsolutePath(),
+                    new StillFaceTaskCallback() {
+                @Override
+                public void onSuccess() {
+
+                }
+
+                @Override
+                public void onFail(Throwable exception) {
+                    new StillFaceErrorNotification("An error has occured: " + exception.getMessage()).show();
+                }
+            }).execute();
+        }
+    }
+
+    /**
+     * Listener triggered when the 'Export Lag Sequential' button detects an action from the user. Asks for a file and
+     * runs a lag sequential analysis of the visible imports in the segment selected on the plot tab, shuffling the
+     * codes of each import as many times as entered to find the significance. The progress of the shuffles is shown
+     * until the statistics are written or the analysis is cancelled.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onLagSequential(ActionEvent actionEvent) {
+        int lag = parseBounded(textFieldLag, 1, MAX_LAG);
+        if(lag < 0){
+            new StillFaceErrorNotification("Enter a lag from 1 to " + MAX_LAG + " entries").show();
+            return;
+        }
+        int permutations = textFieldPermutations.getText().isEmpty() ? 0
+                : parseBounded(textFieldPermutations, 0, MAX_PERMUTATIONS);
+        if(permutations < 0){
+            new StillFaceErrorNotification("Enter at most " + MAX_PERMUTATIONS + " permutations").show();
+            return;
+        }
+        int segment = Math.max(0, choiceBoxPlotSegment.getSelectionModel().getSelectedIndex());
+        int[] importIDs = getVisibleImportIDs();
+        File file = (importIDs.length == 0) ? null : showSaveCSVDialog("Export Lag Sequential");
+        if(file == null){
+            return;
+        }
+        lagSequentialTask = new StillFaceLagSequentialTask(lagSequentialAnalyzer, importIDs, segment, lag,
+                permutations, new Random().nextLong(), file.getAbsolutePath(), new StillFaceTaskCallback() {
+            @Override
+            public void onSuccess() {
+                finishLagSequential();
+            }
+
+            @Override
+            public void onFail(Throwable exception) {
+                finishLagSequential();
+                if(!(exception instanceof CancellationException)){
+                    new StillFaceErrorNotification("An error has occured: " + exception.getMessage()).show();
+                }
+            }
+        });
+        progressBarAnalysis.progressProperty().bind(lagSequentialTask.progressProperty());
+        buttonLagSequential.setDisable(true);
+        buttonCancelAnalysis.setDisable(false);
+        lagSequentialTask.execute();
+    }
+
+    /**
+     * Listener triggered when the 'Cancel' button of the plot tab detects an action from the user. Stops the running
+     * lag sequential analysis without writing its statistics.
+     *
+     * @param actionEvent The event detected by the listener
+     */
+    @FXML
+    private void onCancelAnalysis(ActionEvent actionEvent) {
+        if(lagSequentialTask != null){
+            lagSequentialTask.cancel();
+        }
+    }
+
+    /**
+     * Resets the plot tab once the lag sequential analysis is done, failed or was cancelled
+     */
+    private void finishLagSequential(){
+        lagSequentialTask = null;
+        progressBarAnalysis.progressProperty().unbind();
+        progressBarAnalysis.setProgress(0);
+        buttonCancelAnalysis.setDisable(true);
+        buttonLagSequential.setDisable(buttonExportTransitions.isDisabled());
+    }
+
     /**
      * Listener triggered when the 'Get Results' query button detects an action from the user. It will take the
      * parameters entered by the user and search the in-memory data for StillFaceData that matches the query (if the
@@ -503,7 +743,7 @@ public class DataCenterController implements Initializable, Observer {
                         new StillFaceDeleteImportTask(importToDelete, new StillFaceTaskCallback() {
                             @Override
                             public void onSuccess() {
-                                StillFaceModel.getInstance().notifyObservers();
+
                             }
 
                             @Override
@@ -521,73 +761,177 @@ public class DataCenterController implements Initializable, Observer {
     }
 
     /**
-     * Populates the data visible list in the model using the import selected from the list view. After the list has
-     * been populated, this method calls notifyObservers() on the model, allowing the view to be updated.
+     * Builds the rate series of the visible data with the bin width entered by the user and plots it, writing it to a
+     * file first if one is provided. The series covers the visible import, or every import with an entry in the
+     * search results.
+     *
+     * @param filepath The file to write the series to, or null to only plot it
+     */
+    private void buildRateSeries(String filepath){
+        int binWidth = parseBounded(textFieldBinWidth, 1, MAX_BIN_WIDTH);
+        if(binWidth < 0){
+            new StillFaceErrorNotification("Enter a bin width from 1 to " + MAX_BIN_WIDTH + " seconds").show();
+            return;
+        }
+        binWidth *= 1000;
+        int[] ids = getVisibleImportIDs();
+        if(ids.length == 0){
+            return;
+        }
+        StillFaceRateSeriesTask[] task = new StillFaceRateSeriesTask[1];
+        task[0] = new StillFaceRateSeriesTask(rateAnalyzer, ids, binWidth, filepath, new StillFaceTaskCallback() {
+            @Override
+            public void onSuccess() {
+                plotRates(task[0].getSeries());
+            }
+
+            @Override
+            public void onFail(Throwable exception) {
+                new StillFaceErrorNotification("An error has occured: " + exception.getMessage()).show();
+            }
+        });
+        task[0].execute();
+    }
+
+    /**
+     * Reads a whole number entered in one of the text fields of the plot tab. The fields only accept digits, but
+     * they can still hold more of them than fit in an int.
+     *
+     * @param field The text field
+     * @param min The smallest number accepted
+     * @param max The largest number accepted
+     * @return The number, or -1 if the field is empty or the number is not between min and max
+     */
+    private static int parseBounded(TextField field, int min, int max){
+        String text = field.getText();
+        if(text.isEmpty()){
+            return -1;
+        }
+        try{
+            int value = Integer.parseInt(text);
+            return (value < min || value > max) ? -1 : value;
+        }
+        catch(NumberFormatException e){
+            return -1;
+        }
+    }
+
+    /**
+     * @return The ID of the visible import, or the IDs of every import with an entry in the search results, in
+     *         ascending order
+     */
+    private int[] getVisibleImportIDs(){
+        StillFaceImport visibleImport = StillFaceModel.getInstance().getVisibleImport();
+        if(visibleImport != null){
+            return new int[]{visibleImport.getImportID()};
+        }
+        SortedSet<Integer> importIDs = new TreeSet<>();
+        for(StillFaceData data : StillFaceModel.getInstance().getVisibleDataList()){
+            importIDs.add(data.getImportID());
+        }
+        int[] ids = new int[importIDs.size()];
+        int i = 0;
+        for(int importID : importIDs){
+            ids[i++] = importID;
+        }
+        return ids;
+    }
+
+    /**
+     * Shows a dialog that lets the user choose a CSV file to save to
+     *
+     * @param title The title of the dialog
+     * @return The chosen file, or null if the user cancels
+     */
+    private File showSaveCSVDialog(String title){
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle(title);
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("CSV Files", "*.csv"));
+        return fileChooser.showSaveDialog(anchorPaneMain.getScene().getWindow());
+    }
+
+    /**
+     * Plots the rate of every code that occurs in the segment selected by the user, with one line per code
+     *
+     * @param series The series to plot
+     */
+    private void plotRates(StillFaceRateSeries series){
+        plottedRates = series;
+        int segment = Math.max(0, choiceBoxPlotSegment.getSelectionModel().getSelectedIndex());
+        lineChartRates.getData().clear();
+        if(segment >= series.getSegmentCount()){
+            return;
+        }
+        lineChartRates.setTitle(series.getProtocol().getSegmentName(segment) + " (" + series.getImportCount()
+                + ((series.getImportCount() == 1) ? " import)" : " imports)"));
+        for(int ordinal = 0; ordinal < series.getIndex().size(); ordinal++){
+            if(series.getTotal(segment, ordinal) == 0){
+                continue;
+            }
+            XYChart.Series<Number, Number> line = new XYChart.Series<>();
+            line.setName(series.getIndex().getName(ordinal));
+            for(int bin = 0; bin < series.getBinCount(segment); bin++){
+                line.getData().add(new XYChart.Data<>(bin * series.getBinWidth() / 1000.0,
+                        series.getRate(segment, bin, ordinal)));
+            }
+            lineChartRates.getData().add(line);
+        }
+    }
+
+    /**
+     * Populates the data visible list in the model using the import selected from the list view. Setting the list
+     * posts a change to the model event bus, which updates the view.
      *
      * @param importID The ID of the import that was selected by the user
      */
     private void populateVisibleDataFromImport(int importID){
         logger.info("Populating visible data with import id: " + importID);
         // First get the import information
-        Query<StillFaceImport> importDataQuery = equal(StillFaceImport.IMPORT_ID, importID);
-        for(StillFaceImport data : StillFaceModel.getInstance().getImportDataCollection().retrieve(importDataQuery)){
+        StillFaceImport example = new StillFaceImport(importID, null, 0, 0, 0, null, null, null);
+        for(StillFaceImport data : StillFaceModelFacade.getInstance().getImports(example)){
             StillFaceModel.getInstance().setVisibleImport(data);
         }
 
-        // Initialize an empty list to capture the data
-        List<StillFaceData> dataList = new ArrayList<>();
-        Query<StillFaceData> dataQuery = equal(StillFaceData.IMPORT_ID, importID);
-        for(StillFaceData d : StillFaceModel.getInstance().getDataCollection().retrieve(dataQuery,
-                queryOptions(orderBy(ascending(StillFaceData.TIME), ascending(StillFaceData.DATA_ID))))){
-            dataList.add(d);
-        }
+        // Get the data of the import, ordered by time
+        List<StillFaceData> dataList = StillFaceModel.getInstance().getDataForImport(importID);
 
         logger.info("Initialized visible data list: " + dataList.size() + " elements");
 
         // Set the list in the model
         StillFaceModel.getInstance().setVisibleData(dataList);
-
-        // Notify this observer and update the view
-        StillFaceModel.getInstance().notifyObservers();
     }
 
     /**
      * Given search parameters selected by the user, this populates the visible data list in the StillFaceModel
-     * with values matching those parameters. It then notifies the observers of the model that the values
-     * have changed.
+     * with values matching those parameters. Results are served from the search cache while the imports and data
+     * are unchanged. Setting the list posts a change to the model event bus, which updates the view.
      */
     private void populateVisibleDataFromQuery(){
         logger.info("Populating visible data from search query");
-        // Build the query based on the parameters put in by the user
-        List<StillFaceData> dataList = new ArrayList<>();
-        Query<StillFaceImport> importQuery = not(equal(StillFaceImport.IMPORT_ID, 0));
+        // Normalize the parameters put in by the user. Unset fields match any import.
+        int year = 0, familyID = 0, participantNumber = 0;
+        StillFaceTag tag = null;
         if(checkBoxYear.isSelected() && !textFieldYear.getText().isEmpty()){
-            importQuery = and(importQuery, equal(StillFaceImport.YEAR, Integer.parseInt(textFieldYear.getText())));
+            year = Integer.parseInt(textFieldYear.getText());
         }
         if(checkBoxFamilyID.isSelected() && !textFieldFamilyID.getText().isEmpty()){
-            importQuery = and(importQuery, equal(StillFaceImport.FAMILY_ID, Integer.parseInt(textFieldFamilyID.getText())));
+            familyID = Integer.parseInt(textFieldFamilyID.getText());
         }
         if(checkBoxParticipantID.isSelected() && !textFieldParticipantID.getText().isEmpty()){
-            importQuery = and(importQuery, equal(StillFaceImport.PARTICIPANT_ID, Integer.parseInt(textFieldParticipantID.getText())));
+            participantNumber = Integer.parseInt(textFieldParticipantID.getText());
         }
         if(checkBoxTag.isSelected() && choiceBoxTag.getSelectionModel().getSelectedItem() != null){
-            importQuery = and(importQuery, equal(StillFaceImport.TAG, choiceBoxTag.getValue()));
-        }
-        Query<StillFaceData> dataQuery = equal(StillFaceData.DATA_ID, Integer.MAX_VALUE);
-        for(StillFaceImport i : StillFaceModel.getInstance().getImportDataCollection().retrieve(importQuery)){
-            dataQuery = or(dataQuery, equal(StillFaceData.IMPORT_ID, i.getImportID()));
+            tag = choiceBoxTag.getValue();
         }
+        StillFaceSearchCriteria criteria = new StillFaceSearchCriteria(year, familyID, participantNumber, tag);
         // Populate the list
-        for(StillFaceData d : StillFaceModel.getInstance().getDataCollection().retrieve(dataQuery,
-                queryOptions(orderBy(ascending(StillFaceData.DATA_ID))))){
-            dataList.add(d);
-        }
+        List<StillFaceData> dataList = searchCache.get(criteria,
+                c -> StillFaceModelFacade.getInstance().getData(c.toExample(), null));
         logger.info("Initialized visible data list: " + dataList.size() + " elements");
         // Update the values
         StillFaceModel.getInstance().setVisibleImport(null);
         StillFaceModel.getInstance().setVisibleData(dataList);
-        // Notify all observers of the changes
-        StillFaceModel.getInstance().notifyObservers();
     }
 
 
@@ -675,45 +1019,115 @@ public class DataCenterController implements Initializable, Observer {
     }
 
     /**
-     * Primary method for updating the view. This controller is registered as an observer with the StillFaceModel
-     * singleton instance. If the notifyObservers() method is called in the model, then this method will fire and
-     * make the appropriate changes to the view based on what it sees in the model.
+     * Primary method for updating the view. This controller is registered as a listener with the
+     * StillFaceModelEventBus, which calls this method on the JavaFX application thread with the changes made to the
+     * model since the last call. Only the parts of the view that depend on those changes are updated: editing a cell
+     * updates the save button and the summary, but does not rebuild the data table or the import list.
      *
-     * @param observable The observable instance that is calling this observer, in this case the StillFaceModel
-     * @param o An object as part of the overridden function, not used in this implementation
+     * @param changes The changes made to the model
      */
     @Override
-    public void update(Observable observable, Object o) {
-        if(observable == StillFaceModel.getInstance()){
-            // If there are no items in the edit map, disable the save changes button
-            buttonSaveChanges.setDisable(StillFaceModel.getInstance().getEditedDataMap().isEmpty());
+    public void modelChanged(StillFaceModelChanges changes) {
+        if(changes.contains(StillFaceModelEvent.Type.CODES_CHANGED)){
             // Reset the code list
             ObservableList<StillFaceCode> observableCodeList = FXCollections.observableArrayList(StillFaceModel.getCodeList());
             tableColumnCode.setCellFactory(ChoiceBoxTableCell.forTableColumn(observableCodeList));
+            // The protocol is stored in the codes, so the summary tables may need other segments
+            updateSummaryTables(StillFaceModel.getProtocol());
+            updatePlotSegments(StillFaceModel.getProtocol());
+            updateSummary(StillFaceModel.getInstance().getVisibleDataList());
+        }
+        if(changes.contains(StillFaceModelEvent.Type.TAGS_CHANGED)){
             // Set the tags list in the query section
             choiceBoxTag.setItems(FXCollections.observableList(StillFaceModel.getTagList()));
+        }
+        if(changes.contains(StillFaceModelEvent.Type.IMPORTS_CHANGED)){
             // Refresh the import view
             updateImports();
+        }
+        if(changes.contains(StillFaceModelEvent.Type.VISIBLE_SELECTION_CHANGED)){
             // Refresh the data view
             updateData();
-            // Refresh the labels on the summary tables
-            updateSummaryTableLabels();
         }
+        else if(isVisibleDataChanged(changes)){
+            // The rows of the table are copies of entries that were replaced, so rebuild the visible list. Setting it
+            // posts a visible selection change, which refreshes the table and the summary.
+            refreshVisibleData();
+        }
+        else if(changes.contains(StillFaceModelEvent.Type.EDITS_CHANGED) ||
+                changes.contains(StillFaceModelEvent.Type.CODES_CHANGED)){
+            // The rows of the table were already updated by the edit, only the summary is out of date
+            updateSummary(StillFaceModel.getInstance().getVisibleDataList());
+        }
+        if(changes.contains(StillFaceModelEvent.Type.EDITS_CHANGED) ||
+                changes.contains(StillFaceModelEvent.Type.VISIBLE_SELECTION_CHANGED)){
+            // If there are no items in the edit map, disable the save changes button
+            buttonSaveChanges.setDisable(StillFaceModel.getInstance().getEditedDataMap().isEmpty());
+        }
+    }
+
+    /**
+     * @param changes The changes made to the model
+     * @return True if the entries of an import shown in the data table changed
+     */
+    private boolean isVisibleDataChanged(StillFaceModelChanges changes){
+        List<StillFaceData> visibleData = StillFaceModel.getInstance().getVisibleDataList();
+        if(visibleData.isEmpty() && StillFaceModel.getInstance().getVisibleImport() == null){
+            return false;
+        }
+        if(changes.isAllDataChanged()){
+            return true;
+        }
+        StillFaceImport visibleImport = StillFaceModel.getInstance().getVisibleImport();
+        if(visibleImport != null){
+            return changes.isDataChanged(visibleImport.getImportID());
+        }
+        for(StillFaceData data : visibleData){
+            if(changes.isDataChanged(data.getImportID())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Rebuilds the visible data list from the entries of the visible import, or of the imports in the search
+     * results, as they are now in the model. Unsaved edits of entries that still exist are kept in place of the
+     * entries they were made from.
+     */
+    private void refreshVisibleData(){
+        StillFaceModel model = StillFaceModel.getInstance();
+        StillFaceImport visibleImport = model.getVisibleImport();
+        List<StillFaceData> dataList;
+        if(visibleImport != null){
+            dataList = model.getDataForImport(visibleImport.getImportID());
+        }
+        else{
+            Set<Integer> importIDs = new HashSet<>();
+            for(StillFaceData data : model.getVisibleDataList()){
+                importIDs.add(data.getImportID());
+            }
+            dataList = model.getDataForImports(importIDs);
+        }
+        Map<Integer, StillFaceData> edits = model.getEditedDataMap();
+        for(int i = 0; i < dataList.size(); i++){
+            StillFaceData edit = edits.get(dataList.get(i).getDataID());
+            if(edit != null){
+                dataList.set(i, edit);
+            }
+        }
+        logger.info("Refreshed visible data list: " + dataList.size() + " elements");
+        model.setVisibleData(dataList);
     }
 
     /**
      * Updates the visible list of imports in the GUI with the latest entries from the database. This
-     * method is initiated via the Observer pattern with the StillFaceModel.
+     * method is called when the imports of the StillFaceModel change.
      */
     private void updateImports(){
         // Get the import data
         logger.fine("Updating the import list view");
-        Query<StillFaceImport> importDataQuery = not(equal(StillFaceImport.IMPORT_ID, 0));
-        List<StillFaceImport> importDataList = new ArrayList<>();
-        for (StillFaceImport data : StillFaceModel.getInstance().getImportDataCollection().retrieve(importDataQuery,
-                queryOptions(orderBy(ascending(StillFaceImport.DATE), ascending(StillFaceImport.IMPORT_ID))))) {
-            importDataList.add(data);
-        }
+        List<StillFaceImport> importDataList = StillFaceModelFacade.getInstance().getImports();
         if(importDataList.size() > listViewExplorer.getItems().size() || importDataList.size() < listViewExplorer.getItems().size()){
             logger.fine("Import list view size: " + importDataList.size());
             Platform.runLater(() -> {
@@ -726,7 +1140,7 @@ public class DataCenterController implements Initializable, Observer {
 
     /**
      * Updates the visible table of data in the GUI with the populated data in the model. This method is
-     * invoked via the Observer pattern with the StillFaceModel.
+     * called when the visible selection of the StillFaceModel changes.
      */
     private void updateData(){
 
@@ -736,9 +1150,9 @@ public class DataCenterController implements Initializable, Observer {
         if(dataList.size() == 0){
             Platform.runLater(() -> {
                 tableData.setItems(null);
-                tableViewBeforeDelimiter1.setItems(null);
-                tableViewAfterDelimiter1.setItems(null);
-                tableViewAfterDelimiter2.setItems(null);
+                for(TableView<StillFaceCodeCount> table : segmentTables){
+                    table.setItems(null);
+                }
                 labelDataTitle.setText("");
                 labelAlias.setText("");
                 labelYear.setText("Year:");
@@ -746,6 +1160,14 @@ public class DataCenterController implements Initializable, Observer {
                 labelParticipantID.setText("Participant ID:");
                 labelImportDate.setText("Import Date:");
                 tilePaneSummary.getChildren().clear();
+                plottedRates = null;
+                lineChartRates.getData().clear();
+                lineChartRates.setTitle(null);
+                buttonPlot.setDisable(true);
+                buttonExportRates.setDisable(true);
+                buttonExportTransitions.setDisable(true);
+                buttonExportTimings.setDisable(true);
+                buttonLagSequential.setDisable(true);
                 buttonExportToCSV.setDisable(true);
                 buttonSaveChanges.setDisable(true);
                 buttonDeleteImport.setDisable(true);
@@ -772,126 +1194,109 @@ public class DataCenterController implements Initializable, Observer {
             labelImportDate.setText(date);
         });
 
-        // Set up some maps to hold summary data
-        Map<String, Integer> mostCommonCode = new HashMap<>();
-        Map<String, Integer> mostCommonCodeFirst = new HashMap<>();
-        Map<String, Integer> mostCommonCodeSecond= new HashMap<>();
-        Map<String, Integer> mostCommonCodeThird = new HashMap<>();
-
-        // Collect the summary data
-        int delimiterIndex = 0;
-        for(StillFaceData data : dataList){
-            // Code stats
-            String codeName = data.getCode().getName();
-            if(data.getCode().getDelimiterIndex() > delimiterIndex){
-                delimiterIndex = data.getCode().getDelimiterIndex();
-            }
-            if(mostCommonCode.containsKey(codeName)){
-                int count = mostCommonCode.get(codeName);
-                mostCommonCode.put(codeName, count + 1);
-            }
-            else{
-                mostCommonCode.put(codeName, 1);
-            }
-            // Get the common code counts for each video segment
-            switch(delimiterIndex){
-                case 0:
-                    if(mostCommonCodeFirst.containsKey(codeName)){
-                        int count = mostCommonCodeFirst.get(codeName);
-                        mostCommonCodeFirst.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeFirst.put(codeName, 1);
-                    }
-                    break;
-
-                case 1:
-                    if(mostCommonCodeSecond.containsKey(codeName)){
-                        int count = mostCommonCodeSecond.get(codeName);
-                        mostCommonCodeSecond.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeSecond.put(codeName, 1);
-                    }
-                    break;
+        // Set the items in the view
+        ObservableList<StillFaceData> data = FXCollections.observableArrayList(dataList);
+        tableData.setItems(data);
 
-                case 2:
-                    if(mostCommonCodeThird.containsKey(codeName)){
-                        int count = mostCommonCodeThird.get(codeName);
-                        mostCommonCodeThird.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeThird.put(codeName, 1);
-                    }
-                    break;
+        updateSummary(dataList);
 
+        logger.fine("Finished updating table data");
 
-            }
+    }
 
+    /**
+     * Shows the code counts and summary figures of the visible data. The summary of an import is served by the model's
+     * summary cache, which keeps it up to date as entries are edited. Search results are summarized from the list.
+     *
+     * @param dataList The data visible in the table
+     */
+    private void updateSummary(List<StillFaceData> dataList){
+        if(dataList.isEmpty()){
+            return;
         }
 
-        logger.info("Table data size: " + StillFaceModel.getInstance().getVisibleDataList().size());
-
-        // Set the items in the view
-        ObservableList<StillFaceData> data = FXCollections.observableArrayList(dataList);
-        tableData.setItems(data);
+        logger.info("Table data size: " + dataList.size());
 
         logger.fine("Gathering summary data");
-        // Put in some summary data
-        Map.Entry<String, Integer> maxEntry = null;
-        for(Map.Entry<String, Integer> entry : mostCommonCode.entrySet()){
-            if(maxEntry == null || entry.getValue().compareTo(maxEntry.getValue()) > 0){
-                maxEntry = entry;
-            }
+        StillFaceImport visibleImport = StillFaceModel.getInstance().getVisibleImport();
+        StillFaceImportSummary summary = (visibleImport != null)
+                ? StillFaceModel.getInstance().getSummary(visibleImport.getImportID())
+                : StillFaceImportSummary.of(dataList);
+        updateSummaryTables(summary.getProtocol());
+        for(int segment = 0; segment < summary.getSegmentCount(); segment++){
+            segmentTables.get(segment).setItems(FXCollections.observableList(summary.getCodeCounts(segment)));
         }
-        List<StillFaceCodeCount> firstCounts = new ArrayList<>();
-        List<StillFaceCodeCount> secondCounts = new ArrayList<>();
-        List<StillFaceCodeCount> thirdCounts = new ArrayList<>();
-        for(Map.Entry<String, Integer> entry : mostCommonCodeFirst.entrySet()){
-            firstCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
-        }
-        for(Map.Entry<String, Integer> entry : mostCommonCodeSecond.entrySet()){
-            secondCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
-        }
-        for(Map.Entry<String, Integer> entry : mostCommonCodeThird.entrySet()){
-            thirdCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
-        }
-        Collections.sort(firstCounts);
-        Collections.sort(secondCounts);
-        Collections.sort(thirdCounts);
-        tableViewBeforeDelimiter1.setItems(FXCollections.observableList(firstCounts));
-        tableViewAfterDelimiter1.setItems(FXCollections.observableList(secondCounts));
-        tableViewAfterDelimiter2.setItems(FXCollections.observableList(thirdCounts));
-        String mostCommon = (maxEntry != null && maxEntry.getKey() != null) ? maxEntry.getKey() : "";
+        StillFaceCode mostCommonCode = summary.getMostCommonCode();
+        String mostCommon = (mostCommonCode != null && mostCommonCode.getName() != null) ? mostCommonCode.getName() : "";
         Platform.runLater(()->{
             tilePaneSummary.getChildren().clear();
-            tilePaneSummary.getChildren().add(new Text("Number of codes: " + dataList.size()));
-            tilePaneSummary.getChildren().add(new Text("Codes used: " + mostCommonCode.keySet().size()));
+            tilePaneSummary.getChildren().add(new Text("Number of codes: " + summary.getCount()));
+            tilePaneSummary.getChildren().add(new Text("Codes used: " + summary.getCodesUsed()));
             tilePaneSummary.getChildren().add(new Text("Most common code: " + mostCommon ));
-            tilePaneSummary.getChildren().add(new Text("Total duration (sec): " + dataList.get(dataList.size() - 1).getTime()/1000));
+            tilePaneSummary.getChildren().add(new Text("Total duration (sec): " + summary.getTotalDuration()/1000));
 
             buttonExportToCSV.setDisable(false);
             buttonDeleteImport.setDisable(false);
+            buttonPlot.setDisable(false);
+            buttonExportRates.setDisable(false);
+            buttonExportTransitions.setDisable(false);
+            buttonExportTimings.setDisable(false);
+            buttonLagSequential.setDisable(lagSequentialTask != null);
         });
-
-
-        logger.fine("Finished updating table data");
-
     }
 
     /**
-     * Detects changes made to the delimiter codes and updates the labels in the view according
+     * Makes sure there is one summary table for each segment of the protocol, labelled with the name of the segment.
+     * The tables are only rebuilt when the number of segments changes.
+     *
+     * @param protocol The protocol whose segments the summary tables show
      */
-    private void updateSummaryTableLabels(){
-        for(StillFaceCode c : StillFaceModel.getCodeList()){
-            if(c.getDelimiterIndex() == 1){
-                labelBeforeDelimiter1.setText("Before " + c.getName());
-                labelAfterDelimiter1.setText("After " + c.getName());
-            }
-            else if(c.getDelimiterIndex() == 2){
-                labelAfterDelimiter2.setText("After " + c.getName());
+    private void updateSummaryTables(StillFaceProtocol protocol){
+        if(segmentTables.size() != protocol.getSegmentCount()){
+            hBoxSegments.getChildren().clear();
+            segmentTables.clear();
+            segmentLabels.clear();
+            for(int segment = 0; segment < protocol.getSegmentCount(); segment++){
+                TableView<StillFaceCodeCount> table = new TableView<>();
+                TableColumn<StillFaceCodeCount, String> tableColStillFaceCodeName = new TableColumn<>("Code");
+                tableColStillFaceCodeName.setCellValueFactory(new PropertyValueFactory<>("name"));
+                tableColStillFaceCodeName.prefWidthProperty().bind(table.widthProperty().multiply(0.80));
+                TableColumn<StillFaceCodeCount, Integer> tableColStillFaceCount = new TableColumn<>("Count");
+                tableColStillFaceCount.setCellValueFactory(new PropertyValueFactory<>("count"));
+                tableColStillFaceCount.prefWidthProperty().bind(table.widthProperty().multiply(0.18));
+                List<TableColumn<StillFaceCodeCount, ?>> columns =
+                        Arrays.asList(tableColStillFaceCodeName, tableColStillFaceCount);
+                table.getColumns().setAll(columns);
+                table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+                table.setEditable(false);
+                Label label = new Label();
+                VBox column = new VBox(5, label, table);
+                column.setAlignment(Pos.TOP_CENTER);
+                VBox.setVgrow(table, Priority.ALWAYS);
+                HBox.setHgrow(column, Priority.ALWAYS);
+                hBoxSegments.getChildren().add(column);
+                segmentTables.add(table);
+                segmentLabels.add(label);
             }
         }
+        for(int segment = 0; segment < protocol.getSegmentCount(); segment++){
+            segmentLabels.get(segment).setText(protocol.getSegmentName(segment));
+        }
+    }
+
+    /**
+     * Lists the segments of the protocol on the plot tab, keeping the selected segment if it still exists
+     *
+     * @param protocol The protocol whose segments can be plotted
+     */
+    private void updatePlotSegments(StillFaceProtocol protocol){
+        int selected = Math.max(0, choiceBoxPlotSegment.getSelectionModel().getSelectedIndex());
+        List<String> names = new ArrayList<>();
+        for(int segment = 0; segment < protocol.getSegmentCount(); segment++){
+            names.add(protocol.getSegmentName(segment));
+        }
+        choiceBoxPlotSegment.setItems(FXCollections.observableList(names));
+        choiceBoxPlotSegment.getSelectionModel().select(Math.min(selected, names.size() - 1));
     }
 
 }
@@ -201,7 +201,6 @@ public class ImportController implements Initializable {
         new StillFaceImportTask(chosenFile, importData, new StillFaceTaskCallback() {
             @Override
             public void onSuccess() {
-                StillFaceModel.getInstance().notifyObservers();
                 close();
             }
             @Override
@@ -15,10 +15,10 @@ import com.byu.pmedia.config.StillFaceConfig;
 import com.byu.pmedia.database.DatabaseMode;
 import com.byu.pmedia.database.StillFaceDAO;
 import com.byu.pmedia.model.*;
+import com.byu.pmedia.tasks.StillFaceStatsRebuildTask;
+import com.byu.pmedia.tasks.StillFaceTaskCallback;
 import com.byu.pmedia.view.StillFaceErrorNotification;
 import com.byu.pmedia.view.StillFaceWarningNotification;
-import com.googlecode.cqengine.query.Query;
-import com.googlecode.cqengine.resultset.ResultSet;
 import javafx.beans.value.ChangeListener;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
@@ -35,14 +35,11 @@ import java.net.URL;
 import java.util.*;
 import java.util.logging.Logger;
 
-import static com.googlecode.cqengine.query.QueryFactory.*;
-
 /**
  * SettingsController
  * Provides control for and initializes the Settings GUI for the DataCenter. Allows the user to control configuration
- * of the application and modify StillFace codes and tag.This class follows the Observer pattern in that it registers
- * itself as an observer of the StillFaceModel and updates the GUI associated with it whenever it is notified of
- * changes made in the model.
+ * of the application and modify StillFace codes and tag. This class registers itself as a listener with the
+ * StillFaceModelEventBus and updates the code and tag tables whenever the codes or tags of the model change.
  * <p>
  * This controller differs slightly from the others in that it does not always spin up StillFace tasks to perform work.
  * Tasks such as updating code information and tag information are done in sync with the user's interactions so that
@@ -51,15 +48,19 @@ import static com.googlecode.cqengine.query.QueryFactory.*;
  *
  * @author Braden Hitchcock
  */
-public class SettingsController implements Initializable, Observer {
+public class SettingsController implements Initializable, StillFaceModelListener {
 
     /* Grab an instance of the logger */
     private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
     /* The GUI elements associated with this controller are listed below.
      * Their names should be self describing. */
-    @FXML private ChoiceBox choiceBoxFirstCode;
-    @FXML private ChoiceBox choiceBoxSecondCode;
+    @FXML private ListView<StillFaceCode> listViewBoundaries;
+    @FXML private ChoiceBox<StillFaceCode> choiceBoxBoundaryCode;
+    @FXML private Button buttonAddBoundary;
+    @FXML private Button buttonRemoveBoundary;
+    @FXML private Button buttonBoundaryUp;
+    @FXML private Button buttonBoundaryDown;
     @FXML private Button buttonDeleteCode;
     @FXML private Button buttonDeleteTag;
     @FXML private TabPane tabPaneSettings;
@@ -182,10 +183,12 @@ public class SettingsController implements Initializable, Observer {
         codeCol.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceCode, String>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceCode, String> cellEditEvent) {
-                StillFaceCode code = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                code.setName(cellEditEvent.getNewValue());
-                dao.updateExistingCode(code);
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceCode code = cellEditEvent.getTableView().getItems().get(row)
+                        .withName(cellEditEvent.getNewValue());
+                if(dao.updateExistingCode(code)){
+                    StillFaceModel.getInstance().refreshCodes();
+                }
             }
         });
 
@@ -196,10 +199,12 @@ public class SettingsController implements Initializable, Observer {
         tagCol.setOnEditCommit(new EventHandler<TableColumn.CellEditEvent<StillFaceTag, String>>() {
             @Override
             public void handle(TableColumn.CellEditEvent<StillFaceTag, String> cellEditEvent) {
-                StillFaceTag tag = cellEditEvent.getTableView().getItems()
-                        .get(cellEditEvent.getTablePosition().getRow());
-                tag.setTagValue(cellEditEvent.getNewValue());
-                dao.updateExistingTag(tag);
+                int row = cellEditEvent.getTablePosition().getRow();
+                StillFaceTag tag = cellEditEvent.getTableView().getItems().get(row)
+                        .withTagValue(cellEditEvent.getNewValue());
+                if(dao.updateExistingTag(tag)){
+                    StillFaceModel.getInstance().refreshTags();
+                }
             }
         });
 
@@ -233,32 +238,11 @@ public class SettingsController implements Initializable, Observer {
             }
         });
 
-        // Now setup the code delimiter choice boxes
-        choiceBoxFirstCode.setItems(FXCollections.observableList(StillFaceModel.getCodeList()));
-        StillFaceCode c = retrieveCodeWithIndex(1);
-        choiceBoxFirstCode.getSelectionModel().select(c);
-        choiceBoxFirstCode.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<StillFaceCode>() {
-            @Override
-            public void changed(ObservableValue observableValue, StillFaceCode oldCode, StillFaceCode newCode) {
-                if(newCode != null){
-                    setCodeDelimiter(newCode, 1);
-                }
-            }
-        });
-        choiceBoxSecondCode.setItems(FXCollections.observableList(StillFaceModel.getCodeList()));
-        c = retrieveCodeWithIndex(2);
-        choiceBoxSecondCode.getSelectionModel().select(c);
-        choiceBoxSecondCode.getSelectionModel().selectedItemProperty().addListener(new ChangeListener<StillFaceCode>() {
-            @Override
-            public void changed(ObservableValue observableValue, StillFaceCode oldCode, StillFaceCode newCode) {
-                if(newCode != null){
-                    setCodeDelimiter(newCode, 2);
-                }
-            }
-        });
+        // Now setup the list of segment boundary codes
+        updateBoundaries();
 
-        // Everything has been initialized, register as an observer
-        StillFaceModel.getInstance().addObserver(this);
+        // Everything has been initialized, listen for changes to the model
+        StillFaceModelEventBus.getInstance().addListener(this);
     }
 
     /**
@@ -295,9 +279,8 @@ public class SettingsController implements Initializable, Observer {
             else {
                 // Reload all the config
                 StillFaceConfig.getInstance().initialize(StillFaceConfig.getInstance().getFilename());
-                // Refresh the data model and notify observers of changes
+                // Refresh the data model
                 StillFaceModel.getInstance().refresh();
-                StillFaceModel.getInstance().notifyObservers();
             }
         }
         close();
@@ -314,9 +297,10 @@ public class SettingsController implements Initializable, Observer {
     }
 
     /**
-     * Closes the window
+     * Closes the window and stops listening for changes to the model
      */
     private void close(){
+        StillFaceModelEventBus.getInstance().removeListener(this);
         ((Stage)buttonCancel.getScene().getWindow()).close();
     }
 
@@ -348,8 +332,6 @@ public class SettingsController implements Initializable, Observer {
                 StillFaceModel.getInstance().refreshCodes();
             }
         });
-        // Notify all model observers of the change
-        StillFaceModel.getInstance().notifyObservers();
     }
 
     /**
@@ -380,8 +362,6 @@ public class SettingsController implements Initializable, Observer {
                 StillFaceModel.getInstance().refreshTags();
             }
         });
-        // Notify all observers of the model of the change
-        StillFaceModel.getInstance().notifyObservers();
     }
 
     /**
@@ -394,24 +374,19 @@ public class SettingsController implements Initializable, Observer {
     @FXML
     private void onDeleteCode(ActionEvent actionEvent) {
         StillFaceCode codeToDelete = (StillFaceCode)tableViewCodes.getSelectionModel().getSelectedItem();
-        // If this code is the selected delimiter, don't allow the user to delete it
-        if(codeToDelete.equals(choiceBoxFirstCode.getSelectionModel().getSelectedItem())
-                || codeToDelete.equals(choiceBoxSecondCode.getSelectionModel().getSelectedItem())){
-            String message = "The code you have selected to delete is currently one of the selected delimiter codes. " +
-                    "Please replace this code with a new delimiter before deleting it.";
+        // If this code is a boundary of the protocol, don't allow the user to delete it
+        if(StillFaceModel.getProtocol().getBoundaries().contains(codeToDelete)){
+            String message = "The code you have selected to delete is currently one of the segment boundary codes. " +
+                    "Please remove it from the boundaries before deleting it.";
             new StillFaceWarningNotification(message).show();
             return;
         }
         // If there are data entries that have this code, make the user select another code to replace them with
-        Query<StillFaceData> dataQuery = equal(StillFaceData.CODE, codeToDelete);
-        ResultSet<StillFaceData> resultCodeData = StillFaceModel.getInstance().getDataCollection().retrieve(dataQuery);
+        StillFaceModelFacade facade = StillFaceModelFacade.getInstance();
+        List<StillFaceData> resultCodeData = facade.getData(new StillFaceData(0, 0, 0, codeToDelete, null));
         if(resultCodeData.size() > 0){
-            Query<StillFaceCode> codeQuery = not(equal(StillFaceCode.CODE_ID, codeToDelete.getCodeID()));
-            List<StillFaceCode> codes = new ArrayList<>();
-            for(StillFaceCode c : StillFaceModel.getInstance().getCodeCollection().retrieve(codeQuery,
-                    queryOptions(orderBy(descending(StillFaceCode.NAME))))){
-                codes.add(c);
-            }
+            List<StillFaceCode> codes = new ArrayList<>(facade.getCodes());
+            codes.remove(codeToDelete);
             ChoiceDialog<StillFaceCode> dialog = new ChoiceDialog<>(codes.get(0), codes);
             dialog.setTitle("Replace Codes");
             dialog.setHeaderText("Attempt to delete a code that is currently in use");
@@ -421,19 +396,18 @@ public class SettingsController implements Initializable, Observer {
             Optional<StillFaceCode> result = dialog.showAndWait();
             result.ifPresent(replacementCode -> {
                 // Update all the code entries
-                dao.lockConnection();
+                List<StillFaceData> replacedData = new ArrayList<>();
                 for(StillFaceData dataEntry : resultCodeData){
-                    dataEntry.setCode(replacementCode);
-                    dao.updateCodeData(dataEntry);
+                    replacedData.add(dataEntry.withCode(replacementCode));
+                }
+                if(dao.updateCodeData(replacedData)){
+                    StillFaceModel.getInstance().updateData(replacedData);
                 }
-                dao.unlockConnection();
-                StillFaceModel.getInstance().refreshCodeData();
             });
         }
         // Delete the old code
         dao.deleteExistingCode(codeToDelete);
         StillFaceModel.getInstance().refreshCodes();
-        StillFaceModel.getInstance().notifyObservers();
     }
 
     /**
@@ -449,16 +423,12 @@ public class SettingsController implements Initializable, Observer {
         StillFaceTag tagToDelete = (StillFaceTag) tableViewTags.getSelectionModel().getSelectedItem();
 
         // If there are import entries that have this tag, make the user select another code to replace them with
-        Query<StillFaceImport> importQuery = equal(StillFaceImport.TAG, tagToDelete);
-        ResultSet<StillFaceImport> resultImportData =
-                StillFaceModel.getInstance().getImportDataCollection().retrieve(importQuery);
+        StillFaceModelFacade facade = StillFaceModelFacade.getInstance();
+        List<StillFaceImport> resultImportData =
+                facade.getImports(new StillFaceImport(null, 0, 0, 0, tagToDelete, null, null));
         if(resultImportData.size() > 0){
-            Query<StillFaceTag> tagQuery = not(equal(StillFaceTag.TAG_ID, tagToDelete.getTagID()));
-            List<StillFaceTag> tags = new ArrayList<>();
-            for(StillFaceTag t : StillFaceModel.getInstance().getTagCollection().retrieve(tagQuery,
-                    queryOptions(orderBy(descending(StillFaceTag.TAG_VALUE))))){
-                tags.add(t);
-            }
+            List<StillFaceTag> tags = new ArrayList<>(facade.getTags());
+            tags.remove(tagToDelete);
             ChoiceDialog<StillFaceTag> dialog = new ChoiceDialog<>(tags.get(0), tags);
             dialog.setTitle("Replace Tag");
             dialog.setHeaderText("Attempt to delete a tag that is currently in use");
@@ -480,23 +450,24 @@ public class SettingsController implements Initializable, Observer {
         // Delete the old code
         dao.deleteExistingTag(tagToDelete);
         StillFaceModel.getInstance().refreshTags();
-        StillFaceModel.getInstance().notifyObservers();
     }
 
     /**
-     * Method called when the StillFaceModel's notifyObservers() method is called. This class acts as an observer on
-     * the model and will make appropriate changes to the GUI when it is notified of changes made to the model.
+     * Method called by the StillFaceModelEventBus with the changes made to the model. Only the tables whose contents
+     * changed are updated.
      *
-     * @param observable The object that this class is observing
-     * @param o An option object passed from the observable object to this class.
+     * @param changes The changes made to the model
      */
     @Override
-    public void update(Observable observable, Object o) {
-        if(observable == StillFaceModel.getInstance()){
+    public void modelChanged(StillFaceModelChanges changes) {
+        if(changes.contains(StillFaceModelEvent.Type.CODES_CHANGED)){
             updateCodes();
+            updateBoundaries();
+            buttonDeleteCode.setDisable(true);
+        }
+        if(changes.contains(StillFaceModelEvent.Type.TAGS_CHANGED)){
             updateTags();
             buttonDeleteTag.setDisable(true);
-            buttonDeleteCode.setDisable(true);
         }
     }
 
@@ -515,40 +486,111 @@ public class SettingsController implements Initializable, Observer {
     }
 
     /**
-     * When the user changes a code delimeter from the GUI, this will update the delimter values of the codes in the
-     * database to reflect the change.
+     * Updates the list of segment boundary codes, and the codes that can be added to it, on the 'Code' tab in the GUI
+     */
+    private void updateBoundaries(){
+        StillFaceCode selected = listViewBoundaries.getSelectionModel().getSelectedItem();
+        listViewBoundaries.setItems(FXCollections.observableArrayList(StillFaceModel.getProtocol().getBoundaries()));
+        listViewBoundaries.getSelectionModel().select(selected);
+        choiceBoxBoundaryCode.setItems(FXCollections.observableArrayList(StillFaceModel.getCodeList()));
+    }
+
+    /**
+     * Listener triggered when there is an action detected on the 'Add' button under the segment boundary codes. Adds
+     * the chosen code as the last boundary of the protocol.
      *
-     * @param code The code that was selected
-     * @param index The delimiter index that should be assigned to the code
+     * @param actionEvent The action detected by the controller
      */
-    private void setCodeDelimiter(StillFaceCode code, int index){
-        // Get the old code that has the index and set it to 0
-        StillFaceCode c = retrieveCodeWithIndex(index);
-        if(c != null){
-            c.setDelimiterIndex(0);
-            dao.updateExistingCode(c);
+    @FXML
+    private void onAddBoundary(ActionEvent actionEvent) {
+        StillFaceCode code = choiceBoxBoundaryCode.getSelectionModel().getSelectedItem();
+        List<StillFaceCode> boundaries = new ArrayList<>(listViewBoundaries.getItems());
+        if(code == null || boundaries.contains(code)){
+            return;
         }
-        // Update the selected code's index
-        code.setDelimiterIndex(index);
-        dao.updateExistingCode(code);
-        // Refresh the model and notify observers
-        StillFaceModel.getInstance().refreshCodes();
-        StillFaceModel.getInstance().notifyObservers();
+        boundaries.add(code);
+        setProtocol(new StillFaceProtocol(boundaries));
+    }
+
+    /**
+     * Listener triggered when there is an action detected on the 'Remove' button under the segment boundary codes.
+     * Removes the selected boundary, merging the segments on either side of it.
+     *
+     * @param actionEvent The action detected by the controller
+     */
+    @FXML
+    private void onRemoveBoundary(ActionEvent actionEvent) {
+        int selected = listViewBoundaries.getSelectionModel().getSelectedIndex();
+        if(selected < 0){
+            return;
+        }
+        List<StillFaceCode> boundaries = new ArrayList<>(listViewBoundaries.getItems());
+        boundaries.remove(selected);
+        setProtocol(new StillFaceProtocol(boundaries));
+    }
+
+    /**
+     * Listener triggered when there is an action detected on the 'Up' button under the segment boundary codes. Moves
+     * the selected boundary one place earlier in the protocol.
+     *
+     * @param actionEvent The action detected by the controller
+     */
+    @FXML
+    private void onMoveBoundaryUp(ActionEvent actionEvent) {
+        moveBoundary(listViewBoundaries.getSelectionModel().getSelectedIndex(), -1);
+    }
+
+    /**
+     * Listener triggered when there is an action detected on the 'Dn' button under the segment boundary codes. Moves
+     * the selected boundary one place later in the protocol.
+     *
+     * @param actionEvent The action detected by the controller
+     */
+    @FXML
+    private void onMoveBoundaryDown(ActionEvent actionEvent) {
+        moveBoundary(listViewBoundaries.getSelectionModel().getSelectedIndex(), 1);
+    }
+
+    /**
+     * Swaps a boundary with its neighbour
+     *
+     * @param index The position of the boundary
+     * @param offset -1 to swap it with the boundary before it, 1 to swap it with the one after it
+     */
+    private void moveBoundary(int index, int offset){
+        List<StillFaceCode> boundaries = new ArrayList<>(listViewBoundaries.getItems());
+        if(index < 0 || index + offset < 0 || index + offset >= boundaries.size()){
+            return;
+        }
+        Collections.swap(boundaries, index, index + offset);
+        setProtocol(new StillFaceProtocol(boundaries));
+        listViewBoundaries.getSelectionModel().select(index + offset);
     }
 
     /**
-     * Query's the internal model and retrieves the StillFaceCode object that has its delimiter set to the
-     * provided index
+     * When the user changes the segment boundaries from the GUI, this will update the delimiter values of the codes
+     * in the database to store the new protocol.
      *
-     * @param index The delimiter index to search for
-     * @return The StillFaceCode that has the desired index if found. Null otherwise.
+     * @param protocol The protocol chosen by the user
      */
-    private StillFaceCode retrieveCodeWithIndex(int index){
-        Query<StillFaceCode> query = equal(StillFaceCode.DELIMITER_INDEX, index);
-        StillFaceCode code = null;
-        for(StillFaceCode c : StillFaceModel.getInstance().getCodeCollection().retrieve(query)){
-            code = c;
+    private void setProtocol(StillFaceProtocol protocol){
+        if(!dao.updateProtocol(protocol, StillFaceModel.getCodeList())){
+            new StillFaceErrorNotification("Unable to save the segment boundaries. See log for details.").show();
+            return;
         }
-        return code;
+        // Refresh the model
+        StillFaceModel.getInstance().refreshCodes();
+        // The boundaries decide the segments, so the stored import statistics have to be recomputed
+        new StillFaceStatsRebuildTask(new StillFaceTaskCallback() {
+            @Override
+            public void onSuccess() {
+                logger.info("Import statistics rebuilt for the protocol " + protocol);
+            }
+
+            @Override
+            public void onFail(Throwable exception) {
+                new StillFaceErrorNotification("Unable to rebuild import statistics. See log for details.").show();
+            }
+        }).execute();
     }
 }
\ No newline at end of file
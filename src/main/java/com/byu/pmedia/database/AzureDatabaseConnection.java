@@ -159,4 +159,12 @@ public class AzureDatabaseConnection implements IDatabaseConnection {
     public boolean connectionIsEstablished() {
         return connectionEstablished;
     }
+
+    /**
+     * @return The mode of the database, which is always AZURE for this connection
+     */
+    @Override
+    public DatabaseMode getMode() {
+        return DatabaseMode.AZURE;
+    }
 }
@@ -144,4 +144,12 @@ public class DerbyDatabaseConnection implements IDatabaseConnection {
     public boolean connectionIsEstablished() {
         return this.connectionEstablished;
     }
+
+    /**
+     * @return The mode of the database, which is always DERBY for this connection
+     */
+    @Override
+    public DatabaseMode getMode() {
+        return DatabaseMode.DERBY;
+    }
 }
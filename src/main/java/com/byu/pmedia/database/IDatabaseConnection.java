@@ -46,4 +46,10 @@ public interface IDatabaseConnection {
      * @return True if the connection has been established and is up, false otherwise.
      */
     boolean connectionIsEstablished();
+
+    /**
+     * Provides the kind of database server the connection is made to, so that queries can use its SQL dialect
+     * @return The mode of the database
+     */
+    DatabaseMode getMode();
 }
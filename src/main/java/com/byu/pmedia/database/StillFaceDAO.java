@@ -11,18 +11,23 @@
  */
 package com.byu.pmedia.database;
 
+import com.byu.pmedia.analytics.StillFaceTimingMetric;
 import com.byu.pmedia.config.StillFaceConfig;
 import com.byu.pmedia.log.PMLoggerInitializer;
 import com.byu.pmedia.model.*;
-import com.googlecode.cqengine.ConcurrentIndexedCollection;
 import com.googlecode.cqengine.IndexedCollection;
-import com.googlecode.cqengine.index.hash.HashIndex;
-import com.googlecode.cqengine.index.navigable.NavigableIndex;
-import com.googlecode.cqengine.index.radix.RadixTreeIndex;
 import com.googlecode.cqengine.query.Query;
 
 import java.io.*;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import static com.googlecode.cqengine.query.QueryFactory.*;
@@ -41,16 +46,29 @@ public class StillFaceDAO {
     /* Grab an instance of the logger */
     private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
+    /* The number of imports whose statistics rebuildImportStats recomputes in each transaction */
+    private static final int IMPORTS_PER_REBUILD_TRANSACTION = 50;
+
     /* The database connection tied to this DAO */
     private IDatabaseConnection databaseConnection;
 
     /* The query builder this DAO uses to get data from and make changes to the database */
     private StillFaceQueryBuilder queryBuilder = new StillFaceQueryBuilder();
 
-    /* Flag to keep track of wheter the connection to the database is 'locked', meaning that it cannot be closed.
-     * This is useful because it allows the DAO to make several calls to the database without having to establish
-     * and close connections every time. */
-    private boolean connectionLocked = false;
+    /* Codes and tags read from the database are resolved to the canonical instances held by the registry, so that
+     * every entry using a code or tag shares one object with the model's code and tag collections */
+    private StillFaceRegistry registry = StillFaceRegistry.getInstance();
+
+    /* Keeps track of whether the connection to the database is 'locked', meaning that it cannot be closed. This is
+     * useful because it allows the DAO to make several calls to the database without having to establish and close
+     * connections every time. The lock is counted, since several threads can share the DAO of the model. */
+    private int connectionLocks = 0;
+
+    /* The number of calls that have opened the connection and not closed it yet. The connection is only closed once
+     * the last of them is done, so that one thread cannot close the connection in the middle of another thread's
+     * query. Every call that opens the connection closes it in a finally block, so a failed query does not leave
+     * the connection open. */
+    private int connectionUsers = 0;
 
     /**
      * Static method that constructs an instance of this object based on the configuration provided by the
@@ -117,16 +135,20 @@ public class StillFaceDAO {
         // Execute it
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection()
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            statement.execute();
-            ResultSet resultSet = statement.getGeneratedKeys();
-            int generatedKey = -1;
-            if(resultSet.next()){
-                generatedKey = resultSet.getInt(1);
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection()
+                        .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+                statement.execute();
+                ResultSet resultSet = statement.getGeneratedKeys();
+                int generatedKey = -1;
+                if(resultSet.next()){
+                    generatedKey = resultSet.getInt(1);
+                }
+                return generatedKey;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return generatedKey;
         }
         catch(SQLException e){
             logger.severe("Unable to insert import data: " + e.getMessage() + "\n" + query);
@@ -134,6 +156,41 @@ public class StillFaceDAO {
         }
     }
 
+    /**
+     * Inserts a new import and its entries into the database, along with the statistics of the entries, in one
+     * transaction. The statistics are collected by a StillFaceImportStatAccumulator as the entries are written, so
+     * the entries are only gone over once. If any part fails, nothing of the import is written. Codes the entries
+     * use that are not in the database yet are created first, outside of the transaction.
+     *
+     * @param importData A populated StillFaceImport object
+     * @param data The entries of the import, in the order they were coded
+     *
+     * @return The accumulator holding the generated key of the import, its entries with their generated keys and
+     *         resolved codes, and their statistics if successful. Null otherwise.
+     */
+    public StillFaceImportStatAccumulator insertImport(StillFaceImport importData, Collection<StillFaceData> data){
+        List<StillFaceData> resolved = new ArrayList<>(data.size());
+        for(StillFaceData d : data){
+            StillFaceCode code = resolveCode(d.getCode());
+            if(code == null){
+                return null;
+            }
+            resolved.add(d.withCode(code));
+        }
+        StillFaceImportStatAccumulator[] accumulator = new StillFaceImportStatAccumulator[1];
+        boolean inserted = inTransaction("insert import", connection -> {
+            int importID = insert(connection, this.queryBuilder.buildInsertImport(importData));
+            accumulator[0] = new StillFaceImportStatAccumulator(importID);
+            for(StillFaceData d : resolved){
+                StillFaceData row = d.withImportID(importID);
+                accumulator[0].add(row.withDataID(insert(connection, this.queryBuilder.buildInsertData(row))));
+            }
+            writeImportStats(connection.createStatement(), importID, accumulator[0].getStats(),
+                    accumulator[0].getStateStats(), accumulator[0].getTimingStats());
+        });
+        return inserted ? accumulator[0] : null;
+    }
+
     /**
      * Retrieves import data from the database and returns it as a map containing StillFaceImportData
      *
@@ -146,41 +203,37 @@ public class StillFaceDAO {
         String query = this.queryBuilder.buildSelectImportData(importID);
 
         // Initialize the map
-        IndexedCollection<StillFaceImport> importDataCollection = new ConcurrentIndexedCollection<>();
-        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.IMPORT_ID));
-        importDataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceImport.FILENAME));
-        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.YEAR));
-        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.FAMILY_ID));
-        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.PARTICIPANT_ID));
-        importDataCollection.addIndex(HashIndex.onAttribute(StillFaceImport.TAG));
-        importDataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceImport.ALIAS));
-        importDataCollection.addIndex(HashIndex.onAttribute(StillFaceImport.DATE));
+        IndexedCollection<StillFaceImport> importDataCollection = StillFaceCollectionFactory.createImportCollection();
 
         // Get the data
         try {
             //Execute the query
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            // Iterate over the results and populate the map with StillFaceImportData objects
-            while(resultSet.next()){
-                int iid = resultSet.getInt("iid");
-                String filename = resultSet.getString("filename");
-                int year = resultSet.getInt("syear");
-                int familyID = resultSet.getInt("fid");
-                int participantNumber = resultSet.getInt("pid");
-                int tid = resultSet.getInt("tid");
-                String tValue = resultSet.getString("value");
-                String alias = resultSet.getString("alias");
-                if(alias.equals("")){
-                    alias = "none";
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                // Iterate over the results and populate the map with StillFaceImportData objects
+                while(resultSet.next()){
+                    int iid = resultSet.getInt("iid");
+                    String filename = resultSet.getString("filename");
+                    int year = resultSet.getInt("syear");
+                    int familyID = resultSet.getInt("fid");
+                    int participantNumber = resultSet.getInt("pid");
+                    int tid = resultSet.getInt("tid");
+                    String tValue = resultSet.getString("value");
+                    String alias = resultSet.getString("alias");
+                    if(alias.equals("")){
+                        alias = "none";
+                    }
+                    Date date = resultSet.getDate("date");
+                    importDataCollection.add(new StillFaceImport(iid, filename, year, familyID, participantNumber,
+                            this.registry.tag(tid, tValue), alias, date));
                 }
-                Date date = resultSet.getDate("date");
-                importDataCollection.add(new StillFaceImport(iid, filename, year, familyID, participantNumber,
-                        new StillFaceTag(tid, tValue), alias, date));
+                return importDataCollection;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return importDataCollection;
         }
         catch (SQLException e){
             logger.severe("Could not get import data: " + e.getMessage());
@@ -204,10 +257,14 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.executeUpdate();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.executeUpdate();
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to update import data: " + e.getMessage());
@@ -224,15 +281,28 @@ public class StillFaceDAO {
     public boolean cleanImportData(int importID){
         String queryI = this.queryBuilder.buildDeleteImport(importID);
         String queryD = this.queryBuilder.buildDeleteCodeDataFromImport(importID);
+        String queryS = this.queryBuilder.buildDeleteImportStats(importID);
+        String queryT = this.queryBuilder.buildDeleteStateStats(importID);
+        String queryM = this.queryBuilder.buildDeleteTimingStats(importID);
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(queryD);
-            statement.executeUpdate();
-            statement = this.databaseConnection.getConnection().prepareStatement(queryI);
-            statement.executeUpdate();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(queryS);
+                statement.executeUpdate();
+                statement = this.databaseConnection.getConnection().prepareStatement(queryT);
+                statement.executeUpdate();
+                statement = this.databaseConnection.getConnection().prepareStatement(queryM);
+                statement.executeUpdate();
+                statement = this.databaseConnection.getConnection().prepareStatement(queryD);
+                statement.executeUpdate();
+                statement = this.databaseConnection.getConnection().prepareStatement(queryI);
+                statement.executeUpdate();
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to update import data: " + e.getMessage());
@@ -246,49 +316,40 @@ public class StillFaceDAO {
      *
      * @param data The populated data object
      *
-     * @return The newly generated key if successful. -1 otherwise.
+     * @return A copy of the data object with the newly generated key and the code stored in the database if
+     *         successful. Null otherwise.
      */
-    public int insertCodeData(StillFaceData data){
-        // Verify the code (cid) is valid. If not create a new entry
-        boolean exists = false;
-        Query<StillFaceCode> codeQuery = equal(StillFaceCode.NAME, data.getCode().getName());
-        StillFaceModel.getInstance().lockDatabaseConnection();
-        for(StillFaceCode code : StillFaceModel.getInstance().getCodeCollection().retrieve(codeQuery)){
-            exists = true;
-            data.getCode().setCodeID(code.getCodeID());
-            break;
-        }
-        if(!exists){
-            // Insert the new value into the DB
-            int key = insertNewCode(data.getCode());
-            if(key < 0){
-                logger.severe("Failed to create new code entry for unknown code");
-                return -1;
-            }
-            data.getCode().setCodeID(key);
+    public StillFaceData insertCodeData(StillFaceData data){
+        StillFaceCode code = resolveCode(data.getCode());
+        if(code == null){
+            return null;
         }
-        StillFaceModel.getInstance().unlockDatabaseConnection();
+        StillFaceData resolved = data.withCode(code);
 
         // Create the query
-        String query = this.queryBuilder.buildInsertData(data);
+        String query = this.queryBuilder.buildInsertData(resolved);
 
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection()
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            statement.execute();
-            ResultSet resultSet = statement.getGeneratedKeys();
-            int generatedKey = -1;
-            while(resultSet.next()){
-                generatedKey = resultSet.getInt(1);
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection()
+                        .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+                statement.execute();
+                ResultSet resultSet = statement.getGeneratedKeys();
+                int generatedKey = -1;
+                while(resultSet.next()){
+                    generatedKey = resultSet.getInt(1);
+                }
+                return (generatedKey < 0) ? null : resolved.withDataID(generatedKey);
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return generatedKey;
         }
         catch(SQLException e){
             logger.severe("Unable to insert code data: " + e.getMessage());
-            return -1;
+            return null;
         }
     }
 
@@ -302,37 +363,187 @@ public class StillFaceDAO {
      * @return A map of integer data ID, StillFaceCodeData object pairs if the query succeeds. Null otherwise.
      */
     public IndexedCollection<StillFaceData> getCodeDataFromImport(int importID){
+        return getCodeDataFromImport(importID, PersistenceMode.HEAP);
+    }
+
+    /**
+     * Retrieves coded video data for Still face based on the import associated with the data, storing it in a
+     * collection with the provided persistence mode. If 0 is provided, all available code data is returned.
+     *
+     * @param importID The id of the import whose data we want to retrieve
+     * @param mode Where the entries of the returned collection are stored (see StillFaceCollectionFactory)
+     *
+     * @return A map of integer data ID, StillFaceCodeData object pairs if the query succeeds. Null otherwise.
+     */
+    public IndexedCollection<StillFaceData> getCodeDataFromImport(int importID, PersistenceMode mode){
         // Create the query
         String query = this.queryBuilder.buildSelectCodeDataFromImport(importID);
 
         // Prepare an indexed collection of StillFaceCodeData
-        IndexedCollection<StillFaceData> dataCollection = new ConcurrentIndexedCollection<>();
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.DATA_ID));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.IMPORT_ID));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.TIME));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.DURATION));
-        dataCollection.addIndex(HashIndex.onAttribute(StillFaceData.CODE));
-        dataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceData.COMMENT));
+        IndexedCollection<StillFaceData> dataCollection = StillFaceCollectionFactory.createDataCollection(mode,
+                StillFaceConfig.getInstance().getAsString("model.persistence.file"));
+        if(dataCollection == null){
+            return null;
+        }
+
+        // Execute the query. The entries are added in one batch, since off-heap and disk collections write each
+        // call to add in its own transaction.
+        List<StillFaceData> dataList = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int dataID = resultSet.getInt("did");
+                    int iid = resultSet.getInt("iid");
+                    int time = resultSet.getInt("time");
+                    int duration = resultSet.getInt("duration");
+                    int codeID = resultSet.getInt("cid");
+                    String comment = resultSet.getString("comment");
+                    String codeName = resultSet.getString("name");
+                    int codeDelimiter = resultSet.getInt("delimiter");
+                    dataList.add(new StillFaceData(dataID, iid, time, duration,
+                            this.registry.code(codeID, codeName, codeDelimiter), comment));
+                }
+                dataCollection.addAll(dataList);
+                return dataCollection;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve code data: " + e.getMessage());
+            StillFaceCollectionFactory.releaseDataCollection(dataCollection);
+            return null;
+        }
+    }
+
+
+    /**
+     * Retrieves the coded video data of a single import as a plain list ordered by time. Unlike
+     * getCodeDataFromImport, no indexes are built for the result, which makes this the cheaper option when the
+     * entries of one import are loaded on demand.
+     *
+     * @param importID The id of the import whose data we want to retrieve. Cannot be 0.
+     *
+     * @return A list of StillFaceData objects ordered by time and data ID if the query succeeds. Null otherwise.
+     */
+    public List<StillFaceData> getCodeDataListFromImport(int importID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectOrderedCodeDataFromImport(importID);
+
+        // Execute the query
+        List<StillFaceData> dataList = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int dataID = resultSet.getInt("did");
+                    int iid = resultSet.getInt("iid");
+                    int time = resultSet.getInt("time");
+                    int duration = resultSet.getInt("duration");
+                    int codeID = resultSet.getInt("cid");
+                    String comment = resultSet.getString("comment");
+                    String codeName = resultSet.getString("name");
+                    int codeDelimiter = resultSet.getInt("delimiter");
+                    dataList.add(new StillFaceData(dataID, iid, time, duration,
+                            this.registry.code(codeID, codeName, codeDelimiter), comment));
+                }
+                return dataList;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve code data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the coded video data added after a data ID. Used to bring a StillFaceSnapshot up to date.
+     *
+     * @param dataID The high-water mark of the snapshot
+     *
+     * @return A list of StillFaceData objects ordered by data ID if the query succeeds. Null otherwise.
+     */
+    public List<StillFaceData> getCodeDataListAfter(int dataID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectCodeDataAfter(dataID);
+
+        // Execute the query
+        List<StillFaceData> dataList = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int did = resultSet.getInt("did");
+                    int iid = resultSet.getInt("iid");
+                    int time = resultSet.getInt("time");
+                    int duration = resultSet.getInt("duration");
+                    int codeID = resultSet.getInt("cid");
+                    String comment = resultSet.getString("comment");
+                    String codeName = resultSet.getString("name");
+                    int codeDelimiter = resultSet.getInt("delimiter");
+                    dataList.add(new StillFaceData(did, iid, time, duration,
+                            this.registry.code(codeID, codeName, codeDelimiter), comment));
+                }
+                return dataList;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve code data: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the coded video data matching an example entry. Fields of the example that are 0 or null match
+     * anything, so only the columns that are set become conditions of the query.
+     *
+     * @param importIDs The imports whose data we want to retrieve, or null to search every import. Cannot be empty.
+     * @param example The entry the returned entries must match. The code, if set, is matched by its code ID.
+     *
+     * @return A list of StillFaceData objects ordered by data ID if the query succeeds. Null otherwise.
+     */
+    public List<StillFaceData> getCodeDataListByExample(Collection<Integer> importIDs, StillFaceData example){
+        // Create the query
+        String query = this.queryBuilder.buildSelectCodeDataByExample(importIDs, example);
 
         // Execute the query
+        List<StillFaceData> dataList = new ArrayList<>();
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            while(resultSet.next()){
-                int dataID = resultSet.getInt("did");
-                int iid = resultSet.getInt("iid");
-                int time = resultSet.getInt("time");
-                int duration = resultSet.getInt("duration");
-                int codeID = resultSet.getInt("cid");
-                String comment = resultSet.getString("comment");
-                String codeName = resultSet.getString("name");
-                int codeDelimiter = resultSet.getInt("delimiter");
-                dataCollection.add(new StillFaceData(dataID, iid, time, duration,
-                        new StillFaceCode(codeID, codeName, codeDelimiter), comment));
-            }
-            this.closeConnection();
-            return dataCollection;
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int did = resultSet.getInt("did");
+                    int iid = resultSet.getInt("iid");
+                    int time = resultSet.getInt("time");
+                    int duration = resultSet.getInt("duration");
+                    int codeID = resultSet.getInt("cid");
+                    String comment = resultSet.getString("comment");
+                    String codeName = resultSet.getString("name");
+                    int codeDelimiter = resultSet.getInt("delimiter");
+                    dataList.add(new StillFaceData(did, iid, time, duration,
+                            this.registry.code(codeID, codeName, codeDelimiter), comment));
+                }
+                return dataList;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to retrieve code data: " + e.getMessage());
@@ -340,6 +551,87 @@ public class StillFaceDAO {
         }
     }
 
+    /**
+     * Computes a checksum of the coded video data up to a data ID. The checksum is aggregated per import by the
+     * database server, so only one row per import is transferred. Used to validate a StillFaceSnapshot.
+     *
+     * @param dataID The largest data ID to include
+     *
+     * @return The checksum of the entries if the query succeeds. Null otherwise.
+     */
+    public StillFaceSnapshot.Checksum getCodeDataChecksum(int dataID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectCodeDataChecksum(dataID, this.databaseConnection.getMode());
+
+        // Execute the query
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                StillFaceSnapshot.Checksum checksum = new StillFaceSnapshot.Checksum();
+                while(resultSet.next()){
+                    checksum.put(resultSet.getInt("iid"), new long[]{resultSet.getLong("entries"),
+                            resultSet.getLong("max_did"), resultSet.getLong("time_sum"),
+                            resultSet.getLong("duration_sum"), resultSet.getLong("cid_sum"),
+                            resultSet.getLong("time_weighted"),
+                            resultSet.getLong("duration_weighted"), resultSet.getLong("cid_weighted"),
+                            resultSet.getLong("comments"), resultSet.getLong("comment_weighted")});
+                }
+                return checksum;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to compute code data checksum: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves coded video data for Still face into a columnar StillFaceEventStore. No StillFaceData objects are
+     * created while reading the result set, which keeps the memory needed to load the whole sf_data table close to
+     * the size of the store itself. If 0 is provided, all available code data is returned.
+     *
+     * @param importID The id of the import whose data we want to retrieve
+     *
+     * @return A StillFaceEventStore holding the entries if the query succeeds. Null otherwise.
+     */
+    public StillFaceEventStore getEventStore(int importID){
+        // Create the query. Entries are read in data ID order so that entries with the same time end up in data ID
+        // order within their segment.
+        String query = this.queryBuilder.buildSelectCodeDataFromImportOrderedByID(importID);
+
+        // Execute the query
+        StillFaceEventStore.Builder builder = new StillFaceEventStore.Builder();
+        Set<Integer> codeIDs = new HashSet<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int codeID = resultSet.getInt("cid");
+                    builder.add(resultSet.getInt("did"), resultSet.getInt("iid"), resultSet.getInt("time"),
+                            resultSet.getInt("duration"), codeID, resultSet.getString("comment"));
+                    if(codeIDs.add(codeID)){
+                        builder.registerCode(this.registry.code(codeID, resultSet.getString("name"),
+                                resultSet.getInt("delimiter")));
+                    }
+                }
+                return builder.build();
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve code data: " + e.getMessage());
+            return null;
+        }
+    }
 
     /**
      * Retrieves coded video data for entries that share a common family id. If 0 is provided, all available code data
@@ -354,33 +646,32 @@ public class StillFaceDAO {
         String query = this.queryBuilder.buildSelectCodeDataFromFamilyID(familyID);
 
         // Prepare an indexed collection of StillFaceCodeData
-        IndexedCollection<StillFaceData> dataCollection = new ConcurrentIndexedCollection<>();
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.DATA_ID));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.IMPORT_ID));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.TIME));
-        dataCollection.addIndex(NavigableIndex.onAttribute(StillFaceData.DURATION));
-        dataCollection.addIndex(HashIndex.onAttribute(StillFaceData.CODE));
-        dataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceData.COMMENT));
+        IndexedCollection<StillFaceData> dataCollection =
+                StillFaceCollectionFactory.createDataCollection(PersistenceMode.HEAP, null);
 
         // Execute the query
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            while(resultSet.next()){
-                int dataID = resultSet.getInt("did");
-                int iid = resultSet.getInt("iid");
-                int time = resultSet.getInt("time");
-                int duration = resultSet.getInt("duration");
-                int codeID = resultSet.getInt("cid");
-                String comment = resultSet.getString("comment");
-                String codeName = resultSet.getString("name");
-                int codeDelimiter = resultSet.getInt("delimiter");
-                dataCollection.add(new StillFaceData(dataID, iid, time, duration,
-                        new StillFaceCode(codeID, codeName, codeDelimiter), comment));
-            }
-            this.closeConnection();
-            return dataCollection;
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int dataID = resultSet.getInt("did");
+                    int iid = resultSet.getInt("iid");
+                    int time = resultSet.getInt("time");
+                    int duration = resultSet.getInt("duration");
+                    int codeID = resultSet.getInt("cid");
+                    String comment = resultSet.getString("comment");
+                    String codeName = resultSet.getString("name");
+                    int codeDelimiter = resultSet.getInt("delimiter");
+                    dataCollection.add(new StillFaceData(dataID, iid, time, duration,
+                            this.registry.code(codeID, codeName, codeDelimiter), comment));
+                }
+                return dataCollection;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to retrieve code data: " + e.getMessage());
@@ -402,10 +693,14 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.executeUpdate();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.executeUpdate();
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to update code data: " + e.getMessage());
@@ -413,6 +708,37 @@ public class StillFaceDAO {
         }
     }
 
+    /**
+     * Updates several video data entries in one transaction, along with the statistics of the imports they belong
+     * to. Either every entry and its import statistics are written, or nothing is.
+     *
+     * @param data The video data entries to update
+     * @return True if the update succeeded, false otherwise
+     */
+    public boolean updateCodeData(Collection<StillFaceData> data){
+        Set<Integer> importIDs = new TreeSet<>();
+        for(StillFaceData d : data){
+            importIDs.add(d.getImportID());
+        }
+        return inTransaction("update code data", connection -> {
+            Statement statement = connection.createStatement();
+            for(StillFaceData d : data){
+                statement.addBatch(this.queryBuilder.buildUpdateCodeData(d));
+            }
+            statement.executeBatch();
+            // Recompute the statistics from the entries as they now are in the transaction
+            for(int importID : importIDs){
+                List<StillFaceData> rows = new ArrayList<>();
+                ResultSet resultSet = statement.executeQuery(
+                        this.queryBuilder.buildSelectOrderedCodeDataFromImport(importID));
+                while(resultSet.next()){
+                    rows.add(readCodeData(resultSet));
+                }
+                writeImportStats(statement, importID, rows);
+            }
+        });
+    }
+
 
     /**
      * Creates a new entry for a code type in the database
@@ -428,16 +754,20 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection()
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            statement.execute();
-            ResultSet resultSet = statement.getGeneratedKeys();
-            int generatedKey = -1;
-            while(resultSet.next()){
-                generatedKey = resultSet.getInt(1);
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection()
+                        .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+                statement.execute();
+                ResultSet resultSet = statement.getGeneratedKeys();
+                int generatedKey = -1;
+                while(resultSet.next()){
+                    generatedKey = resultSet.getInt(1);
+                }
+                return generatedKey;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return generatedKey;
         }
         catch(SQLException e){
             logger.severe("Unable to insert new code: " + e.getMessage());
@@ -457,23 +787,25 @@ public class StillFaceDAO {
         String query = this.queryBuilder.buildSelectCode(codeID);
 
         // Prepare the map
-        IndexedCollection<StillFaceCode> codeCollection = new ConcurrentIndexedCollection<>();
-        codeCollection.addIndex(NavigableIndex.onAttribute(StillFaceCode.CODE_ID));
-        codeCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceCode.NAME));
+        IndexedCollection<StillFaceCode> codeCollection = StillFaceCollectionFactory.createCodeCollection();
 
         // Execute the query
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            while(resultSet.next()){
-                int cid = resultSet.getInt("cid");
-                String name = resultSet.getString("name");
-                int delimiter = resultSet.getInt("delimiter");
-                codeCollection.add(new StillFaceCode(cid, name, delimiter));
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int cid = resultSet.getInt("cid");
+                    String name = resultSet.getString("name");
+                    int delimiter = resultSet.getInt("delimiter");
+                    codeCollection.add(this.registry.code(cid, name, delimiter));
+                }
+                return codeCollection;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return codeCollection;
         }
         catch(SQLException e){
             logger.severe("Unable to retrieve code: " + e.getMessage());
@@ -495,10 +827,16 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.executeUpdate();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.executeUpdate();
+                // Update the shared instance so every entry using the code sees the change
+                this.registry.code(code);
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to update code: " + e.getMessage());
@@ -506,6 +844,33 @@ public class StillFaceDAO {
         }
     }
 
+    /**
+     * Stores a protocol in the delimiters of the codes, in one transaction. Codes that are boundaries of the protocol
+     * get their position in it as their delimiter, and every other code gets 0. The import statistics depend on the
+     * protocol, so they should be rebuilt afterwards (see rebuildImportStats).
+     *
+     * @param protocol The protocol to store
+     * @param codes Every code in the database
+     * @return True if successful. False otherwise.
+     */
+    public boolean updateProtocol(StillFaceProtocol protocol, Collection<StillFaceCode> codes){
+        List<StillFaceCode> changed = protocol.getChangedCodes(codes);
+        boolean success = inTransaction("update protocol", connection -> {
+            Statement statement = connection.createStatement();
+            for(StillFaceCode code : changed){
+                statement.addBatch(this.queryBuilder.buildUpdateCode(code));
+            }
+            statement.executeBatch();
+        });
+        if(success){
+            // Update the shared instances so every entry using the codes sees the change
+            for(StillFaceCode code : changed){
+                this.registry.code(code);
+            }
+        }
+        return success;
+    }
+
     /**
      * Deletes an existing code entry in the database
      *
@@ -520,10 +885,15 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.execute();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.execute();
+                this.registry.removeCode(code.getCodeID());
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to delete code: " + e.getMessage());
@@ -546,16 +916,20 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection()
-                    .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
-            statement.execute();
-            ResultSet resultSet = statement.getGeneratedKeys();
-            int generatedKey = -1;
-            while(resultSet.next()){
-                generatedKey = resultSet.getInt(1);
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection()
+                        .prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+                statement.execute();
+                ResultSet resultSet = statement.getGeneratedKeys();
+                int generatedKey = -1;
+                while(resultSet.next()){
+                    generatedKey = resultSet.getInt(1);
+                }
+                return generatedKey;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return generatedKey;
         }
         catch(SQLException e){
             logger.severe("Unable to insert new tag: " + e.getMessage());
@@ -575,22 +949,24 @@ public class StillFaceDAO {
         String query = this.queryBuilder.buildSelectTag(tagID);
 
         // Prepare the map
-        IndexedCollection<StillFaceTag> tagCollection = new ConcurrentIndexedCollection<>();
-        tagCollection.addIndex(NavigableIndex.onAttribute(StillFaceTag.TAG_ID));
-        tagCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceTag.TAG_VALUE));
+        IndexedCollection<StillFaceTag> tagCollection = StillFaceCollectionFactory.createTagCollection();
 
         // Execute the query
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            ResultSet resultSet = statement.executeQuery(query);
-            while(resultSet.next()){
-                int tid = resultSet.getInt("tid");
-                String value = resultSet.getString("value");
-                tagCollection.add(new StillFaceTag(tid, value));
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    int tid = resultSet.getInt("tid");
+                    String value = resultSet.getString("value");
+                    tagCollection.add(this.registry.tag(tid, value));
+                }
+                return tagCollection;
+            }
+            finally{
+                this.closeConnection();
             }
-            this.closeConnection();
-            return tagCollection;
         }
         catch(SQLException e){
             logger.severe("Unable to retrieve tag information: " + e.getMessage());
@@ -612,10 +988,16 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.executeUpdate();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.executeUpdate();
+                // Update the shared instance so every import using the tag sees the change
+                this.registry.tag(tag);
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to update tag: " + e.getMessage());
@@ -637,10 +1019,15 @@ public class StillFaceDAO {
         // Execute the query
         try{
             this.openConnection();
-            PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
-            statement.execute();
-            this.closeConnection();
-            return true;
+            try{
+                PreparedStatement statement = this.databaseConnection.getConnection().prepareStatement(query);
+                statement.execute();
+                this.registry.removeTag(tag.getTagID());
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to delete tag: " + e.getMessage());
@@ -648,25 +1035,256 @@ public class StillFaceDAO {
         }
     }
 
+    /**
+     * Writes the statistics of a newly imported set of entries to the sf_import_stats, sf_state_stats and
+     * sf_timing_stats tables, replacing any statistics the import already had, in one transaction.
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import, with their codes resolved
+     * @return True if the statistics were written, false otherwise
+     */
+    public boolean insertImportStats(int importID, Collection<StillFaceData> data){
+        return inTransaction("insert import statistics",
+                connection -> writeImportStats(connection.createStatement(), importID, data));
+    }
+
+    /**
+     * Retrieves the statistics of an import from the sf_import_stats table. If 0 is provided, the statistics of all
+     * imports are returned.
+     *
+     * @param importID The id of the import whose statistics we want to retrieve
+     *
+     * @return A list of StillFaceImportStat objects ordered by import, segment and code if the query succeeds. Null
+     *         otherwise.
+     */
+    public List<StillFaceImportStat> getImportStats(int importID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectImportStats(importID);
+
+        // Execute the query
+        List<StillFaceImportStat> stats = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    stats.add(new StillFaceImportStat(resultSet.getInt("iid"), resultSet.getInt("segment"),
+                            resultSet.getInt("cid"), resultSet.getInt("count"), resultSet.getInt("total_duration"),
+                            resultSet.getInt("first_time"), resultSet.getInt("last_time")));
+                }
+                return stats;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve import statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the state statistics of an import from the sf_state_stats table. If 0 is provided, the state
+     * statistics of all imports are returned.
+     *
+     * @param importID The id of the import whose state statistics we want to retrieve
+     *
+     * @return A list of StillFaceStateStat objects ordered by import, segment and code if the query succeeds. Null
+     *         otherwise.
+     */
+    public List<StillFaceStateStat> getStateStats(int importID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectStateStats(importID);
+
+        // Execute the query
+        List<StillFaceStateStat> stats = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    stats.add(new StillFaceStateStat(resultSet.getInt("iid"), resultSet.getInt("segment"),
+                            resultSet.getInt("cid"), resultSet.getInt("state_time"), resultSet.getInt("episodes")));
+                }
+                return stats;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve state statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the timing statistics of an import from the sf_timing_stats table. If 0 is provided, the timing
+     * statistics of all imports are returned. Rows with an unknown metric are skipped.
+     *
+     * @param importID The id of the import whose timing statistics we want to retrieve
+     *
+     * @return A list of StillFaceTimingStat objects ordered by import, segment, code and metric if the query
+     *         succeeds. Null otherwise.
+     */
+    public List<StillFaceTimingStat> getTimingStats(int importID){
+        // Create the query
+        String query = this.queryBuilder.buildSelectTimingStats(importID);
+
+        // Execute the query
+        List<StillFaceTimingStat> stats = new ArrayList<>();
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                ResultSet resultSet = statement.executeQuery(query);
+                while(resultSet.next()){
+                    StillFaceTimingMetric metric;
+                    try{
+                        metric = StillFaceTimingMetric.valueOf(resultSet.getString("metric").trim());
+                    }
+                    catch(IllegalArgumentException e){
+                        logger.warning("Skipping timing statistic with unknown metric " +
+                                resultSet.getString("metric"));
+                        continue;
+                    }
+                    stats.add(new StillFaceTimingStat(resultSet.getInt("iid"), resultSet.getInt("segment"),
+                            resultSet.getInt("cid"), metric, resultSet.getString("sketch")));
+                }
+                return stats;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to retrieve timing statistics: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Recomputes the statistics of every import from the sf_data table. Needed whenever different codes are chosen as
+     * delimiters, since the delimiters decide which segment each entry belongs to, and whenever the code groups
+     * change, since the groups decide which codes are states. The imports are rebuilt a batch at a time, each batch
+     * in its own transaction, so that the rebuild never holds locks on the whole sf_data table or keeps more than one
+     * batch of entries in memory. Every import is rebuilt as a whole, so its statistics always match each other. If
+     * a batch fails, the imports of the batches before it keep their new statistics and the rest keep their old ones.
+     *
+     * @return True if the statistics of every import were rebuilt, false otherwise
+     */
+    public boolean rebuildImportStats(){
+        IndexedCollection<StillFaceImport> importData = getImportData(0);
+        if(importData == null){
+            logger.severe("Unable to rebuild import statistics: the imports could not be read");
+            return false;
+        }
+        List<Integer> importIDs = new ArrayList<>();
+        for(StillFaceImport i : importData){
+            importIDs.add(i.getImportID());
+        }
+        importIDs.sort(null);
+        for(int start = 0; start < importIDs.size(); start += IMPORTS_PER_REBUILD_TRANSACTION){
+            List<Integer> batch = importIDs.subList(start,
+                    Math.min(start + IMPORTS_PER_REBUILD_TRANSACTION, importIDs.size()));
+            if(!inTransaction("rebuild import statistics", connection -> rebuildImportStats(connection, batch))){
+                logger.warning("Rebuilt the statistics of " + start + " of " + importIDs.size() +
+                        " imports before failing");
+                return false;
+            }
+        }
+        logger.info("Rebuilt the statistics of " + importIDs.size() + " imports");
+        return true;
+    }
+
+    /**
+     * Recomputes the statistics of a batch of imports. Must be called inside a transaction.
+     *
+     * @param connection The connection the transaction runs on
+     * @param importIDs The IDs of the imports, in ascending order
+     */
+    private void rebuildImportStats(Connection connection, List<Integer> importIDs) throws SQLException{
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(this.queryBuilder.buildSelectCodeDataOrderedByImport(
+                importIDs.get(0), importIDs.get(importIDs.size() - 1)));
+        Map<Integer, List<StillFaceData>> rows = new HashMap<>();
+        while(resultSet.next()){
+            StillFaceData d = readCodeData(resultSet);
+            rows.computeIfAbsent(d.getImportID(), k -> new ArrayList<>()).add(d);
+        }
+        resultSet.close();
+        for(int importID : importIDs){
+            List<StillFaceData> data = rows.get(importID);
+            writeImportStats(statement, importID, (data != null) ? data : new ArrayList<>());
+        }
+    }
+
+    /**
+     * Checks that the sf_import_stats, sf_state_stats and sf_timing_stats tables exist. Databases created before the
+     * tables were introduced do not have them, in which case the missing tables are created and every statistic is
+     * rebuilt from the sf_data table.
+     *
+     * @param mode The mode of the database
+     * @return True if the tables exist or were created and filled, false otherwise
+     */
+    public boolean initializeImportStats(DatabaseMode mode){
+        boolean created = false;
+        if(!tableExists("sf_import_stats")){
+            logger.info("Import statistics table not found. Creating it.");
+            if(!createTable(this.queryBuilder.buildCreateSFImportStatsTable(mode), "import statistics")){
+                return false;
+            }
+            created = true;
+        }
+        if(!tableExists("sf_state_stats")){
+            logger.info("State statistics table not found. Creating it.");
+            if(!createTable(this.queryBuilder.buildCreateSFStateStatsTable(mode), "state statistics")){
+                return false;
+            }
+            created = true;
+        }
+        if(!tableExists("sf_timing_stats")){
+            logger.info("Timing statistics table not found. Creating it.");
+            if(!createTable(this.queryBuilder.buildCreateSFTimingStatsTable(mode), "timing statistics")){
+                return false;
+            }
+            created = true;
+        }
+        return !created || rebuildImportStats();
+    }
+
     public boolean createTables(DatabaseMode mode){
         // Initialize all the queries
         String createImportTableQuery = this.queryBuilder.buildCreateSFImportTable(mode);
         String createDataTableQuery = this.queryBuilder.buildCreateSFDataTable(mode);
         String createCodeTableQuery = this.queryBuilder.buildCreateSFCodesTable(mode);
         String createTagTableQuery = this.queryBuilder.buildCreateSFTagsTable(mode);
+        String createStatsTableQuery = this.queryBuilder.buildCreateSFImportStatsTable(mode);
+        String createStateStatsTableQuery = this.queryBuilder.buildCreateSFStateStatsTable(mode);
+        String createTimingStatsTableQuery = this.queryBuilder.buildCreateSFTimingStatsTable(mode);
 
         // Execute the queries
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            statement.executeUpdate(createImportTableQuery);
-            statement.executeUpdate(createDataTableQuery);
-            statement.executeUpdate(createCodeTableQuery);
-            statement.executeUpdate(createTagTableQuery);
-            this.closeConnection();
-            // Now we need to pre-populate the table with codes and tags
-            populateCodesAndTags();
-            return true;
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                statement.executeUpdate(createImportTableQuery);
+                statement.executeUpdate(createDataTableQuery);
+                statement.executeUpdate(createCodeTableQuery);
+                statement.executeUpdate(createTagTableQuery);
+                statement.executeUpdate(createStatsTableQuery);
+                statement.executeUpdate(createStateStatsTableQuery);
+                statement.executeUpdate(createTimingStatsTableQuery);
+                // Now we need to pre-populate the table with codes and tags
+                populateCodesAndTags();
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to create database table: " + e.getMessage());
@@ -682,19 +1300,29 @@ public class StillFaceDAO {
         // Initialize all the queries
         String dropImportTableQuery = this.queryBuilder.buildDropSFImportTable();
         String dropDataTableQuery = this.queryBuilder.buildDropSFDataTable();
+        String dropStatsTableQuery = this.queryBuilder.buildDropSFImportStatsTable();
+        String dropStateStatsTableQuery = this.queryBuilder.buildDropSFStateStatsTable();
+        String dropTimingStatsTableQuery = this.queryBuilder.buildDropSFTimingStatsTable();
         //String dropCodeTableQuery = this.queryBuilder.buildDropSFCodesTable();
         //String dropTagTableQuery = this.queryBuilder.buildDropSFTagsTable();
 
         // Execute the queries
         try{
             this.openConnection();
-            Statement statement = this.databaseConnection.getConnection().createStatement();
-            statement.executeUpdate(dropImportTableQuery);
-            statement.executeUpdate(dropDataTableQuery);
-            //statement.executeUpdate(dropCodeTableQuery);
-            //statement.executeUpdate(dropTagTableQuery);
-            this.closeConnection();
-            return true;
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                statement.executeUpdate(dropImportTableQuery);
+                statement.executeUpdate(dropDataTableQuery);
+                statement.executeUpdate(dropStatsTableQuery);
+                statement.executeUpdate(dropStateStatsTableQuery);
+                statement.executeUpdate(dropTimingStatsTableQuery);
+                //statement.executeUpdate(dropCodeTableQuery);
+                //statement.executeUpdate(dropTagTableQuery);
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch(SQLException e){
             logger.severe("Unable to drop database table: " + e.getMessage());
@@ -703,12 +1331,197 @@ public class StillFaceDAO {
     }
 
 
+    /**
+     * Replaces the statistics, state statistics and timing statistics of an import with ones computed from its
+     * entries. Must be called inside a transaction.
+     */
+    private void writeImportStats(Statement statement, int importID, Collection<StillFaceData> data)
+            throws SQLException{
+        writeImportStats(statement, importID, StillFaceImportStat.compute(importID, data),
+                StillFaceStateStat.compute(importID, data), StillFaceTimingStat.compute(importID, data));
+    }
+
+    /**
+     * Replaces the statistics, state statistics and timing statistics of an import with ones that were already
+     * computed, e.g. by a StillFaceImportStatAccumulator. Must be called inside a transaction.
+     */
+    private void writeImportStats(Statement statement, int importID, List<StillFaceImportStat> stats,
+                                  List<StillFaceStateStat> stateStats, List<StillFaceTimingStat> timingStats)
+            throws SQLException{
+        statement.executeUpdate(this.queryBuilder.buildDeleteImportStats(importID));
+        statement.executeUpdate(this.queryBuilder.buildDeleteStateStats(importID));
+        statement.executeUpdate(this.queryBuilder.buildDeleteTimingStats(importID));
+        for(StillFaceImportStat stat : stats){
+            statement.addBatch(this.queryBuilder.buildInsertImportStat(stat));
+        }
+        for(StillFaceStateStat stat : stateStats){
+            statement.addBatch(this.queryBuilder.buildInsertStateStat(stat));
+        }
+        for(StillFaceTimingStat stat : timingStats){
+            statement.addBatch(this.queryBuilder.buildInsertTimingStat(stat));
+        }
+        statement.executeBatch();
+    }
+
+    /**
+     * Checks whether a table exists by looking it up in the metadata of the database. Derby stores unquoted names in
+     * upper case, so both spellings are looked up.
+     */
+    private boolean tableExists(String tableName){
+        try{
+            this.openConnection();
+            try{
+                DatabaseMetaData metaData = this.databaseConnection.getConnection().getMetaData();
+                for(String name : new String[]{tableName, tableName.toUpperCase()}){
+                    try(ResultSet tables = metaData.getTables(null, null, name, new String[]{"TABLE"})){
+                        if(tables.next()){
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to check whether table " + tableName + " exists: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs a CREATE TABLE statement
+     */
+    private boolean createTable(String query, String description){
+        try{
+            this.openConnection();
+            try{
+                Statement statement = this.databaseConnection.getConnection().createStatement();
+                statement.executeUpdate(query);
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to create " + description + " table: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Runs an INSERT query and returns the key it generated. Must be called inside a transaction.
+     */
+    private int insert(Connection connection, String query) throws SQLException{
+        PreparedStatement statement = connection.prepareStatement(query, Statement.RETURN_GENERATED_KEYS);
+        statement.execute();
+        ResultSet resultSet = statement.getGeneratedKeys();
+        if(!resultSet.next()){
+            throw new SQLException("No key was generated by " + query);
+        }
+        return resultSet.getInt(1);
+    }
+
+    /**
+     * Finds the code in the model with the name of the provided code. If there is none, a new entry is created in the
+     * database and added to the model, so that later entries with the same name reuse it.
+     *
+     * @param code The code to resolve
+     * @return The code as it is stored in the database, or null if a new entry could not be created
+     */
+    private StillFaceCode resolveCode(StillFaceCode code){
+        StillFaceCode resolved = null;
+        Query<StillFaceCode> codeQuery = equal(StillFaceCode.NAME, code.getName());
+        StillFaceModel.getInstance().lockDatabaseConnection();
+        for(StillFaceCode c : StillFaceModel.getInstance().getCodeCollection().retrieve(codeQuery)){
+            resolved = c;
+            break;
+        }
+        if(resolved == null){
+            // Insert the new value into the DB
+            int key = insertNewCode(code);
+            if(key < 0){
+                logger.severe("Failed to create new code entry for unknown code");
+                StillFaceModel.getInstance().unlockDatabaseConnection();
+                return null;
+            }
+            resolved = this.registry.code(key, code.getName(), code.getDelimiterIndex());
+            // Make the new code visible to the model so later entries with the same name reuse it
+            StillFaceModel.getInstance().addCode(resolved);
+        }
+        StillFaceModel.getInstance().unlockDatabaseConnection();
+        return resolved;
+    }
+
+    /**
+     * Reads the video data entry at the current row of a result set from one of the code data queries
+     */
+    private StillFaceData readCodeData(ResultSet resultSet) throws SQLException{
+        int did = resultSet.getInt("did");
+        int iid = resultSet.getInt("iid");
+        int time = resultSet.getInt("time");
+        int duration = resultSet.getInt("duration");
+        int codeID = resultSet.getInt("cid");
+        String comment = resultSet.getString("comment");
+        String codeName = resultSet.getString("name");
+        int codeDelimiter = resultSet.getInt("delimiter");
+        return new StillFaceData(did, iid, time, duration, this.registry.code(codeID, codeName, codeDelimiter), comment);
+    }
+
+    /**
+     * Work that is done inside a database transaction
+     */
+    private interface Transaction {
+        void run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * Runs work inside a transaction on the connection of this DAO. The transaction is committed if the work
+     * completes and rolled back if it throws.
+     *
+     * @param description What the work does, for the log
+     * @param work The work to run
+     * @return True if the transaction was committed, false otherwise
+     */
+    private boolean inTransaction(String description, Transaction work){
+        try{
+            this.openConnection();
+            try{
+                Connection connection = this.databaseConnection.getConnection();
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                try{
+                    work.run(connection);
+                    connection.commit();
+                }
+                catch(SQLException e){
+                    connection.rollback();
+                    throw e;
+                }
+                finally{
+                    connection.setAutoCommit(autoCommit);
+                }
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
+        }
+        catch(SQLException e){
+            logger.severe("Unable to " + description + ": " + e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * Opens a database connection to this DAO's associated database. If unsuccessful, it will throw an SQLException
      *
      * @throws SQLException
      */
-    public void openConnection() throws SQLException{
+    public synchronized void openConnection() throws SQLException{
         if(!this.databaseConnection.connectionIsEstablished()){
             try{
                 this.databaseConnection.establish();
@@ -718,15 +1531,20 @@ public class StillFaceDAO {
                 throw e;
             }
         }
+        this.connectionUsers++;
     }
 
     /**
-     * Closes a database connection to this DAO's associated database. If unsuccessful, it will throw an SQLException
+     * Closes a database connection to this DAO's associated database. If unsuccessful, it will throw an SQLException.
+     * The connection stays open while it is locked or while another call that opened it has not closed it yet.
      *
      * @throws SQLException
      */
-    public void closeConnection() throws SQLException{
-        if(this.databaseConnection.connectionIsEstablished() && !this.connectionLocked){
+    public synchronized void closeConnection() throws SQLException{
+        if(this.connectionUsers > 0){
+            this.connectionUsers--;
+        }
+        if(this.databaseConnection.connectionIsEstablished() && this.connectionLocks == 0 && this.connectionUsers == 0){
             try{
                 this.databaseConnection.close();
             }
@@ -741,16 +1559,19 @@ public class StillFaceDAO {
      * Prevents the database connection for this DAO to be closed once established. This means that calls to this
      * object's closeConnection() method will do nothing.
      */
-    public void lockConnection(){
-        this.connectionLocked = true;
+    public synchronized void lockConnection(){
+        this.connectionLocks++;
     }
 
     /**
      * Unlocks the database connection and allows it to be closed after being established. This means that calls to
-     * this object's closeConnection() method will attempt to close the database connection.
+     * this object's closeConnection() method will attempt to close the database connection. Each call undoes one
+     * call to lockConnection().
      */
-    public void unlockConnection(){
-        this.connectionLocked = false;
+    public synchronized void unlockConnection(){
+        if(this.connectionLocks > 0){
+            this.connectionLocks--;
+        }
     }
 
     public boolean isDatabaseInitialized(){
@@ -762,12 +1583,16 @@ public class StillFaceDAO {
 
         try{
             this.openConnection();
-            this.databaseConnection.getConnection().createStatement().executeQuery(checkImportTable);
-            this.databaseConnection.getConnection().createStatement().executeQuery(checkDataTable);
-            this.databaseConnection.getConnection().createStatement().executeQuery(checkCodesTable);
-            this.databaseConnection.getConnection().createStatement().executeQuery(checkTagsTable);
-            this.closeConnection();
-            return true;
+            try{
+                this.databaseConnection.getConnection().createStatement().executeQuery(checkImportTable);
+                this.databaseConnection.getConnection().createStatement().executeQuery(checkDataTable);
+                this.databaseConnection.getConnection().createStatement().executeQuery(checkCodesTable);
+                this.databaseConnection.getConnection().createStatement().executeQuery(checkTagsTable);
+                return true;
+            }
+            finally{
+                this.closeConnection();
+            }
         }
         catch (SQLException e){
             logger.severe("Caught exception checking database status: " + e.getMessage());
@@ -790,25 +1615,16 @@ public class StillFaceDAO {
                     continue;
                 }
                 if(state == 0){
-                    int key;
-                    if(line.startsWith("**")){
-                        key = this.insertNewCode(new StillFaceCode(line.replace("**","")));
-                        if(key > 0){
-                            this.updateExistingCode(new StillFaceCode(key, line.replace("**",
-                                    ""), 2));
-                        }
+                    // A code starting with n stars is the nth boundary of the protocol
+                    int boundary = 0;
+                    while(boundary < line.length() && line.charAt(boundary) == '*'){
+                        boundary++;
                     }
-                    else if(line.startsWith("*")){
-                        key = this.insertNewCode(new StillFaceCode(line.replace("*","")));
-                        if(key > 0){
-                            this.updateExistingCode(new StillFaceCode(key, line.replace("*",
-                                    ""), 1));
-                        }
-                    }
-                    else{
-                        key = this.insertNewCode(new StillFaceCode(line));
+                    String name = line.substring(boundary);
+                    int key = this.insertNewCode(new StillFaceCode(name));
+                    if(key > 0 && boundary > 0){
+                        this.updateExistingCode(new StillFaceCode(key, name, boundary));
                     }
-
                     if(key < 0) throw new SQLException("Failed to insert new code");
                 }
                 else{
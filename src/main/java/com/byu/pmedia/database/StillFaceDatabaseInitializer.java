@@ -78,7 +78,8 @@ public class StillFaceDatabaseInitializer {
         }
         this.dao = new StillFaceDAO(derbyDatabaseConnection);
 
-        return this.dao.isDatabaseInitialized() || this.dao.createTables(DatabaseMode.DERBY);
+        return (this.dao.isDatabaseInitialized() || this.dao.createTables(DatabaseMode.DERBY))
+                && this.dao.initializeImportStats(DatabaseMode.DERBY);
     }
 
     /**
@@ -99,7 +100,8 @@ public class StillFaceDatabaseInitializer {
         if(!user.equals("") && !password.equals("")){
             azureDatabaseConnection = new AzureDatabaseConnection(host, port, dbname, user, password);
             this.dao = new StillFaceDAO(azureDatabaseConnection);
-            return this.dao.isDatabaseInitialized() || this.dao.createTables(DatabaseMode.AZURE);
+            return (this.dao.isDatabaseInitialized() || this.dao.createTables(DatabaseMode.AZURE))
+                    && this.dao.initializeImportStats(DatabaseMode.AZURE);
         }
         else{
             return false;
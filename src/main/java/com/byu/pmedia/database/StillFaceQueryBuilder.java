@@ -14,8 +14,14 @@ package com.byu.pmedia.database;
 import com.byu.pmedia.model.StillFaceCode;
 import com.byu.pmedia.model.StillFaceData;
 import com.byu.pmedia.model.StillFaceImport;
+import com.byu.pmedia.model.StillFaceImportStat;
+import com.byu.pmedia.model.StillFaceSnapshot;
+import com.byu.pmedia.model.StillFaceStateStat;
 import com.byu.pmedia.model.StillFaceTag;
+import com.byu.pmedia.model.StillFaceTimingStat;
 
+import java.util.Collection;
+import java.util.StringJoiner;
 import java.util.logging.Logger;
 
 /**
@@ -36,6 +42,9 @@ public class StillFaceQueryBuilder {
     private final String DATA_TABLE_NAME = "sf_data";
     private final String CODES_TABLE_NAME = "sf_codes";
     private final String TAGS_TABLE_NAME = "sf_tags";
+    private final String STATS_TABLE_NAME = "sf_import_stats";
+    private final String STATE_STATS_TABLE_NAME = "sf_state_stats";
+    private final String TIMING_STATS_TABLE_NAME = "sf_timing_stats";
 
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // SELECT statements
@@ -83,6 +92,189 @@ public class StillFaceQueryBuilder {
                 "WHERE " + importIDCondition;
     }
 
+    /**
+     * Creates a query that returns the video data of a single import ordered the same way it is displayed in the
+     * data table (by time, then by data ID).
+     *
+     * @param importID The id of the import whose entries to query. Cannot pass 0.
+     * @return A string representing the query to be used to access video data in the database
+     */
+    public String buildSelectOrderedCodeDataFromImport(int importID){
+        return buildSelectCodeDataFromImport(importID) + " ORDER BY d.time, d.did";
+    }
+
+    /**
+     * Creates a query that returns video data from the database based on the provided import ID, ordered by data ID.
+     * If the developer wishes to get all data entries, simply pass 0 in as a parameter
+     *
+     * @param importID The iid of the entries to query. If 0, will return all entries
+     * @return A string representing the query to be used to access video data in the database
+     */
+    public String buildSelectCodeDataFromImportOrderedByID(int importID){
+        return buildSelectCodeDataFromImport(importID) + " ORDER BY d.did";
+    }
+
+    /**
+     * Creates a query that returns the video data entries of a range of imports ordered by import, then by time and
+     * data ID. Used to rebuild the statistics of the imports a batch at a time.
+     *
+     * @param firstImportID The smallest import ID to include. Cannot pass 0.
+     * @param lastImportID The largest import ID to include
+     * @return A string representing the query to be used to access video data in the database
+     */
+    public String buildSelectCodeDataOrderedByImport(int firstImportID, int lastImportID){
+        return "SELECT d.*, c.name, c.delimiter " +
+                "FROM " + DATA_TABLE_NAME + " d " +
+                "INNER JOIN " + CODES_TABLE_NAME + " c ON c.cid = d.cid " +
+                "WHERE d.iid BETWEEN " + firstImportID + " AND " + lastImportID + " " +
+                "ORDER BY d.iid, d.time, d.did";
+    }
+
+    /**
+     * Creates a query that returns the statistics of an import from the database. If the developer wishes to get the
+     * statistics of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose statistics to query. If 0, will return all entries
+     * @return A string representing the query to be used to access import statistics in the database
+     */
+    public String buildSelectImportStats(int importID){
+        String importIDCondition;
+        if(importID == 0){
+            importIDCondition = "iid <> 0";
+        }
+        else{
+            importIDCondition = "iid = " + importID;
+        }
+        return "SELECT * " +
+                "FROM " + STATS_TABLE_NAME + " " +
+                "WHERE " + importIDCondition + " " +
+                "ORDER BY iid, segment, cid";
+    }
+
+    /**
+     * Creates a query that returns the state statistics of an import from the database. If the developer wishes to
+     * get the state statistics of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose state statistics to query. If 0, will return all entries
+     * @return A string representing the query to be used to access state statistics in the database
+     */
+    public String buildSelectStateStats(int importID){
+        String importIDCondition;
+        if(importID == 0){
+            importIDCondition = "iid <> 0";
+        }
+        else{
+            importIDCondition = "iid = " + importID;
+        }
+        return "SELECT * " +
+                "FROM " + STATE_STATS_TABLE_NAME + " " +
+                "WHERE " + importIDCondition + " " +
+                "ORDER BY iid, segment, cid";
+    }
+
+    /**
+     * Creates a query that returns the timing statistics of an import from the database. If the developer wishes to
+     * get the timing statistics of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose timing statistics to query. If 0, will return all entries
+     * @return A string representing the query to be used to access timing statistics in the database
+     */
+    public String buildSelectTimingStats(int importID){
+        String importIDCondition;
+        if(importID == 0){
+            importIDCondition = "iid <> 0";
+        }
+        else{
+            importIDCondition = "iid = " + importID;
+        }
+        return "SELECT * " +
+                "FROM " + TIMING_STATS_TABLE_NAME + " " +
+                "WHERE " + importIDCondition + " " +
+                "ORDER BY iid, segment, cid, metric";
+    }
+
+    /**
+     * Creates a query that returns the video data added after a data ID, ordered by data ID. Used to bring a local
+     * snapshot of the sf_data table up to date.
+     *
+     * @param dataID The high-water mark of the snapshot. Only entries with a larger data ID are returned.
+     * @return A string representing the query to be used to access video data in the database
+     */
+    public String buildSelectCodeDataAfter(int dataID){
+        return "SELECT d.*, c.name, c.delimiter " +
+                "FROM " + DATA_TABLE_NAME + " d " +
+                "INNER JOIN " + CODES_TABLE_NAME + " c ON c.cid = d.cid " +
+                "WHERE d.iid <> 0 AND d.did > " + dataID + " " +
+                "ORDER BY d.did";
+    }
+
+    /**
+     * Creates a query that returns the video data matching an example entry, ordered by data ID. Every field of the
+     * example that is set must match; fields that are 0 or null match anything. The code of the example is matched by
+     * its code ID.
+     *
+     * @param importIDs The imports whose entries to query. If null, entries of every import are queried. Cannot be
+     *                  empty.
+     * @param example The entry the returned entries must match. If null, every entry matches.
+     * @return A string representing the query to be used to access video data in the database
+     */
+    public String buildSelectCodeDataByExample(Collection<Integer> importIDs, StillFaceData example){
+        StringBuilder conditions = new StringBuilder("d.iid <> 0");
+        if(importIDs != null){
+            StringJoiner ids = new StringJoiner(", ", " AND d.iid IN (", ")");
+            for(int importID : importIDs){
+                ids.add(Integer.toString(importID));
+            }
+            conditions.append(ids);
+        }
+        if(example != null){
+            if(example.getDataID() != 0) conditions.append(" AND d.did = ").append(example.getDataID());
+            if(example.getImportID() != 0) conditions.append(" AND d.iid = ").append(example.getImportID());
+            if(example.getTime() != 0) conditions.append(" AND d.time = ").append(example.getTime());
+            if(example.getDuration() != 0) conditions.append(" AND d.duration = ").append(example.getDuration());
+            if(example.getCode() != null) conditions.append(" AND d.cid = ").append(example.getCode().getCodeID());
+            if(example.getComment() != null){
+                conditions.append(" AND d.comment = '").append(example.getComment().replace("'", "''")).append("'");
+            }
+        }
+        return "SELECT d.*, c.name, c.delimiter " +
+                "FROM " + DATA_TABLE_NAME + " d " +
+                "INNER JOIN " + CODES_TABLE_NAME + " c ON c.cid = d.cid " +
+                "WHERE " + conditions + " " +
+                "ORDER BY d.did";
+    }
+
+    /**
+     * Creates a query that returns one row of aggregates per import over the video data entries up to a data ID:
+     * the number of entries, the largest data ID, the sums of the time, duration and code ID, the same sums weighted
+     * by a value derived from the data ID of each entry, the number of comments and the weighted sum of their
+     * lengths. The weights make an import whose entries trade values with each other sum differently. The aggregates
+     * are computed by the database server, so only one row per import is transferred, and they are the ones
+     * StillFaceSnapshot.Checksum computes over entries loaded with buildSelectCodeDataFromImport.
+     *
+     * @param dataID The largest data ID to include
+     * @param mode The mode of the database, which decides the function that measures the comments
+     * @return A string representing the query to be used to validate a snapshot of the video data
+     */
+    public String buildSelectCodeDataChecksum(int dataID, DatabaseMode mode){
+        String weight = "(d.did - d.did / " + StillFaceSnapshot.Checksum.WEIGHT_MODULUS + " * " +
+                StillFaceSnapshot.Checksum.WEIGHT_MODULUS + " + 1)";
+        return "SELECT d.iid, COUNT(*) AS entries, MAX(d.did) AS max_did, " +
+                "SUM(CAST(d.time AS BIGINT)) AS time_sum, " +
+                "SUM(CAST(d.duration AS BIGINT)) AS duration_sum, " +
+                "SUM(CAST(d.cid AS BIGINT)) AS cid_sum, " +
+                "SUM(CAST(d.time AS BIGINT) * " + weight + ") AS time_weighted, " +
+                "SUM(CAST(d.duration AS BIGINT) * " + weight + ") AS duration_weighted, " +
+                "SUM(CAST(d.cid AS BIGINT) * " + weight + ") AS cid_weighted, " +
+                "COUNT(d.comment) AS comments, " +
+                "SUM(CAST(" + getLengthFunction(mode) + "(d.comment) AS BIGINT) * " + weight + ") " +
+                "AS comment_weighted " +
+                "FROM " + DATA_TABLE_NAME + " d " +
+                "INNER JOIN " + CODES_TABLE_NAME + " c ON c.cid = d.cid " +
+                "WHERE d.iid <> 0 AND d.did <= " + dataID + " " +
+                "GROUP BY d.iid";
+    }
+
     /**
      * Creates a query that returns video data from the database based on the provided import ID. If the developer
      * wishes to get all import data entries, simply pass 0 in as a parameter
@@ -201,6 +393,47 @@ public class StillFaceQueryBuilder {
                 "VALUES('" + tag.getTagValue() + "')";
     }
 
+    /**
+     * Creates a query that can be used to insert one row of import statistics into the database.
+     *
+     * @param stat The statistics to enter into the database
+     * @return A string representing an INSERT query that puts the provided object in the database
+     */
+    public String buildInsertImportStat(StillFaceImportStat stat){
+        return "INSERT INTO " + STATS_TABLE_NAME + " " +
+                "(iid, segment, cid, count, total_duration, first_time, last_time) " +
+                "VALUES(" + stat.getImportID() + ", " + stat.getSegment() + ", " + stat.getCodeID() + ", " +
+                stat.getCount() + ", " + stat.getTotalDuration() + ", " + stat.getFirstTime() + ", " +
+                stat.getLastTime() + ")";
+    }
+
+    /**
+     * Creates a query that can be used to insert one row of state statistics into the database.
+     *
+     * @param stat The statistics to enter into the database
+     * @return A string representing an INSERT query that puts the provided object in the database
+     */
+    public String buildInsertStateStat(StillFaceStateStat stat){
+        return "INSERT INTO " + STATE_STATS_TABLE_NAME + " " +
+                "(iid, segment, cid, state_time, episodes) " +
+                "VALUES(" + stat.getImportID() + ", " + stat.getSegment() + ", " + stat.getCodeID() + ", " +
+                stat.getStateTime() + ", " + stat.getEpisodes() + ")";
+    }
+
+    /**
+     * Creates a query that can be used to insert one row of timing statistics into the database. The sketch is
+     * Base64 text, so it needs no escaping.
+     *
+     * @param stat The statistics to enter into the database
+     * @return A string representing an INSERT query that puts the provided object in the database
+     */
+    public String buildInsertTimingStat(StillFaceTimingStat stat){
+        return "INSERT INTO " + TIMING_STATS_TABLE_NAME + " " +
+                "(iid, segment, cid, metric, sketch) " +
+                "VALUES(" + stat.getImportID() + ", " + stat.getSegment() + ", " + stat.getCodeID() + ", '" +
+                stat.getMetric().name() + "', '" + stat.getSketch() + "')";
+    }
+
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
     // UPDATE statements
     ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
@@ -285,6 +518,48 @@ public class StillFaceQueryBuilder {
      */
     public String buildDeleteCodeDataFromImport(int importID) { return "DELETE FROM " + DATA_TABLE_NAME + " WHERE iid = " + importID; }
 
+    /**
+     * Creates a query that will delete the statistics of an import. If the developer wishes to delete the statistics
+     * of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose statistics to delete. If 0, will delete all entries
+     * @return A string representing the DELETE statement to remove the entries from the database
+     */
+    public String buildDeleteImportStats(int importID){
+        if(importID == 0){
+            return "DELETE FROM " + STATS_TABLE_NAME;
+        }
+        return "DELETE FROM " + STATS_TABLE_NAME + " WHERE iid = " + importID;
+    }
+
+    /**
+     * Creates a query that will delete the state statistics of an import. If the developer wishes to delete the state
+     * statistics of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose state statistics to delete. If 0, will delete all entries
+     * @return A string representing the DELETE statement to remove the entries from the database
+     */
+    public String buildDeleteStateStats(int importID){
+        if(importID == 0){
+            return "DELETE FROM " + STATE_STATS_TABLE_NAME;
+        }
+        return "DELETE FROM " + STATE_STATS_TABLE_NAME + " WHERE iid = " + importID;
+    }
+
+    /**
+     * Creates a query that will delete the timing statistics of an import. If the developer wishes to delete the
+     * timing statistics of all imports, simply pass 0 in as a parameter
+     *
+     * @param importID The id of the import whose timing statistics to delete. If 0, will delete all entries
+     * @return A string representing the DELETE statement to remove the entries from the database
+     */
+    public String buildDeleteTimingStats(int importID){
+        if(importID == 0){
+            return "DELETE FROM " + TIMING_STATS_TABLE_NAME;
+        }
+        return "DELETE FROM " + TIMING_STATS_TABLE_NAME + " WHERE iid = " + importID;
+    }
+
     /**
      * Creates a query that will delete the entry with the provided ID.
      *
@@ -380,6 +655,66 @@ public class StillFaceQueryBuilder {
                 ")";
     }
 
+    /**
+     * Creates a query that will create a new table for import statistics in the database. The primary key starts
+     * with the import ID, so the statistics of an import are read through its index.
+     *
+     * @param mode The mode of the type of database table to create
+     * @return A string representing a CREATE TABLE statement
+     */
+    public String buildCreateSFImportStatsTable(DatabaseMode mode){
+        return "CREATE TABLE " + STATS_TABLE_NAME + "\n" +
+                "(\n" +
+                "    iid INT NOT NULL,\n" +
+                "    segment INT NOT NULL,\n" +
+                "    cid INT NOT NULL,\n" +
+                "    count INT NOT NULL,\n" +
+                "    total_duration INT NOT NULL,\n" +
+                "    first_time INT NOT NULL,\n" +
+                "    last_time INT NOT NULL,\n" +
+                "    PRIMARY KEY (iid, segment, cid)\n" +
+                ")";
+    }
+
+    /**
+     * Creates a query that will create a new table for the state statistics of imports in the database, keyed in the
+     * same way as the import statistics.
+     *
+     * @param mode The mode of the type of database table to create
+     * @return A string representing a CREATE TABLE statement
+     */
+    public String buildCreateSFStateStatsTable(DatabaseMode mode){
+        return "CREATE TABLE " + STATE_STATS_TABLE_NAME + "\n" +
+                "(\n" +
+                "    iid INT NOT NULL,\n" +
+                "    segment INT NOT NULL,\n" +
+                "    cid INT NOT NULL,\n" +
+                "    state_time INT NOT NULL,\n" +
+                "    episodes INT NOT NULL,\n" +
+                "    PRIMARY KEY (iid, segment, cid)\n" +
+                ")";
+    }
+
+    /**
+     * Creates a query that will create a new table for the timing statistics of imports in the database, keyed in
+     * the same way as the import statistics with the metric added. A sketch of the default compression fits in the
+     * sketch column several times over.
+     *
+     * @param mode The mode of the type of database table to create
+     * @return A string representing a CREATE TABLE statement
+     */
+    public String buildCreateSFTimingStatsTable(DatabaseMode mode){
+        return "CREATE TABLE " + TIMING_STATS_TABLE_NAME + "\n" +
+                "(\n" +
+                "    iid INT NOT NULL,\n" +
+                "    segment INT NOT NULL,\n" +
+                "    cid INT NOT NULL,\n" +
+                "    metric VARCHAR(20) NOT NULL,\n" +
+                "    sketch VARCHAR(8000) NOT NULL,\n" +
+                "    PRIMARY KEY (iid, segment, cid, metric)\n" +
+                ")";
+    }
+
     /**
      * Given a database mode, this will return a String using the correct syntax for creating an auto-increment
      * schema in a database table
@@ -387,6 +722,15 @@ public class StillFaceQueryBuilder {
      * @param mode The DatabaseMode the syntax must conform to
      * @return A correctly formatted, auto-increment string
      */
+    private String getLengthFunction(DatabaseMode mode){
+        switch (mode){
+            case AZURE:
+                return "LEN";
+
+            default: return "LENGTH";
+        }
+    }
+
     private String getAutoIncrementSyntax(DatabaseMode mode){
         switch (mode){
             case AZURE:
@@ -419,6 +763,30 @@ public class StillFaceQueryBuilder {
         return "DROP TABLE " + DATA_TABLE_NAME + "";
     }
 
+    /**
+     * Creates a query to drop the import statistics table in the database
+     * @return A string representation of a DROP TABLE query
+     */
+    public String buildDropSFImportStatsTable(){
+        return "DROP TABLE " + STATS_TABLE_NAME + "";
+    }
+
+    /**
+     * Creates a query to drop the state statistics table in the database
+     * @return A string representation of a DROP TABLE query
+     */
+    public String buildDropSFStateStatsTable(){
+        return "DROP TABLE " + STATE_STATS_TABLE_NAME + "";
+    }
+
+    /**
+     * Creates a query to drop the timing statistics table in the database
+     * @return A string representation of a DROP TABLE query
+     */
+    public String buildDropSFTimingStatsTable(){
+        return "DROP TABLE " + TIMING_STATS_TABLE_NAME + "";
+    }
+
     /**
      * Creates a query to drop the code table in the database
      * @return A string representation of a DROP TABLE query
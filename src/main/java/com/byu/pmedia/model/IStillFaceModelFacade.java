@@ -15,18 +15,14 @@ import java.util.List;
 
 /**
  * IStillFaceModelFacade
- * This provides a facade wrapper to the data model used in the DataCenter. However, at this time, it is not currently
- * in use in the program. Should the program grow more complex, it could be incorporated for simplicity
+ * This provides a facade wrapper to the data model used in the DataCenter. Queries are described with example
+ * objects, so callers do not need to know whether the data is held in memory or read from the database. The
+ * implementation used by the program is StillFaceModelFacade, which is accessed through its static getInstance method.
+ *
+ * @author Braden Hitchcock
  */
 public interface IStillFaceModelFacade {
 
-    /**
-     * Method to enforce the singleton pattern in accessing in-memory data
-     *
-     * @return An instance of an object that fully implements this interface
-     */
-    IStillFaceModelFacade getInstance();
-
     /**
      * Provides access to read data from the in-memory data structure holding information from the
      * StillFace database
@@ -0,0 +1,67 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+/**
+ * IndexProfile
+ * Enumerated type describing which CQEngine indexes are attached to a heap collection of StillFaceData entries. This
+ * is read from the model.index.profile configuration option, so that each deployment can trade memory and insert time
+ * for query speed:
+ * <ul>
+ *     <li>FULL - the original set of indexes: navigable indexes on the data ID, import ID, time and duration, a hash
+ *     index on the code and a radix tree index on the comment.</li>
+ *     <li>STANDARD - indexes for the queries the DataCenter actually runs: a unique index on the data ID, a hash index
+ *     on the import ID, a navigable index on the time, a hash index on the code and a compound index on the import ID
+ *     and code.</li>
+ *     <li>MINIMAL - only a unique index on the data ID and a hash index on the import ID. Every other query scans the
+ *     entries of the matching imports.</li>
+ * </ul>
+ * Each index records how often queries use it (see StillFaceIndexUsage), which is how unused indexes are found.
+ *
+ * @author Braden Hitchcock
+ */
+public enum IndexProfile {
+
+    FULL,
+    STANDARD,
+    MINIMAL;
+
+    /**
+     * Converts the enumerated type machine name to a more user-friendly name
+     * @return A string representing the pretty-printed, user-friendly type name
+     */
+    public String toPrettyString(){
+        switch(this){
+            case FULL: return "Full";
+            case STANDARD: return "Standard";
+            case MINIMAL: return "Minimal";
+            default: return "Unknown Index Profile";
+        }
+    }
+
+    /**
+     * Parses an index profile from a configuration value. Missing or unknown values fall back to FULL, which is how
+     * the collections were indexed before the option existed.
+     *
+     * @param value The configuration value to parse
+     * @return The matching IndexProfile, or FULL if there is no match
+     */
+    public static IndexProfile fromString(String value){
+        try{
+            return IndexProfile.valueOf(value.trim().toUpperCase());
+        }
+        catch(IllegalArgumentException | NullPointerException e){
+            return FULL;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+/**
+ * PersistenceMode
+ * Enumerated type describing where the StillFaceModel stores its cached video data. This is read from the
+ * model.persistence configuration option.
+ */
+public enum PersistenceMode {
+
+    HEAP,
+    OFF_HEAP,
+    DISK,
+    COLUMNAR;
+
+    /**
+     * Converts the enumerated type machine name to a more user-friendly name
+     * @return A string representing the pretty-printed, user-friendly type name
+     */
+    public String toPrettyString(){
+        switch(this){
+            case HEAP: return "Java Heap";
+            case OFF_HEAP: return "Off-Heap Memory";
+            case DISK: return "Disk";
+            case COLUMNAR: return "Columnar Event Store";
+            default: return "Unknown Persistence Type";
+        }
+    }
+
+    /**
+     * Parses a persistence mode from a configuration value. Missing or unknown values fall back to HEAP, which is how
+     * the model behaved before the option existed.
+     *
+     * @param value The configuration value to parse
+     * @return The matching PersistenceMode, or HEAP if there is no match
+     */
+    public static PersistenceMode fromString(String value){
+        try{
+            return PersistenceMode.valueOf(value.trim().toUpperCase());
+        }
+        catch(IllegalArgumentException | NullPointerException e){
+            return HEAP;
+        }
+    }
+
+}
@@ -12,25 +12,27 @@
 package com.byu.pmedia.model;
 
 import com.googlecode.cqengine.attribute.Attribute;
-import javafx.beans.property.SimpleBooleanProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
 
 import static com.googlecode.cqengine.query.QueryFactory.attribute;
 
 /**
  * StillFaceCode
- * Represents a code entry in the database.
+ * Represents a code entry in the database. Codes read from the database are canonical: there is one instance per
+ * code ID, shared by every entry that uses the code (see StillFaceRegistry). A canonical instance is only changed in
+ * place by the registry, when the code is renamed or given a new delimiter in the database. Everywhere else, codes
+ * are treated as immutable; use the with* methods to create a modified copy to write to the database.
+ * <p>
+ * Codes are identified by their ID. Codes that have not been stored in the database yet (ID 0) are identified by
+ * their name.
  *
  * @author Braden Hitchcock
  */
 public class StillFaceCode {
 
-    /* Internal data for the code entry. They are implemented using SimpleProperty objects so that the values can be
-     * used in JavaFX cell factories and can be edited in a data table. */
-    private SimpleStringProperty name = new SimpleStringProperty();
-    private SimpleIntegerProperty codeID = new SimpleIntegerProperty();
-    private SimpleIntegerProperty delimiterIndex = new SimpleIntegerProperty();
+    /* Internal data for the code entry. The name and delimiter are only changed through update() */
+    private volatile String name;
+    private final int codeID;
+    private volatile int delimiterIndex;
 
     /*
      * The following variables are defined for use with the CQEngine IndexedCollections. This allows us to
@@ -45,49 +47,55 @@ public class StillFaceCode {
             attribute("delimiterIndex", StillFaceCode::getDelimiterIndex);
 
     public StillFaceCode(String name){
-        this.setName(name);
+        this(0, name, 0);
     }
 
     public StillFaceCode(int codeID, String name, int delimiterIndex){
-        this.setCodeID(codeID);
-        this.setName(name);
-        this.setDelimiterIndex(delimiterIndex);
-    }
-
-    public void setName(String name){
-        this.name.set(name);
+        this.codeID = codeID;
+        this.name = name;
+        this.delimiterIndex = delimiterIndex;
     }
 
     public String getName(){
-        return this.name.get();
+        return this.name;
     }
 
-    public void setCodeID(int codeID) { this.codeID.set(codeID); }
+    public int getCodeID() { return this.codeID; }
+
+    public int getDelimiterIndex() { return this.delimiterIndex; }
 
-    public int getCodeID() { return this.codeID.get(); }
+    public StillFaceCode withName(String name) { return new StillFaceCode(codeID, name, delimiterIndex); }
 
-    public void setDelimiterIndex(int delimiter) { this.delimiterIndex.set(delimiter); }
+    public StillFaceCode withCodeID(int codeID) { return new StillFaceCode(codeID, name, delimiterIndex); }
 
-    public int getDelimiterIndex() { return this.delimiterIndex.get(); }
+    public StillFaceCode withDelimiterIndex(int delimiter) { return new StillFaceCode(codeID, name, delimiter); }
+
+    /**
+     * Updates a canonical instance in place. Only called by the StillFaceRegistry.
+     */
+    void update(String name, int delimiterIndex){
+        this.name = name;
+        this.delimiterIndex = delimiterIndex;
+    }
 
     @Override
     public String toString(){
-        return name.get();
+        return name;
     }
 
     @Override
     public boolean equals(Object o){
+        if(o == this) return true;
         if(o == null || !o.getClass().equals(StillFaceCode.class)) return false;
         StillFaceCode c = (StillFaceCode)o;
-        if(!c.getName().equals(this.getName())
-                || c.getCodeID() != this.getCodeID()){
+        if(c.getCodeID() != this.getCodeID()){
             return false;
         }
-        return true;
+        return this.codeID != 0 || c.getName().equals(this.getName());
     }
 
     @Override
     public int hashCode(){
-        return name.get().hashCode();
+        return (codeID != 0) ? Integer.hashCode(codeID) : name.hashCode();
     }
 }
@@ -0,0 +1,299 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.config.StillFaceConfig;
+import com.googlecode.cqengine.ConcurrentIndexedCollection;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.attribute.Attribute;
+import com.googlecode.cqengine.index.disk.DiskIndex;
+import com.googlecode.cqengine.index.hash.HashIndex;
+import com.googlecode.cqengine.index.navigable.NavigableIndex;
+import com.googlecode.cqengine.index.offheap.OffHeapIndex;
+import com.googlecode.cqengine.index.radix.RadixTreeIndex;
+import com.googlecode.cqengine.persistence.disk.DiskPersistence;
+import com.googlecode.cqengine.persistence.offheap.OffHeapPersistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceCollectionFactory
+ * Creates the IndexedCollection that holds StillFaceData entries, using the persistence mode selected in the
+ * model.persistence configuration option:
+ * <ul>
+ *     <li>HEAP - entries are held as objects on the Java heap, with the indexes of the index profile selected in the
+ *     model.index.profile configuration option (see IndexProfile). This is the fastest option to query, but the most
+ *     expensive in heap size and garbage collection.</li>
+ *     <li>OFF_HEAP - entries are serialized into native memory outside of the Java heap, indexed on their data ID,
+ *     import ID, time and duration.</li>
+ *     <li>DISK - entries are serialized into a file of their own, with the same indexes as OFF_HEAP. The file is
+ *     created next to the file named by the model.persistence.file option, with its name as a prefix, or in the
+ *     temporary directory if the option is empty.</li>
+ *     <li>COLUMNAR - the model holds entries in a StillFaceEventStore rather than an IndexedCollection. When a
+ *     collection is still needed in this mode, a HEAP collection is created.</li>
+ * </ul>
+ * In the OFF_HEAP and DISK modes, objects retrieved from the collection are deserialized copies, so queries on the
+ * code or comment of an entry are answered by scanning rather than by an index.
+ * <p>
+ * The persisted collection is always a cache of the database, so every DISK collection gets a new file, and a collection
+ * that is loaded again is built in a new file while the old one is still being read. The factory owns the files: the
+ * model hands a collection back with releaseDataCollection once it no longer publishes it, which deletes its file.
+ * Every file is also deleted when the application exits, in case it was never released.
+ * <p>
+ * The collections of the small import, code and tag tables are always held on the heap with a fixed set of indexes.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceCollectionFactory {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The suffixes of the files SQLite keeps next to a database file in write-ahead logging mode, which CQEngine uses
+     * for its disk persistence */
+    private static final String[] SQLITE_SIDE_FILES = {"-wal", "-shm", "-journal"};
+
+    /* The file of each DISK collection created and not yet released */
+    private static final Map<IndexedCollection<StillFaceData>, File> diskFiles =
+            Collections.synchronizedMap(new IdentityHashMap<>());
+
+    /**
+     * Reads the persistence mode from the model.persistence configuration option. Defaults to HEAP.
+     *
+     * @return The configured PersistenceMode
+     */
+    public static PersistenceMode getConfiguredMode(){
+        return PersistenceMode.fromString(StillFaceConfig.getInstance().getAsString("model.persistence"));
+    }
+
+    /**
+     * Reads the index profile from the model.index.profile configuration option. Defaults to FULL.
+     *
+     * @return The configured IndexProfile
+     */
+    public static IndexProfile getConfiguredProfile(){
+        return IndexProfile.fromString(StillFaceConfig.getInstance().getAsString("model.index.profile"));
+    }
+
+    /**
+     * Creates an empty data collection using the configured persistence mode and index profile
+     *
+     * @return A new, empty IndexedCollection for StillFaceData objects, or null if the DISK file could not be created
+     */
+    public static IndexedCollection<StillFaceData> createDataCollection(){
+        return createDataCollection(getConfiguredMode(),
+                StillFaceConfig.getInstance().getAsString("model.persistence.file"));
+    }
+
+    /**
+     * Creates an empty data collection with the provided persistence mode and the configured index profile
+     *
+     * @param mode Where the entries of the collection are stored
+     * @param filename The file next to which the DISK mode creates its file. If null or empty, a temporary file is
+     *                 used. Ignored by the other modes.
+     * @return A new, empty IndexedCollection for StillFaceData objects, or null if the DISK file could not be created
+     */
+    public static IndexedCollection<StillFaceData> createDataCollection(PersistenceMode mode, String filename){
+        return createDataCollection(mode, filename, getConfiguredProfile());
+    }
+
+    /**
+     * Creates an empty data collection with the provided persistence mode, along with the indexes that mode
+     * supports.
+     *
+     * @param mode Where the entries of the collection are stored
+     * @param filename The file next to which the DISK mode creates its file. If null or empty, a temporary file is
+     *                 used. Ignored by the other modes.
+     * @param profile The indexes to attach to a HEAP collection. The OFF_HEAP and DISK modes always use their own
+     *                fixed set of indexes.
+     * @return A new, empty IndexedCollection for StillFaceData objects, or null if the DISK file could not be created
+     */
+    public static IndexedCollection<StillFaceData> createDataCollection(PersistenceMode mode, String filename,
+                                                                        IndexProfile profile){
+        IndexedCollection<StillFaceData> dataCollection;
+        switch(mode){
+            case OFF_HEAP:
+                dataCollection = new ConcurrentIndexedCollection<>(
+                        OffHeapPersistence.onPrimaryKey(StillFaceData.DATA_ID));
+                dataCollection.addIndex(OffHeapIndex.onAttribute(StillFaceData.IMPORT_ID));
+                dataCollection.addIndex(OffHeapIndex.onAttribute(StillFaceData.TIME));
+                dataCollection.addIndex(OffHeapIndex.onAttribute(StillFaceData.DURATION));
+                break;
+            case DISK:
+                File file = createDiskFile(filename);
+                if(file == null){
+                    return null;
+                }
+                dataCollection = new ConcurrentIndexedCollection<>(
+                        DiskPersistence.onPrimaryKeyInFile(StillFaceData.DATA_ID, file));
+                dataCollection.addIndex(DiskIndex.onAttribute(StillFaceData.IMPORT_ID));
+                dataCollection.addIndex(DiskIndex.onAttribute(StillFaceData.TIME));
+                dataCollection.addIndex(DiskIndex.onAttribute(StillFaceData.DURATION));
+                diskFiles.put(dataCollection, file);
+                break;
+            case HEAP:
+            case COLUMNAR:
+            default:
+                dataCollection = new ConcurrentIndexedCollection<>();
+                addIndexes(dataCollection, profile);
+                break;
+        }
+        logger.fine("Created data collection stored in " + mode.toPrettyString());
+        return dataCollection;
+    }
+
+    /**
+     * Releases a data collection that is no longer published by the model. If it is a DISK collection created by the
+     * factory, its file is deleted. The disk persistence of CQEngine opens a connection to the file for each request
+     * rather than holding one, so there is nothing else to close. If the file cannot be deleted now, for example
+     * because a reader still has it open on Windows, it is deleted when the application exits. Collections of the
+     * other modes are left to the garbage collector.
+     *
+     * @param dataCollection The collection to release, or null
+     */
+    public static void releaseDataCollection(IndexedCollection<StillFaceData> dataCollection){
+        if(dataCollection == null){
+            return;
+        }
+        File file = diskFiles.remove(dataCollection);
+        if(file == null){
+            return;
+        }
+        if(file.exists() && !file.delete()){
+            logger.warning("Unable to delete old data file " + file + ". It will be deleted on exit.");
+        }
+        for(String suffix : SQLITE_SIDE_FILES){
+            File sideFile = new File(file.getPath() + suffix);
+            if(sideFile.exists() && !sideFile.delete()){
+                logger.warning("Unable to delete old data file " + sideFile + ". It will be deleted on exit.");
+            }
+        }
+    }
+
+    /**
+     * Creates a new, empty file for a DISK collection. The file and the files SQLite keeps next to it are deleted
+     * when the application exits if they are not released before.
+     *
+     * @param filename The file to create the new file next to, with its name as a prefix, or null or empty to create
+     *                 it in the temporary directory
+     * @return The new file, or null if it could not be created
+     */
+    private static File createDiskFile(String filename){
+        try{
+            File file;
+            if(filename == null || filename.isEmpty()){
+                file = File.createTempFile("stillface_", ".db");
+            }
+            else{
+                File named = new File(filename).getAbsoluteFile();
+                file = File.createTempFile(named.getName() + "_", ".db", named.getParentFile());
+            }
+            // Files registered last are deleted first, so the side files go before the database they belong to
+            file.deleteOnExit();
+            for(String suffix : SQLITE_SIDE_FILES){
+                new File(file.getPath() + suffix).deleteOnExit();
+            }
+            return file;
+        }
+        catch(IOException e){
+            logger.severe("Unable to create data file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Attaches the indexes of an index profile to a heap collection. Every index records its usage in
+     * StillFaceIndexUsage.
+     * <p>
+     * The STANDARD profile has no index that serves the most common query (the entries of one import ordered by time)
+     * directly, since CQEngine compound indexes only answer equality queries. The entries of the import are found in
+     * the hash index on the import ID and then sorted, which is cheap for the few hundred entries of an import.
+     *
+     * @param dataCollection The empty collection to index
+     * @param profile The indexes to attach
+     */
+    private static void addIndexes(IndexedCollection<StillFaceData> dataCollection, IndexProfile profile){
+        switch(profile){
+            case MINIMAL:
+                dataCollection.addIndex(StillFaceIndexUsage.uniqueIndex(StillFaceData.DATA_ID));
+                dataCollection.addIndex(StillFaceIndexUsage.hashIndex(StillFaceData.IMPORT_ID));
+                break;
+            case STANDARD:
+                dataCollection.addIndex(StillFaceIndexUsage.uniqueIndex(StillFaceData.DATA_ID));
+                dataCollection.addIndex(StillFaceIndexUsage.hashIndex(StillFaceData.IMPORT_ID));
+                dataCollection.addIndex(StillFaceIndexUsage.navigableIndex(StillFaceData.TIME));
+                dataCollection.addIndex(StillFaceIndexUsage.hashIndex(StillFaceData.CODE));
+                dataCollection.addIndex(StillFaceIndexUsage.compoundIndex(
+                        Arrays.<Attribute<StillFaceData, ?>>asList(StillFaceData.IMPORT_ID, StillFaceData.CODE)));
+                break;
+            case FULL:
+            default:
+                dataCollection.addIndex(StillFaceIndexUsage.navigableIndex(StillFaceData.DATA_ID));
+                dataCollection.addIndex(StillFaceIndexUsage.navigableIndex(StillFaceData.IMPORT_ID));
+                dataCollection.addIndex(StillFaceIndexUsage.navigableIndex(StillFaceData.TIME));
+                dataCollection.addIndex(StillFaceIndexUsage.navigableIndex(StillFaceData.DURATION));
+                dataCollection.addIndex(StillFaceIndexUsage.hashIndex(StillFaceData.CODE));
+                dataCollection.addIndex(StillFaceIndexUsage.radixTreeIndex(StillFaceData.COMMENT));
+                break;
+        }
+        logger.fine("Attached the " + profile.toPrettyString() + " index profile to a data collection");
+    }
+
+    /**
+     * Creates an empty, indexed collection for StillFaceImport objects
+     *
+     * @return A new, empty IndexedCollection for StillFaceImport objects
+     */
+    public static IndexedCollection<StillFaceImport> createImportCollection(){
+        IndexedCollection<StillFaceImport> importDataCollection = new ConcurrentIndexedCollection<>();
+        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.IMPORT_ID));
+        importDataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceImport.FILENAME));
+        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.YEAR));
+        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.FAMILY_ID));
+        importDataCollection.addIndex(NavigableIndex.onAttribute(StillFaceImport.PARTICIPANT_ID));
+        importDataCollection.addIndex(HashIndex.onAttribute(StillFaceImport.TAG));
+        importDataCollection.addIndex(RadixTreeIndex.onAttribute(StillFaceImport.ALIAS));
+        importDataCollection.addIndex(HashIndex.onAttribute(StillFaceImport.DATE));
+        return importDataCollection;
+    }
+
+    /**
+     * Creates an empty, indexed collection for StillFaceCode objects. The collection only indexes the code ID: the
+     * collection holds the canonical codes of the StillFaceRegistry, which are renamed in place, so an index on the
+     * name would keep filing a renamed code under its old name. Queries on the name scan the few dozen codes instead.
+     *
+     * @return A new, empty IndexedCollection for StillFaceCode objects
+     */
+    public static IndexedCollection<StillFaceCode> createCodeCollection(){
+        IndexedCollection<StillFaceCode> codeCollection = new ConcurrentIndexedCollection<>();
+        codeCollection.addIndex(NavigableIndex.onAttribute(StillFaceCode.CODE_ID));
+        return codeCollection;
+    }
+
+    /**
+     * Creates an empty, indexed collection for StillFaceTag objects. Like the code collection, it only indexes the
+     * ID, since the canonical tags are renamed in place.
+     *
+     * @return A new, empty IndexedCollection for StillFaceTag objects
+     */
+    public static IndexedCollection<StillFaceTag> createTagCollection(){
+        IndexedCollection<StillFaceTag> tagCollection = new ConcurrentIndexedCollection<>();
+        tagCollection.addIndex(NavigableIndex.onAttribute(StillFaceTag.TAG_ID));
+        return tagCollection;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * StillFaceCommentDictionary
+ * Dictionary encoding for the comments of video data entries. Most entries have no comment or share a small number of
+ * comments, so the StillFaceEventStore keeps a single copy of each distinct comment here and stores an integer
+ * reference to it for every entry. A null comment is encoded as -1.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceCommentDictionary {
+
+    /* Reference used for entries without a comment */
+    public static final int NO_COMMENT = -1;
+
+    private final List<String> comments = new ArrayList<>();
+    private final Map<String, Integer> references = new HashMap<>();
+
+    /**
+     * Returns the reference for a comment, adding the comment to the dictionary if it has not been seen before
+     *
+     * @param comment The comment to encode. May be null.
+     * @return The reference to the comment, or NO_COMMENT if the comment is null
+     */
+    public synchronized int encode(String comment){
+        if(comment == null) return NO_COMMENT;
+        Integer reference = references.get(comment);
+        if(reference == null){
+            reference = comments.size();
+            comments.add(comment);
+            references.put(comment, reference);
+        }
+        return reference;
+    }
+
+    /**
+     * Returns the comment a reference points to
+     *
+     * @param reference A reference returned by encode
+     * @return The comment, or null if the reference is NO_COMMENT
+     */
+    public synchronized String decode(int reference){
+        return (reference == NO_COMMENT) ? null : comments.get(reference);
+    }
+
+    /**
+     * @return The number of distinct comments in the dictionary
+     */
+    public synchronized int size(){
+        return comments.size();
+    }
+}
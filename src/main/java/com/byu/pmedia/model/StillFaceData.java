@@ -12,38 +12,38 @@
 package com.byu.pmedia.model;
 
 import com.googlecode.cqengine.attribute.Attribute;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleObjectProperty;
-import javafx.beans.property.SimpleStringProperty;
+import com.googlecode.cqengine.attribute.SimpleAttribute;
+import com.googlecode.cqengine.persistence.support.serialization.PersistenceConfig;
 
 import static com.googlecode.cqengine.query.QueryFactory.attribute;
 
 /**
  * StillFaceData
- * Internal data structure for holding information from a data entry in the database
+ * Internal data structure for holding information from a data entry in the database. Instances are immutable: an
+ * edit is made by creating a modified copy with one of the with* methods. This keeps the objects small (no JavaFX
+ * properties are held for entries that are never displayed) and means an entry can never change underneath the
+ * indexes of the collection that holds it. The data table displays the values through PropertyValueFactory, which
+ * wraps the getter values only for the rows that are on screen.
  *
  * @author Braden Hitchcock
  */
+@PersistenceConfig(serializer = StillFaceDataSerializer.class)
 public class StillFaceData {
 
-    /*
-     * These variables are for the JavaFX Table object in the GUI. The table cells are populated using a CellFactory,
-     * and in order to do this we need to have special variable types
-     */
-    private SimpleIntegerProperty dataID = new SimpleIntegerProperty();
-    private SimpleIntegerProperty importID = new SimpleIntegerProperty();
-    private SimpleIntegerProperty time = new SimpleIntegerProperty();
-    private SimpleIntegerProperty duration = new SimpleIntegerProperty();
-    private SimpleObjectProperty<StillFaceCode> code = new SimpleObjectProperty<>();
-    private SimpleStringProperty comment = new SimpleStringProperty();
-
+    private final int dataID;
+    private final int importID;
+    private final int time;
+    private final int duration;
+    private final StillFaceCode code;
+    private final String comment;
 
     /*
      * The following variables are defined for use with the CQEngine IndexedCollections. This allows us to
      * create extremely fast indexing capabilities and cache data in memory for use. Data is only cached if
-     * the model.cache configuration option is set to 'true'
+     * the model.cache configuration option is set to 'true'. DATA_ID is a SimpleAttribute so that it can serve as the
+     * primary key when the collection is stored off-heap or on disk (see StillFaceCollectionFactory).
      */
-    public static final Attribute<StillFaceData, Integer> DATA_ID =
+    public static final SimpleAttribute<StillFaceData, Integer> DATA_ID =
             attribute("dataID", StillFaceData::getDataID);
     public static final Attribute<StillFaceData, Integer> IMPORT_ID =
             attribute("importID", StillFaceData::getImportID);
@@ -57,70 +57,64 @@ public class StillFaceData {
             attribute("comment", StillFaceData::getComment);
 
     public StillFaceData(int importID, int time, int duration, StillFaceCode code, String comment){
-        this.importID = new SimpleIntegerProperty(importID);
-        this.setTime(time);
-        this.setDuration(duration);
-        this.setCode(code);
-        this.setComment(comment);
+        this(0, importID, time, duration, code, comment);
     }
 
     public StillFaceData(int dataID, int importID, int time, int duration, StillFaceCode code, String comment){
-        this.dataID = new SimpleIntegerProperty(dataID);
-        this.importID = new SimpleIntegerProperty(importID);
-        this.setTime(time);
-        this.setDuration(duration);
-        this.setCode(code);
-        this.setComment(comment);
+        this.dataID = dataID;
+        this.importID = importID;
+        this.time = time;
+        this.duration = duration;
+        this.code = code;
+        this.comment = comment;
     }
 
-    public int getTime() {
-        return time.get();
-    }
+    public int getDataID() { return dataID; }
 
-    public void setTime(int time) {
-        this.time.set(time);
-    }
+    public int getImportID() { return importID; }
 
-    public int getDuration() {
-        return duration.get();
-    }
+    public int getTime() { return time; }
 
-    public void setDuration(int duration) {
-        this.duration.set(duration);
-    }
+    public int getDuration() { return duration; }
+
+    public StillFaceCode getCode() { return code; }
+
+    public String getComment() { return comment; }
 
-    public StillFaceCode getCode() {
-        return code.get();
+    public StillFaceData withDataID(int dataID){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
     }
 
-    public void setCode(StillFaceCode code){
-        this.code.set(code);
+    public StillFaceData withImportID(int importID){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
     }
 
-    public String getComment() { return comment.get(); }
+    public StillFaceData withTime(int time){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
+    }
 
-    public void setComment(String comment) {
-        this.comment.set(comment);
+    public StillFaceData withDuration(int duration){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
     }
 
-    public int getDataID() {
-        return dataID.get();
+    public StillFaceData withCode(StillFaceCode code){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
     }
 
-    public void setImportID(int importID) { this.importID.set(importID); }
+    public StillFaceData withComment(String comment){
+        return new StillFaceData(dataID, importID, time, duration, code, comment);
+    }
 
-    public int getImportID() {
-        return importID.get();
+    @Override
+    public boolean equals(Object o){
+        if(o == null || o.getClass() != this.getClass()) return false;
+        StillFaceData data = (StillFaceData)o;
+        return data.getDataID() == this.getDataID();
     }
 
     @Override
     public int hashCode(){
-        int result = code.hashCode();
-        result = result * 24 + dataID.get();
-        result = result >> (time.get() % 4);
-        result = result * 13 + time.get();
-        result += comment.get().hashCode();
-        return result;
+        return Integer.hashCode(dataID);
     }
 
 }
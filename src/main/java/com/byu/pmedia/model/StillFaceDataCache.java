@@ -0,0 +1,159 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceDataCache
+ * Size-bounded, least-recently-used cache of StillFaceData entries grouped by import. This is used by the
+ * StillFaceModel when the model.cache configuration option is set to 'false': instead of holding the whole sf_data
+ * table in memory, the entries of an import are loaded from the database the first time they are requested and kept
+ * until the total number of cached entries exceeds the configured capacity, at which point the least recently used
+ * imports are evicted.
+ * <p>
+ * Hit, miss and eviction counts are kept so that the cache capacity can be tuned for a deployment.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceDataCache {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The cached entries, keyed by import ID. The map is kept in access order, so the first entry is always the
+     * least recently used import. */
+    private final LinkedHashMap<Integer, List<StillFaceData>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* The maximum number of StillFaceData entries (summed over all imports) held by the cache */
+    private final int capacity;
+
+    /* The number of StillFaceData entries currently held by the cache */
+    private int size = 0;
+
+    /* Counts the invalidations, so that entries loaded while an import was invalidated are not cached */
+    private long modifications = 0;
+
+    /* Statistics about how well the cache is performing */
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new, empty cache
+     *
+     * @param capacity The maximum number of StillFaceData entries to hold across all cached imports
+     */
+    public StillFaceDataCache(int capacity){
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached entries of an import, loading them with the provided loader if they are not cached. The
+     * returned list is unmodifiable and ordered the way the loader ordered it. The loader runs without holding the
+     * lock of the cache, so a slow query does not hold up requests for other imports.
+     *
+     * @param importID The ID of the import whose entries are requested
+     * @param loader Loads the entries of an import from the database. May return null if the load fails.
+     * @return The entries of the import, or null if they were not cached and could not be loaded
+     */
+    public List<StillFaceData> get(int importID, IntFunction<List<StillFaceData>> loader){
+        long before;
+        synchronized(this){
+            List<StillFaceData> data = entries.get(importID);
+            if(data != null){
+                hits++;
+                return data;
+            }
+            misses++;
+            before = this.modifications;
+        }
+        List<StillFaceData> loaded = loader.apply(importID);
+        if(loaded == null){
+            return null;
+        }
+        List<StillFaceData> data = Collections.unmodifiableList(new ArrayList<>(loaded));
+        synchronized(this){
+            // Only keep the entries if nothing was invalidated while they were loaded, since they may have been read
+            // before a write to the import
+            if(this.modifications == before){
+                List<StillFaceData> previous = entries.put(importID, data);
+                size += data.size() - ((previous != null) ? previous.size() : 0);
+                evict(importID);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Removes the entries of an import from the cache. Must be called whenever the entries of the import are
+     * written to the database so that the next request reloads them.
+     *
+     * @param importID The ID of the import to invalidate
+     */
+    public synchronized void invalidate(int importID){
+        modifications++;
+        List<StillFaceData> data = entries.remove(importID);
+        if(data != null){
+            size -= data.size();
+        }
+    }
+
+    /**
+     * Removes every entry from the cache. Statistics are kept.
+     */
+    public synchronized void clear(){
+        modifications++;
+        entries.clear();
+        size = 0;
+    }
+
+    /**
+     * Evicts least recently used imports until the cache is within its capacity. The import that was just loaded is
+     * never evicted, even if it alone is larger than the capacity, since it is about to be used.
+     *
+     * @param keep The ID of the import that must stay in the cache
+     */
+    private void evict(int keep){
+        Iterator<Map.Entry<Integer, List<StillFaceData>>> iterator = entries.entrySet().iterator();
+        while(size > capacity && iterator.hasNext()){
+            Map.Entry<Integer, List<StillFaceData>> eldest = iterator.next();
+            if(eldest.getKey() == keep){
+                continue;
+            }
+            size -= eldest.getValue().size();
+            iterator.remove();
+            evictions++;
+            logger.fine("Evicted import " + eldest.getKey() + " from the data cache");
+        }
+    }
+
+    public synchronized int getSize() { return size; }
+
+    public int getCapacity() { return capacity; }
+
+    public synchronized int getImportCount() { return entries.size(); }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized long getEvictions() { return evictions; }
+
+    @Override
+    public synchronized String toString(){
+        return String.format("StillFaceDataCache[imports=%d, entries=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), size, capacity, hits, misses, evictions);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.googlecode.cqengine.persistence.support.serialization.PersistenceConfig;
+import com.googlecode.cqengine.persistence.support.serialization.PojoSerializer;
+
+import java.io.*;
+
+/**
+ * StillFaceDataSerializer
+ * Serializes StillFaceData objects when the data collection is stored off-heap or on disk. CQEngine serializes objects
+ * with Kryo by default, which would walk the JavaFX property objects and everything attached to them. Since a data
+ * entry is just a handful of integers and two strings, this writes those fields directly instead. Codes are resolved
+ * to their canonical instances when entries are read back.
+ * <p>
+ * CQEngine creates the serializer reflectively from the PersistenceConfig annotation on StillFaceData, which is why
+ * the constructor takes arguments it does not use.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceDataSerializer implements PojoSerializer<StillFaceData> {
+
+    public StillFaceDataSerializer(Class<StillFaceData> objectType, PersistenceConfig persistenceConfig){
+    }
+
+    @Override
+    public byte[] serialize(StillFaceData data){
+        try{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(data.getDataID());
+            out.writeInt(data.getImportID());
+            out.writeInt(data.getTime());
+            out.writeInt(data.getDuration());
+            StillFaceCode code = data.getCode();
+            out.writeInt(code.getCodeID());
+            out.writeInt(code.getDelimiterIndex());
+            out.writeUTF(code.getName());
+            out.writeBoolean(data.getComment() != null);
+            if(data.getComment() != null){
+                out.writeUTF(data.getComment());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch(IOException e){
+            throw new IllegalStateException("Unable to serialize data entry " + data.getDataID(), e);
+        }
+    }
+
+    @Override
+    public StillFaceData deserialize(byte[] bytes){
+        try{
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int dataID = in.readInt();
+            int importID = in.readInt();
+            int time = in.readInt();
+            int duration = in.readInt();
+            int codeID = in.readInt();
+            int delimiterIndex = in.readInt();
+            String codeName = in.readUTF();
+            String comment = in.readBoolean() ? in.readUTF() : null;
+            return new StillFaceData(dataID, importID, time, duration,
+                    StillFaceRegistry.getInstance().code(codeID, codeName, delimiterIndex), comment);
+        }
+        catch(IOException e){
+            throw new IllegalStateException("Unable to deserialize data entry", e);
+        }
+    }
+}
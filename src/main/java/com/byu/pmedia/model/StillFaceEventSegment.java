@@ -0,0 +1,237 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.Arrays;
+
+/**
+ * StillFaceEventSegment
+ * The video data entries of a single import, stored column by column in primitive arrays. Position i of every array
+ * describes the same entry, and entries are ordered by time (entries with the same time keep the order they were
+ * added in). Comments are stored as references into a StillFaceCommentDictionary and codes by their code ID.
+ * <p>
+ * A segment is immutable once built. Changes to an import are made by building a replacement segment (see
+ * StillFaceEventStore), so segments can be read from any thread without locking.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceEventSegment {
+
+    private final int importID;
+    private final int size;
+    private final int[] dataIDs;
+    private final int[] times;
+    private final int[] durations;
+    private final int[] codeIDs;
+    private final int[] comments;
+
+    /* The range of data IDs in the segment. Lets the store skip segments when looking up an entry by ID. */
+    private final int minDataID;
+    private final int maxDataID;
+
+    /* Data IDs sorted ascending, with the position of each entry. Built the first time an entry is looked up by ID. */
+    private volatile int[][] dataIDIndex = null;
+
+    private StillFaceEventSegment(int importID, int size, int[] dataIDs, int[] times, int[] durations, int[] codeIDs,
+                                  int[] comments){
+        this.importID = importID;
+        this.size = size;
+        this.dataIDs = dataIDs;
+        this.times = times;
+        this.durations = durations;
+        this.codeIDs = codeIDs;
+        this.comments = comments;
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for(int i = 0; i < size; i++){
+            min = Math.min(min, dataIDs[i]);
+            max = Math.max(max, dataIDs[i]);
+        }
+        this.minDataID = min;
+        this.maxDataID = max;
+    }
+
+    public int getImportID() { return importID; }
+
+    public int size() { return size; }
+
+    public int getDataID(int position) { return dataIDs[position]; }
+
+    public int getTime(int position) { return times[position]; }
+
+    public int getDuration(int position) { return durations[position]; }
+
+    public int getCodeID(int position) { return codeIDs[position]; }
+
+    public int getCommentReference(int position) { return comments[position]; }
+
+    /**
+     * Finds the position of an entry by its data ID
+     *
+     * @param dataID The ID of the entry
+     * @return The position of the entry in the segment, or -1 if the entry is not in the segment
+     */
+    public int indexOfDataID(int dataID){
+        if(size == 0 || dataID < minDataID || dataID > maxDataID) return -1;
+        int[][] index = dataIDIndex;
+        if(index == null){
+            index = buildDataIDIndex();
+            dataIDIndex = index;
+        }
+        int found = Arrays.binarySearch(index[0], dataID);
+        return (found < 0) ? -1 : index[1][found];
+    }
+
+    /**
+     * Finds the first entry whose time is greater than or equal to the provided time. Since entries are ordered by
+     * time, every entry from the returned position onward is at or after the time.
+     *
+     * @param time The time to search for
+     * @return The position of the first matching entry, or size() if every entry is before the time
+     */
+    public int firstIndexAtOrAfter(int time){
+        int low = 0;
+        int high = size;
+        while(low < high){
+            int middle = (low + high) >>> 1;
+            if(times[middle] < time) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Returns a lightweight view of an entry in the segment. The view reads from the segment's arrays rather than
+     * copying the values.
+     *
+     * @param position The position of the entry
+     * @return A Row viewing the entry
+     */
+    public Row row(int position){
+        if(position < 0 || position >= size) throw new IndexOutOfBoundsException("Position: " + position);
+        return new Row(position);
+    }
+
+    /**
+     * Builds the sorted data ID index. Entries are usually added in data ID order, in which case no sort is needed.
+     */
+    private int[][] buildDataIDIndex(){
+        long[] keys = new long[size];
+        for(int i = 0; i < size; i++){
+            keys[i] = ((long)dataIDs[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] sortedIDs = new int[size];
+        int[] positions = new int[size];
+        for(int i = 0; i < size; i++){
+            sortedIDs[i] = (int)(keys[i] >>> 32);
+            positions[i] = (int)keys[i];
+        }
+        return new int[][]{sortedIDs, positions};
+    }
+
+    /**
+     * Row
+     * A view of one entry of the segment
+     */
+    public class Row {
+
+        private final int position;
+
+        private Row(int position){
+            this.position = position;
+        }
+
+        public int getPosition() { return position; }
+
+        public int getImportID() { return importID; }
+
+        public int getDataID() { return dataIDs[position]; }
+
+        public int getTime() { return times[position]; }
+
+        public int getDuration() { return durations[position]; }
+
+        public int getCodeID() { return codeIDs[position]; }
+
+        public int getCommentReference() { return comments[position]; }
+    }
+
+    /**
+     * Builder
+     * Collects entries for a segment in growable arrays and produces the time-ordered segment
+     */
+    public static class Builder {
+
+        private final int importID;
+        private int size = 0;
+        private int[] dataIDs = new int[64];
+        private int[] times = new int[64];
+        private int[] durations = new int[64];
+        private int[] codeIDs = new int[64];
+        private int[] comments = new int[64];
+
+        public Builder(int importID){
+            this.importID = importID;
+        }
+
+        public Builder add(int dataID, int time, int duration, int codeID, int commentReference){
+            if(size == dataIDs.length){
+                int capacity = size * 2;
+                dataIDs = Arrays.copyOf(dataIDs, capacity);
+                times = Arrays.copyOf(times, capacity);
+                durations = Arrays.copyOf(durations, capacity);
+                codeIDs = Arrays.copyOf(codeIDs, capacity);
+                comments = Arrays.copyOf(comments, capacity);
+            }
+            dataIDs[size] = dataID;
+            times[size] = time;
+            durations[size] = duration;
+            codeIDs[size] = codeID;
+            comments[size] = commentReference;
+            size++;
+            return this;
+        }
+
+        public int size() { return size; }
+
+        /**
+         * Sorts the collected entries by time and copies them into a segment with arrays of exactly the right size
+         *
+         * @return The new segment
+         */
+        public StillFaceEventSegment build(){
+            // Sort on (time, insertion order) packed into a long so that no boxing or comparator is needed. The
+            // position is never negative, so the packed keys sort the same way as the pairs.
+            long[] keys = new long[size];
+            for(int i = 0; i < size; i++){
+                keys[i] = ((long)times[i] << 32) | i;
+            }
+            Arrays.sort(keys);
+            int[] sortedDataIDs = new int[size];
+            int[] sortedTimes = new int[size];
+            int[] sortedDurations = new int[size];
+            int[] sortedCodeIDs = new int[size];
+            int[] sortedComments = new int[size];
+            for(int i = 0; i < size; i++){
+                int from = (int)keys[i];
+                sortedDataIDs[i] = dataIDs[from];
+                sortedTimes[i] = times[from];
+                sortedDurations[i] = durations[from];
+                sortedCodeIDs[i] = codeIDs[from];
+                sortedComments[i] = comments[from];
+            }
+            return new StillFaceEventSegment(importID, size, sortedDataIDs, sortedTimes, sortedDurations,
+                    sortedCodeIDs, sortedComments);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StillFaceEventStore
+ * Compact, columnar in-memory store for video data entries, used by the StillFaceModel when the model.persistence
+ * configuration option is set to COLUMNAR. Entries are kept in one StillFaceEventSegment per import, where each
+ * column (data ID, time, duration, code ID and comment) is a primitive int array. Comments are dictionary-encoded
+ * and codes are stored by ID, so an entry costs about twenty bytes instead of the several hundred bytes taken by a
+ * StillFaceData object, its JavaFX properties and its StillFaceCode.
+ * <p>
+ * Lookups are supported by the structures built on those arrays: segments are found by import ID with a hash map,
+ * entries within a segment are ordered by time so time ranges are found with a binary search, and entries are found
+ * by data ID using the data ID range of each segment and a sorted index built on first use. StillFaceData objects are
+ * only created when entries are handed to the GUI (see getData and toData).
+ * <p>
+ * Segments are immutable. Adding, updating or removing entries replaces the whole segment of the affected import.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceEventStore {
+
+    private final Map<Integer, StillFaceEventSegment> segments = new ConcurrentHashMap<>();
+    private final Map<Integer, StillFaceCode> codes = new ConcurrentHashMap<>();
+    private final StillFaceCommentDictionary comments = new StillFaceCommentDictionary();
+
+    /**
+     * Makes a code available for turning entries back into StillFaceData objects. Every code used by an entry in the
+     * store must be registered.
+     *
+     * @param code The code to register
+     */
+    public void registerCode(StillFaceCode code){
+        codes.put(code.getCodeID(), code);
+    }
+
+    /**
+     * @param codeID The ID of a registered code
+     * @return The code with the ID, or null if it is not registered
+     */
+    public StillFaceCode getCode(int codeID){
+        return codes.get(codeID);
+    }
+
+    public StillFaceCommentDictionary getCommentDictionary() { return comments; }
+
+    /**
+     * @param importID The ID of an import
+     * @return The segment holding the entries of the import, or null if the import has no entries in the store
+     */
+    public StillFaceEventSegment getSegment(int importID){
+        return segments.get(importID);
+    }
+
+    /**
+     * @return Every segment in the store, in no particular order
+     */
+    public Collection<StillFaceEventSegment> getSegments(){
+        return Collections.unmodifiableCollection(segments.values());
+    }
+
+    /**
+     * Adds a segment to the store, replacing any segment the import already had
+     *
+     * @param segment The segment to add
+     */
+    public void putSegment(StillFaceEventSegment segment){
+        segments.put(segment.getImportID(), segment);
+    }
+
+    /**
+     * Removes the entries of an import from the store
+     *
+     * @param importID The ID of the import
+     */
+    public void removeSegment(int importID){
+        segments.remove(importID);
+    }
+
+    /**
+     * @return The total number of entries in the store
+     */
+    public int size(){
+        int size = 0;
+        for(StillFaceEventSegment segment : segments.values()){
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Adds entries to the store. Entries for an import that already has a segment are merged into it, and any entry
+     * with the same data ID as an existing entry replaces it. This is also how updated entries are written back to
+     * the store.
+     *
+     * @param data The entries to add or replace
+     */
+    public void addAll(Collection<StillFaceData> data){
+        Map<Integer, Map<Integer, StillFaceData>> byImport = new HashMap<>();
+        for(StillFaceData d : data){
+            registerCode(d.getCode());
+            byImport.computeIfAbsent(d.getImportID(), k -> new LinkedHashMap<>()).put(d.getDataID(), d);
+        }
+        for(Map.Entry<Integer, Map<Integer, StillFaceData>> entry : byImport.entrySet()){
+            int importID = entry.getKey();
+            Map<Integer, StillFaceData> replacements = entry.getValue();
+            StillFaceEventSegment.Builder builder = new StillFaceEventSegment.Builder(importID);
+            StillFaceEventSegment existing = segments.get(importID);
+            if(existing != null){
+                for(int i = 0; i < existing.size(); i++){
+                    StillFaceData replacement = replacements.remove(existing.getDataID(i));
+                    if(replacement == null){
+                        builder.add(existing.getDataID(i), existing.getTime(i), existing.getDuration(i),
+                                existing.getCodeID(i), existing.getCommentReference(i));
+                    }
+                    else{
+                        add(builder, replacement);
+                    }
+                }
+            }
+            for(StillFaceData d : replacements.values()){
+                add(builder, d);
+            }
+            segments.put(importID, builder.build());
+        }
+    }
+
+    /**
+     * Adds a StillFaceData object to a segment builder, encoding its comment and registering its code
+     */
+    private void add(StillFaceEventSegment.Builder builder, StillFaceData data){
+        registerCode(data.getCode());
+        builder.add(data.getDataID(), data.getTime(), data.getDuration(), data.getCode().getCodeID(),
+                comments.encode(data.getComment()));
+    }
+
+    /**
+     * Creates a StillFaceData object from an entry in a segment
+     *
+     * @param segment The segment holding the entry
+     * @param position The position of the entry in the segment
+     * @return A new StillFaceData object with the values of the entry
+     */
+    public StillFaceData toData(StillFaceEventSegment segment, int position){
+        return new StillFaceData(segment.getDataID(position), segment.getImportID(), segment.getTime(position),
+                segment.getDuration(position), codes.get(segment.getCodeID(position)),
+                comments.decode(segment.getCommentReference(position)));
+    }
+
+    /**
+     * Creates StillFaceData objects for the entries of an import
+     *
+     * @param importID The ID of the import
+     * @return A new list of the entries of the import, ordered by time. Empty if the import has no entries.
+     */
+    public List<StillFaceData> getData(int importID){
+        StillFaceEventSegment segment = segments.get(importID);
+        if(segment == null) return new ArrayList<>();
+        List<StillFaceData> data = new ArrayList<>(segment.size());
+        for(int i = 0; i < segment.size(); i++){
+            data.add(toData(segment, i));
+        }
+        return data;
+    }
+
+    /**
+     * Finds an entry by its data ID
+     *
+     * @param dataID The ID of the entry
+     * @return A new StillFaceData object with the values of the entry, or null if the entry is not in the store
+     */
+    public StillFaceData find(int dataID){
+        for(StillFaceEventSegment segment : segments.values()){
+            int position = segment.indexOfDataID(dataID);
+            if(position >= 0){
+                return toData(segment, position);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builder
+     * Builds a store from entries read one at a time (for example from a database result set) without creating a
+     * StillFaceData object for each of them.
+     */
+    public static class Builder {
+
+        private final StillFaceEventStore store = new StillFaceEventStore();
+        private final Map<Integer, StillFaceEventSegment.Builder> builders = new HashMap<>();
+
+        public Builder add(int dataID, int importID, int time, int duration, int codeID, String comment){
+            builders.computeIfAbsent(importID, StillFaceEventSegment.Builder::new)
+                    .add(dataID, time, duration, codeID, store.comments.encode(comment));
+            return this;
+        }
+
+        public Builder registerCode(StillFaceCode code){
+            store.registerCode(code);
+            return this;
+        }
+
+        public StillFaceEventStore build(){
+            for(StillFaceEventSegment.Builder builder : builders.values()){
+                store.putSegment(builder.build());
+            }
+            builders.clear();
+            return store;
+        }
+    }
+}
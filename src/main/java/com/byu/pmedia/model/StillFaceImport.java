@@ -149,6 +149,11 @@ public class StillFaceImport {
         return true;
     }
 
+    @Override
+    public int hashCode(){
+        return Integer.hashCode(getImportID());
+    }
+
     @Override
     public String toString(){
         return String.format("%s : %s - %s [%s]", pid, tag, alias,date);
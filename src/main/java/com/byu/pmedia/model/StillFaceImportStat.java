@@ -0,0 +1,100 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+
+import java.util.*;
+
+/**
+ * StillFaceImportStat
+ * One row of the sf_import_stats table: how often a code occurs in one segment of an import, how long those entries
+ * last in total, and the times of the first and last of them. The segments are those of the StillFaceProtocol, as in
+ * the StillFaceImportSummary: an entry belongs to the segment of the highest boundary coded at or before it.
+ * <p>
+ * The table is kept up to date by the StillFaceDAO whenever entries are imported or saved, so that other tools can
+ * read per-import code counts without going over the sf_data table.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceImportStat {
+
+    private final int importID;
+    private final int segment;
+    private final int codeID;
+    private final int count;
+    private final int totalDuration;
+    private final int firstTime;
+    private final int lastTime;
+
+    public StillFaceImportStat(int importID, int segment, int codeID, int count, int totalDuration,
+                               int firstTime, int lastTime){
+        this.importID = importID;
+        this.segment = segment;
+        this.codeID = codeID;
+        this.count = count;
+        this.totalDuration = totalDuration;
+        this.firstTime = firstTime;
+        this.lastTime = lastTime;
+    }
+
+    /**
+     * Computes the statistics of an import from its entries
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import, in any order. The protocol stored in their codes decides the segments.
+     * @return A new list of the statistics, ordered by segment and then by code ID
+     */
+    public static List<StillFaceImportStat> compute(int importID, Collection<StillFaceData> data){
+        List<StillFaceData> ordered = new ArrayList<>(data);
+        ordered.sort(Comparator.comparingInt(StillFaceData::getTime).thenComparingInt(StillFaceData::getDataID));
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex(ordered);
+        List<SortedMap<Integer, int[]>> segments = new ArrayList<>();
+        for(int i = 0; i < index.getSegmentCount(); i++){
+            segments.add(new TreeMap<>());
+        }
+        int current = 0;
+        for(StillFaceData d : ordered){
+            int ordinal = index.ordinal(d.getCode());
+            current = Math.max(current, (ordinal < 0) ? 0 : index.getBoundary(ordinal));
+            // count, total duration, first time, last time
+            int[] values = segments.get(current).computeIfAbsent(d.getCode().getCodeID(),
+                    id -> new int[]{0, 0, d.getTime(), d.getTime()});
+            values[0]++;
+            values[1] += d.getDuration();
+            values[3] = d.getTime();
+        }
+        List<StillFaceImportStat> stats = new ArrayList<>();
+        for(int segment = 0; segment < segments.size(); segment++){
+            for(Map.Entry<Integer, int[]> entry : segments.get(segment).entrySet()){
+                int[] values = entry.getValue();
+                stats.add(new StillFaceImportStat(importID, segment, entry.getKey(), values[0], values[1],
+                        values[2], values[3]));
+            }
+        }
+        return stats;
+    }
+
+    public int getImportID() { return importID; }
+
+    public int getSegment() { return segment; }
+
+    public int getCodeID() { return codeID; }
+
+    public int getCount() { return count; }
+
+    public int getTotalDuration() { return totalDuration; }
+
+    public int getFirstTime() { return firstTime; }
+
+    public int getLastTime() { return lastTime; }
+}
@@ -0,0 +1,212 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeGroups;
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceQuantileSketch;
+import com.byu.pmedia.analytics.StillFaceTimingCounter;
+import com.byu.pmedia.analytics.StillFaceTimingSketches;
+
+import java.util.*;
+
+/**
+ * StillFaceImportStatAccumulator
+ * Collects the StillFaceImportStat, StillFaceStateStat and StillFaceTimingStat rows and the StillFaceImportSummary of a
+ * new import while its entries are written, so that none of them has to go over the entries again once they are in
+ * the database. The segment of each entry is found as it is added, from the boundaries coded before it, in the same
+ * way as in StillFaceImportStat.compute, and each entry is passed on to a StillFaceTimingCounter, which measures the
+ * states and the timings of the codes as it goes.
+ * <p>
+ * Segments can only be found as the entries arrive if they arrive ordered by time and then by data ID, which is the
+ * order of a coded video written row by row. If an entry arrives out of order, or a new boundary code changes the
+ * protocol while the entries are added, the statistics are computed from the collected entries instead, and no
+ * summary is provided. The state and timing statistics are also computed from the collected entries if an entry has a
+ * code created after the accumulator, since the counter cannot take codes its index does not hold.
+ * <p>
+ * An accumulator is not thread safe, and is used for one import only.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceImportStatAccumulator {
+
+    private final int importID;
+    /* The index the boundaries of the codes are taken from. Replaced when an entry has a code it does not hold. */
+    private StillFaceCodeIndex index;
+    private final List<StillFaceData> data = new ArrayList<>();
+
+    /* Per segment, the count, total duration, first time and last time of each code by code ID */
+    private final List<SortedMap<Integer, int[]>> segments = new ArrayList<>();
+    private int segment = 0;
+    private int maxTime = 0;
+    /* The time (high bits) and data ID (low bits) of the last entry added */
+    private long lastPosition = Long.MIN_VALUE;
+    /* False once an entry arrived out of order or the protocol changed */
+    private boolean online = true;
+
+    /* Measures the states and timings of the entries as they are added. Null once an entry has a code it does not
+     * hold. The sketches are set once the counter is finished, after which no entry can be added. */
+    private StillFaceTimingCounter timingCounter;
+    private StillFaceTimingSketches timingSketches;
+
+    /**
+     * @param importID The ID of the import the entries belong to
+     */
+    public StillFaceImportStatAccumulator(int importID){
+        this.importID = importID;
+        this.index = StillFaceRegistry.getInstance().getCodeIndex();
+        for(int i = 0; i < this.index.getSegmentCount(); i++){
+            this.segments.add(new TreeMap<>());
+        }
+        this.timingCounter = new StillFaceTimingCounter(this.index, StillFaceCodeGroups.getConfigured(),
+                StillFaceQuantileSketch.DEFAULT_COMPRESSION);
+        this.timingCounter.start();
+    }
+
+    /**
+     * Adds an entry as it is written
+     *
+     * @param d The entry, with its generated data ID and its code resolved
+     */
+    public void add(StillFaceData d){
+        if(this.timingSketches != null){
+            throw new IllegalStateException("Entries cannot be added once the statistics have been taken");
+        }
+        this.data.add(d);
+        if(!this.online){
+            return;
+        }
+        long position = ((long)d.getTime() << 32) | (d.getDataID() & 0xffffffffL);
+        if(position < this.lastPosition){
+            this.online = false;
+            return;
+        }
+        this.lastPosition = position;
+        int ordinal = this.index.ordinal(d.getCode());
+        if(ordinal < 0){
+            // The code was created by this import
+            StillFaceCodeIndex current = StillFaceRegistry.getInstance().getCodeIndex();
+            if(!current.getProtocol().equals(this.index.getProtocol())){
+                this.online = false;
+                return;
+            }
+            this.index = current;
+            ordinal = this.index.ordinal(d.getCode());
+            this.timingCounter = null;
+        }
+        if(this.timingCounter != null){
+            this.timingCounter.add(d);
+        }
+        this.segment = Math.max(this.segment, (ordinal < 0) ? 0 : this.index.getBoundary(ordinal));
+        // count, total duration, first time, last time
+        int[] values = this.segments.get(this.segment).computeIfAbsent(d.getCode().getCodeID(),
+                id -> new int[]{0, 0, d.getTime(), d.getTime()});
+        values[0]++;
+        values[1] += d.getDuration();
+        values[3] = d.getTime();
+        this.maxTime = Math.max(this.maxTime, d.getTime());
+    }
+
+    public int getImportID() { return importID; }
+
+    /**
+     * @return The entries added, in the order they were added
+     */
+    public List<StillFaceData> getData() { return data; }
+
+    /**
+     * @return The statistics of the entries, ordered by segment and then by code ID
+     */
+    public List<StillFaceImportStat> getStats(){
+        if(!isOnline()){
+            return StillFaceImportStat.compute(this.importID, this.data);
+        }
+        List<StillFaceImportStat> stats = new ArrayList<>();
+        for(int s = 0; s < this.segments.size(); s++){
+            for(Map.Entry<Integer, int[]> entry : this.segments.get(s).entrySet()){
+                int[] values = entry.getValue();
+                stats.add(new StillFaceImportStat(this.importID, s, entry.getKey(), values[0], values[1],
+                        values[2], values[3]));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * @return The state statistics of the entries, ordered by segment and then by code ID
+     */
+    public List<StillFaceStateStat> getStateStats(){
+        if(!finishTimingCounter()){
+            return StillFaceStateStat.compute(this.importID, this.data);
+        }
+        return StillFaceStateStat.of(this.importID, this.timingCounter.getIndex(),
+                this.timingCounter.getStateDurations());
+    }
+
+    /**
+     * @return The timing statistics of the entries, ordered by segment, then by code ID and then by metric
+     */
+    public List<StillFaceTimingStat> getTimingStats(){
+        if(!finishTimingCounter()){
+            return StillFaceTimingStat.compute(this.importID, this.data);
+        }
+        return StillFaceTimingStat.of(this.importID, this.timingCounter.getIndex(), this.timingSketches);
+    }
+
+    /**
+     * Ends the states still open in the timing counter, the first time it is called
+     *
+     * @return True if the counter measured every entry as it was added, with the protocol that is still current
+     */
+    private boolean finishTimingCounter(){
+        if(!isOnline() || this.timingCounter == null){
+            return false;
+        }
+        if(this.timingSketches == null){
+            this.timingSketches = this.timingCounter.finish();
+        }
+        return true;
+    }
+
+    /**
+     * @return The summary of the entries, kept by the current index of the StillFaceRegistry, or null if the
+     * statistics could not be collected as the entries were added
+     */
+    public StillFaceImportSummary getSummary(){
+        if(!isOnline()){
+            return null;
+        }
+        StillFaceCodeIndex current = StillFaceRegistry.getInstance().getCodeIndex();
+        int codes = current.size();
+        int[] codeCounts = new int[codes];
+        int[] segmentCounts = new int[codes * current.getSegmentCount()];
+        for(int s = 0; s < this.segments.size(); s++){
+            for(Map.Entry<Integer, int[]> entry : this.segments.get(s).entrySet()){
+                int ordinal = current.ordinal(entry.getKey());
+                if(ordinal < 0){
+                    return null;
+                }
+                codeCounts[ordinal] += entry.getValue()[0];
+                segmentCounts[s * codes + ordinal] += entry.getValue()[0];
+            }
+        }
+        return new StillFaceImportSummary(this.data.size(), this.maxTime, current, codeCounts, segmentCounts);
+    }
+
+    /**
+     * @return True if every entry was counted as it was added and the protocol is still the one it was counted by
+     */
+    private boolean isOnline(){
+        return this.online
+                && StillFaceRegistry.getInstance().getCodeIndex().getProtocol().equals(this.index.getProtocol());
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceSegmentCounter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StillFaceImportSummary
+ * The summary figures shown under the data table and written next to an export: the number of entries, the codes used,
+ * the most common code, the total duration, and how often each code occurs in each segment of the video. The
+ * segments are those of the StillFaceProtocol chosen in the settings: an entry belongs to the segment of the highest
+ * boundary code that was coded at or before it.
+ * <p>
+ * Summaries of single imports are kept by the StillFaceSummaryCache, which builds them once and then keeps them up to
+ * date as entries are edited. Summaries of other lists of entries, such as search results, are built with the of
+ * method. Both count with the StillFaceSegmentCounter. A summary never changes once it is built.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceImportSummary {
+
+    private final int count;
+    private final int totalDuration;
+    private final StillFaceCodeIndex index;
+    /* The number of entries with each code, by ordinal */
+    private final int[] codeCounts;
+    /* The number of entries with each code in each segment of the protocol of the index, at
+     * segment * index.size() + ordinal */
+    private final int[] segmentCounts;
+
+    /**
+     * Creates a summary from counts that were already collected. The arrays are copied.
+     *
+     * @param count The number of entries
+     * @param totalDuration The time of the last entry, in milliseconds
+     * @param index The index the counts are kept by, which also decides the segments
+     * @param codeCounts The number of entries with each code, by ordinal
+     * @param segmentCounts The number of entries with each code in each segment, at segment * index.size() + ordinal
+     */
+    public StillFaceImportSummary(int count, int totalDuration, StillFaceCodeIndex index, int[] codeCounts,
+                                  int[] segmentCounts){
+        this.count = count;
+        this.totalDuration = totalDuration;
+        this.index = index;
+        this.codeCounts = codeCounts.clone();
+        this.segmentCounts = segmentCounts.clone();
+    }
+
+    /**
+     * Builds the summary of a list of entries. The entries are taken in list order, so the segments are only
+     * meaningful if the list is ordered by time.
+     *
+     * @param data The entries to summarize
+     * @return The summary of the entries
+     */
+    public static StillFaceImportSummary of(List<StillFaceData> data){
+        return new StillFaceSegmentCounter().summarize(data);
+    }
+
+    /**
+     * @return The number of entries
+     */
+    public int getCount() { return count; }
+
+    /**
+     * @return The time of the last entry, in milliseconds
+     */
+    public int getTotalDuration() { return totalDuration; }
+
+    /**
+     * @return The number of different codes used by the entries
+     */
+    public int getCodesUsed(){
+        int used = 0;
+        for(int codeCount : codeCounts){
+            if(codeCount > 0){
+                used++;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @return The code used by the most entries, or null if there are none. Ties go to the code whose name sorts first.
+     */
+    public StillFaceCode getMostCommonCode(){
+        // Ordinals follow the names, so the first of equal counts is the one whose name sorts first
+        int mostCommon = -1;
+        for(int ordinal = 0; ordinal < codeCounts.length; ordinal++){
+            if(codeCounts[ordinal] > 0 && (mostCommon < 0 || codeCounts[ordinal] > codeCounts[mostCommon])){
+                mostCommon = ordinal;
+            }
+        }
+        return (mostCommon < 0) ? null : index.getCode(mostCommon);
+    }
+
+    /**
+     * @return The index the counts are kept by
+     */
+    public StillFaceCodeIndex getIndex() { return index; }
+
+    /**
+     * @return The protocol whose segments the entries were counted in
+     */
+    public StillFaceProtocol getProtocol() { return index.getProtocol(); }
+
+    /**
+     * @return The number of segments the entries were counted in
+     */
+    public int getSegmentCount() { return index.getSegmentCount(); }
+
+    /**
+     * Provides the number of entries with each code in one segment of the video, for display in the summary tables
+     *
+     * @param segment The segment: 0 before the first boundary, and n after the nth boundary
+     * @return A new list of the code counts, most frequent first and then by name
+     */
+    public List<StillFaceCodeCount> getCodeCounts(int segment){
+        int codes = index.size();
+        int[] ranked = StillFaceSegmentCounter.rank(segmentCounts, segment * codes, codes);
+        List<StillFaceCodeCount> counts = new ArrayList<>(ranked.length);
+        for(int ordinal : ranked){
+            counts.add(new StillFaceCodeCount(index.getName(ordinal), segmentCounts[segment * codes + ordinal]));
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.googlecode.cqengine.attribute.Attribute;
+import com.googlecode.cqengine.index.compound.CompoundIndex;
+import com.googlecode.cqengine.index.compound.support.CompoundAttribute;
+import com.googlecode.cqengine.index.hash.HashIndex;
+import com.googlecode.cqengine.index.navigable.NavigableIndex;
+import com.googlecode.cqengine.index.radix.RadixTreeIndex;
+import com.googlecode.cqengine.index.unique.UniqueIndex;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.option.QueryOptions;
+import com.googlecode.cqengine.resultset.ResultSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceIndexUsage
+ * Records how many times the CQEngine query planner has used each index of the model collections. The indexes are
+ * created through the factory methods of this class (see StillFaceCollectionFactory), which return subclasses of the
+ * CQEngine indexes that count each call to retrieve. An index whose count stays at zero during normal use costs memory
+ * and insert time without ever answering a query, and is a candidate to drop from the index profile.
+ * <p>
+ * Counts are keyed by index type and attribute name (e.g. "HashIndex(importID)") and accumulate over every collection
+ * created while the application runs, since the model replaces its collections when it is refreshed.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceIndexUsage {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Singleton instance */
+    private static StillFaceIndexUsage singleton = null;
+
+    /* The number of retrievals answered by each index */
+    private final ConcurrentHashMap<String, LongAdder> counts = new ConcurrentHashMap<>();
+
+    private StillFaceIndexUsage(){}
+
+    /**
+     * Retrieves the singleton instance of the StillFaceIndexUsage class
+     *
+     * @return The singleton instance
+     */
+    public static synchronized StillFaceIndexUsage getInstance(){
+        if(singleton == null){
+            singleton = new StillFaceIndexUsage();
+        }
+        return singleton;
+    }
+
+    /**
+     * Makes an index known so that it is reported even if it is never used
+     *
+     * @param type The type of the index (e.g. HashIndex)
+     * @param attributeName The name of the attribute the index is built on
+     * @return The name used to record the usage of the index
+     */
+    private String register(String type, String attributeName){
+        String name = type + "(" + attributeName + ")";
+        counts.computeIfAbsent(name, k -> new LongAdder());
+        return name;
+    }
+
+    /**
+     * Records a retrieval answered by an index
+     *
+     * @param name The name returned when the index was registered
+     */
+    private void record(String name){
+        counts.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    /**
+     * Returns the number of retrievals answered by an index
+     *
+     * @param name The index name, e.g. "HashIndex(importID)"
+     * @return The number of retrievals, or -1 if no index with that name has been created
+     */
+    public long getCount(String name){
+        LongAdder count = counts.get(name);
+        return (count == null) ? -1 : count.sum();
+    }
+
+    /**
+     * Provides a snapshot of the usage of every index created so far
+     *
+     * @return A map of index name to retrieval count, sorted by index name
+     */
+    public Map<String, Long> getCounts(){
+        Map<String, Long> snapshot = new TreeMap<>();
+        counts.forEach((name, count) -> snapshot.put(name, count.sum()));
+        return snapshot;
+    }
+
+    /**
+     * Forgets every index and count. Used when comparing index profiles.
+     */
+    public void reset(){
+        counts.clear();
+    }
+
+    /**
+     * Writes the usage of every index to the log
+     */
+    public void log(){
+        logger.info("Index usage: " + getCounts());
+    }
+
+    @Override
+    public String toString(){
+        return "StillFaceIndexUsage" + getCounts();
+    }
+
+    /*
+     * Factory methods for the tracked indexes. Each uses the same map factories as the corresponding onAttribute
+     * method of CQEngine, so the indexes behave exactly like the untracked versions.
+     */
+
+    public static <A, O> HashIndex<A, O> hashIndex(Attribute<O, A> attribute){
+        return new TrackedHashIndex<>(attribute);
+    }
+
+    public static <A extends Comparable<A>, O> NavigableIndex<A, O> navigableIndex(Attribute<O, A> attribute){
+        return new TrackedNavigableIndex<>(attribute);
+    }
+
+    public static <A, O> UniqueIndex<A, O> uniqueIndex(Attribute<O, A> attribute){
+        return new TrackedUniqueIndex<>(attribute);
+    }
+
+    public static <A extends CharSequence, O> RadixTreeIndex<A, O> radixTreeIndex(Attribute<O, A> attribute){
+        return new TrackedRadixTreeIndex<>(attribute);
+    }
+
+    public static <O> CompoundIndex<O> compoundIndex(List<Attribute<O, ?>> attributes){
+        StringJoiner attributeNames = new StringJoiner(",");
+        for(Attribute<O, ?> attribute : attributes){
+            attributeNames.add(attribute.getAttributeName());
+        }
+        return new TrackedCompoundIndex<>(new CompoundAttribute<>(attributes), attributeNames.toString());
+    }
+
+    private static class TrackedHashIndex<A, O> extends HashIndex<A, O> {
+        private final String name;
+
+        TrackedHashIndex(Attribute<O, A> attribute){
+            super(new DefaultIndexMapFactory<>(), new DefaultValueSetFactory<>(), attribute);
+            this.name = getInstance().register("HashIndex", attribute.getAttributeName());
+        }
+
+        @Override
+        public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions){
+            getInstance().record(name);
+            return super.retrieve(query, queryOptions);
+        }
+    }
+
+    private static class TrackedNavigableIndex<A extends Comparable<A>, O> extends NavigableIndex<A, O> {
+        private final String name;
+
+        TrackedNavigableIndex(Attribute<O, A> attribute){
+            super(new DefaultIndexMapFactory<>(), new DefaultValueSetFactory<>(), attribute);
+            this.name = getInstance().register("NavigableIndex", attribute.getAttributeName());
+        }
+
+        @Override
+        public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions){
+            getInstance().record(name);
+            return super.retrieve(query, queryOptions);
+        }
+    }
+
+    private static class TrackedUniqueIndex<A, O> extends UniqueIndex<A, O> {
+        private final String name;
+
+        TrackedUniqueIndex(Attribute<O, A> attribute){
+            super(new DefaultIndexMapFactory<>(), attribute);
+            this.name = getInstance().register("UniqueIndex", attribute.getAttributeName());
+        }
+
+        @Override
+        public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions){
+            getInstance().record(name);
+            return super.retrieve(query, queryOptions);
+        }
+    }
+
+    private static class TrackedRadixTreeIndex<A extends CharSequence, O> extends RadixTreeIndex<A, O> {
+        private final String name;
+
+        TrackedRadixTreeIndex(Attribute<O, A> attribute){
+            super(attribute);
+            this.name = getInstance().register("RadixTreeIndex", attribute.getAttributeName());
+        }
+
+        @Override
+        public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions){
+            getInstance().record(name);
+            return super.retrieve(query, queryOptions);
+        }
+    }
+
+    private static class TrackedCompoundIndex<O> extends CompoundIndex<O> {
+        private final String name;
+
+        TrackedCompoundIndex(CompoundAttribute<O> attribute, String attributeNames){
+            super(new DefaultIndexMapFactory<>(), new DefaultValueSetFactory<>(), attribute);
+            this.name = getInstance().register("CompoundIndex", attributeNames);
+        }
+
+        @Override
+        public ResultSet<O> retrieve(Query<O> query, QueryOptions queryOptions){
+            getInstance().record(name);
+            return super.retrieve(query, queryOptions);
+        }
+    }
+}
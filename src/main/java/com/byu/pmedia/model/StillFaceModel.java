@@ -16,9 +16,21 @@ import com.byu.pmedia.database.StillFaceDAO;
 import com.googlecode.cqengine.ConcurrentIndexedCollection;
 import com.googlecode.cqengine.IndexedCollection;
 import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.resultset.ResultSet;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
 
 import static com.googlecode.cqengine.query.QueryFactory.*;
@@ -28,10 +40,36 @@ import static com.googlecode.cqengine.query.QueryFactory.*;
  * Data structure for keeping track of database data and user edits in memory. The This model is populated from the
  * Project MEDIA database and, depending on user caching configuration, can hold all of the data in the database or
  * only the data requested by the user.
+ * <p>
+ * Everything loaded from the database is held in an immutable StillFaceModelState that is published through a single
+ * atomic reference. A refresh builds a complete new state on the calling (background) thread and swaps it in at once,
+ * so readers never block and never see a half-refreshed model. Incremental writes (new imports, saved edits, new
+ * codes) are also applied by swapping in a new state. Writes made while a refresh is being built are recorded and
+ * applied to the new state before it is swapped in, so that they are not lost. The model can refresh itself
+ * periodically, as configured by the model.refresh.interval option (in seconds, 0 to disable).
+ * <p>
+ * The model is shared by the JavaFX application thread and any number of background tasks, and follows these rules:
+ * <ul>
+ *     <li>Every method may be called from any thread once initialize has returned. Only reload waits for another
+ *     reload, and only writes that change the video data entries in place wait for each other.</li>
+ *     <li>Saved edits and new or deleted imports change the video data entries in place. getDataForImport and
+ *     getDataForImports check their reads against those writes and read again if one overlapped, so they never
+ *     return an import with only part of its entries. Code that iterates getDataCollection directly may.</li>
+ *     <li>Collections and lists returned by the model must be treated as read-only. Callers that iterate over them
+ *     while another thread may write (for example an import task adding entries) should take the state once with
+ *     getState and read from it.</li>
+ *     <li>Unsaved edits are kept in a concurrent journal keyed by data ID. A save takes a copy of the journal with
+ *     getEdits and, once the copy is written, removes only those edits with clearEdits(Collection). Edits made while
+ *     the save was running stay in the journal.</li>
+ *     <li>The visible import and visible data are set by the JavaFX application thread. The visible data list is
+ *     unmodifiable and is replaced, not changed, so a task that exports it sees one consistent list.</li>
+ *     <li>Every change is posted to the StillFaceModelEventBus as a StillFaceModelEvent, from the thread that made
+ *     it. The bus delivers the changes to the views on the JavaFX application thread.</li>
+ * </ul>
  *
  * @author Braden Hitchcock
  */
-public class StillFaceModel extends Observable {
+public class StillFaceModel {
 
     /* Grab an instance of the logger */
     private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
@@ -39,51 +77,94 @@ public class StillFaceModel extends Observable {
     private StillFaceDAO dao;               // Database Access Object for the model
     private boolean cached;                 // If true, the sf_data table is cached in memory to this object at initialization
                                             // and retrieving data from the model will not refer to the database server
-    private boolean initialized = false;    // Flag to check if the model has been initialized
+    private volatile boolean initialized = false;    // Flag to check if the model has been initialized. Set last by
+                                                     // initialize, so a thread that sees it set sees the other fields
+    private PersistenceMode persistenceMode;// Where the cached sf_data entries are stored (heap, off-heap or disk)
 
-    /* Collections that hold data. They are CQEngine IndexedCollections, allowing for extremely fast data querying
-     * and manipulation (SQL-like interactions with in-memory data structures. */
-    private IndexedCollection<StillFaceImport> importDataCollection = new ConcurrentIndexedCollection<>();
-    private IndexedCollection<StillFaceData> dataCollection = new ConcurrentIndexedCollection<>();
-    private IndexedCollection<StillFaceCode> codeCollection = new ConcurrentIndexedCollection<>();
-    private IndexedCollection<StillFaceTag> tagCollection = new ConcurrentIndexedCollection<>();
+    /* The default number of StillFaceData entries held by the data cache when the model.cache.size configuration
+     * option is missing or invalid */
+    private static final int DEFAULT_CACHE_SIZE = 250000;
 
-    /* These static lists contain the Codes and Tags used by the program and allow lists of the available codes and
-     * tags to be produced easily */
-    private static List<StillFaceCode> codeList = new ArrayList<>();
-    private static List<StillFaceTag> tagList = new ArrayList<>();
+    /* When the sf_data table is not cached, the entries of recently viewed imports are kept in this bounded cache so
+     * that switching between a handful of imports does not hit the database every time. Null when the model is
+     * cached. */
+    private StillFaceDataCache dataCache = null;
+
+    /* Summaries of recently displayed imports, kept up to date as entries are saved so that displaying an import does
+     * not go over its entries again. Bounded by the same number of entries as the data cache. */
+    private StillFaceSummaryCache summaryCache = null;
+
+    /* When the model is cached and the model.snapshot configuration option is enabled, the sf_data entries are
+     * written to this local snapshot so that the next launch only fetches the entries added since. snapshotCurrent is
+     * true while the snapshot file matches the cached entries. loadedSnapshotCurrent records whether the last load
+     * came entirely from the snapshot; it is only used while the refresh lock is held. */
+    private StillFaceSnapshot snapshot = null;
+    private volatile boolean snapshotCurrent = false;
+    private boolean loadedSnapshotCurrent = false;
+
+    /* When more imports than this changed since the snapshot was taken, the whole table is loaded instead of fetching
+     * the changed imports with one long IN list */
+    private static final int MAX_CHANGED_SNAPSHOT_IMPORTS = 500;
+
+    /* The imports, video data, codes and tags loaded from the database. The state object is replaced as a whole
+     * whenever it changes (see StillFaceModelState). */
+    private final AtomicReference<StillFaceModelState> state = new AtomicReference<>(StillFaceModelState.EMPTY);
+
+    /* Held while a refresh is built, so that only one refresh runs at a time. Readers never take this lock. */
+    private final Object refreshLock = new Object();
+
+    /* While reload builds a new state, every write is also recorded here so that it can be applied to the new state
+     * before it is published. Null while no reload is running. */
+    private volatile Queue<UnaryOperator<StillFaceModelState>> pendingWrites = null;
+
+    /* Writes hold the read lock while they record and apply themselves. reload takes the write lock to start
+     * recording, so that every write it does not record has already been applied to the state it starts from. */
+    private final ReentrantReadWriteLock writeGate = new ReentrantReadWriteLock();
+
+    /* Written while video data entries are changed in place. Readers of the entries of an import read optimistically
+     * and only take the read lock if a write happened during their read (see readData). */
+    private final StampedLock dataLock = new StampedLock();
+
+    /* Runs the automatic refresh when the model.refresh.interval configuration option is set */
+    private ScheduledExecutorService refreshExecutor = null;
 
     /* This map contains edits made to StillFace data by the user, providing a way to track what changes are made and
      * update the database when the user saves their changes. Placing the map here in the model allows it to be
      * accessible from multiple places in the program via the singleton pattern, meaning that we can register
-     * keyboard shortcuts (such as Ctrl+s) that can perform actions on it. */
-    private Map<Integer, StillFaceData> editedDataMap = new HashMap<>();
+     * keyboard shortcuts (such as Ctrl+s) that can perform actions on it. The map is keyed by data ID and is
+     * concurrent, so the GUI can keep adding edits while a save task is writing earlier ones. */
+    private final Map<Integer, StillFaceData> editedDataMap = new ConcurrentHashMap<>();
 
-    /* This map contains the data that is currently visible to the user as an array. Useful in allowing the data to
-     * be exported as a CSV file or be plotted when the user switches to plot mode. */
-    private List<StillFaceData> visibleDataList = new ArrayList<>();
+    /* This list contains the data that is currently visible to the user. Useful in allowing the data to be exported
+     * as a CSV file or be plotted when the user switches to plot mode. The list is unmodifiable and is replaced as a
+     * whole when it changes. */
+    private final AtomicReference<List<StillFaceData>> visibleDataList =
+            new AtomicReference<>(Collections.emptyList());
 
     /* This StillFaceImport object holds information about the currently visible import in the data table */
-    private StillFaceImport visibleImport = null;
+    private volatile StillFaceImport visibleImport = null;
 
-    // The SINGLETON instance of the model
-    private static StillFaceModel singleton;
+    /* Holds the SINGLETON instance of the model. The class loader creates the instance the first time getInstance is
+     * called and guarantees that every thread sees it fully constructed. */
+    private static class Holder {
+        private static final StillFaceModel INSTANCE = new StillFaceModel();
+    }
 
     /**
      * Static method that will return the singleton instance of the data model. If the instance has not been created
-     * yet, it will create the instance before returning a reference to it.
+     * yet, it will create the instance before returning a reference to it. Safe to call from any thread.
      *
      * @return A reference to the StillFaceModel singleton instance
      */
     public static StillFaceModel getInstance(){
-        if(singleton == null){
-            singleton = new StillFaceModel();
-        }
-        return singleton;
+        return Holder.INSTANCE;
     }
 
     /**
-     * Populates the internal data structures of the model using information from the database.
+     * Populates the internal data structures of the model using information from the database. If the model is cached
+     * and a snapshot of the sf_data table is available, the entries are loaded from the snapshot and only the entries
+     * added since it was taken are fetched from the database. Otherwise the whole table is fetched and a new snapshot
+     * is written.
      *
      * @param dao The data access object uses to access the database
      *
@@ -94,17 +175,34 @@ public class StillFaceModel extends Observable {
             this.dao = dao;
             this.cached = StillFaceConfig.getInstance().getAsBoolean("model.cache");
             if(this.cached){
-                this.dao.lockConnection();
-                this.importDataCollection = this.dao.getImportData(0);
-                this.codeCollection = this.dao.getCode(0);
-                this.tagCollection = this.dao.getTag(0);
-                this.dataCollection = this.dao.getCodeDataFromImport(0);
-                this.dao.unlockConnection();
-                this.dao.closeConnection();
+                this.persistenceMode = StillFaceCollectionFactory.getConfiguredMode();
+                this.snapshot = StillFaceSnapshot.fromConfig();
+                logger.info("Caching data in " + this.persistenceMode.toPrettyString());
+            }
+            else{
+                int cacheSize = StillFaceConfig.getInstance().getAsInt("model.cache.size");
+                if(cacheSize <= 0){
+                    logger.warning("Invalid model.cache.size. Using default of " + DEFAULT_CACHE_SIZE);
+                    cacheSize = DEFAULT_CACHE_SIZE;
+                }
+                this.dataCache = new StillFaceDataCache(cacheSize);
+            }
+            this.summaryCache = new StillFaceSummaryCache((this.dataCache != null)
+                    ? this.dataCache.getCapacity() : DEFAULT_CACHE_SIZE);
+            synchronized(this.refreshLock){
+                StillFaceModelState loaded = load(1);
+                if(loaded == null){
+                    logger.severe("Error initializing model: unable to load data");
+                    return false;
+                }
+                StillFaceModelState previous = this.state.getAndSet(loaded);
+                releaseData(previous, loaded);
+                this.snapshotCurrent = this.loadedSnapshotCurrent;
             }
             this.initialized = true;
-            populateCodeList();
-            populateTagList();
+            if(this.snapshot != null && !this.snapshotCurrent){
+                saveSnapshot();
+            }
             return true;
         }
         catch (SQLException e){
@@ -114,8 +212,154 @@ public class StillFaceModel extends Observable {
     }
 
     /**
-     * Provides access to an indexed collection of import data entries from the database. If the model is cached, these
-     * will be in-memory. Otherwise the model will query the database to get the information.
+     * Loads a complete state from the database. The import, code and tag tables are small and are always loaded.
+     * Only the sf_data table is subject to the caching configuration. Must be called while holding the refresh lock.
+     *
+     * @param version The version to give the new state
+     * @return The new state, or null if any of the tables could not be loaded
+     * @throws SQLException If the database connection cannot be closed
+     */
+    private StillFaceModelState load(long version) throws SQLException {
+        // The snapshot is read before the code table is loaded, so that codes renamed since the snapshot was taken
+        // are updated in place by the load
+        StillFaceSnapshot.Contents contents = (this.snapshot != null) ? this.snapshot.read() : null;
+        this.loadedSnapshotCurrent = false;
+        this.dao.lockConnection();
+        try{
+            IndexedCollection<StillFaceImport> imports = this.dao.getImportData(0);
+            IndexedCollection<StillFaceCode> codes = this.dao.getCode(0);
+            IndexedCollection<StillFaceTag> tags = this.dao.getTag(0);
+            if(imports == null || codes == null || tags == null){
+                return null;
+            }
+            IndexedCollection<StillFaceData> data = new ConcurrentIndexedCollection<>();
+            StillFaceEventStore store = null;
+            if(this.cached){
+                List<StillFaceData> snapshotData = (contents != null) ? updateSnapshotData(contents) : null;
+                if(snapshotData != null && this.persistenceMode == PersistenceMode.COLUMNAR){
+                    store = new StillFaceEventStore();
+                    store.addAll(snapshotData);
+                }
+                else if(snapshotData != null){
+                    data = StillFaceCollectionFactory.createDataCollection();
+                    if(data == null) return null;
+                    data.addAll(snapshotData);
+                }
+                else if(this.persistenceMode == PersistenceMode.COLUMNAR){
+                    store = this.dao.getEventStore(0);
+                    if(store == null) return null;
+                }
+                else{
+                    data = this.dao.getCodeDataFromImport(0, this.persistenceMode);
+                    if(data == null) return null;
+                }
+            }
+            return new StillFaceModelState(version, imports, data, store, codes, tags);
+        }
+        finally{
+            this.dao.unlockConnection();
+            this.dao.closeConnection();
+        }
+    }
+
+    /**
+     * Validates the entries read from a snapshot against the database, fetches again the imports whose entries
+     * changed since the snapshot was taken and appends the entries added since. Sets loadedSnapshotCurrent to whether
+     * the snapshot needed no update.
+     *
+     * @param contents The contents of the snapshot
+     * @return The up-to-date entries, or null if the snapshot is too far out of date and the whole table must be
+     * loaded
+     */
+    private List<StillFaceData> updateSnapshotData(StillFaceSnapshot.Contents contents){
+        StillFaceSnapshot.Checksum checksum = this.dao.getCodeDataChecksum(contents.getHighWaterMark());
+        if(checksum == null){
+            return null;
+        }
+        Set<Integer> changed = checksum.getChangedImports(contents.getChecksum());
+        if(changed.size() > MAX_CHANGED_SNAPSHOT_IMPORTS){
+            logger.info("Snapshot is out of date (" + changed.size() + " imports changed). Loading all data.");
+            return null;
+        }
+        List<StillFaceData> data = contents.getData();
+        if(!changed.isEmpty()){
+            // The changed imports are fetched whole, including their entries after the high-water mark
+            List<StillFaceData> refetched = this.dao.getCodeDataListByExample(changed, null);
+            if(refetched == null){
+                return null;
+            }
+            data.removeIf(d -> changed.contains(d.getImportID()));
+            data.addAll(refetched);
+            logger.info("Loaded " + refetched.size() + " entries of " + changed.size() +
+                    " imports changed since the snapshot was taken");
+        }
+        List<StillFaceData> added = this.dao.getCodeDataListAfter(contents.getHighWaterMark());
+        if(added == null){
+            return null;
+        }
+        added.removeIf(d -> changed.contains(d.getImportID()));
+        logger.info("Loaded " + added.size() + " entries added since the snapshot was taken");
+        data.addAll(added);
+        if(!changed.isEmpty()){
+            data.sort(Comparator.comparingInt(StillFaceData::getDataID));
+        }
+        this.loadedSnapshotCurrent = changed.isEmpty() && added.isEmpty();
+        return data;
+    }
+
+    /**
+     * Writes the cached sf_data entries to the local snapshot, so that the next launch can load them without
+     * fetching the whole table. Does nothing if the snapshot already matches the cached entries.
+     *
+     * @return True if the snapshot is up to date after the call, false if snapshots are disabled or the write fails
+     */
+    public boolean saveSnapshot(){
+        if(!this.initialized || !this.cached || this.snapshot == null){
+            return false;
+        }
+        if(this.snapshotCurrent){
+            return true;
+        }
+        StillFaceModelState current = this.state.get();
+        List<StillFaceData> data = new ArrayList<>();
+        if(current.getEventStore() != null){
+            StillFaceEventStore store = current.getEventStore();
+            for(StillFaceEventSegment segment : store.getSegments()){
+                data.addAll(store.getData(segment.getImportID()));
+            }
+        }
+        else{
+            for(StillFaceData d : current.getDataCollection()){
+                data.add(d);
+            }
+        }
+        this.snapshotCurrent = this.snapshot.write(data);
+        return this.snapshotCurrent;
+    }
+
+    /**
+     * Provides the current state of the model. Callers that read several collections should take the state once and
+     * read from it, so that every value they see comes from the same load.
+     *
+     * @return The current StillFaceModelState
+     */
+    public StillFaceModelState getState(){
+        return this.state.get();
+    }
+
+    /**
+     * @return True once the model has been loaded from the database
+     */
+    public boolean isInitialized(){ return this.initialized; }
+
+    /**
+     * @return True if the sf_data table is held in memory, false if entries are loaded from the database on demand
+     */
+    public boolean isCached(){ return this.cached; }
+
+    /**
+     * Provides access to an indexed collection of import data entries from the database. Import entries are always
+     * held in memory, regardless of the caching configuration.
      * <p>
      * The IndexedCollection objects are a part of the CQEngine implementation on GitHub. They provide extremely
      * fast, SQL-like access to internal data structures.
@@ -124,14 +368,38 @@ public class StillFaceModel extends Observable {
      */
     public IndexedCollection<StillFaceImport> getImportDataCollection() {
         if(this.initialized) {
-            return (this.cached) ? importDataCollection : this.dao.getImportData(0);
+            return this.state.get().getImportDataCollection();
         }
         return null;
     }
 
+    /**
+     * Provides the IDs of the imports matching a query, for analyses that go over a cohort of imports one at a time.
+     *
+     * @param query A query on the attributes of StillFaceImport, such as and(equal(StillFaceImport.YEAR, 2017),
+     *              equal(StillFaceImport.TAG, tag))
+     * @return The IDs of the matching imports in ascending order, or null if the model has not been initialized
+     */
+    public int[] getImportIDs(Query<StillFaceImport> query){
+        if(!this.initialized) return null;
+        int[] importIDs;
+        try(ResultSet<StillFaceImport> results = this.state.get().getImportDataCollection().retrieve(query)){
+            importIDs = new int[results.size()];
+            int i = 0;
+            for(StillFaceImport importData : results){
+                importIDs[i++] = importData.getImportID();
+            }
+        }
+        Arrays.sort(importIDs);
+        return importIDs;
+    }
+
     /**
      * Provides access to an indexed collection of video data entries from the database. If the model is cached, these
-     * will be in-memory. Otherwise the model will query the database to get the information.
+     * will be in-memory. Otherwise the model will query the database to get the information, which loads the entire
+     * sf_data table. The same is true when the entries are held in the columnar event store, since the collection has
+     * to be built from the store. Callers that only need the entries of some imports should use getDataForImport or
+     * getDataForImports instead.
      * <p>
      * The IndexedCollection objects are a part of the CQEngine implementation on GitHub. They provide extremely
      * fast, SQL-like access to internal data structures.
@@ -140,14 +408,24 @@ public class StillFaceModel extends Observable {
      */
     public IndexedCollection<StillFaceData> getDataCollection() {
         if(this.initialized) {
-            return (this.cached) ? dataCollection : this.dao.getCodeDataFromImport(0);
+            StillFaceModelState current = this.state.get();
+            if(current.getEventStore() != null){
+                StillFaceEventStore store = current.getEventStore();
+                IndexedCollection<StillFaceData> collection =
+                        StillFaceCollectionFactory.createDataCollection(PersistenceMode.HEAP, null);
+                for(StillFaceEventSegment segment : store.getSegments()){
+                    collection.addAll(store.getData(segment.getImportID()));
+                }
+                return collection;
+            }
+            return (this.cached) ? current.getDataCollection() : this.dao.getCodeDataFromImport(0);
         }
         return null;
     }
 
     /**
-     * Provides access to an indexed collection of code data entries from the database. If the model is cached, these
-     * will be in-memory. Otherwise the model will query the database to get the information.
+     * Provides access to an indexed collection of code data entries from the database. Code entries are always held
+     * in memory, regardless of the caching configuration.
      * <p>
      * The IndexedCollection objects are a part of the CQEngine implementation on GitHub. They provide extremely
      * fast, SQL-like access to internal data structures.
@@ -156,14 +434,14 @@ public class StillFaceModel extends Observable {
      */
     public IndexedCollection<StillFaceCode> getCodeCollection() {
         if(this.initialized) {
-            return (this.cached) ? codeCollection : this.dao.getCode(0);
+            return this.state.get().getCodeCollection();
         }
         return null;
     }
 
     /**
-     * Provides access to an indexed collection of tag data entries from the database. If the model is cached, these
-     * will be in-memory. Otherwise the model will query the database to get the information.
+     * Provides access to an indexed collection of tag data entries from the database. Tag entries are always held in
+     * memory, regardless of the caching configuration.
      * <p>
      * The IndexedCollection objects are a part of the CQEngine implementation on GitHub. They provide extremely
      * fast, SQL-like access to internal data structures.
@@ -172,43 +450,160 @@ public class StillFaceModel extends Observable {
      */
     public IndexedCollection<StillFaceTag> getTagCollection() {
         if(this.initialized){
-            return (this.cached) ? tagCollection : this.dao.getTag(0);
+            return this.state.get().getTagCollection();
         }
         return null;
     }
 
+    /**
+     * Provides the video data entries of a single import, ordered by time. If the model is cached, the entries are
+     * retrieved from memory. Otherwise they are served from the data cache, which loads them from the database the
+     * first time the import is requested.
+     *
+     * @param importID The ID of the import whose entries are requested
+     * @return A new list of the StillFaceData objects belonging to the import. Empty if the entries could not be loaded
+     */
+    public List<StillFaceData> getDataForImport(int importID){
+        List<StillFaceData> result = new ArrayList<>();
+        if(!this.initialized) return result;
+        StillFaceModelState current = this.state.get();
+        if(current.getEventStore() != null){
+            result.addAll(readData(() -> current.getEventStore().getData(importID)));
+        }
+        else if(this.cached){
+            result.addAll(readData(() -> {
+                List<StillFaceData> data = new ArrayList<>();
+                for(StillFaceData d : current.getDataCollection().retrieve(equal(StillFaceData.IMPORT_ID, importID),
+                        queryOptions(orderBy(ascending(StillFaceData.TIME), ascending(StillFaceData.DATA_ID))))){
+                    data.add(d);
+                }
+                return data;
+            }));
+        }
+        else{
+            List<StillFaceData> data = this.dataCache.get(importID, this.dao::getCodeDataListFromImport);
+            if(data == null){
+                logger.warning("Failed to load data for import " + importID);
+                return result;
+            }
+            result.addAll(data);
+        }
+        return result;
+    }
+
+    /**
+     * Provides the video data entries of several imports, ordered by data ID. If the model is not cached, each import
+     * is served from the data cache.
+     *
+     * @param importIDs The IDs of the imports whose entries are requested
+     * @return A new list of the StillFaceData objects belonging to the imports
+     */
+    public List<StillFaceData> getDataForImports(Collection<Integer> importIDs){
+        List<StillFaceData> result = new ArrayList<>();
+        if(!this.initialized || importIDs.isEmpty()) return result;
+        StillFaceModelState current = this.state.get();
+        if(this.cached && current.getEventStore() == null){
+            result.addAll(readData(() -> {
+                List<StillFaceData> data = new ArrayList<>();
+                for(StillFaceData d : current.getDataCollection().retrieve(in(StillFaceData.IMPORT_ID, importIDs),
+                        queryOptions(orderBy(ascending(StillFaceData.DATA_ID))))){
+                    data.add(d);
+                }
+                return data;
+            }));
+        }
+        else{
+            for(int importID : importIDs){
+                result.addAll(getDataForImport(importID));
+            }
+            result.sort(Comparator.comparingInt(StillFaceData::getDataID));
+        }
+        return result;
+    }
+
+    /**
+     * Provides access to the cache used for video data entries when the model is not cached. Useful for reporting
+     * cache statistics.
+     *
+     * @return The StillFaceDataCache of the model, or null if the whole sf_data table is cached
+     */
+    public StillFaceDataCache getDataCache(){ return dataCache; }
+
+    /**
+     * Provides the summary of an import, including any unsaved edits to its entries. The summary is served from the
+     * summary cache, so the entries of the import are only gone over the first time it is summarized.
+     *
+     * @param importID The ID of the import
+     * @return The summary of the import, or null if the model has not been initialized
+     */
+    public StillFaceImportSummary getSummary(int importID){
+        if(!this.initialized) return null;
+        List<StillFaceData> edits = new ArrayList<>();
+        for(StillFaceData d : this.editedDataMap.values()){
+            if(d.getImportID() == importID){
+                edits.add(d);
+            }
+        }
+        return this.summaryCache.get(importID, edits, this::getDataForImport);
+    }
+
+    /**
+     * Provides access to the cache of import summaries. Useful for reporting cache statistics.
+     *
+     * @return The StillFaceSummaryCache of the model
+     */
+    public StillFaceSummaryCache getSummaryCache(){ return summaryCache; }
+
+    /**
+     * Provides access to the columnar event store holding the video data entries when the persistence mode is
+     * COLUMNAR. Summaries and other scans over many entries can loop over the segments of the store directly.
+     *
+     * @return The StillFaceEventStore of the model, or null if the model does not use the COLUMNAR mode
+     */
+    public StillFaceEventStore getEventStore(){ return this.state.get().getEventStore(); }
+
     /**
      * Provides access to a list of all the code entries in the database. This provides easy access for populating
-     * ChoiceBox objects and other lists in the GUI.
+     * ChoiceBox objects and other lists in the GUI. The list is unmodifiable and is replaced, not changed, when the
+     * codes change.
      *
      * @return A list of StillFaceCode objects representing all the available codes in the database
      */
-    public static List<StillFaceCode> getCodeList(){ return codeList; }
+    public static List<StillFaceCode> getCodeList(){ return getInstance().state.get().getCodeList(); }
+
+    /**
+     * Provides the protocol stored in the delimiters of the codes, which decides the segments of the summaries
+     *
+     * @return The current StillFaceProtocol
+     */
+    public static StillFaceProtocol getProtocol(){ return StillFaceProtocol.fromCodes(getCodeList()); }
 
     /**
      * Provides access to a list of all the tag entries in the database. This provides easy access for populating
-     * ChoiceBox objects and other lists in the GUI.
+     * ChoiceBox objects and other lists in the GUI. The list is unmodifiable and is replaced, not changed, when the
+     * tags change.
      *
      * @return A list of StillFaceTag objects representing all the available tags in the database
      */
-    public static List<StillFaceTag> getTagList() { return tagList; }
+    public static List<StillFaceTag> getTagList() { return getInstance().state.get().getTagList(); }
 
     /**
      * Provides access to the list of data visible on the GUI. This list is composed of StillFaceData objects based on
-     * a specific import or on a search query and is used in exporting the data to a file.
+     * a specific import or on a search query and is used in exporting the data to a file. The list is unmodifiable
+     * and is replaced, not changed, when the visible data changes.
      *
      * @return A list of the StillFaceData objects visible on the GUI
      */
-    public List<StillFaceData> getVisibleDataList(){ return visibleDataList; }
+    public List<StillFaceData> getVisibleDataList(){ return visibleDataList.get(); }
 
     /**
-     * Sets the visible data to the provided list
+     * Sets the visible data to a copy of the provided list
      *
      * @param data A list of StillFaceData objects that are visible from the GUI
      */
     public void setVisibleData(List<StillFaceData> data){
-        visibleDataList = data;
-        setChanged();
+        visibleDataList.set(Collections.unmodifiableList(new ArrayList<>(data)));
+        post(StillFaceModelEvent.visibleSelectionChanged());
     }
 
     /**
@@ -227,15 +622,27 @@ public class StillFaceModel extends Observable {
      */
     public void setVisibleImport(StillFaceImport importData){
         this.visibleImport = importData;
-        setChanged();
+        post(StillFaceModelEvent.visibleSelectionChanged());
     }
 
     /**
-     * Provides access to all the unsaved edits made by the user
+     * Provides access to all the unsaved edits made by the user. The map is a read-only view that reflects edits as
+     * they are made; use getEdits to take a copy that will not change.
      *
      * @return A map of edited StillFaceData objects with their ids being the key
      */
-    public Map<Integer, StillFaceData> getEditedDataMap(){ return editedDataMap; }
+    public Map<Integer, StillFaceData> getEditedDataMap(){ return Collections.unmodifiableMap(editedDataMap); }
+
+    /**
+     * Takes a copy of the unsaved edits made by the user, ordered by data ID. Used by a save to decide what to write.
+     *
+     * @return A new list of the edited StillFaceData objects
+     */
+    public List<StillFaceData> getEdits(){
+        List<StillFaceData> edits = new ArrayList<>(editedDataMap.values());
+        edits.sort(Comparator.comparingInt(StillFaceData::getDataID));
+        return edits;
+    }
 
     /**
      * Adds or updates an edited StillFaceData object in the map that is tracking the changes.
@@ -244,143 +651,596 @@ public class StillFaceModel extends Observable {
      */
     public void addEditedData(StillFaceData data){
         editedDataMap.put(data.getDataID(), data);
-        setChanged();
+        // Edits are made on copies of the cached rows, so swap the copy into the visible list in place of the row
+        // it was made from. The cached row is left untouched until the edit is saved (see updateData).
+        visibleDataList.updateAndGet(list -> {
+            for(int i = 0; i < list.size(); i++){
+                if(list.get(i).getDataID() == data.getDataID()){
+                    List<StillFaceData> updated = new ArrayList<>(list);
+                    updated.set(i, data);
+                    return Collections.unmodifiableList(updated);
+                }
+            }
+            return list;
+        });
+        post(StillFaceModelEvent.editsChanged());
     }
 
     /**
-     * After the edits have been saved, or the user discards the changes with a sync request, this method helps clear
-     * the edits that were in the map.
+     * When the user discards the changes with a sync request, this method helps clear all the edits that were in the
+     * map.
      */
     public void clearEdits(){
         editedDataMap.clear();
-        setChanged();
+        post(StillFaceModelEvent.editsChanged());
     }
 
     /**
-     * Contacts the database and re-populates the internal cache of import data. If the data in not cached, nothing
-     * happens since the data is obtained by communicating with the database directly.
+     * After edits have been saved, this method removes them from the map. An entry that was edited again after the
+     * save took its copy is kept, since the newer edit has not been saved yet.
      *
-     * @return True if the refresh succeeds or the data is not cached, false otherwise
+     * @param saved The edited StillFaceData objects that were written to the database
+     */
+    public void clearEdits(Collection<StillFaceData> saved){
+        for(StillFaceData d : saved){
+            editedDataMap.computeIfPresent(d.getDataID(), (id, edit) -> (edit == d) ? null : edit);
+        }
+        post(StillFaceModelEvent.editsChanged());
+    }
+
+    /**
+     * Adds a newly imported StillFaceImport and its data entries to the in-memory collections. This should be called
+     * once the import has been committed to the database so that the model does not have to reload every table to
+     * pick up the new entries. If the data is not cached, the data entries are left to be loaded on demand.
+     *
+     * @param importData The StillFaceImport object, populated with the key generated by the database
+     * @param data The StillFaceData objects belonging to the import, populated with their generated keys
+     */
+    public void addImport(StillFaceImport importData, Collection<StillFaceData> data){
+        addImport(importData, data, null);
+    }
+
+    /**
+     * Adds a newly imported StillFaceImport and its data entries to the in-memory collections, along with the summary
+     * of the entries collected while they were written, so that the summary of the new import is available without
+     * going over its entries again.
+     *
+     * @param importData The StillFaceImport object, populated with the key generated by the database
+     * @param data The StillFaceData objects belonging to the import, populated with their generated keys
+     * @param summary The summary of the entries, or null to build it from the entries
+     */
+    public void addImport(StillFaceImport importData, Collection<StillFaceData> data, StillFaceImportSummary summary){
+        if(this.initialized){
+            writeData(current -> {
+                IndexedCollection<StillFaceImport> imports =
+                        copy(current.getImportDataCollection(), StillFaceCollectionFactory.createImportCollection());
+                imports.add(importData);
+                addEntries(current, data);
+                return current.withImports(imports);
+            });
+            if(!this.cached){
+                this.dataCache.invalidate(importData.getImportID());
+            }
+            if(summary != null){
+                this.summaryCache.put(importData.getImportID(), data, summary);
+            }
+            else{
+                this.summaryCache.put(importData.getImportID(), data);
+            }
+            this.snapshotCurrent = false;
+            post(StillFaceModelEvent.importsChanged(), StillFaceModelEvent.dataChanged(importData.getImportID()));
+        }
+    }
+
+    /**
+     * Removes a StillFaceImport and all of its data entries from the in-memory collections. This should be called
+     * once the import has been deleted from the database. Any unsaved edits to the removed data are discarded, and
+     * the visible data is cleared if it belonged to the removed import. If the data is not cached, the entries of
+     * the import are dropped from the data cache.
+     *
+     * @param importID The ID of the import that was deleted
+     */
+    public void removeImport(int importID){
+        if(this.initialized){
+            writeData(current -> {
+                IndexedCollection<StillFaceImport> imports =
+                        copy(current.getImportDataCollection(), StillFaceCollectionFactory.createImportCollection());
+                List<StillFaceImport> removed = new ArrayList<>();
+                for(StillFaceImport i : imports.retrieve(equal(StillFaceImport.IMPORT_ID, importID))){
+                    removed.add(i);
+                }
+                imports.removeAll(removed);
+                removeEntries(current, importID);
+                return current.withImports(imports);
+            });
+            if(!this.cached){
+                this.dataCache.invalidate(importID);
+            }
+            this.summaryCache.remove(importID);
+            this.snapshotCurrent = false;
+        }
+        this.editedDataMap.values().removeIf(d -> d.getImportID() == importID);
+        post(StillFaceModelEvent.importsChanged(), StillFaceModelEvent.dataChanged(importID),
+                StillFaceModelEvent.editsChanged());
+        StillFaceImport visible = this.visibleImport;
+        if(visible != null && visible.getImportID() == importID){
+            this.visibleImport = null;
+            this.visibleDataList.set(Collections.emptyList());
+            post(StillFaceModelEvent.visibleSelectionChanged());
+        }
+    }
+
+    /**
+     * Replaces cached data entries with updated copies once the updates have been written to the database. Each
+     * updated object replaces the cached entry that has the same data ID, so the indexes on the collection are kept
+     * consistent without re-reading the table. If the data is not cached, the imports the entries belong to are
+     * invalidated in the data cache so that they are reloaded the next time they are requested. Either way the state
+     * version is advanced, which discards query results cached against the old version.
+     *
+     * @param data The updated StillFaceData objects
+     */
+    public void updateData(Collection<StillFaceData> data){
+        if(this.initialized && !this.cached){
+            for(StillFaceData d : data){
+                this.dataCache.invalidate(d.getImportID());
+            }
+            write(StillFaceModelState::next);
+            this.summaryCache.update(data);
+            postDataChanged(data);
+        }
+        else if(this.initialized){
+            writeData(current -> {
+                replaceEntries(current, data);
+                return current.next();
+            });
+            this.summaryCache.update(data);
+            this.snapshotCurrent = false;
+            postDataChanged(data);
+        }
+    }
+
+    /**
+     * Adds a newly created code to the in-memory code collection and the statically available code list. This should
+     * be called once the code has been committed to the database.
+     *
+     * @param code The StillFaceCode object, populated with the key generated by the database
+     */
+    public void addCode(StillFaceCode code){
+        if(this.initialized){
+            writeData(current -> {
+                IndexedCollection<StillFaceCode> codes =
+                        copy(current.getCodeCollection(), StillFaceCollectionFactory.createCodeCollection());
+                codes.add(code);
+                if(current.getEventStore() != null){
+                    checkDataWrite();
+                    current.getEventStore().registerCode(code);
+                }
+                return current.withCodes(codes);
+            });
+            post(StillFaceModelEvent.codesChanged());
+        }
+    }
+
+    /**
+     * Contacts the database and re-populates the internal collection of import data.
+     *
+     * @return True if the refresh succeeds, false otherwise
      */
     public boolean refreshImportData(){
-        if(this.initialized && this.cached){
+        if(this.initialized){
             IndexedCollection<StillFaceImport> tmpCollection = this.dao.getImportData(0);
             if(tmpCollection != null) {
-                this.importDataCollection = tmpCollection;
-                setChanged();
+                write(current -> current.withImports(tmpCollection));
+                post(StillFaceModelEvent.importsChanged());
                 return true;
             }
         }
-        if(!this.initialized || this.cached) logger.warning("Failed to refresh imports");
-        return !this.cached;
+        logger.warning("Failed to refresh imports");
+        return false;
     }
 
     /**
-     * Contacts the database and re-populates the internal cache of video data. If the data in not cached, nothing
-     * happens since the data is obtained by communicating with the database directly.
+     * Contacts the database and re-populates the internal cache of video data. If the data in not cached, the data
+     * cache is cleared so that imports are reloaded from the database the next time they are requested.
      *
      * @return True if the refresh succeeds or the data is not cached, false otherwise
      */
     public boolean refreshCodeData(){
-        if(this.initialized && this.cached){
-            IndexedCollection<StillFaceData> tmpCollection = this.dao.getCodeDataFromImport(0);
+        if(this.initialized && !this.cached){
+            logger.info("Clearing data cache: " + this.dataCache);
+            this.dataCache.clear();
+            this.summaryCache.clear();
+            post(StillFaceModelEvent.allDataChanged());
+            return true;
+        }
+        if(this.initialized && this.persistenceMode == PersistenceMode.COLUMNAR){
+            StillFaceEventStore tmpStore = this.dao.getEventStore(0);
+            if(tmpStore != null){
+                write(current -> current.withData(current.getDataCollection(), tmpStore));
+                this.summaryCache.clear();
+                this.snapshotCurrent = false;
+                post(StillFaceModelEvent.allDataChanged());
+                return true;
+            }
+        }
+        else if(this.initialized){
+            IndexedCollection<StillFaceData> tmpCollection = this.dao.getCodeDataFromImport(0, this.persistenceMode);
             if(tmpCollection != null){
-                this.dataCollection = tmpCollection;
-                setChanged();
+                StillFaceIndexUsage.getInstance().log();
+                releaseData(write(current -> current.withData(tmpCollection, null)), this.state.get());
+                this.summaryCache.clear();
+                this.snapshotCurrent = false;
+                post(StillFaceModelEvent.allDataChanged());
                 return true;
             }
 
         }
-        if(!this.initialized || this.cached) logger.warning("Failed to refresh data");
-        return !this.cached;
+        logger.warning("Failed to refresh data");
+        return false;
     }
 
     /**
-     * Contacts the database and re-populates the internal cache of code data. If the data in not cached, nothing
-     * happens since the data is obtained by communicating with the database directly.
+     * Contacts the database and re-populates the internal collection of code data.
      *
-     * @return True if the refresh succeeds or the data is not cached, false otherwise
+     * @return True if the refresh succeeds, false otherwise
      */
     public boolean refreshCodes(){
-        if(this.initialized && this.cached){
+        if(this.initialized){
             IndexedCollection<StillFaceCode> tmpCollection = this.dao.getCode(0);
             if(tmpCollection != null) {
-                this.codeCollection = tmpCollection;
-                populateCodeList();
-                setChanged();
+                write(current -> current.withCodes(tmpCollection));
+                post(StillFaceModelEvent.codesChanged());
                 return true;
             }
         }
-        if(!this.initialized || this.cached) logger.warning("Failed to refresh codes");
-        return !this.cached;
+        logger.warning("Failed to refresh codes");
+        return false;
     }
 
     /**
-     * Contacts the database and re-populates the internal cache of tag data. If the data in not cached, nothing
-     * happens since the data is obtained by communicating with the database directly.
+     * Contacts the database and re-populates the internal collection of tag data.
      *
-     * @return True if the refresh succeeds or the data is not cached, false otherwise
+     * @return True if the refresh succeeds, false otherwise
      */
     public boolean refreshTags(){
-        if(this.initialized && this.cached){
+        if(this.initialized){
             IndexedCollection<StillFaceTag> tmpCollection = this.dao.getTag(0);
             if(tmpCollection != null){
-                this.tagCollection = tmpCollection;
-                populateTagList();
-                setChanged();
+                write(current -> current.withTags(tmpCollection));
+                post(StillFaceModelEvent.tagsChanged());
                 return true;
             }
         }
-        if(!this.initialized || this.cached) logger.warning("Failed to refresh tags");
-        return !this.cached;
+        logger.warning("Failed to refresh tags");
+        return false;
     }
 
     /**
-     * Contacts the database and re-populates the internal caches of all data in the model. If the data in not cached,
-     * nothing happens since the data is obtained by communicating with the database directly.
+     * Records that the statistics stored for the imports were rebuilt from the database. The statistics are derived
+     * from the video data entries, so the data version is advanced, which discards the results computed from the old
+     * statistics and cached against the old version.
+     */
+    public void statisticsRebuilt(){
+        if(this.initialized){
+            write(StillFaceModelState::next);
+        }
+    }
+
+    /**
+     * Discards all unsaved edits and the visible selection, then reloads every table from the database (see reload).
      *
-     * @return True if the refresh succeeds or the data is not cached, false otherwise
+     * @return True if the refresh succeeds, false otherwise
      */
     public boolean refresh(){
         this.editedDataMap.clear();
         this.visibleImport = null;
-        this.visibleDataList.clear();
-        setChanged();
-        return refreshImportData() && refreshCodeData() && refreshCodes() && refreshTags();
+        this.visibleDataList.set(Collections.emptyList());
+        post(StillFaceModelEvent.editsChanged(), StillFaceModelEvent.visibleSelectionChanged());
+        return reload();
     }
 
     /**
-     * Updates the statically available code list with the latest data from the database
+     * Reloads every table from the database into a new state and publishes it with a single swap. The load runs on
+     * the calling thread, which should not be the JavaFX application thread. Unsaved edits and the visible selection
+     * are kept. Writes made to the model while the new state is being built are recorded and applied to the new state
+     * before it is published, so that they are not lost and the load is never thrown away.
+     *
+     * @return True if the new state was published, false if it could not be loaded
      */
-    private void populateCodeList(){
-        if(initialized) {
-            codeList.clear();
-            IndexedCollection<StillFaceCode> codeCollection = (this.cached) ? this.codeCollection : this.dao.getCode(0);
-            Query<StillFaceCode> query = not(equal(StillFaceCode.CODE_ID, 0));
-            for (StillFaceCode c : codeCollection.retrieve(query,
-                    queryOptions(orderBy(ascending(StillFaceCode.NAME))))) {
-                codeList.add(c);
+    public boolean reload(){
+        if(!this.initialized) return false;
+        synchronized(this.refreshLock){
+            Queue<UnaryOperator<StillFaceModelState>> pending = new ConcurrentLinkedQueue<>();
+            StillFaceModelState base;
+            Lock gate = this.writeGate.writeLock();
+            gate.lock();
+            try{
+                this.pendingWrites = pending;
+                base = this.state.get();
+            }
+            finally{
+                gate.unlock();
+            }
+            try{
+                StillFaceModelState loaded;
+                try{
+                    loaded = load(base.getVersion() + 1);
+                }
+                catch(SQLException e){
+                    logger.severe("Error refreshing model: " + e.getMessage());
+                    return false;
+                }
+                if(loaded == null){
+                    logger.warning("Failed to refresh the model");
+                    return false;
+                }
+                StillFaceModelState current;
+                StillFaceModelState published;
+                int replayed = 0;
+                long stamp = this.dataLock.writeLock();
+                try{
+                    do{
+                        current = this.state.get();
+                        for(UnaryOperator<StillFaceModelState> update; (update = pending.poll()) != null; replayed++){
+                            StillFaceModelState next = update.apply(loaded);
+                            releaseData(loaded, next);
+                            loaded = next;
+                        }
+                        published = (loaded.getVersion() > current.getVersion()) ? loaded :
+                                loaded.withVersion(current.getVersion() + 1);
+                    } while(!this.state.compareAndSet(current, published));
+                }
+                finally{
+                    this.dataLock.unlockWrite(stamp);
+                }
+                releaseData(current, published);
+                this.snapshotCurrent = this.loadedSnapshotCurrent && replayed == 0;
+                if(!this.cached){
+                    this.dataCache.clear();
+                }
+                this.summaryCache.clear();
+                StillFaceIndexUsage.getInstance().log();
+                if(replayed > 0){
+                    logger.info("Applied " + replayed + " writes made while refreshing to the new state");
+                }
+                logger.info("Refreshed model to version " + published.getVersion());
+                post(StillFaceModelEvent.importsChanged(), StillFaceModelEvent.allDataChanged(),
+                        StillFaceModelEvent.codesChanged(), StillFaceModelEvent.tagsChanged());
+                return true;
+            }
+            finally{
+                this.pendingWrites = null;
             }
-            setChanged();
         }
     }
 
     /**
-     * Updates the statically available tag list with the latest data from the database
+     * Starts refreshing the model in the background at the interval set by the model.refresh.interval configuration
+     * option, in seconds. Does nothing if the option is 0 or missing, or if the automatic refresh is already running.
+     * Each successful refresh posts its changes to the StillFaceModelEventBus.
      */
-    private void populateTagList(){
-        if(initialized) {
-            tagList.clear();
-            IndexedCollection<StillFaceTag> tagCollection = (this.cached) ? this.tagCollection : this.dao.getTag(0);
-            Query<StillFaceTag> query = not(equal(StillFaceTag.TAG_ID, 0));
-            for (StillFaceTag t : tagCollection.retrieve(query,
-                    queryOptions(orderBy(ascending(StillFaceTag.TAG_VALUE))))) {
-                tagList.add(t);
+    public synchronized void startAutoRefresh(){
+        int interval = StillFaceConfig.getInstance().getAsInt("model.refresh.interval");
+        if(interval <= 0 || this.refreshExecutor != null){
+            return;
+        }
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "StillFaceModel refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refreshExecutor.scheduleWithFixedDelay(() -> {
+            try{
+                reload();
+            }
+            catch(RuntimeException e){
+                logger.severe("Automatic refresh failed: " + e.getMessage());
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        logger.info("Refreshing the model every " + interval + " seconds");
+    }
+
+    /**
+     * Stops the automatic refresh, if it is running
+     */
+    public synchronized void stopAutoRefresh(){
+        if(this.refreshExecutor != null){
+            this.refreshExecutor.shutdownNow();
+            this.refreshExecutor = null;
+        }
+    }
+
+    /**
+     * Applies a write to the current state and publishes the state it returns. If another thread publishes a state in
+     * the meantime, the write is applied again to that state, and a write made while reload is building a new state
+     * is also applied to the new state. A write must therefore be safe to repeat, including on a state that was
+     * loaded after the write reached the database (adding or removing entries that are already there or already gone
+     * is fine).
+     *
+     * @param update Creates the new state from the current one
+     * @return The state that was replaced
+     */
+    private StillFaceModelState write(UnaryOperator<StillFaceModelState> update){
+        Lock gate = this.writeGate.readLock();
+        gate.lock();
+        try{
+            Queue<UnaryOperator<StillFaceModelState>> pending = this.pendingWrites;
+            if(pending != null){
+                pending.add(update);
             }
-            setChanged();
+            StillFaceModelState current;
+            StillFaceModelState next;
+            do{
+                current = this.state.get();
+                next = update.apply(current);
+            } while(!this.state.compareAndSet(current, next));
+            return current;
+        }
+        finally{
+            gate.unlock();
         }
     }
 
+    /**
+     * Hands the data collection of a state that is no longer published back to the StillFaceCollectionFactory,
+     * unless the state that took its place still holds it
+     *
+     * @param replaced The state that is no longer published, or is never going to be
+     * @param kept The state that is published
+     */
+    private void releaseData(StillFaceModelState replaced, StillFaceModelState kept){
+        if(replaced.getDataCollection() != kept.getDataCollection()){
+            StillFaceCollectionFactory.releaseDataCollection(replaced.getDataCollection());
+        }
+    }
+
+    /**
+     * Applies a write that changes the video data entries of the current state in place. The write lock keeps
+     * readData from returning entries read while the change was half done. The entries may only be changed by writes
+     * passed to this method (see checkDataWrite).
+     *
+     * @param update Creates the new state from the current one
+     */
+    private void writeData(UnaryOperator<StillFaceModelState> update){
+        long stamp = this.dataLock.writeLock();
+        try{
+            write(update);
+        }
+        finally{
+            this.dataLock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Adds entries to the data collection or event store of a state, in place. Entries that are already there are
+     * replaced or kept, so the write is safe to repeat.
+     *
+     * @param current The state whose entries are changed
+     * @param data The entries to add
+     */
+    private void addEntries(StillFaceModelState current, Collection<StillFaceData> data){
+        checkDataWrite();
+        if(current.getEventStore() != null){
+            current.getEventStore().addAll(data);
+        }
+        else if(this.cached){
+            current.getDataCollection().addAll(data);
+        }
+    }
+
+    /**
+     * Removes the entries of an import from the data collection or event store of a state, in place
+     *
+     * @param current The state whose entries are changed
+     * @param importID The ID of the import whose entries are removed
+     */
+    private void removeEntries(StillFaceModelState current, int importID){
+        checkDataWrite();
+        if(current.getEventStore() != null){
+            current.getEventStore().removeSegment(importID);
+        }
+        else if(this.cached){
+            List<StillFaceData> data = new ArrayList<>();
+            for(StillFaceData d : current.getDataCollection().retrieve(equal(StillFaceData.IMPORT_ID, importID))){
+                data.add(d);
+            }
+            current.getDataCollection().removeAll(data);
+        }
+    }
+
+    /**
+     * Replaces the entries of a state that have the same data IDs as updated entries, in place
+     *
+     * @param current The state whose entries are changed
+     * @param data The updated entries
+     */
+    private void replaceEntries(StillFaceModelState current, Collection<StillFaceData> data){
+        checkDataWrite();
+        if(current.getEventStore() != null){
+            current.getEventStore().addAll(data);
+        }
+        else{
+            List<StillFaceData> oldData = new ArrayList<>();
+            for(StillFaceData d : data){
+                for(StillFaceData old : current.getDataCollection().retrieve(
+                        equal(StillFaceData.DATA_ID, d.getDataID()))){
+                    oldData.add(old);
+                }
+            }
+            current.getDataCollection().update(oldData, data);
+        }
+    }
+
+    /**
+     * The data collection and event store are shared by every state derived from the state they were loaded into, so
+     * a change made to them without the data write lock would be seen half done by readData, and could be missed by
+     * a reload that is building a new state. Fails fast if that is attempted.
+     */
+    private void checkDataWrite(){
+        if(!this.dataLock.isWriteLocked()){
+            throw new IllegalStateException("Video data entries may only be changed by writeData");
+        }
+    }
+
+    /**
+     * Reads video data entries without locking. If a writeData call overlapped the read, the read is done again while
+     * holding the read lock.
+     *
+     * @param read Reads the entries. Must not change anything, since it may run twice.
+     * @return The result of the read
+     */
+    private <T> T readData(Supplier<T> read){
+        long stamp = this.dataLock.tryOptimisticRead();
+        T result = read.get();
+        if(this.dataLock.validate(stamp)){
+            return result;
+        }
+        stamp = this.dataLock.readLock();
+        try{
+            return read.get();
+        }
+        finally{
+            this.dataLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Posts changes made to the model to the StillFaceModelEventBus
+     *
+     * @param events The changes
+     */
+    private static void post(StillFaceModelEvent... events){
+        for(StillFaceModelEvent event : events){
+            StillFaceModelEventBus.getInstance().post(event);
+        }
+    }
+
+    /**
+     * Posts a DATA_CHANGED event for every import the entries belong to
+     *
+     * @param data The entries that changed
+     */
+    private static void postDataChanged(Collection<StillFaceData> data){
+        Set<Integer> importIDs = new HashSet<>();
+        for(StillFaceData d : data){
+            if(importIDs.add(d.getImportID())){
+                post(StillFaceModelEvent.dataChanged(d.getImportID()));
+            }
+        }
+    }
+
+    /**
+     * Copies the entries of a collection into a new, empty collection
+     *
+     * @param source The collection to copy
+     * @param target An empty collection with the desired indexes
+     * @return The target collection
+     */
+    private static <O> IndexedCollection<O> copy(IndexedCollection<O> source, IndexedCollection<O> target){
+        target.addAll(source);
+        return target;
+    }
+
     /**
      * Locks the connection used by the internal DAO of the model. This helps reduce the number of times the model has
      * to connect to the database when making consecutive requests.
@@ -0,0 +1,66 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+
+/**
+ * StillFaceModelChanges
+ * The StillFaceModelEvents posted to the StillFaceModelEventBus since listeners were last notified, merged together.
+ * Posting the same kind of event several times has the same effect as posting it once, and DATA_CHANGED events are
+ * reduced to the set of imports whose entries changed.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceModelChanges {
+
+    private final EnumSet<StillFaceModelEvent.Type> types;
+    private final Set<Integer> importIDs;
+    private final boolean allData;
+
+    StillFaceModelChanges(Set<StillFaceModelEvent.Type> types, Set<Integer> importIDs, boolean allData){
+        this.types = types.isEmpty() ? EnumSet.noneOf(StillFaceModelEvent.Type.class) : EnumSet.copyOf(types);
+        this.importIDs = Collections.unmodifiableSet(new HashSet<>(importIDs));
+        this.allData = allData;
+    }
+
+    /**
+     * @param type A kind of change
+     * @return True if at least one event of this kind was posted
+     */
+    public boolean contains(StillFaceModelEvent.Type type){
+        return types.contains(type);
+    }
+
+    /**
+     * @param importID The ID of an import
+     * @return True if the video data entries of the import may have changed
+     */
+    public boolean isDataChanged(int importID){
+        return allData || importIDs.contains(importID);
+    }
+
+    /**
+     * @return True if a DATA_CHANGED event applied to every import
+     */
+    public boolean isAllDataChanged() { return allData; }
+
+    /**
+     * @return The imports named by DATA_CHANGED events. Does not include every import when isAllDataChanged is true.
+     */
+    public Set<Integer> getChangedImportIDs() { return importIDs; }
+
+    @Override
+    public String toString(){
+        return "StillFaceModelChanges{types=" + types + ", imports=" + (allData ? "all" : importIDs) + "}";
+    }
+}
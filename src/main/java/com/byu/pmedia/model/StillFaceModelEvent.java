@@ -0,0 +1,97 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+/**
+ * StillFaceModelEvent
+ * Describes one change made to the StillFaceModel. Events are posted to the StillFaceModelEventBus by the model, and
+ * the bus hands them to listeners in batches (see StillFaceModelChanges), so views can update only the parts of the
+ * window that depend on what changed.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceModelEvent {
+
+    /**
+     * The kinds of change the model reports
+     */
+    public enum Type {
+        IMPORTS_CHANGED,                // Imports were added, removed or reloaded
+        DATA_CHANGED,                   // Video data entries of one import, or of every import, changed
+        CODES_CHANGED,                  // Codes were added, renamed, deleted or given a new delimiter index
+        TAGS_CHANGED,                   // Tags were added, renamed or deleted
+        EDITS_CHANGED,                  // Unsaved edits were added, saved or discarded
+        VISIBLE_SELECTION_CHANGED;      // The visible import or the visible data list was replaced
+
+        /**
+         * @return A string representation of the enum value that is nice to look at
+         */
+        public String toPrettyString(){
+            switch (this){
+                case IMPORTS_CHANGED: return "Imports Changed";
+                case DATA_CHANGED: return "Data Changed";
+                case CODES_CHANGED: return "Codes Changed";
+                case TAGS_CHANGED: return "Tags Changed";
+                case EDITS_CHANGED: return "Edits Changed";
+                case VISIBLE_SELECTION_CHANGED: return "Visible Selection Changed";
+                default: throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    /* Used as the import ID of a DATA_CHANGED event that applies to every import */
+    public static final int ALL_IMPORTS = -1;
+
+    private static final StillFaceModelEvent IMPORTS = new StillFaceModelEvent(Type.IMPORTS_CHANGED, ALL_IMPORTS);
+    private static final StillFaceModelEvent ALL_DATA = new StillFaceModelEvent(Type.DATA_CHANGED, ALL_IMPORTS);
+    private static final StillFaceModelEvent CODES = new StillFaceModelEvent(Type.CODES_CHANGED, ALL_IMPORTS);
+    private static final StillFaceModelEvent TAGS = new StillFaceModelEvent(Type.TAGS_CHANGED, ALL_IMPORTS);
+    private static final StillFaceModelEvent EDITS = new StillFaceModelEvent(Type.EDITS_CHANGED, ALL_IMPORTS);
+    private static final StillFaceModelEvent SELECTION =
+            new StillFaceModelEvent(Type.VISIBLE_SELECTION_CHANGED, ALL_IMPORTS);
+
+    private final Type type;
+    private final int importID;
+
+    private StillFaceModelEvent(Type type, int importID){
+        this.type = type;
+        this.importID = importID;
+    }
+
+    public static StillFaceModelEvent importsChanged(){ return IMPORTS; }
+
+    public static StillFaceModelEvent dataChanged(int importID){
+        return new StillFaceModelEvent(Type.DATA_CHANGED, importID);
+    }
+
+    public static StillFaceModelEvent allDataChanged(){ return ALL_DATA; }
+
+    public static StillFaceModelEvent codesChanged(){ return CODES; }
+
+    public static StillFaceModelEvent tagsChanged(){ return TAGS; }
+
+    public static StillFaceModelEvent editsChanged(){ return EDITS; }
+
+    public static StillFaceModelEvent visibleSelectionChanged(){ return SELECTION; }
+
+    public Type getType() { return type; }
+
+    /**
+     * @return The import whose entries changed for a DATA_CHANGED event, otherwise ALL_IMPORTS
+     */
+    public int getImportID() { return importID; }
+
+    @Override
+    public String toString(){
+        return (importID == ALL_IMPORTS) ? type.toPrettyString() : type.toPrettyString() + " (" + importID + ")";
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceModelEventBus
+ * Delivers the changes made to the StillFaceModel to the views that display it. The model posts a
+ * StillFaceModelEvent for every change, from whichever thread made it. Events are collected until the executor runs
+ * the next delivery, and listeners then receive every change since the last delivery as one StillFaceModelChanges.
+ * <p>
+ * The GUI sets the executor to Platform::runLater, so that listeners are called on the JavaFX application thread and
+ * the changes made while a frame is being handled are delivered together. Without the GUI, the default executor
+ * delivers each event as soon as it is posted, on the posting thread.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceModelEventBus {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    private final List<StillFaceModelListener> listeners = new CopyOnWriteArrayList<>();
+
+    /* Runs the deliveries */
+    private volatile Executor executor = Runnable::run;
+
+    /* The changes posted since the last delivery. Guarded by pendingLock. */
+    private final Object pendingLock = new Object();
+    private final Set<StillFaceModelEvent.Type> pendingTypes = EnumSet.noneOf(StillFaceModelEvent.Type.class);
+    private final Set<Integer> pendingImportIDs = new HashSet<>();
+    private boolean pendingAllData = false;
+    private boolean deliveryScheduled = false;
+
+    // The SINGLETON instance of the bus
+    private static StillFaceModelEventBus singleton;
+
+    /**
+     * Static method that will return the singleton instance of the bus. If the instance has not been created yet, it
+     * will create the instance before returning a reference to it.
+     *
+     * @return A reference to the StillFaceModelEventBus singleton instance
+     */
+    public static synchronized StillFaceModelEventBus getInstance(){
+        if(singleton == null){
+            singleton = new StillFaceModelEventBus();
+        }
+        return singleton;
+    }
+
+    /**
+     * Sets the executor that delivers the posted changes to the listeners
+     *
+     * @param executor The executor, for example Platform::runLater
+     */
+    public void setExecutor(Executor executor){
+        this.executor = executor;
+    }
+
+    public void addListener(StillFaceModelListener listener){
+        listeners.add(listener);
+    }
+
+    public void removeListener(StillFaceModelListener listener){
+        listeners.remove(listener);
+    }
+
+    /**
+     * Records a change and schedules a delivery, unless one is already scheduled. Safe to call from any thread.
+     *
+     * @param event The change made to the model
+     */
+    public void post(StillFaceModelEvent event){
+        boolean schedule;
+        synchronized(pendingLock){
+            pendingTypes.add(event.getType());
+            if(event.getType() == StillFaceModelEvent.Type.DATA_CHANGED){
+                if(event.getImportID() == StillFaceModelEvent.ALL_IMPORTS){
+                    pendingAllData = true;
+                    pendingImportIDs.clear();
+                }
+                else if(!pendingAllData){
+                    pendingImportIDs.add(event.getImportID());
+                }
+            }
+            schedule = !deliveryScheduled;
+            deliveryScheduled = true;
+        }
+        if(schedule){
+            executor.execute(this::deliver);
+        }
+    }
+
+    /**
+     * Hands the changes posted since the last delivery to every listener
+     */
+    private void deliver(){
+        StillFaceModelChanges changes;
+        synchronized(pendingLock){
+            deliveryScheduled = false;
+            if(pendingTypes.isEmpty()){
+                return;
+            }
+            changes = new StillFaceModelChanges(pendingTypes, pendingImportIDs, pendingAllData);
+            pendingTypes.clear();
+            pendingImportIDs.clear();
+            pendingAllData = false;
+        }
+        logger.fine("Delivering model changes: " + changes);
+        for(StillFaceModelListener listener : listeners){
+            try{
+                listener.modelChanged(changes);
+            }
+            catch(RuntimeException e){
+                logger.log(Level.SEVERE, "Model listener failed", e);
+            }
+        }
+    }
+}
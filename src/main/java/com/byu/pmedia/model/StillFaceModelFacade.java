@@ -0,0 +1,584 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.database.StillFaceDAO;
+import com.googlecode.cqengine.IndexedCollection;
+import com.googlecode.cqengine.query.Query;
+import com.googlecode.cqengine.query.option.QueryOptions;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static com.googlecode.cqengine.query.QueryFactory.*;
+
+/**
+ * StillFaceModelFacade
+ * Query service over the StillFaceModel. Callers describe what they want with example objects: every field of an
+ * example that is set must match, while fields that are 0 or null match anything. An example is translated into an
+ * indexed CQEngine query when the data is held in memory, a scan of the event segments when it is held in the columnar
+ * store, or a SQL query when it is not cached at all, so the callers do not need to know how the model is configured.
+ * <p>
+ * Results are memoized as unmodifiable lists keyed on the normalized example, and tagged with the version of the model
+ * state they were computed from. Every write to the model advances the version, so cached results are discarded as
+ * soon as the model changes, whether the write came through this facade or not. Results are also discarded when a
+ * code or tag is renamed in place by the StillFaceRegistry, since that does not replace the state. The memo holds a
+ * bounded number of results and evicts the least recently used one when it is full.
+ * <p>
+ * Codes and tags in examples are matched by ID. An example code or tag without an ID is resolved by name first.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceModelFacade implements IStillFaceModelFacade {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The maximum number of query results held in the memo */
+    private static final int MAX_RESULTS = 64;
+
+    /* The single instance used by the GUI */
+    private static StillFaceModelFacade singleton = null;
+
+    /* The model that is queried and the DAO that writes through to the database */
+    private final StillFaceModel model;
+    private StillFaceDAO dao;
+
+    /* Memoized results keyed on the normalized query, in access order so the first entry is the least recently
+     * used. All of them were computed from the state version in memoVersion, after memoRenames renames of codes and
+     * tags. */
+    private final LinkedHashMap<String, List<?>> memo = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoVersion = -1;
+    private long memoRenames = -1;
+
+    /* Statistics about how well the memo is performing */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Provides access to the facade over the StillFaceModel singleton. The DAO is created from the configuration the
+     * first time the facade has to write to the database.
+     *
+     * @return The StillFaceModelFacade singleton
+     */
+    public static synchronized StillFaceModelFacade getInstance(){
+        if(singleton == null){
+            singleton = new StillFaceModelFacade(StillFaceModel.getInstance(), null);
+        }
+        return singleton;
+    }
+
+    /**
+     * Creates a facade over a model. Used by tools that run without the GUI.
+     *
+     * @param model The model to query
+     * @param dao The DAO used to write updates to the database. If null, one is created from the configuration
+     *            when it is first needed.
+     */
+    public StillFaceModelFacade(StillFaceModel model, StillFaceDAO dao){
+        this.model = model;
+        this.dao = dao;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Imports
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return Every import, ordered by date and then by import ID
+     */
+    @Override
+    public List<StillFaceImport> getImports() {
+        return getImports(null);
+    }
+
+    /**
+     * @param importData The example import. May be null to match every import.
+     * @return The imports matching the example, ordered by date and then by import ID
+     */
+    @Override
+    public List<StillFaceImport> getImports(StillFaceImport importData) {
+        StillFaceModelState state = this.model.getState();
+        StillFaceTag tag = (importData == null) ? null : resolveTag(state, importData.getTag());
+        if(importData != null && importData.getTag() != null && tag == null){
+            return Collections.emptyList();
+        }
+        return memoized(state, "imports?" + importKey(importData, tag), s -> {
+            List<StillFaceImport> result = new ArrayList<>();
+            for(StillFaceImport i : s.getImportDataCollection().retrieve(importQuery(importData, tag),
+                    queryOptions(orderBy(ascending(StillFaceImport.DATE), ascending(StillFaceImport.IMPORT_ID))))){
+                result.add(i);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Writes the import to the database and reloads the import entries of the model.
+     *
+     * @param importData the import data entry to update
+     * @return True if the update was successful, false otherwise
+     */
+    @Override
+    public boolean updateImport(StillFaceImport importData) {
+        if(!getDAO().updateImportData(importData)){
+            return false;
+        }
+        invalidate();
+        return this.model.refreshImportData();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Video data
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return Every video data entry, ordered by data ID. If the data is not cached this reads the whole sf_data table.
+     */
+    @Override
+    public List<StillFaceData> getData() {
+        return getData(null, null);
+    }
+
+    /**
+     * @param data The example entry. May be null to match every entry.
+     * @return The video data entries matching the example, ordered by data ID
+     */
+    @Override
+    public List<StillFaceData> getData(StillFaceData data) {
+        return getData(null, data);
+    }
+
+    /**
+     * Queries the video data entries that match an example entry and belong to imports that match an example import.
+     * When only the import is constrained, the entries are read through the model, which serves them from the data
+     * cache if the model is not cached. Otherwise the query runs against wherever the data is held.
+     *
+     * @param importData The example import. May be null to match every import.
+     * @param data The example entry. May be null to match every entry.
+     * @return The matching video data entries, ordered by data ID. Empty if the entries could not be loaded.
+     */
+    @Override
+    public List<StillFaceData> getData(StillFaceImport importData, StillFaceData data) {
+        StillFaceModelState state = this.model.getState();
+        List<Integer> importIDs = null;
+        if(importData != null){
+            importIDs = new ArrayList<>();
+            for(StillFaceImport i : getImports(importData)){
+                importIDs.add(i.getImportID());
+            }
+            if(importIDs.isEmpty()){
+                return Collections.emptyList();
+            }
+        }
+        StillFaceData example = normalize(state, data);
+        if(data != null && example == null){
+            return Collections.emptyList();
+        }
+        final List<Integer> ids = importIDs;
+        String key = "data?" + ((ids == null) ? "" : "iid=" + ids + "&") + dataKey(example);
+        return memoized(state, key, s -> {
+            if(ids != null && isEmpty(example)){
+                return this.model.getDataForImports(ids);
+            }
+            if(s.getEventStore() != null){
+                return scan(s.getEventStore(), ids, example);
+            }
+            if(this.model.isCached()){
+                List<StillFaceData> result = new ArrayList<>();
+                for(StillFaceData d : s.getDataCollection().retrieve(dataQuery(ids, example),
+                        queryOptions(orderBy(ascending(StillFaceData.DATA_ID))))){
+                    result.add(d);
+                }
+                return result;
+            }
+            List<StillFaceData> result = getDAO().getCodeDataListByExample(ids, example);
+            if(result == null){
+                logger.warning("Failed to query data with " + key);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Writes the entry to the database and replaces it in the model.
+     *
+     * @param data the video data entry to update
+     * @return True if the update was successful, false otherwise
+     */
+    @Override
+    public boolean updateData(StillFaceData data) {
+        if(!getDAO().updateCodeData(Collections.singletonList(data))){
+            return false;
+        }
+        invalidate();
+        this.model.updateData(Collections.singletonList(data));
+        return true;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Codes and tags
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * @return Every code, ordered by name
+     */
+    @Override
+    public List<StillFaceCode> getCodes() {
+        return getCodes(null);
+    }
+
+    /**
+     * @param code The example code. May be null to match every code.
+     * @return The codes matching the example, ordered by name
+     */
+    @Override
+    public List<StillFaceCode> getCodes(StillFaceCode code) {
+        StillFaceModelState state = this.model.getState();
+        String key = "codes?" + new Key()
+                .add("cid", (code == null) ? 0 : code.getCodeID())
+                .add("name", (code == null) ? null : code.getName())
+                .add("delimiter", (code == null) ? 0 : code.getDelimiterIndex());
+        return memoized(state, key, s -> {
+            List<Query<StillFaceCode>> conditions = new ArrayList<>();
+            conditions.add(not(equal(StillFaceCode.CODE_ID, 0)));
+            if(code != null){
+                if(code.getCodeID() != 0) conditions.add(equal(StillFaceCode.CODE_ID, code.getCodeID()));
+                if(code.getName() != null) conditions.add(equal(StillFaceCode.NAME, code.getName()));
+                if(code.getDelimiterIndex() != 0){
+                    conditions.add(equal(StillFaceCode.DELIMITER_INDEX, code.getDelimiterIndex()));
+                }
+            }
+            return retrieve(s.getCodeCollection(), conditions, queryOptions(orderBy(ascending(StillFaceCode.NAME))));
+        });
+    }
+
+    /**
+     * Writes the code to the database and reloads the codes of the model.
+     *
+     * @param code the code data entry to update
+     * @return True if the update was successful, false otherwise
+     */
+    @Override
+    public boolean updateCode(StillFaceCode code) {
+        if(!getDAO().updateExistingCode(code)){
+            return false;
+        }
+        invalidate();
+        return this.model.refreshCodes();
+    }
+
+    /**
+     * @return Every tag, ordered by value
+     */
+    @Override
+    public List<StillFaceTag> getTags() {
+        return getTags(null);
+    }
+
+    /**
+     * @param tag The example tag. May be null to match every tag.
+     * @return The tags matching the example, ordered by value
+     */
+    @Override
+    public List<StillFaceTag> getTags(StillFaceTag tag) {
+        StillFaceModelState state = this.model.getState();
+        String key = "tags?" + new Key()
+                .add("tid", (tag == null) ? 0 : tag.getTagID())
+                .add("value", (tag == null) ? null : tag.getTagValue());
+        return memoized(state, key, s -> {
+            List<Query<StillFaceTag>> conditions = new ArrayList<>();
+            conditions.add(not(equal(StillFaceTag.TAG_ID, 0)));
+            if(tag != null){
+                if(tag.getTagID() != 0) conditions.add(equal(StillFaceTag.TAG_ID, tag.getTagID()));
+                if(tag.getTagValue() != null) conditions.add(equal(StillFaceTag.TAG_VALUE, tag.getTagValue()));
+            }
+            return retrieve(s.getTagCollection(), conditions, queryOptions(orderBy(ascending(StillFaceTag.TAG_VALUE))));
+        });
+    }
+
+    /**
+     * Writes the tag to the database and reloads the tags of the model.
+     *
+     * @param tag the tag data entry to update
+     * @return True if the update was successful, false otherwise
+     */
+    @Override
+    public boolean updateTag(StillFaceTag tag) {
+        if(!getDAO().updateExistingTag(tag)){
+            return false;
+        }
+        invalidate();
+        return this.model.refreshTags();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Memo
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Discards every memoized result
+     */
+    public synchronized void invalidate(){
+        this.memo.clear();
+    }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized int getSize() { return memo.size(); }
+
+    /**
+     * Returns the memoized result of a query, running the query against the state if it is not memoized. The query
+     * runs without holding the memo lock so that a slow database query does not block other callers. Its result is
+     * only kept if the model has not changed in the meantime.
+     *
+     * @param state The state the query runs against
+     * @param key The normalized query
+     * @param query Runs the query. May return null if it fails, in which case nothing is memoized.
+     * @return An unmodifiable list with the result of the query. Empty if the query failed.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> List<T> memoized(StillFaceModelState state, String key,
+                                 Function<StillFaceModelState, List<T>> query){
+        long renames = StillFaceRegistry.getInstance().getRenameCount();
+        synchronized(this){
+            if(this.memoVersion != state.getVersion() || this.memoRenames != renames){
+                this.memo.clear();
+                this.memoVersion = state.getVersion();
+                this.memoRenames = renames;
+            }
+            List<T> result = (List<T>)this.memo.get(key);
+            if(result != null){
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        List<T> loaded = query.apply(state);
+        if(loaded == null){
+            return Collections.emptyList();
+        }
+        List<T> result = Collections.unmodifiableList(new ArrayList<>(loaded));
+        synchronized(this){
+            if(this.memoVersion == state.getVersion() && this.model.getState() == state &&
+                    this.memoRenames == renames && renames == StillFaceRegistry.getInstance().getRenameCount()){
+                this.memo.put(key, result);
+                if(this.memo.size() > MAX_RESULTS){
+                    Iterator<String> eldest = this.memo.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Query translation
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Builds the CQEngine query for an example import. Import 0 is a placeholder and never matches.
+     */
+    private static Query<StillFaceImport> importQuery(StillFaceImport example, StillFaceTag tag){
+        List<Query<StillFaceImport>> conditions = new ArrayList<>();
+        conditions.add(not(equal(StillFaceImport.IMPORT_ID, 0)));
+        if(example != null){
+            if(example.getImportID() != 0) conditions.add(equal(StillFaceImport.IMPORT_ID, example.getImportID()));
+            if(example.getFilename() != null) conditions.add(equal(StillFaceImport.FILENAME, example.getFilename()));
+            if(example.getYear() != 0) conditions.add(equal(StillFaceImport.YEAR, example.getYear()));
+            if(example.getFamilyID() != 0) conditions.add(equal(StillFaceImport.FAMILY_ID, example.getFamilyID()));
+            if(example.getParticipantNumber() != 0){
+                conditions.add(equal(StillFaceImport.PARTICIPANT_ID, example.getParticipantNumber()));
+            }
+            if(tag != null) conditions.add(equal(StillFaceImport.TAG, tag));
+            if(example.getAlias() != null) conditions.add(equal(StillFaceImport.ALIAS, example.getAlias()));
+            if(example.getDate() != null) conditions.add(equal(StillFaceImport.DATE, example.getDate()));
+        }
+        return combine(conditions);
+    }
+
+    /**
+     * Builds the CQEngine query for a normalized example entry, restricted to some imports
+     */
+    private static Query<StillFaceData> dataQuery(List<Integer> importIDs, StillFaceData example){
+        List<Query<StillFaceData>> conditions = new ArrayList<>();
+        conditions.add(not(equal(StillFaceData.IMPORT_ID, 0)));
+        if(importIDs != null) conditions.add(in(StillFaceData.IMPORT_ID, importIDs));
+        if(example != null){
+            if(example.getDataID() != 0) conditions.add(equal(StillFaceData.DATA_ID, example.getDataID()));
+            if(example.getImportID() != 0) conditions.add(equal(StillFaceData.IMPORT_ID, example.getImportID()));
+            if(example.getTime() != 0) conditions.add(equal(StillFaceData.TIME, example.getTime()));
+            if(example.getDuration() != 0) conditions.add(equal(StillFaceData.DURATION, example.getDuration()));
+            if(example.getCode() != null) conditions.add(equal(StillFaceData.CODE, example.getCode()));
+            if(example.getComment() != null) conditions.add(equal(StillFaceData.COMMENT, example.getComment()));
+        }
+        return combine(conditions);
+    }
+
+    /**
+     * Scans the segments of the columnar event store for entries matching a normalized example
+     */
+    private List<StillFaceData> scan(StillFaceEventStore store, List<Integer> importIDs, StillFaceData example){
+        List<Integer> scanned = importIDs;
+        if(scanned == null){
+            scanned = new ArrayList<>();
+            for(StillFaceEventSegment segment : store.getSegments()){
+                scanned.add(segment.getImportID());
+            }
+        }
+        List<StillFaceData> result = new ArrayList<>();
+        for(StillFaceData d : this.model.getDataForImports(scanned)){
+            if(matches(example, d)){
+                result.add(d);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(StillFaceData example, StillFaceData d){
+        return example == null
+                || (example.getDataID() == 0 || example.getDataID() == d.getDataID())
+                && (example.getImportID() == 0 || example.getImportID() == d.getImportID())
+                && (example.getTime() == 0 || example.getTime() == d.getTime())
+                && (example.getDuration() == 0 || example.getDuration() == d.getDuration())
+                && (example.getCode() == null || example.getCode().equals(d.getCode()))
+                && (example.getComment() == null || example.getComment().equals(d.getComment()));
+    }
+
+    private static boolean isEmpty(StillFaceData example){
+        return example == null || !(example.getDataID() != 0 || example.getImportID() != 0 || example.getTime() != 0
+                || example.getDuration() != 0 || example.getCode() != null || example.getComment() != null);
+    }
+
+    private static <O> Query<O> combine(List<Query<O>> conditions){
+        if(conditions.size() == 1){
+            return conditions.get(0);
+        }
+        return and(conditions.get(0), conditions.get(1), conditions.subList(2, conditions.size()));
+    }
+
+    private static <O> List<O> retrieve(IndexedCollection<O> collection, List<Query<O>> conditions,
+                                        QueryOptions options){
+        List<O> result = new ArrayList<>();
+        for(O o : collection.retrieve(combine(conditions), options)){
+            result.add(o);
+        }
+        return result;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Normalization
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Replaces the code of an example entry with the canonical code that has the same ID, or the same name if the
+     * example code has no ID.
+     *
+     * @return The normalized example, the example itself if it has no code, or null if the code does not exist
+     */
+    private static StillFaceData normalize(StillFaceModelState state, StillFaceData example){
+        if(example == null || example.getCode() == null){
+            return example;
+        }
+        StillFaceCode code = example.getCode();
+        Query<StillFaceCode> query = (code.getCodeID() != 0)
+                ? equal(StillFaceCode.CODE_ID, code.getCodeID())
+                : equal(StillFaceCode.NAME, code.getName());
+        for(StillFaceCode c : state.getCodeCollection().retrieve(query)){
+            return example.withCode(c);
+        }
+        return null;
+    }
+
+    /**
+     * Finds the canonical tag that has the same ID as an example tag, or the same value if the example tag has no ID.
+     *
+     * @return The canonical tag, or null if the example tag is null or does not exist
+     */
+    private static StillFaceTag resolveTag(StillFaceModelState state, StillFaceTag tag){
+        if(tag == null){
+            return null;
+        }
+        Query<StillFaceTag> query = (tag.getTagID() != 0)
+                ? equal(StillFaceTag.TAG_ID, tag.getTagID())
+                : equal(StillFaceTag.TAG_VALUE, tag.getTagValue());
+        for(StillFaceTag t : state.getTagCollection().retrieve(query)){
+            return t;
+        }
+        return null;
+    }
+
+    private static String importKey(StillFaceImport example, StillFaceTag tag){
+        if(example == null){
+            return "";
+        }
+        return new Key()
+                .add("iid", example.getImportID())
+                .add("filename", example.getFilename())
+                .add("year", example.getYear())
+                .add("fid", example.getFamilyID())
+                .add("pid", example.getParticipantNumber())
+                .add("tid", (tag == null) ? 0 : tag.getTagID())
+                .add("alias", example.getAlias())
+                .add("date", (example.getDate() == null) ? null : example.getDate().toString())
+                .toString();
+    }
+
+    private static String dataKey(StillFaceData example){
+        if(example == null){
+            return "";
+        }
+        return new Key()
+                .add("did", example.getDataID())
+                .add("iid", example.getImportID())
+                .add("time", example.getTime())
+                .add("duration", example.getDuration())
+                .add("cid", (example.getCode() == null) ? 0 : example.getCode().getCodeID())
+                .add("comment", example.getComment())
+                .toString();
+    }
+
+    private synchronized StillFaceDAO getDAO(){
+        if(this.dao == null){
+            this.dao = StillFaceDAO.generateFromConfig();
+        }
+        return this.dao;
+    }
+
+    /**
+     * Builds the normalized form of an example. Only the fields that are set are written, always in the same order,
+     * so two examples that match the same entries produce the same key.
+     */
+    private static class Key {
+
+        private final StringJoiner fields = new StringJoiner("&");
+
+        Key add(String name, int value){
+            if(value != 0) fields.add(name + "=" + value);
+            return this;
+        }
+
+        Key add(String name, String value){
+            if(value != null) fields.add(name + "='" + value.replace("'", "''") + "'");
+            return this;
+        }
+
+        @Override
+        public String toString(){
+            return fields.toString();
+        }
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+/**
+ * StillFaceModelListener
+ * Implemented by views that update themselves when the StillFaceModel changes. Register with the
+ * StillFaceModelEventBus singleton instance.
+ *
+ * @author Braden Hitchcock
+ */
+public interface StillFaceModelListener {
+
+    /**
+     * Called with the changes made to the model since the last call. In the GUI this is called on the JavaFX
+     * application thread.
+     *
+     * @param changes The merged changes
+     */
+    void modelChanged(StillFaceModelChanges changes);
+}
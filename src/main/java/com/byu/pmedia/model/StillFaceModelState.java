@@ -0,0 +1,165 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.googlecode.cqengine.ConcurrentIndexedCollection;
+import com.googlecode.cqengine.IndexedCollection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * StillFaceModelState
+ * Everything the StillFaceModel has loaded from the database, captured as one unit. The model publishes a state
+ * through a single atomic reference, so a reader that takes the current state sees the imports, video data, codes and
+ * tags of the same load, even if a refresh swaps in a newer state while it is working.
+ * <p>
+ * A state is never modified once it is published, with one exception: the video data entries are held in a
+ * ConcurrentIndexedCollection (or a StillFaceEventStore) and saved edits are written into it in place, since copying
+ * the whole table for every edit would be far too expensive. The collection and the store are not copied by next or
+ * the with* methods, so they are shared by every state derived from the state they were loaded into, and a write to
+ * them is seen by all of those states, including ones a reader took before the write. Only the StillFaceModel writes
+ * them, while holding its data write lock; both structures are safe to read while they are written. The import, code
+ * and tag collections are small, so changes to them are made by copying them into a new state (see the with*
+ * methods).
+ * <p>
+ * Each state has a version number, greater than the state it replaced. The data version is the version of the last
+ * state in which the imports or the video data changed, so results computed from them stay valid while only codes or
+ * tags change.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceModelState {
+
+    /* The state of a model that has not been initialized. All collections are empty. */
+    public static final StillFaceModelState EMPTY = new StillFaceModelState(0,
+            StillFaceCollectionFactory.createImportCollection(),
+            new ConcurrentIndexedCollection<>(), null,
+            StillFaceCollectionFactory.createCodeCollection(), StillFaceCollectionFactory.createTagCollection());
+
+    private final long version;
+    private final long dataVersion;
+    private final IndexedCollection<StillFaceImport> importDataCollection;
+    private final IndexedCollection<StillFaceData> dataCollection;
+    private final StillFaceEventStore eventStore;
+    private final IndexedCollection<StillFaceCode> codeCollection;
+    private final IndexedCollection<StillFaceTag> tagCollection;
+
+    /* Sorted, unmodifiable lists of the codes and tags, used to populate ChoiceBox objects and other lists */
+    private final List<StillFaceCode> codeList;
+    private final List<StillFaceTag> tagList;
+
+    /**
+     * Creates a state from collections that are fully loaded. The collections must not be modified by the caller
+     * afterwards, apart from the in-place writes to the video data described above.
+     *
+     * @param version The version of the state
+     * @param importDataCollection The import entries
+     * @param dataCollection The video data entries. Empty when the entries are held in the event store or are not
+     *                       cached.
+     * @param eventStore The video data entries when the persistence mode is COLUMNAR. Null otherwise.
+     * @param codeCollection The code entries
+     * @param tagCollection The tag entries
+     */
+    public StillFaceModelState(long version, IndexedCollection<StillFaceImport> importDataCollection,
+                               IndexedCollection<StillFaceData> dataCollection, StillFaceEventStore eventStore,
+                               IndexedCollection<StillFaceCode> codeCollection,
+                               IndexedCollection<StillFaceTag> tagCollection){
+        this(version, version, importDataCollection, dataCollection, eventStore, codeCollection, tagCollection);
+    }
+
+    private StillFaceModelState(long version, long dataVersion, IndexedCollection<StillFaceImport> importDataCollection,
+                                IndexedCollection<StillFaceData> dataCollection, StillFaceEventStore eventStore,
+                                IndexedCollection<StillFaceCode> codeCollection,
+                                IndexedCollection<StillFaceTag> tagCollection){
+        this.version = version;
+        this.dataVersion = dataVersion;
+        this.importDataCollection = importDataCollection;
+        this.dataCollection = dataCollection;
+        this.eventStore = eventStore;
+        this.codeCollection = codeCollection;
+        this.tagCollection = tagCollection;
+
+        List<StillFaceCode> codes = new ArrayList<>();
+        for(StillFaceCode c : codeCollection){
+            if(c.getCodeID() != 0) codes.add(c);
+        }
+        codes.sort(Comparator.comparing(StillFaceCode::getName));
+        this.codeList = Collections.unmodifiableList(codes);
+
+        List<StillFaceTag> tags = new ArrayList<>();
+        for(StillFaceTag t : tagCollection){
+            if(t.getTagID() != 0) tags.add(t);
+        }
+        tags.sort(Comparator.comparing(StillFaceTag::getTagValue));
+        this.tagList = Collections.unmodifiableList(tags);
+    }
+
+    public long getVersion() { return version; }
+
+    public long getDataVersion() { return dataVersion; }
+
+    public IndexedCollection<StillFaceImport> getImportDataCollection() { return importDataCollection; }
+
+    public IndexedCollection<StillFaceData> getDataCollection() { return dataCollection; }
+
+    public StillFaceEventStore getEventStore() { return eventStore; }
+
+    public IndexedCollection<StillFaceCode> getCodeCollection() { return codeCollection; }
+
+    public IndexedCollection<StillFaceTag> getTagCollection() { return tagCollection; }
+
+    public List<StillFaceCode> getCodeList() { return codeList; }
+
+    public List<StillFaceTag> getTagList() { return tagList; }
+
+    /**
+     * @return A copy of this state with the next version number. Used to record that the video data was written.
+     */
+    public StillFaceModelState next(){
+        return new StillFaceModelState(version + 1, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+
+    /**
+     * @param version The version to give the copy
+     * @return A copy of this state with a different version number, also used as its data version. Used to publish a
+     * reloaded state after states that were published while it was being built.
+     */
+    public StillFaceModelState withVersion(long version){
+        return new StillFaceModelState(version, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+
+    public StillFaceModelState withImports(IndexedCollection<StillFaceImport> importDataCollection){
+        return new StillFaceModelState(version + 1, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+
+    public StillFaceModelState withData(IndexedCollection<StillFaceData> dataCollection,
+                                        StillFaceEventStore eventStore){
+        return new StillFaceModelState(version + 1, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+
+    public StillFaceModelState withCodes(IndexedCollection<StillFaceCode> codeCollection){
+        return new StillFaceModelState(version + 1, dataVersion, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+
+    public StillFaceModelState withTags(IndexedCollection<StillFaceTag> tagCollection){
+        return new StillFaceModelState(version + 1, dataVersion, importDataCollection, dataCollection, eventStore,
+                codeCollection, tagCollection);
+    }
+}
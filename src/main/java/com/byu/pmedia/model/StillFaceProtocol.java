@@ -0,0 +1,124 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+
+/**
+ * StillFaceProtocol
+ * The episodes an observation protocol divides a video into, defined by an ordered list of boundary codes. The
+ * first boundary code starts the second segment, the second boundary code the third segment, and so on, so a
+ * protocol with n boundaries has n + 1 segments. An entry belongs to the segment of the highest boundary that was
+ * coded at or before it. The classic still-face protocol has two boundaries, 'Begin Still Face' and 'Begin
+ * Reconciliation'.
+ * <p>
+ * The protocol is stored in the delimiter column of sf_codes: the code with delimiter n is the nth boundary, and
+ * codes with delimiter 0 are not boundaries. When several codes have the same delimiter, or delimiters are skipped,
+ * the boundaries are the codes with a delimiter above 0 ordered by delimiter and then by name.
+ * <p>
+ * Since the protocol lives in the code table, a database holds exactly one protocol, and every import is divided into
+ * segments by it. The import, state and timing statistics are stored per segment of that protocol, so they are
+ * rebuilt for every import when it changes. Studies that code videos with different protocols need a database each.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceProtocol {
+
+    private final List<StillFaceCode> boundaries;
+
+    /**
+     * Creates a protocol from its boundary codes
+     *
+     * @param boundaries The boundary codes, in the order they occur in a video. The list is copied.
+     */
+    public StillFaceProtocol(List<StillFaceCode> boundaries){
+        this.boundaries = Collections.unmodifiableList(new ArrayList<>(boundaries));
+    }
+
+    /**
+     * Reads the protocol stored in the delimiters of the codes
+     *
+     * @param codes Every code
+     * @return The protocol defined by the delimiters of the codes
+     */
+    public static StillFaceProtocol fromCodes(Collection<StillFaceCode> codes){
+        List<StillFaceCode> boundaries = new ArrayList<>();
+        for(StillFaceCode code : codes){
+            if(code.getDelimiterIndex() > 0){
+                boundaries.add(code);
+            }
+        }
+        boundaries.sort(Comparator.comparingInt(StillFaceCode::getDelimiterIndex)
+                .thenComparing(StillFaceCode::getName, Comparator.nullsFirst(Comparator.naturalOrder())));
+        return new StillFaceProtocol(boundaries);
+    }
+
+    /**
+     * @return The boundary codes, in the order they occur in a video
+     */
+    public List<StillFaceCode> getBoundaries() { return boundaries; }
+
+    /**
+     * @return The number of segments the boundaries divide a video into
+     */
+    public int getSegmentCount() { return boundaries.size() + 1; }
+
+    /**
+     * Provides a name for a segment, for table headers
+     *
+     * @param segment The segment, from 0 to getSegmentCount() - 1
+     * @return 'Before' the first boundary for segment 0, and 'After' the boundary that starts any other segment
+     */
+    public String getSegmentName(int segment){
+        if(boundaries.isEmpty()){
+            return "All codes";
+        }
+        return (segment == 0) ? "Before " + boundaries.get(0).getName()
+                : "After " + boundaries.get(segment - 1).getName();
+    }
+
+    /**
+     * Works out which codes need a new delimiter to store this protocol
+     *
+     * @param codes Every code
+     * @return Copies of the codes whose delimiter must change, with their new delimiter
+     */
+    public List<StillFaceCode> getChangedCodes(Collection<StillFaceCode> codes){
+        List<StillFaceCode> changed = new ArrayList<>();
+        for(StillFaceCode code : codes){
+            int delimiterIndex = boundaries.indexOf(code) + 1;
+            if(code.getDelimiterIndex() != delimiterIndex){
+                changed.add(code.withDelimiterIndex(delimiterIndex));
+            }
+        }
+        return changed;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof StillFaceProtocol && boundaries.equals(((StillFaceProtocol)o).boundaries);
+    }
+
+    @Override
+    public int hashCode(){
+        return boundaries.hashCode();
+    }
+
+    @Override
+    public String toString(){
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for(StillFaceCode code : boundaries){
+            joiner.add(code.getName());
+        }
+        return joiner.toString();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * StillFaceRegistry
+ * Holds the canonical StillFaceCode and StillFaceTag instances: exactly one object per code ID and per tag ID. The
+ * DAO resolves every code and tag it reads from the database through this registry, so all the data entries that
+ * use a code share one object, and the model's code and tag collections hold those same objects.
+ * <p>
+ * When a code or tag is written to the database with a new name or delimiter, the canonical instance is updated in
+ * place, so every entry that uses it sees the change without being reloaded. Since codes and tags are identified by
+ * their ID, their hash codes do not change when this happens. For the same reason, the code and tag collections of
+ * the model are only indexed on the ID (see StillFaceCollectionFactory). Lists sorted by name are put back in order
+ * when the codes or tags are refreshed (see StillFaceModel.refreshCodes and refreshTags).
+ * <p>
+ * The registry also keeps a StillFaceCodeIndex of the canonical codes, which it replaces whenever a code is added,
+ * changed or removed.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRegistry {
+
+    private final Map<Integer, StillFaceCode> codes = new ConcurrentHashMap<>();
+    private final Map<Integer, StillFaceTag> tags = new ConcurrentHashMap<>();
+
+    /* The index of the canonical codes. Null once a code changes, until it is next requested. */
+    private StillFaceCodeIndex codeIndex;
+
+    /* Counts the codes and tags renamed in place, so that results computed from the old names can be discarded */
+    private volatile long renames = 0;
+
+    // The SINGLETON instance of the registry
+    private static StillFaceRegistry singleton;
+
+    /**
+     * Static method that will return the singleton instance of the registry. If the instance has not been created
+     * yet, it will create the instance before returning a reference to it.
+     *
+     * @return A reference to the StillFaceRegistry singleton instance
+     */
+    public static synchronized StillFaceRegistry getInstance(){
+        if(singleton == null){
+            singleton = new StillFaceRegistry();
+        }
+        return singleton;
+    }
+
+    /**
+     * Returns the canonical instance of a code, creating it if the code has not been seen before. If the canonical
+     * instance has a different name or delimiter, it is updated in place with the provided values, since they are
+     * the latest values read from or written to the database.
+     *
+     * @param codeID The ID of the code. Must not be 0.
+     * @param name The name of the code
+     * @param delimiterIndex The delimiter index of the code
+     * @return The canonical StillFaceCode for the ID
+     */
+    public StillFaceCode code(int codeID, String name, int delimiterIndex){
+        StillFaceCode code = codes.get(codeID);
+        if(code == null || !code.getName().equals(name) || code.getDelimiterIndex() != delimiterIndex){
+            // Changes are made while holding the lock, so an index is never built from a half-made change
+            synchronized(this){
+                code = codes.computeIfAbsent(codeID, id -> new StillFaceCode(id, name, delimiterIndex));
+                if(!code.getName().equals(name) || code.getDelimiterIndex() != delimiterIndex){
+                    code.update(name, delimiterIndex);
+                    renames++;
+                }
+                codeIndex = null;
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Returns the canonical instance of a code, creating it if needed. See code(int, String, int).
+     *
+     * @param code A code with a database ID, canonical or not
+     * @return The canonical StillFaceCode for the ID of the provided code
+     */
+    public StillFaceCode code(StillFaceCode code){
+        return code(code.getCodeID(), code.getName(), code.getDelimiterIndex());
+    }
+
+    /**
+     * Returns the canonical instance of a tag, creating it if the tag has not been seen before. If the canonical
+     * instance has a different value, it is updated in place.
+     *
+     * @param tagID The ID of the tag. Must not be 0.
+     * @param value The value of the tag
+     * @return The canonical StillFaceTag for the ID
+     */
+    public StillFaceTag tag(int tagID, String value){
+        StillFaceTag tag = tags.computeIfAbsent(tagID, id -> new StillFaceTag(id, value));
+        if(!tag.getTagValue().equals(value)){
+            synchronized(this){
+                if(!tag.getTagValue().equals(value)){
+                    tag.update(value);
+                    renames++;
+                }
+            }
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the canonical instance of a tag, creating it if needed. See tag(int, String).
+     *
+     * @param tag A tag with a database ID, canonical or not
+     * @return The canonical StillFaceTag for the ID of the provided tag
+     */
+    public StillFaceTag tag(StillFaceTag tag){
+        return tag(tag.getTagID(), tag.getTagValue());
+    }
+
+    /**
+     * Forgets a code once it has been deleted from the database
+     *
+     * @param codeID The ID of the deleted code
+     */
+    public synchronized void removeCode(int codeID){
+        codes.remove(codeID);
+        codeIndex = null;
+    }
+
+    /**
+     * Forgets a tag once it has been deleted from the database
+     *
+     * @param tagID The ID of the deleted tag
+     */
+    public void removeTag(int tagID){
+        tags.remove(tagID);
+    }
+
+    /**
+     * Provides the index of the canonical codes. The same index is returned until a code is added, changed or
+     * removed.
+     *
+     * @return The StillFaceCodeIndex of every canonical code
+     */
+    public synchronized StillFaceCodeIndex getCodeIndex(){
+        if(codeIndex == null){
+            codeIndex = StillFaceCodeIndex.of(codes.values());
+        }
+        return codeIndex;
+    }
+
+    /**
+     * Provides an index that holds the codes of the provided entries. Codes from the database that the registry has
+     * not seen yet are added to it first. Codes that have not been stored in the database (ID 0) are not added.
+     *
+     * @param data Entries whose codes the index must hold
+     * @return The StillFaceCodeIndex of every canonical code
+     */
+    public StillFaceCodeIndex getCodeIndex(Collection<StillFaceData> data){
+        StillFaceCodeIndex index = getCodeIndex();
+        boolean added = false;
+        for(StillFaceData d : data){
+            if(d.getCode().getCodeID() != 0 && index.ordinal(d.getCode().getCodeID()) < 0){
+                code(d.getCode());
+                added = true;
+            }
+        }
+        return added ? getCodeIndex() : index;
+    }
+
+    /**
+     * @return A new list of the canonical codes, in no particular order
+     */
+    public List<StillFaceCode> getCodes(){
+        return new ArrayList<>(codes.values());
+    }
+
+    /**
+     * @return The number of times a canonical code or tag was renamed in place. Results that depend on the names of
+     * codes or tags are out of date once this changes.
+     */
+    public long getRenameCount() { return renames; }
+
+    public int getCodeCount() { return codes.size(); }
+
+    public int getTagCount() { return tags.size(); }
+}
@@ -0,0 +1,115 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceSearchCache
+ * Size-bounded, least-recently-used cache of search results for the query tab of the DataCenter. A result is the
+ * sorted list of video data entries that belong to the imports selected by a StillFaceSearchCriteria, so running the
+ * same search again, or switching back and forth between a few searches, returns the list that was already built.
+ * <p>
+ * Every result is tagged with the data version of the model state it was computed from (see
+ * StillFaceModelState#getDataVersion). The data version only advances when imports or video data change, so results
+ * survive changes to codes and tags, and are all discarded as soon as anything they could depend on is written.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceSearchCache {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The model whose data version the results are validated against */
+    private final StillFaceModel model;
+
+    /* The cached results, in access order so the first entry is the least recently used search */
+    private final LinkedHashMap<StillFaceSearchCriteria, List<StillFaceData>> results =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    /* The data version every cached result was computed from */
+    private long dataVersion = -1;
+
+    /* The maximum number of searches held by the cache */
+    private final int capacity;
+
+    /* Statistics about how well the cache is performing */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new, empty cache
+     *
+     * @param model The model the searches run against
+     * @param capacity The maximum number of searches to hold
+     */
+    public StillFaceSearchCache(StillFaceModel model, int capacity){
+        this.model = model;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cached result of a search, running the search with the provided loader if it is not cached or the
+     * imports or data changed since it was cached. The loader runs without holding the cache lock, and its result is
+     * only kept if the data did not change while it ran.
+     *
+     * @param criteria The normalized search criteria
+     * @param loader Runs the search. Must return the entries ordered by data ID.
+     * @return An unmodifiable list with the entries selected by the criteria
+     */
+    public List<StillFaceData> get(StillFaceSearchCriteria criteria,
+                                   Function<StillFaceSearchCriteria, List<StillFaceData>> loader){
+        long version = this.model.getState().getDataVersion();
+        synchronized(this){
+            if(this.dataVersion != version){
+                this.results.clear();
+                this.dataVersion = version;
+            }
+            List<StillFaceData> result = this.results.get(criteria);
+            if(result != null){
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        List<StillFaceData> result = Collections.unmodifiableList(new ArrayList<>(loader.apply(criteria)));
+        synchronized(this){
+            if(this.dataVersion == version && this.model.getState().getDataVersion() == version){
+                this.results.put(criteria, result);
+                if(this.results.size() > this.capacity){
+                    Iterator<StillFaceSearchCriteria> eldest = this.results.keySet().iterator();
+                    logger.fine("Evicted search (" + eldest.next() + ") from the search cache");
+                    eldest.remove();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes every result from the cache. Statistics are kept.
+     */
+    public synchronized void clear(){
+        this.results.clear();
+    }
+
+    public synchronized int getSize() { return results.size(); }
+
+    public int getCapacity() { return capacity; }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+}
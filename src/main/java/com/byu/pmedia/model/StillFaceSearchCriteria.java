@@ -0,0 +1,77 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+/**
+ * StillFaceSearchCriteria
+ * The parameters of a search on the query tab of the DataCenter: the year, family ID, participant number and tag that
+ * the imports must have. A value of 0 (or a null tag) matches any import. Two criteria are equal when they select the
+ * same imports, so they can be used as keys of the StillFaceSearchCache. The tag is compared by its ID.
+ *
+ * @author Braden Hitchcock
+ */
+public final class StillFaceSearchCriteria {
+
+    private final int year;
+    private final int familyID;
+    private final int participantNumber;
+    private final StillFaceTag tag;
+
+    public StillFaceSearchCriteria(int year, int familyID, int participantNumber, StillFaceTag tag){
+        this.year = year;
+        this.familyID = familyID;
+        this.participantNumber = participantNumber;
+        this.tag = tag;
+    }
+
+    public int getYear() { return year; }
+
+    public int getFamilyID() { return familyID; }
+
+    public int getParticipantNumber() { return participantNumber; }
+
+    public StillFaceTag getTag() { return tag; }
+
+    /**
+     * @return An example import that can be passed to the StillFaceModelFacade to find the imports these criteria
+     *         select
+     */
+    public StillFaceImport toExample(){
+        return new StillFaceImport(null, year, familyID, participantNumber, tag, null, null);
+    }
+
+    private int getTagID(){
+        return (tag == null) ? 0 : tag.getTagID();
+    }
+
+    @Override
+    public boolean equals(Object o){
+        if(o == this) return true;
+        if(!(o instanceof StillFaceSearchCriteria)) return false;
+        StillFaceSearchCriteria c = (StillFaceSearchCriteria)o;
+        return c.year == year && c.familyID == familyID && c.participantNumber == participantNumber
+                && c.getTagID() == getTagID();
+    }
+
+    @Override
+    public int hashCode(){
+        int hash = Integer.hashCode(year);
+        hash = 31 * hash + Integer.hashCode(familyID);
+        hash = 31 * hash + Integer.hashCode(participantNumber);
+        return 31 * hash + Integer.hashCode(getTagID());
+    }
+
+    @Override
+    public String toString(){
+        return "year=" + year + ", family=" + familyID + ", participant=" + participantNumber + ", tag=" + tag;
+    }
+}
@@ -0,0 +1,436 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.config.StillFaceConfig;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceSnapshot
+ * A compact binary copy of the cached sf_data entries, kept in a local cache directory so that the model does not
+ * have to fetch the whole table over the network every time the application starts. The snapshot is tagged with a
+ * high-water mark, the largest data ID it contains. At startup the model memory-maps and reads the snapshot,
+ * validates the entries of each import up to the mark against aggregates computed by the database, fetches again
+ * only the imports that changed, and fetches the entries added after the mark. If the snapshot is missing or
+ * unreadable, or too many imports changed, the model falls back to loading the whole table and writes a new snapshot.
+ * <p>
+ * The file holds a header, the codes used by the entries, a table of distinct comments and then one column of
+ * integers per field, so reading it is a handful of bulk copies out of the mapped file. The import, code and tag
+ * tables are small and are always loaded from the database, so they are not part of the snapshot.
+ * <p>
+ * The snapshot is enabled by the model.snapshot configuration option and stored in the directory named by the
+ * model.snapshot.directory option. The file name is derived from the database connection settings, so switching
+ * databases never loads a snapshot of another database.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceSnapshot {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* Marks the start and end of a snapshot file ("SFSN"). The trailing copy detects truncated files. */
+    private static final int MAGIC = 0x5346534E;
+
+    /* Incremented whenever the file layout changes, so that old snapshots are discarded rather than misread */
+    private static final int VERSION = 1;
+
+    /* The directory used when the model.snapshot.directory configuration option is empty */
+    private static final String DEFAULT_DIRECTORY = "cache";
+
+    /* The file the snapshot is stored in */
+    private final File file;
+
+    /* Describes the database the snapshot was taken from. A snapshot of any other database is ignored. */
+    private final String source;
+
+    /**
+     * Creates a snapshot stored in a file. Nothing is read or written until read or write is called.
+     *
+     * @param file The file the snapshot is stored in
+     * @param source Describes the database the entries come from
+     */
+    public StillFaceSnapshot(File file, String source){
+        this.file = file;
+        this.source = source;
+    }
+
+    /**
+     * Creates the snapshot for the configured database, if snapshots are enabled by the model.snapshot configuration
+     * option
+     *
+     * @return The configured snapshot, or null if snapshots are disabled
+     */
+    public static StillFaceSnapshot fromConfig(){
+        StillFaceConfig config = StillFaceConfig.getInstance();
+        if(!config.getAsBoolean("model.snapshot")){
+            return null;
+        }
+        String directory = config.getAsString("model.snapshot.directory");
+        if(directory.trim().isEmpty()){
+            directory = DEFAULT_DIRECTORY;
+        }
+        String source = config.getAsString("database.mode") + "://" + config.getAsString("database.host") + ":" +
+                config.getAsString("database.port") + "/" + config.getAsString("database.name");
+        String filename = String.format("sf_data-%08x.snapshot", source.hashCode());
+        return new StillFaceSnapshot(new File(directory, filename), source);
+    }
+
+    public File getFile() { return file; }
+
+    /**
+     * Writes entries to the snapshot file, replacing any previous snapshot. The file is written under a temporary
+     * name and then moved into place, so a failed write never leaves a partial snapshot behind.
+     *
+     * @param data The entries to write. Every entry must have a code.
+     * @return True if the snapshot was written, false otherwise
+     */
+    public boolean write(Collection<StillFaceData> data){
+        int size = data.size();
+        int[] dataIDs = new int[size];
+        int[] importIDs = new int[size];
+        int[] times = new int[size];
+        int[] durations = new int[size];
+        int[] codeIDs = new int[size];
+        int[] comments = new int[size];
+        Map<Integer, StillFaceCode> codes = new LinkedHashMap<>();
+        Map<String, Integer> commentTable = new LinkedHashMap<>();
+        int highWaterMark = 0;
+        int position = 0;
+        for(StillFaceData d : data){
+            if(position == size) break;
+            dataIDs[position] = d.getDataID();
+            importIDs[position] = d.getImportID();
+            times[position] = d.getTime();
+            durations[position] = d.getDuration();
+            codeIDs[position] = d.getCode().getCodeID();
+            codes.putIfAbsent(d.getCode().getCodeID(), d.getCode());
+            comments[position] = (d.getComment() == null) ? StillFaceCommentDictionary.NO_COMMENT :
+                    commentTable.computeIfAbsent(d.getComment(), k -> commentTable.size());
+            highWaterMark = Math.max(highWaterMark, d.getDataID());
+            position++;
+        }
+        size = position;
+
+        File directory = file.getAbsoluteFile().getParentFile();
+        if(directory != null && !directory.isDirectory() && !directory.mkdirs()){
+            logger.warning("Unable to create snapshot directory: " + directory);
+            return false;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary),
+                1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, source);
+            out.writeInt(highWaterMark);
+            out.writeInt(size);
+            out.writeInt(codes.size());
+            for(StillFaceCode code : codes.values()){
+                out.writeInt(code.getCodeID());
+                out.writeInt(code.getDelimiterIndex());
+                writeString(out, code.getName());
+            }
+            out.writeInt(commentTable.size());
+            for(String comment : commentTable.keySet()){
+                writeString(out, comment);
+            }
+            for(int[] column : new int[][]{dataIDs, importIDs, times, durations, codeIDs, comments}){
+                for(int i = 0; i < size; i++){
+                    out.writeInt(column[i]);
+                }
+            }
+            out.writeInt(MAGIC);
+        }
+        catch(IOException e){
+            logger.warning("Unable to write snapshot: " + e.getMessage());
+            temporary.delete();
+            return false;
+        }
+        try{
+            try{
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch(AtomicMoveNotSupportedException e){
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch(IOException e){
+            logger.warning("Unable to replace snapshot: " + e.getMessage());
+            temporary.delete();
+            return false;
+        }
+        logger.info("Wrote snapshot of " + size + " entries up to data ID " + highWaterMark + " to " + file);
+        return true;
+    }
+
+    /**
+     * Memory-maps the snapshot file and reads its entries. Codes are resolved through the StillFaceRegistry, so they
+     * are updated in place when the code table is later loaded from the database.
+     *
+     * @return The contents of the snapshot, or null if there is no snapshot or it cannot be used
+     */
+    public Contents read(){
+        if(!file.isFile()){
+            logger.info("No snapshot found at " + file);
+            return null;
+        }
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)){
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION){
+                logger.info("Ignoring snapshot with an unknown format: " + file);
+                return null;
+            }
+            if(!source.equals(readString(buffer))){
+                logger.info("Ignoring snapshot of another database: " + file);
+                return null;
+            }
+            int highWaterMark = buffer.getInt();
+            int size = buffer.getInt();
+            int codeCount = buffer.getInt();
+            Map<Integer, StillFaceCode> codes = new HashMap<>();
+            StillFaceRegistry registry = StillFaceRegistry.getInstance();
+            for(int i = 0; i < codeCount; i++){
+                int codeID = buffer.getInt();
+                int delimiterIndex = buffer.getInt();
+                codes.put(codeID, registry.code(codeID, readString(buffer), delimiterIndex));
+            }
+            String[] commentTable = new String[buffer.getInt()];
+            for(int i = 0; i < commentTable.length; i++){
+                commentTable[i] = readString(buffer);
+            }
+            IntBuffer columns = buffer.asIntBuffer();
+            int[] dataIDs = new int[size];
+            int[] importIDs = new int[size];
+            int[] times = new int[size];
+            int[] durations = new int[size];
+            int[] codeIDs = new int[size];
+            int[] comments = new int[size];
+            columns.get(dataIDs).get(importIDs).get(times).get(durations).get(codeIDs).get(comments);
+            if(columns.get() != MAGIC){
+                logger.warning("Ignoring truncated snapshot: " + file);
+                return null;
+            }
+
+            List<StillFaceData> data = new ArrayList<>(size);
+            Checksum checksum = new Checksum();
+            for(int i = 0; i < size; i++){
+                StillFaceCode code = codes.get(codeIDs[i]);
+                if(code == null){
+                    logger.warning("Ignoring snapshot with an unknown code: " + codeIDs[i]);
+                    return null;
+                }
+                String comment = (comments[i] == StillFaceCommentDictionary.NO_COMMENT) ? null :
+                        commentTable[comments[i]];
+                StillFaceData d = new StillFaceData(dataIDs[i], importIDs[i], times[i], durations[i], code, comment);
+                data.add(d);
+                checksum.add(d);
+            }
+            logger.info("Read snapshot of " + size + " entries up to data ID " + highWaterMark + " from " + file);
+            return new Contents(highWaterMark, data, checksum);
+        }
+        catch(IOException | BufferUnderflowException | IndexOutOfBoundsException e){
+            logger.warning("Unable to read snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Deletes the snapshot file, if there is one
+     */
+    public void delete(){
+        if(file.exists() && !file.delete()){
+            logger.warning("Unable to delete snapshot: " + file);
+        }
+    }
+
+    /**
+     * Writes a string as a length followed by its UTF-8 bytes. Null is written as a length of -1.
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by writeString
+     */
+    private static String readString(ByteBuffer buffer){
+        int length = buffer.getInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Contents
+     * The entries read from a snapshot, along with its high-water mark and the checksum of the entries.
+     */
+    public static class Contents {
+
+        private final int highWaterMark;
+        private final List<StillFaceData> data;
+        private final Checksum checksum;
+
+        private Contents(int highWaterMark, List<StillFaceData> data, Checksum checksum){
+            this.highWaterMark = highWaterMark;
+            this.data = data;
+            this.checksum = checksum;
+        }
+
+        /**
+         * @return The largest data ID in the snapshot. Every entry in the database with a larger ID was added after
+         * the snapshot was taken.
+         */
+        public int getHighWaterMark() { return highWaterMark; }
+
+        /**
+         * @return The entries of the snapshot. The list may be modified by the caller.
+         */
+        public List<StillFaceData> getData() { return data; }
+
+        public Checksum getChecksum() { return checksum; }
+    }
+
+    /**
+     * Checksum
+     * Aggregates of the entries of each import: the number of entries, the largest data ID, the sums of the time,
+     * duration and code ID, the same sums weighted by a value derived from the data ID of each entry, the number of
+     * comments and the weighted sum of their lengths. The weights make the sums change when entries of an import
+     * trade values with each other. The database computes the same aggregates with the query built by
+     * StillFaceQueryBuilder.buildSelectCodeDataChecksum, so a snapshot is validated by transferring one row per
+     * import, and only the imports whose aggregates differ have to be fetched again.
+     * <p>
+     * A comment edited to another comment of the same length is not detected.
+     */
+    public static class Checksum {
+
+        /* The weight of an entry is its data ID modulo this value, plus one. Small enough that the weighted sums of an
+         * import cannot overflow. */
+        public static final int WEIGHT_MODULUS = 4096;
+
+        /* The number of aggregates kept for each import */
+        private static final int AGGREGATES = 10;
+
+        private final Map<Integer, long[]> imports = new HashMap<>();
+        private long count = 0;
+
+        public Checksum(){}
+
+        /**
+         * Adds an entry to the aggregates of its import
+         *
+         * @param data The entry
+         */
+        public void add(StillFaceData data){
+            long[] aggregates = this.imports.computeIfAbsent(data.getImportID(), k -> new long[AGGREGATES]);
+            long weight = data.getDataID() % WEIGHT_MODULUS + 1;
+            long codeID = data.getCode().getCodeID();
+            aggregates[0]++;
+            aggregates[1] = Math.max(aggregates[1], data.getDataID());
+            aggregates[2] += data.getTime();
+            aggregates[3] += data.getDuration();
+            aggregates[4] += codeID;
+            aggregates[5] += data.getTime() * weight;
+            aggregates[6] += data.getDuration() * weight;
+            aggregates[7] += codeID * weight;
+            if(data.getComment() != null){
+                aggregates[8]++;
+                aggregates[9] += data.getComment().length() * weight;
+            }
+            this.count++;
+        }
+
+        /**
+         * Sets the aggregates of an import, as computed by the database
+         *
+         * @param importID The import
+         * @param aggregates The aggregates, in the order of the columns of the checksum query
+         */
+        public void put(int importID, long[] aggregates){
+            if(aggregates.length != AGGREGATES){
+                throw new IllegalArgumentException("Expected " + AGGREGATES + " aggregates");
+            }
+            long[] previous = this.imports.put(importID, aggregates.clone());
+            this.count += aggregates[0] - ((previous != null) ? previous[0] : 0);
+        }
+
+        /**
+         * @param other Another checksum
+         * @return The imports whose aggregates differ between the checksums, including imports that have entries in
+         * only one of them
+         */
+        public Set<Integer> getChangedImports(Checksum other){
+            Set<Integer> changed = new HashSet<>();
+            for(Map.Entry<Integer, long[]> entry : this.imports.entrySet()){
+                if(!Arrays.equals(entry.getValue(), other.imports.get(entry.getKey()))){
+                    changed.add(entry.getKey());
+                }
+            }
+            for(Integer importID : other.imports.keySet()){
+                if(!this.imports.containsKey(importID)){
+                    changed.add(importID);
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * @return The number of entries
+         */
+        public long getCount() { return count; }
+
+        /**
+         * @return The number of imports with entries
+         */
+        public int getImportCount() { return imports.size(); }
+
+        @Override
+        public boolean equals(Object o){
+            if(o == null || o.getClass() != this.getClass()) return false;
+            return getChangedImports((Checksum)o).isEmpty();
+        }
+
+        @Override
+        public int hashCode(){
+            int hash = 0;
+            for(Map.Entry<Integer, long[]> entry : this.imports.entrySet()){
+                hash += entry.getKey() ^ Arrays.hashCode(entry.getValue());
+            }
+            return hash;
+        }
+
+        @Override
+        public String toString(){
+            return String.format("Checksum[imports=%d, count=%d]", imports.size(), count);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeGroups;
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+import com.byu.pmedia.analytics.StillFaceStateCounter;
+import com.byu.pmedia.analytics.StillFaceStateDurations;
+
+import java.util.*;
+
+/**
+ * StillFaceStateStat
+ * One row of the sf_state_stats table: how long a code lasted as a state in one segment of an import, and in how
+ * many episodes, as measured by the StillFaceStateCounter with the configured StillFaceCodeGroups. Only codes that
+ * were in a state for some time in a segment have a row.
+ * <p>
+ * The table is kept next to the sf_import_stats table by the StillFaceDAO, and is written in the same transactions,
+ * whenever entries are imported or saved. When the code groups change, the table has to be rebuilt with the
+ * StillFaceStatsRebuildTask, which rebuilds it along with the import statistics.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceStateStat {
+
+    private final int importID;
+    private final int segment;
+    private final int codeID;
+    private final int stateTime;
+    private final int episodes;
+
+    public StillFaceStateStat(int importID, int segment, int codeID, int stateTime, int episodes){
+        this.importID = importID;
+        this.segment = segment;
+        this.codeID = codeID;
+        this.stateTime = stateTime;
+        this.episodes = episodes;
+    }
+
+    /**
+     * Computes the state statistics of an import from its entries
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import, in any order. The protocol stored in their codes decides the segments.
+     * @return A new list of the statistics, ordered by segment and then by code ID
+     */
+    public static List<StillFaceStateStat> compute(int importID, Collection<StillFaceData> data){
+        List<StillFaceData> ordered = new ArrayList<>(data);
+        ordered.sort(Comparator.comparingInt(StillFaceData::getTime).thenComparingInt(StillFaceData::getDataID));
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex(ordered);
+        StillFaceStateDurations durations = new StillFaceStateCounter(index, StillFaceCodeGroups.getConfigured())
+                .count(ordered);
+        return of(importID, index, durations);
+    }
+
+    /**
+     * Builds the state statistics of an import from durations that were already measured
+     *
+     * @param importID The ID of the import
+     * @param index The index the durations were measured with
+     * @param durations The durations of the states of the import
+     * @return A new list of the statistics, ordered by segment and then by code ID
+     */
+    static List<StillFaceStateStat> of(int importID, StillFaceCodeIndex index, StillFaceStateDurations durations){
+        List<StillFaceStateStat> stats = new ArrayList<>();
+        for(int segment = 0; segment < index.getSegmentCount(); segment++){
+            List<StillFaceStateStat> segmentStats = new ArrayList<>();
+            for(int ordinal = 0; ordinal < index.size(); ordinal++){
+                if(durations.getTime(segment, ordinal) > 0){
+                    segmentStats.add(new StillFaceStateStat(importID, segment, index.getCode(ordinal).getCodeID(),
+                            durations.getTime(segment, ordinal), durations.getEpisodes(segment, ordinal)));
+                }
+            }
+            // Ordinals follow the code names
+            segmentStats.sort(Comparator.comparingInt(StillFaceStateStat::getCodeID));
+            stats.addAll(segmentStats);
+        }
+        return stats;
+    }
+
+    public int getImportID() { return importID; }
+
+    public int getSegment() { return segment; }
+
+    public int getCodeID() { return codeID; }
+
+    public int getStateTime() { return stateTime; }
+
+    public int getEpisodes() { return episodes; }
+}
@@ -0,0 +1,417 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.StillFaceCodeIndex;
+
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceSummaryCache
+ * Size-bounded, least-recently-used cache of the StillFaceImportSummary of each import. A summary is built once, when
+ * the import is added or first displayed, and is then kept up to date as entries are saved: an edit that changes the
+ * code or time of an ordinary entry only moves that entry between the code counts, without going over the other
+ * entries of the import. The entries of an import are only gone over again when a boundary entry is edited, or when
+ * a different protocol is chosen in the settings.
+ * <p>
+ * Each cached import keeps a reference to its entries by data ID, so updates can be applied in any order and applying
+ * the same update twice has no effect. Unsaved edits are not applied to the cache; they are laid over the cached
+ * counts when a summary is requested.
+ * <p>
+ * Counts are kept by the StillFaceCodeIndex of the StillFaceRegistry. The registry replaces its index whenever a code
+ * is added or changed, e.g. when a different protocol is chosen, and every cached summary is then rebuilt.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceSummaryCache {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The cached imports, keyed by import ID. The map is kept in access order, so the first entry is always the
+     * least recently used import. */
+    private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /* The maximum number of StillFaceData entries (summed over all imports) referenced by the cache */
+    private final int capacity;
+
+    /* The number of StillFaceData entries currently referenced by the cache */
+    private int size = 0;
+
+    /* Counts every change to the cache, so that a summary built without holding the lock is only stored if nothing
+     * changed while it was built */
+    private long modifications = 0;
+
+    /* The index of the codes the cached summaries were built with */
+    private StillFaceCodeIndex index = null;
+
+    /* Statistics about how well the cache is performing */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a new, empty cache
+     *
+     * @param capacity The maximum number of StillFaceData entries to reference across all cached imports
+     */
+    public StillFaceSummaryCache(int capacity){
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the summary of an import, building it from the entries returned by the loader if the import is not
+     * cached. If edits are provided, they are laid over the cached summary without changing it.
+     *
+     * @param importID The ID of the import
+     * @param edits Unsaved edits of entries of the import. May be empty.
+     * @param loader Loads the entries of the import
+     * @return The summary of the import with the edits applied
+     */
+    public StillFaceImportSummary get(int importID, Collection<StillFaceData> edits,
+                                      IntFunction<List<StillFaceData>> loader){
+        long before;
+        synchronized(this){
+            checkCodes(edits);
+            Entry entry = this.entries.get(importID);
+            if(entry != null){
+                hits++;
+                return entry.summarize(edits, this.index);
+            }
+            misses++;
+            before = this.modifications;
+        }
+        List<StillFaceData> data = loader.apply(importID);
+        synchronized(this){
+            // Only keep the entry if no update or code change happened while the entries were loaded, since they
+            // may have been read before the update
+            checkCodes(data);
+            checkCodes(edits);
+            Entry entry = new Entry(data, this.index);
+            if(this.modifications == before && !entry.rows.isEmpty()){
+                put(importID, entry);
+            }
+            return entry.summarize(edits, this.index);
+        }
+    }
+
+    /**
+     * Builds and caches the summary of a newly added import
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import
+     */
+    public synchronized void put(int importID, Collection<StillFaceData> data){
+        checkCodes(data);
+        this.modifications++;
+        put(importID, new Entry(data, this.index));
+    }
+
+    /**
+     * Caches a summary of a newly added import that was already collected, e.g. while its entries were written. The
+     * counts behind it are only built from the entries once one of them is updated. If the summary was not kept by
+     * the current index of the registry, it is built from the entries instead.
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import
+     * @param summary The summary of the entries
+     */
+    public synchronized void put(int importID, Collection<StillFaceData> data, StillFaceImportSummary summary){
+        checkCodes(data);
+        this.modifications++;
+        put(importID, (summary.getIndex() == this.index) ? new Entry(data, summary) : new Entry(data, this.index));
+    }
+
+    /**
+     * Applies saved entries to the summaries of the imports they belong to. Imports that are not cached are left
+     * alone.
+     *
+     * @param data The entries as they were written to the database
+     */
+    public synchronized void update(Collection<StillFaceData> data){
+        checkCodes(data);
+        this.modifications++;
+        for(StillFaceData d : data){
+            Entry entry = this.entries.get(d.getImportID());
+            if(entry != null){
+                if(entry.update(d, this.index)){
+                    this.size++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the summary of an import, e.g. because the import was deleted
+     *
+     * @param importID The ID of the import
+     */
+    public synchronized void remove(int importID){
+        this.modifications++;
+        Entry entry = this.entries.remove(importID);
+        if(entry != null){
+            this.size -= entry.rows.size();
+        }
+    }
+
+    /**
+     * Removes every summary from the cache. Must be called when the entries are reloaded from the database.
+     * Statistics are kept.
+     */
+    public synchronized void clear(){
+        this.modifications++;
+        this.entries.clear();
+        this.size = 0;
+    }
+
+    public synchronized int getSize() { return size; }
+
+    public int getCapacity() { return capacity; }
+
+    public synchronized int getImportCount() { return entries.size(); }
+
+    public synchronized long getHits() { return hits; }
+
+    public synchronized long getMisses() { return misses; }
+
+    private void put(int importID, Entry entry){
+        Entry old = this.entries.put(importID, entry);
+        if(old != null){
+            this.size -= old.rows.size();
+        }
+        this.size += entry.rows.size();
+        Iterator<Map.Entry<Integer, Entry>> iterator = this.entries.entrySet().iterator();
+        while(this.size > this.capacity && iterator.hasNext()){
+            Map.Entry<Integer, Entry> eldest = iterator.next();
+            if(eldest.getKey() == importID){
+                continue;
+            }
+            this.size -= eldest.getValue().rows.size();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Rebuilds every cached summary if the codes changed since they were built. Codes of the provided entries that the
+     * registry has not seen are added to it first. The entries hold the canonical codes, so they already carry any
+     * new names and delimiter indexes.
+     */
+    private void checkCodes(Collection<StillFaceData> data){
+        StillFaceCodeIndex current = StillFaceRegistry.getInstance().getCodeIndex(data);
+        if(current != this.index){
+            this.index = current;
+            this.modifications++;
+            for(Entry entry : this.entries.values()){
+                entry.counts = Counts.of(entry.rows.values(), current);
+                entry.summary = null;
+            }
+            if(!this.entries.isEmpty()){
+                logger.info("Codes changed. Rebuilt " + this.entries.size() + " import summaries");
+            }
+        }
+    }
+
+    private static boolean isBoundary(StillFaceData data, StillFaceCodeIndex index){
+        return index.getBoundary(index.ordinal(data.getCode())) > 0;
+    }
+
+    /**
+     * The entries and counts of one cached import
+     */
+    private static class Entry {
+
+        /* The entries of the import, by data ID */
+        private final Map<Integer, StillFaceData> rows = new HashMap<>();
+        /* Null while the entry only holds the summary it was created with */
+        private Counts counts;
+
+        /* The summary built from the counts. Null once the counts change. */
+        private StillFaceImportSummary summary;
+
+        Entry(Collection<StillFaceData> data, StillFaceCodeIndex index){
+            for(StillFaceData d : data){
+                this.rows.put(d.getDataID(), d);
+            }
+            this.counts = Counts.of(this.rows.values(), index);
+        }
+
+        Entry(Collection<StillFaceData> data, StillFaceImportSummary summary){
+            for(StillFaceData d : data){
+                this.rows.put(d.getDataID(), d);
+            }
+            this.summary = summary;
+        }
+
+        /**
+         * @return The counts of the entries, built now if the entry was created from a summary
+         */
+        private Counts getCounts(StillFaceCodeIndex index){
+            if(this.counts == null){
+                this.counts = Counts.of(this.rows.values(), index);
+            }
+            return this.counts;
+        }
+
+        /**
+         * Applies a saved entry to the counts
+         *
+         * @return True if the entry was not in the import before
+         */
+        boolean update(StillFaceData data, StillFaceCodeIndex index){
+            // The counts of an entry created from a summary must be built before the entry is replaced
+            Counts counts = getCounts(index);
+            StillFaceData old = this.rows.put(data.getDataID(), data);
+            if(old != null && old.getTime() == data.getTime() && old.getCode().equals(data.getCode())){
+                return false;
+            }
+            this.summary = null;
+            if((old != null && isBoundary(old, index)) || isBoundary(data, index)){
+                this.counts = Counts.of(this.rows.values(), index);
+            }
+            else{
+                counts.replace(old, data, this.rows.values());
+            }
+            return old == null;
+        }
+
+        /**
+         * Builds the summary of the import with unsaved edits laid over the saved entries
+         */
+        StillFaceImportSummary summarize(Collection<StillFaceData> edits, StillFaceCodeIndex index){
+            if(edits.isEmpty()){
+                if(this.summary == null){
+                    this.summary = getCounts(index).toSummary();
+                }
+                return this.summary;
+            }
+            boolean boundaryEdited = false;
+            for(StillFaceData edit : edits){
+                StillFaceData old = this.rows.get(edit.getDataID());
+                boundaryEdited |= isBoundary(edit, index) || (old != null && isBoundary(old, index));
+            }
+            Map<Integer, StillFaceData> edited = new HashMap<>(this.rows);
+            for(StillFaceData edit : edits){
+                edited.put(edit.getDataID(), edit);
+            }
+            if(boundaryEdited){
+                return Counts.of(edited.values(), index).toSummary();
+            }
+            Counts overlay = getCounts(index).copy();
+            for(StillFaceData edit : edits){
+                overlay.replace(this.rows.get(edit.getDataID()), edit, edited.values());
+            }
+            return overlay.toSummary();
+        }
+    }
+
+    /**
+     * The counts behind a summary, kept by the ordinals of a code index. An entry belongs to the segment of the highest
+     * boundary coded at or before it, which only depends on where the first entry of each boundary code is. Entries are
+     * ordered by time and then by data ID.
+     */
+    private static class Counts {
+
+        private final StillFaceCodeIndex index;
+        private int count = 0;
+        private int maxTime = 0;
+        /* The position of the first entry of each boundary code, or Long.MAX_VALUE if it was not coded */
+        private final long[] boundaries;
+        private final int[] codeCounts;
+        private final int[] segmentCounts;
+
+        private Counts(StillFaceCodeIndex index){
+            this.index = index;
+            this.boundaries = new long[index.getSegmentCount() - 1];
+            this.codeCounts = new int[index.size()];
+            this.segmentCounts = new int[index.size() * index.getSegmentCount()];
+            Arrays.fill(this.boundaries, Long.MAX_VALUE);
+        }
+
+        static Counts of(Collection<StillFaceData> data, StillFaceCodeIndex index){
+            Counts counts = new Counts(index);
+            for(StillFaceData d : data){
+                int boundary = index.getBoundary(index.ordinal(d.getCode()));
+                for(int i = 0; i < boundary; i++){
+                    counts.boundaries[i] = Math.min(counts.boundaries[i], position(d));
+                }
+            }
+            for(StillFaceData d : data){
+                counts.add(d);
+            }
+            return counts;
+        }
+
+        Counts copy(){
+            Counts copy = new Counts(this.index);
+            copy.count = this.count;
+            copy.maxTime = this.maxTime;
+            System.arraycopy(this.boundaries, 0, copy.boundaries, 0, this.boundaries.length);
+            System.arraycopy(this.codeCounts, 0, copy.codeCounts, 0, this.codeCounts.length);
+            System.arraycopy(this.segmentCounts, 0, copy.segmentCounts, 0, this.segmentCounts.length);
+            return copy;
+        }
+
+        /**
+         * Moves an ordinary entry from its old values to its new ones. Neither value may be a boundary.
+         *
+         * @param old The old values of the entry, or null if it is new
+         * @param data The new values of the entry
+         * @param all Every entry of the import with the new values, only gone over if the last entry moved earlier
+         */
+        void replace(StillFaceData old, StillFaceData data, Collection<StillFaceData> all){
+            if(old != null){
+                remove(old);
+            }
+            add(data);
+            if(old != null && old.getTime() == this.maxTime && data.getTime() < old.getTime()){
+                this.maxTime = 0;
+                for(StillFaceData d : all){
+                    this.maxTime = Math.max(this.maxTime, d.getTime());
+                }
+            }
+        }
+
+        private void add(StillFaceData data){
+            int ordinal = this.index.ordinal(data.getCode());
+            this.count++;
+            this.maxTime = Math.max(this.maxTime, data.getTime());
+            this.codeCounts[ordinal]++;
+            this.segmentCounts[segment(data) * this.codeCounts.length + ordinal]++;
+        }
+
+        private void remove(StillFaceData data){
+            int ordinal = this.index.ordinal(data.getCode());
+            this.count--;
+            this.codeCounts[ordinal]--;
+            this.segmentCounts[segment(data) * this.codeCounts.length + ordinal]--;
+        }
+
+        private int segment(StillFaceData data){
+            long position = position(data);
+            int segment = 0;
+            while(segment < this.boundaries.length && position >= this.boundaries[segment]){
+                segment++;
+            }
+            return segment;
+        }
+
+        StillFaceImportSummary toSummary(){
+            return new StillFaceImportSummary(this.count, this.maxTime, this.index, this.codeCounts,
+                    this.segmentCounts);
+        }
+
+        private static long position(StillFaceData data){
+            return ((long)data.getTime() << 32) | (data.getDataID() & 0xffffffffL);
+        }
+    }
+}
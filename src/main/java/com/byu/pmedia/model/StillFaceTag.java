@@ -12,25 +12,25 @@
 package com.byu.pmedia.model;
 
 import com.googlecode.cqengine.attribute.Attribute;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
 
 import static com.googlecode.cqengine.query.QueryFactory.attribute;
 
 /**
  * StillFaceTag
- * Represents the internal data structure that holds tag data from entries in the database.
+ * Represents the internal data structure that holds tag data from entries in the database. Like codes, tags read
+ * from the database are canonical and are only changed in place by the StillFaceRegistry when they are renamed. Use
+ * withTagValue to create a renamed copy to write to the database.
+ * <p>
+ * Tags are identified by their ID. Tags that have not been stored in the database yet (ID 0) are identified by their
+ * value.
  *
  * @author Braden Hitchcock
  */
 public class StillFaceTag {
 
-    /*
-     * These variables are for the JavaFX Table object in the GUI. The table cells are populated using a CellFactory,
-     * and in order to do this we need to have special variable types
-     */
-    private SimpleIntegerProperty tagID = new SimpleIntegerProperty();
-    private SimpleStringProperty tagValue = new SimpleStringProperty();
+    /* Internal data for the tag entry. The value is only changed through update() */
+    private final int tagID;
+    private volatile String tagValue;
 
     /*
      * The following variables are defined for use with the CQEngine IndexedCollections. This allows us to
@@ -43,24 +43,29 @@ public class StillFaceTag {
             attribute("tagValue", StillFaceTag::getTagValue);
 
     public StillFaceTag(String tagValue){
-        this.setTagValue(tagValue);
+        this(0, tagValue);
     }
 
     public StillFaceTag(int tagID, String tagValue){
-        this.tagID.set(tagID);
-        this.setTagValue(tagValue);
-    }
-
-    public void setTagValue(String tagValue) {
-        this.tagValue.set(tagValue);
+        this.tagID = tagID;
+        this.tagValue = tagValue;
     }
 
     public int getTagID() {
-        return tagID.get();
+        return tagID;
     }
 
     public String getTagValue() {
-        return tagValue.get();
+        return tagValue;
+    }
+
+    public StillFaceTag withTagValue(String tagValue) { return new StillFaceTag(tagID, tagValue); }
+
+    /**
+     * Updates a canonical instance in place. Only called by the StillFaceRegistry.
+     */
+    void update(String tagValue){
+        this.tagValue = tagValue;
     }
 
     @Override
@@ -70,17 +75,17 @@ public class StillFaceTag {
 
     @Override
     public boolean equals(Object o){
+        if(o == this) return true;
         if(o == null || !o.getClass().equals(StillFaceTag.class)) return false;
         StillFaceTag t = (StillFaceTag)o;
-        if(!t.getTagValue().equals(this.getTagValue())
-                || t.getTagID() != this.getTagID()){
+        if(t.getTagID() != this.getTagID()){
             return false;
         }
-        return true;
+        return this.tagID != 0 || t.getTagValue().equals(this.getTagValue());
     }
 
     @Override
     public int hashCode(){
-        return tagValue.get().hashCode();
+        return (tagID != 0) ? Integer.hashCode(tagID) : tagValue.hashCode();
     }
 }
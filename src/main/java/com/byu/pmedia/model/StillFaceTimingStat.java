@@ -0,0 +1,107 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.model;
+
+import com.byu.pmedia.analytics.*;
+
+import java.util.*;
+
+/**
+ * StillFaceTimingStat
+ * One row of the sf_timing_stats table: the distribution of a timing of a code in one segment of an import, as a
+ * StillFaceQuantileSketch encoded as text. The timings are measured by the StillFaceTimingCounter with the configured
+ * StillFaceCodeGroups. Only codes with a timing in a segment have a row.
+ * <p>
+ * The table is kept next to the sf_import_stats table by the StillFaceDAO, and is written in the same transactions,
+ * whenever entries are imported or saved. The sketches of any set of imports can be merged into the sketches of the
+ * whole cohort by the StillFaceTimingAnalyzer without reading their entries.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTimingStat {
+
+    private final int importID;
+    private final int segment;
+    private final int codeID;
+    private final StillFaceTimingMetric metric;
+    private final String sketch;
+
+    public StillFaceTimingStat(int importID, int segment, int codeID, StillFaceTimingMetric metric, String sketch){
+        this.importID = importID;
+        this.segment = segment;
+        this.codeID = codeID;
+        this.metric = metric;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Computes the timing statistics of an import from its entries
+     *
+     * @param importID The ID of the import
+     * @param data The entries of the import, in any order. The protocol stored in their codes decides the segments.
+     * @return A new list of the statistics, ordered by segment, then by code ID and then by metric
+     */
+    public static List<StillFaceTimingStat> compute(int importID, Collection<StillFaceData> data){
+        List<StillFaceData> ordered = new ArrayList<>(data);
+        ordered.sort(Comparator.comparingInt(StillFaceData::getTime).thenComparingInt(StillFaceData::getDataID));
+        StillFaceCodeIndex index = StillFaceRegistry.getInstance().getCodeIndex(ordered);
+        StillFaceTimingSketches sketches = new StillFaceTimingCounter(index, StillFaceCodeGroups.getConfigured(),
+                StillFaceQuantileSketch.DEFAULT_COMPRESSION).count(ordered);
+        return of(importID, index, sketches);
+    }
+
+    /**
+     * Builds the timing statistics of an import from sketches that were already built
+     *
+     * @param importID The ID of the import
+     * @param index The index the sketches were built with
+     * @param sketches The sketches of the timings of the import
+     * @return A new list of the statistics, ordered by segment, then by code ID and then by metric
+     */
+    static List<StillFaceTimingStat> of(int importID, StillFaceCodeIndex index, StillFaceTimingSketches sketches){
+        List<StillFaceTimingStat> stats = new ArrayList<>();
+        for(int segment = 0; segment < index.getSegmentCount(); segment++){
+            List<StillFaceTimingStat> segmentStats = new ArrayList<>();
+            for(int ordinal = 0; ordinal < index.size(); ordinal++){
+                for(StillFaceTimingMetric metric : StillFaceTimingMetric.values()){
+                    StillFaceQuantileSketch sketch = sketches.getSketch(metric, segment, ordinal);
+                    if(sketch != null){
+                        segmentStats.add(new StillFaceTimingStat(importID, segment,
+                                index.getCode(ordinal).getCodeID(), metric, sketch.encode()));
+                    }
+                }
+            }
+            // Ordinals follow the code names. The sort is stable, so the metrics stay in order.
+            segmentStats.sort(Comparator.comparingInt(StillFaceTimingStat::getCodeID));
+            stats.addAll(segmentStats);
+        }
+        return stats;
+    }
+
+    public int getImportID() { return importID; }
+
+    public int getSegment() { return segment; }
+
+    public int getCodeID() { return codeID; }
+
+    public StillFaceTimingMetric getMetric() { return metric; }
+
+    /**
+     * @return The sketch of the timings, encoded as text
+     */
+    public String getSketch() { return sketch; }
+
+    /**
+     * @return The decoded sketch of the timings, or null if the stored text is not a sketch
+     */
+    public StillFaceQuantileSketch decodeSketch() { return StillFaceQuantileSketch.decode(sketch); }
+}
@@ -11,12 +11,22 @@
  */
 package com.byu.pmedia.parser;
 
+import com.byu.pmedia.analytics.StillFaceAgreement;
+import com.byu.pmedia.analytics.StillFaceLagSequentialResult;
+import com.byu.pmedia.analytics.StillFaceRateSeries;
+import com.byu.pmedia.analytics.StillFaceQuantileSketch;
+import com.byu.pmedia.analytics.StillFaceStateDurations;
+import com.byu.pmedia.analytics.StillFaceTimingMetric;
+import com.byu.pmedia.analytics.StillFaceTimingSketches;
+import com.byu.pmedia.analytics.StillFaceTransitionMatrix;
 import com.byu.pmedia.model.StillFaceCode;
 import com.byu.pmedia.model.StillFaceCodeCount;
 import com.byu.pmedia.model.StillFaceData;
+import com.byu.pmedia.model.StillFaceProtocol;
 import com.byu.pmedia.model.StillFaceVideoData;
 
 import java.io.*;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -32,6 +42,9 @@ public class StillFaceCSVParser {
     /* Grab an instance of the logger */
     private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
 
+    /* The percentiles written for each timing */
+    private static final int[] PERCENTILES = {10, 25, 50, 75, 90};
+
     /* The delimiter used in reading and writing CSV files. Defaults to a comma */
     private String delimeter;
 
@@ -141,43 +154,455 @@ public class StillFaceCSVParser {
     }
 
     /**
-     * Given a list of summary information from a set of data objects, this will write those to a CSV file with the code
-     * delimiters provided used to separate the sections of information
+     * Given a list of summary information from a set of data objects, this will write those to a CSV file, with a
+     * header naming each segment of the protocol before its section of information
      *
-     * @param delim1 The first StillFaceCode object acting as a delimiter used in the summary data
-     * @param delim2 The second StillFaceCode object acting as a delimiter used in the summary data
-     * @param summary A list of the three summary lists to write to the file. These list contain StillFaceCodeCount
-     *                objects
+     * @param protocol The protocol whose segments the summary was counted in
+     * @param summary A list of the summary lists of each segment to write to the file. These list contain
+     *                StillFaceCodeCount objects
      * @param filename The name of the file to write to
      * @return True if the serialization succeeds. False otherwise.
      */
-    public boolean serializeSummaryToCSVFromLists(StillFaceCode delim1, StillFaceCode delim2,
-                                                  List<List<StillFaceCodeCount>> summary, String filename){
+    public boolean serializeSummaryToCSVFromLists(StillFaceProtocol protocol, List<List<StillFaceCodeCount>> summary,
+                                                  String filename){
         logger.fine("Serializing maps to summary file...");
-        if(summary.size() != 3){
-            logger.warning("Incorrect number of summaries in list. Should be 3");
+        if(summary.size() != protocol.getSegmentCount()){
+            logger.warning("Incorrect number of summaries in list. Should be " + protocol.getSegmentCount());
             return false;
         }
         try{
             BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
 
-            bw.write("Before " + delim1.getName() + " code name, count\n");
-            for(StillFaceCodeCount count : summary.get(0)) {
-                bw.write(count.getName() + this.delimeter + count.getCount() + "\n");
+            for(int segment = 0; segment < summary.size(); segment++){
+                bw.write(protocol.getSegmentName(segment) + " code name, count\n");
+                for(StillFaceCodeCount count : summary.get(segment)) {
+                    bw.write(count.getName() + this.delimeter + count.getCount() + "\n");
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing summary data to file");
+            return true;
+
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes a rate series to a CSV file that can be loaded as a matrix, with one row per bin of each segment. The
+     * columns are the segment, the start of the bin in milliseconds from the start of the segment, the number of
+     * imports that reach the bin, and the rate of each code in entries per minute. Codes that never occur are left
+     * out.
+     *
+     * @param series The series to write
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeRateSeriesToCSV(StillFaceRateSeries series, String filename){
+        logger.fine("Serializing rate series to file: " + filename);
+        List<Integer> ordinals = new ArrayList<>();
+        for(int ordinal = 0; ordinal < series.getIndex().size(); ordinal++){
+            for(int segment = 0; segment < series.getSegmentCount(); segment++){
+                if(series.getTotal(segment, ordinal) > 0){
+                    ordinals.add(ordinal);
+                    break;
+                }
             }
-            bw.write("After " + delim1.getName() + " code name, count\n");
-            for(StillFaceCodeCount count : summary.get(1)) {
-                bw.write(count.getName() + this.delimeter + count.getCount() + "\n");
+        }
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            StringBuilder header = new StringBuilder("segment" + this.delimeter + "bin_start_ms" + this.delimeter
+                    + "imports");
+            for(int ordinal : ordinals){
+                header.append(this.delimeter).append(series.getIndex().getName(ordinal));
             }
-            bw.write("After " + delim2.getName() + " code name, count\n");
-            for(StillFaceCodeCount count : summary.get(2)) {
-                bw.write(count.getName() + this.delimeter + count.getCount() + "\n");
+            bw.write(header.append("\n").toString());
+            for(int segment = 0; segment < series.getSegmentCount(); segment++){
+                for(int bin = 0; bin < series.getBinCount(segment); bin++){
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(segment);
+                    sb.append(this.delimeter);
+                    sb.append((long)bin * series.getBinWidth());
+                    sb.append(this.delimeter);
+                    sb.append(series.getImportCount(segment, bin));
+                    for(int ordinal : ordinals){
+                        sb.append(this.delimeter);
+                        sb.append(series.getRate(segment, bin, ordinal));
+                    }
+                    sb.append("\n");
+                    bw.write(sb.toString());
+                }
             }
 
             bw.close();
-            logger.fine("Finished serializing summary data to file");
+            logger.fine("Finished serializing rate series to file");
+            return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes transition matrices to a CSV file with one row per transition that occurs, so that the matrices of many
+     * imports can be loaded as one table. The columns are the import, the segment, the codes the transition comes
+     * from and leads to, the number of times it occurs and its probability among the transitions out of the same
+     * code in the same segment.
+     *
+     * @param importIDs The ID of the import of each matrix. A pooled matrix can be written with an ID of 0.
+     * @param matrices The matrices to write
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeTransitionsToCSV(int[] importIDs, StillFaceTransitionMatrix[] matrices, String filename){
+        logger.fine("Serializing transition matrices to file: " + filename);
+        if(importIDs.length != matrices.length){
+            logger.warning("Incorrect number of transition matrices. Should be " + importIDs.length);
+            return false;
+        }
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            bw.write("import" + this.delimeter + "segment" + this.delimeter + "from" + this.delimeter + "to"
+                    + this.delimeter + "count" + this.delimeter + "probability\n");
+            for(int i = 0; i < matrices.length; i++){
+                StillFaceTransitionMatrix matrix = matrices[i];
+                int codes = matrix.getIndex().size();
+                for(int segment = 0; segment < matrix.getSegmentCount(); segment++){
+                    for(int from = 0; from < codes; from++){
+                        for(int to = 0; to < codes; to++){
+                            int count = matrix.getCount(segment, from, to);
+                            if(count == 0){
+                                continue;
+                            }
+                            StringBuilder sb = new StringBuilder();
+                            sb.append(importIDs[i]);
+                            sb.append(this.delimeter);
+                            sb.append(segment);
+                            sb.append(this.delimeter);
+                            sb.append(matrix.getIndex().getName(from));
+                            sb.append(this.delimeter);
+                            sb.append(matrix.getIndex().getName(to));
+                            sb.append(this.delimeter);
+                            sb.append(count);
+                            sb.append(this.delimeter);
+                            sb.append(matrix.getProbability(segment, from, to));
+                            sb.append("\n");
+                            bw.write(sb.toString());
+                        }
+                    }
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing transition matrices to file");
+            return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the time spent in each state to a CSV file with one row per code of a group that was in a state in a
+     * segment, followed by a row per code for the whole video. The columns are the segment, the group, the code, the
+     * time in state in milliseconds, the number of episodes, and the share of the time of the group in the segment
+     * spent in the state.
+     *
+     * @param durations The durations to write
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeStateDurationsToCSV(StillFaceStateDurations durations, String filename){
+        logger.fine("Serializing state durations to file: " + filename);
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            bw.write("segment" + this.delimeter + "group" + this.delimeter + "code" + this.delimeter + "time_ms"
+                    + this.delimeter + "episodes" + this.delimeter + "proportion\n");
+            for(int segment = 0; segment <= durations.getSegmentCount(); segment++){
+                // The rows of the whole video come after those of the last segment
+                int row = (segment < durations.getSegmentCount()) ? segment : StillFaceStateDurations.WHOLE_VIDEO;
+                String segmentName = (row == StillFaceStateDurations.WHOLE_VIDEO)
+                        ? "Whole Video" : durations.getProtocol().getSegmentName(row);
+                for(int ordinal = 0; ordinal < durations.getIndex().size(); ordinal++){
+                    int time = durations.getTime(row, ordinal);
+                    if(time == 0){
+                        continue;
+                    }
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(segmentName);
+                    sb.append(this.delimeter);
+                    sb.append(durations.getGroups().getGroupName(durations.getGroup(ordinal)));
+                    sb.append(this.delimeter);
+                    sb.append(durations.getIndex().getName(ordinal));
+                    sb.append(this.delimeter);
+                    sb.append(time);
+                    sb.append(this.delimeter);
+                    sb.append(durations.getEpisodes(row, ordinal));
+                    sb.append(this.delimeter);
+                    sb.append(durations.getProportion(row, ordinal));
+                    sb.append("\n");
+                    bw.write(sb.toString());
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing state durations to file");
+            return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the statistics of a lag sequential analysis to a CSV file with one row per pair of codes that was either
+     * observed or expected. The columns are the codes of the first and later entry, the observed and expected counts,
+     * the probability of the later code given the first, the adjusted residual, and the mean and standard deviation
+     * of the count and the one-sided and two-sided significance found from the shuffles.
+     *
+     * @param result The statistics to write
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeLagSequentialToCSV(StillFaceLagSequentialResult result, String filename){
+        logger.fine("Serializing lag sequential statistics to file: " + filename);
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            bw.write("from" + this.delimeter + "to" + this.delimeter + "observed" + this.delimeter + "expected"
+                    + this.delimeter + "probability" + this.delimeter + "z" + this.delimeter + "permutation_mean"
+                    + this.delimeter + "permutation_sd" + this.delimeter + "p_upper" + this.delimeter + "p_lower"
+                    + this.delimeter + "p\n");
+            int codes = result.getIndex().size();
+            for(int from = 0; from < codes; from++){
+                for(int to = 0; to < codes; to++){
+                    if(result.getObserved(from, to) == 0 && result.getExpected(from, to) == 0){
+                        continue;
+                    }
+                    StringBuilder sb = new StringBuilder();
+                    sb.append(result.getIndex().getName(from));
+                    sb.append(this.delimeter);
+                    sb.append(result.getIndex().getName(to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getObserved(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getExpected(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getProbability(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getZScore(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getPermutationMean(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getPermutationStandardDeviation(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getUpperPValue(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getLowerPValue(from, to));
+                    sb.append(this.delimeter);
+                    sb.append(result.getPValue(from, to));
+                    sb.append("\n");
+                    bw.write(sb.toString());
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing lag sequential statistics to file");
+            return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the agreement of pairs of imports to a CSV file with one row per pair for the overall agreement and one
+     * per code either import used. The columns are the two imports, the code, the number of entries of the code in
+     * both imports that were matched with each other, the number of entries of the code of each import that were not
+     * matched with an entry of the code in the other, and Cohen's kappa. The overall row counts every entry.
+     *
+     * @param agreements The agreements to write. A pooled agreement can be included, with import IDs of 0.
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeAgreementsToCSV(StillFaceAgreement[] agreements, String filename){
+        logger.fine("Serializing agreements to file: " + filename);
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            bw.write("first_import" + this.delimeter + "second_import" + this.delimeter + "code" + this.delimeter
+                    + "agreements" + this.delimeter + "first_only" + this.delimeter + "second_only" + this.delimeter
+                    + "kappa\n");
+            for(StillFaceAgreement agreement : agreements){
+                long agreed = 0;
+                for(int ordinal = 0; ordinal < agreement.getIndex().size(); ordinal++){
+                    agreed += agreement.getCount(ordinal, ordinal);
+                }
+                bw.write(agreementRow(agreement, "Overall", agreed, agreement.getTotal() - agreed
+                        - agreement.getRowTotal(StillFaceAgreement.UNMATCHED), agreement.getTotal() - agreed
+                        - agreement.getColumnTotal(StillFaceAgreement.UNMATCHED), agreement.getKappa()));
+                for(int ordinal = 0; ordinal < agreement.getIndex().size(); ordinal++){
+                    long first = agreement.getRowTotal(ordinal);
+                    long second = agreement.getColumnTotal(ordinal);
+                    if(first == 0 && second == 0){
+                        continue;
+                    }
+                    int count = agreement.getCount(ordinal, ordinal);
+                    bw.write(agreementRow(agreement, agreement.getIndex().getName(ordinal), count, first - count,
+                            second - count, agreement.getKappa(ordinal)));
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing agreements to file");
+            return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the confusion matrix of an agreement to a CSV file. Each row is a code of the first import and each
+     * column a code of the second, with a last row and column named None for entries that were not matched.
+     *
+     * @param agreement The agreement to write
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeConfusionMatrixToCSV(StillFaceAgreement agreement, String filename){
+        logger.fine("Serializing confusion matrix to file: " + filename);
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            int codes = agreement.getIndex().size();
+            StringBuilder header = new StringBuilder("code");
+            for(int ordinal = 0; ordinal <= codes; ordinal++){
+                header.append(this.delimeter);
+                header.append((ordinal < codes) ? agreement.getIndex().getName(ordinal) : "None");
+            }
+            header.append("\n");
+            bw.write(header.toString());
+            for(int first = 0; first <= codes; first++){
+                StringBuilder sb = new StringBuilder();
+                sb.append((first < codes) ? agreement.getIndex().getName(first) : "None");
+                for(int second = 0; second <= codes; second++){
+                    sb.append(this.delimeter);
+                    sb.append(agreement.getCount((first < codes) ? first : StillFaceAgreement.UNMATCHED,
+                            (second < codes) ? second : StillFaceAgreement.UNMATCHED));
+                }
+                sb.append("\n");
+                bw.write(sb.toString());
+            }
+
+            bw.close();
+            logger.fine("Finished serializing confusion matrix to file");
             return true;
+        }
+        catch(FileNotFoundException e){
+            logger.severe("Could not write to file, file not found: " + filename);
+            return false;
+        }
+        catch(IOException e){
+            logger.severe("Caught IOException: " + e.getMessage());
+            return false;
+        }
+    }
 
+    /**
+     * Writes the percentiles of the timings of a set of imports to a CSV file, with a row per metric and code with
+     * timings in each segment, followed by the rows of the whole video. The columns are the segment, the metric, the
+     * code, the number of timings, and the smallest timing, the percentiles in PERCENTILES and the largest timing, in
+     * milliseconds. The percentiles are estimated from the sketches.
+     *
+     * @param sketches The sketches of the timings
+     * @param filename The name of the file to write to
+     * @return True if the serialization succeeds. False otherwise.
+     */
+    public boolean serializeTimingPercentilesToCSV(StillFaceTimingSketches sketches, String filename){
+        logger.fine("Serializing timing percentiles to file: " + filename);
+        try{
+            BufferedWriter bw = new BufferedWriter(new FileWriter(filename));
+
+            StringBuilder header = new StringBuilder("segment" + this.delimeter + "metric" + this.delimeter + "code"
+                    + this.delimeter + "count" + this.delimeter + "min");
+            for(int percentile : PERCENTILES){
+                header.append(this.delimeter);
+                header.append("p").append(percentile);
+            }
+            header.append(this.delimeter).append("max\n");
+            bw.write(header.toString());
+            for(int segment = 0; segment <= sketches.getSegmentCount(); segment++){
+                // The rows of the whole video come after those of the last segment
+                boolean wholeVideo = segment == sketches.getSegmentCount();
+                String segmentName = wholeVideo ? "Whole Video" : sketches.getProtocol().getSegmentName(segment);
+                for(StillFaceTimingMetric metric : StillFaceTimingMetric.values()){
+                    for(int ordinal = 0; ordinal < sketches.getIndex().size(); ordinal++){
+                        StillFaceQuantileSketch sketch = wholeVideo ? sketches.getSketch(metric, ordinal)
+                                : sketches.getSketch(metric, segment, ordinal);
+                        if(sketch == null){
+                            continue;
+                        }
+                        StringBuilder sb = new StringBuilder();
+                        sb.append(segmentName);
+                        sb.append(this.delimeter);
+                        sb.append(metric.toPrettyString());
+                        sb.append(this.delimeter);
+                        sb.append(sketches.getIndex().getName(ordinal));
+                        sb.append(this.delimeter);
+                        sb.append(sketch.getCount());
+                        sb.append(this.delimeter);
+                        sb.append(sketch.getMin());
+                        for(int percentile : PERCENTILES){
+                            sb.append(this.delimeter);
+                            sb.append(sketch.getQuantile(percentile / 100.0));
+                        }
+                        sb.append(this.delimeter);
+                        sb.append(sketch.getMax());
+                        sb.append("\n");
+                        bw.write(sb.toString());
+                    }
+                }
+            }
+
+            bw.close();
+            logger.fine("Finished serializing timing percentiles to file");
+            return true;
         }
         catch(FileNotFoundException e){
             logger.severe("Could not write to file, file not found: " + filename);
@@ -188,4 +613,11 @@ public class StillFaceCSVParser {
             return false;
         }
     }
+
+    private String agreementRow(StillFaceAgreement agreement, String code, long agreed, long firstOnly,
+                                long secondOnly, double kappa){
+        return agreement.getFirstImportID() + this.delimeter + agreement.getSecondImportID() + this.delimeter + code
+                + this.delimeter + agreed + this.delimeter + firstOnly + this.delimeter + secondOnly + this.delimeter
+                + kappa + "\n";
+    }
 }
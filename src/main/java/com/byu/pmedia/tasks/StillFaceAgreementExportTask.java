@@ -0,0 +1,112 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.analytics.StillFaceAgreement;
+import com.byu.pmedia.analytics.StillFaceAgreementAnalyzer;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+import javafx.concurrent.Task;
+
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceAgreementExportTask
+ * Implementation of the IStillFaceTask interface. Wraps finding every pair of imports that code the same video,
+ * matching their entries, and writing their agreement to a CSV file. The agreement of all the pairs pooled together
+ * is written as the last rows, with import IDs of 0, and its confusion matrix is written to a second file. Matching
+ * goes over every entry of the imports, so this task is executed on a separate thread from the GUI.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceAgreementExportTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The analyzer that matches the imports */
+    private StillFaceAgreementAnalyzer analyzer;
+    /* How far apart in time, in milliseconds, two entries can be and still be matched */
+    private int tolerance;
+    /* The full path (filename included) to write the file to */
+    private String filepath;
+    /* The path to the file where the pooled confusion matrix will be written. Same directory as the filepath. */
+    private String confusionFilepath;
+    /* Callback method provided by developer to be executed on success or fail of the task */
+    private StillFaceTaskCallback callback;
+
+    public StillFaceAgreementExportTask(StillFaceAgreementAnalyzer analyzer, int tolerance, String filepath,
+                                        StillFaceTaskCallback callback){
+        this.analyzer = analyzer;
+        this.tolerance = tolerance;
+        this.filepath = filepath;
+        this.confusionFilepath = filepath.replaceAll(".csv", "_confusion.csv");
+        this.callback = callback;
+    }
+
+    /**
+     * Executes the task. Attempts to match and export the pairs on a separate thread.
+     */
+    @Override
+    public void execute() {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                exportAgreement();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                callback.onSuccess();
+                super.succeeded();
+            }
+
+            @Override
+            protected void failed() {
+                callback.onFail(this.getException());
+                super.failed();
+            }
+        };
+        new Thread(task).start();
+    }
+
+    /**
+     * Where the export actually happens
+     *
+     * @throws Exception If there are no pairs, or they could not be matched or written, so that the thread will
+     *                   execute the onFail() method from the callback provided by the developer
+     */
+    private void exportAgreement() throws Exception {
+        int[][] pairs = analyzer.findDoubleCodedPairs();
+        if(pairs == null){
+            throw new Exception("Failed to find double coded imports. See log for details.");
+        }
+        if(pairs.length == 0){
+            throw new Exception("No participant has imports with different tags to compare.");
+        }
+        logger.info("Exporting the agreement of " + pairs.length + " pairs of imports...");
+        StillFaceAgreement[] agreements = analyzer.getAgreements(pairs, tolerance);
+        if(agreements == null){
+            throw new Exception("Failed to match imports. See log for details.");
+        }
+        StillFaceAgreement pooled = StillFaceAgreement.pool(agreements);
+        StillFaceAgreement[] rows = Arrays.copyOf(agreements, agreements.length + 1);
+        rows[agreements.length] = pooled;
+        StillFaceCSVParser parser = new StillFaceCSVParser();
+        if(!parser.serializeAgreementsToCSV(rows, filepath)
+                || !parser.serializeConfusionMatrixToCSV(pooled, confusionFilepath)){
+            logger.warning("Agreement export failed");
+            throw new Exception("Failed to export agreement. See log for more information.");
+        }
+    }
+}
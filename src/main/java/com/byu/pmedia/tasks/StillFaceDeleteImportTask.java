@@ -84,7 +84,7 @@ public class StillFaceDeleteImportTask implements IStillFaceTask {
         boolean success = dao.cleanImportData(importData.getImportID());
         if(success){
             logger.fine("Delete import task completed...");
-            StillFaceModel.getInstance().refresh();
+            StillFaceModel.getInstance().removeImport(importData.getImportID());
         }
         else{
             logger.severe("Unable to delete import data from database");
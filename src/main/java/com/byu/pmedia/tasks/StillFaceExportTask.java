@@ -11,6 +11,9 @@
  */
 package com.byu.pmedia.tasks;
 
+import com.byu.pmedia.analytics.StillFaceCodeGroups;
+import com.byu.pmedia.analytics.StillFaceStateCounter;
+import com.byu.pmedia.analytics.StillFaceStateDurations;
 import com.byu.pmedia.model.*;
 import com.byu.pmedia.parser.StillFaceCSVParser;
 import javafx.concurrent.Task;
@@ -34,12 +37,15 @@ public class StillFaceExportTask implements IStillFaceTask {
     private String filepath;
     /* The path to the file where summary data will be written. Same directory as the filepath. */
     private String summaryFilepath;
+    /* The path to the file where the time spent in each state will be written. Same directory as the filepath. */
+    private String stateFilepath;
     /* Callback method provided by developer to be executed on success or fail of the task */
     private StillFaceTaskCallback callback;
 
     public StillFaceExportTask(String filepath, StillFaceTaskCallback callback){
         this.filepath = filepath;
         this.summaryFilepath = filepath.replaceAll(".csv", "_code_summary.csv");
+        this.stateFilepath = filepath.replaceAll(".csv", "_state_summary.csv");
         this.callback = callback;
     }
 
@@ -72,101 +78,39 @@ public class StillFaceExportTask implements IStillFaceTask {
 
     /**
      * Where the export actually happens. Using the visible data list from the StillFaceModel, it gets summary data
-     * and then writes the visible data to a CSV file, followed by writing the summary data.
+     * and then writes the visible data to a CSV file, followed by writing the summary data. The summary of an import
+     * comes from the model's summary cache; search results are summarized from the list. When an import is visible,
+     * the time spent in each state of the configured code groups is measured from its entries and written to a third
+     * file. Search results mix the entries of many imports, so they have no states.
      *
      * @throws Exception If the write fails, this makes sure that the fail triggers the onFail() callback method
      *                   provided by the developer
      */
     private void exportData() throws Exception{
         logger.info("Beginning export task...");
-        // Set up some maps to hold summary data
-        Map<String, Integer> mostCommonCodeFirst = new HashMap<>();
-        Map<String, Integer> mostCommonCodeSecond= new HashMap<>();
-        Map<String, Integer> mostCommonCodeThird = new HashMap<>();
-
-        // Get the delimiters
-        StillFaceCode delim1 = null;
-        StillFaceCode delim2 = null;
-
-        for(StillFaceCode c : StillFaceModel.getCodeList()){
-            if(c.getDelimiterIndex() == 1){
-                delim1 = c;
-            }
-            else if(c.getDelimiterIndex() == 2){
-                delim2 = c;
-            }
-        }
-
-        // Collect the summary data
-        int delimiterIndex = 0;
-        for(StillFaceData data : StillFaceModel.getInstance().getVisibleDataList()){
-            // Code stats
-            String codeName = data.getCode().getName();
-            if(data.getCode().getDelimiterIndex() > delimiterIndex){
-                delimiterIndex = data.getCode().getDelimiterIndex();
-            }
-            // Get the common code counts for each video segment
-            switch(delimiterIndex){
-                case 0:
-                    if(mostCommonCodeFirst.containsKey(codeName)){
-                        int count = mostCommonCodeFirst.get(codeName);
-                        mostCommonCodeFirst.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeFirst.put(codeName, 1);
-                    }
-                    break;
-
-                case 1:
-                    if(mostCommonCodeSecond.containsKey(codeName)){
-                        int count = mostCommonCodeSecond.get(codeName);
-                        mostCommonCodeSecond.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeSecond.put(codeName, 1);
-                    }
-                    break;
-
-                case 2:
-                    if(mostCommonCodeThird.containsKey(codeName)){
-                        int count = mostCommonCodeThird.get(codeName);
-                        mostCommonCodeThird.put(codeName, count + 1);
-                    }
-                    else{
-                        mostCommonCodeThird.put(codeName, 1);
-                    }
-                    break;
-
-
-            }
-
-        }
-        // Count everything up
-        List<StillFaceCodeCount> firstCounts = new ArrayList<>();
-        List<StillFaceCodeCount> secondCounts = new ArrayList<>();
-        List<StillFaceCodeCount> thirdCounts = new ArrayList<>();
-        for(Map.Entry<String, Integer> entry : mostCommonCodeFirst.entrySet()){
-            firstCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
-        }
-        for(Map.Entry<String, Integer> entry : mostCommonCodeSecond.entrySet()){
-            secondCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
+        // Get the summary data
+        List<StillFaceData> dataList = StillFaceModel.getInstance().getVisibleDataList();
+        StillFaceImport visibleImport = StillFaceModel.getInstance().getVisibleImport();
+        StillFaceImportSummary summary = (visibleImport != null)
+                ? StillFaceModel.getInstance().getSummary(visibleImport.getImportID())
+                : StillFaceImportSummary.of(dataList);
+        List<List<StillFaceCodeCount>> summaryList = new ArrayList<>();
+        for(int segment = 0; segment < summary.getSegmentCount(); segment++){
+            summaryList.add(summary.getCodeCounts(segment));
         }
-        for(Map.Entry<String, Integer> entry : mostCommonCodeThird.entrySet()){
-            thirdCounts.add(new StillFaceCodeCount(entry.getKey(), entry.getValue()));
+        StillFaceStateDurations durations = null;
+        if(visibleImport != null){
+            List<StillFaceData> ordered = new ArrayList<>(dataList);
+            ordered.sort(Comparator.comparingInt(StillFaceData::getTime).thenComparingInt(StillFaceData::getDataID));
+            durations = new StillFaceStateCounter(StillFaceRegistry.getInstance().getCodeIndex(ordered),
+                    StillFaceCodeGroups.getConfigured()).count(ordered);
         }
-        // Sort the counts
-        Collections.sort(firstCounts);
-        Collections.sort(secondCounts);
-        Collections.sort(thirdCounts);
         // Write them to a file
         StillFaceCSVParser parser = new StillFaceCSVParser();
-        List<List<StillFaceCodeCount>> summaryList = new ArrayList<>();
-        summaryList.add(firstCounts);
-        summaryList.add(secondCounts);
-        summaryList.add(thirdCounts);
-        boolean success = parser.serializeToCSVFromCodedVideoData(
-                new StillFaceVideoData(StillFaceModel.getInstance().getVisibleDataList()), this.filepath)
-                && parser.serializeSummaryToCSVFromLists(delim1, delim2, summaryList, this.summaryFilepath);
+        boolean success = parser.serializeToCSVFromCodedVideoData(new StillFaceVideoData(dataList), this.filepath)
+                && parser.serializeSummaryToCSVFromLists(summary.getProtocol(), summaryList,
+                this.summaryFilepath)
+                && (durations == null || parser.serializeStateDurationsToCSV(durations, this.stateFilepath));
         if(!success){
             logger.warning("Export failed");
             throw new Exception("Failed to export data. See log for more information.");
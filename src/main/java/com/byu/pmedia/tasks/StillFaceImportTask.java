@@ -12,8 +12,8 @@
 package com.byu.pmedia.tasks;
 
 import com.byu.pmedia.database.StillFaceDAO;
-import com.byu.pmedia.model.StillFaceData;
 import com.byu.pmedia.model.StillFaceImport;
+import com.byu.pmedia.model.StillFaceImportStatAccumulator;
 import com.byu.pmedia.model.StillFaceModel;
 import com.byu.pmedia.model.StillFaceVideoData;
 import com.byu.pmedia.parser.StillFaceCSVParser;
@@ -79,10 +79,10 @@ public class StillFaceImportTask implements IStillFaceTask {
 
     /**
      * Where the import happens. Takes the data from a CSV file and populates a list of StillFaceData objects. Then
-     * it will attempt to first write the import data to the database. After successfully inserting a new import
-     * entry, it will use the generated key to populate the import id field of the StillFaceData objects and then
-     * write them to the database. If there is an error encountered during the process, it will rollback the changes
-     * to the state of the database before the attempt to import occurred.
+     * it writes the import entry, the StillFaceData objects under its generated key, and the statistics collected
+     * from them as they are written, in one transaction. If there is an error encountered during the process, the
+     * transaction is rolled back to the state of the database before the attempt to import occurred. The summary
+     * collected while writing is handed to the model, so the new import is summarized without another pass.
      *
      * @throws Exception If an error occurs, this will trigger the failed() method in the thread to be called and the
      *                   developer's provided onFail() implementation to be called
@@ -92,26 +92,17 @@ public class StillFaceImportTask implements IStillFaceTask {
         StillFaceVideoData videoData = new StillFaceVideoData();
         new StillFaceCSVParser().parseFromCSVIntoCodedVideoData(importFile.getAbsolutePath(), videoData);
         dao.lockConnection();
-        int key = dao.insertImportData(importData);
-        if(key > 0){
-            logger.fine("Import entry created, importing data...");
-            for(StillFaceData data : videoData.getData()){
-                data.setImportID(key);
-                int dKey = dao.insertCodeData(data);
-                if(dKey < 0){
-                    dao.cleanImportData(key);
-                    throw new Exception("Import data failed while importing file");
-                }
-            }
-            StillFaceModel.getInstance().refreshImportData();
-            StillFaceModel.getInstance().refreshCodeData();
-            StillFaceModel.getInstance().refreshCodes();
-            logger.fine("Import task completed");
-        }
-        else{
+        StillFaceImportStatAccumulator imported = dao.insertImport(importData, videoData.getData());
+        dao.unlockConnection();
+        if(imported == null){
             logger.severe("Unable to insert data into database");
-            throw new Exception("Import failed while loading file information");
+            throw new Exception("Import failed while writing to the database. See log for more information.");
         }
-        dao.unlockConnection();
+        // The write has committed, so add the new entries to the model rather than reloading every table
+        StillFaceModel.getInstance().addImport(new StillFaceImport(imported.getImportID(), importData.getFilename(),
+                importData.getYear(), importData.getFamilyID(), importData.getParticipantNumber(),
+                importData.getTag(), importData.getAlias(), importData.getDate()), imported.getData(),
+                imported.getSummary());
+        logger.fine("Import task completed");
     }
 }
@@ -0,0 +1,144 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.analytics.StillFaceAnalysisProgress;
+import com.byu.pmedia.analytics.StillFaceLagSequentialAnalyzer;
+import com.byu.pmedia.analytics.StillFaceLagSequentialResult;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.concurrent.Task;
+
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+
+/**
+ * StillFaceLagSequentialTask
+ * Implementation of the IStillFaceTask interface. Wraps a lag sequential analysis of a set of imports and writing its
+ * statistics to a CSV file. The analysis shuffles every entry of the imports many times, so this task is executed on
+ * a separate thread from the GUI. Its progress is the share of the shuffles done, and it can be cancelled while it
+ * runs, in which case the callback fails with a CancellationException and no file is written.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceLagSequentialTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The analyzer that runs the analysis */
+    private StillFaceLagSequentialAnalyzer analyzer;
+    /* The imports and segment to analyze, the lag, and the number of shuffles and their seed */
+    private int[] importIDs;
+    private int segment;
+    private int lag;
+    private int permutations;
+    private long seed;
+    /* The full path (filename included) to write the file to */
+    private String filepath;
+    /* Callback method provided by developer to be executed on success or fail of the task */
+    private StillFaceTaskCallback callback;
+    /* The thread work of the analysis, which reports its progress */
+    private Task<Void> task;
+
+    public StillFaceLagSequentialTask(StillFaceLagSequentialAnalyzer analyzer, int[] importIDs, int segment, int lag,
+                                      int permutations, long seed, String filepath, StillFaceTaskCallback callback){
+        this.analyzer = analyzer;
+        this.importIDs = importIDs;
+        this.segment = segment;
+        this.lag = lag;
+        this.permutations = permutations;
+        this.seed = seed;
+        this.filepath = filepath;
+        this.callback = callback;
+        this.task = new AnalysisTask();
+    }
+
+    /**
+     * Executes the task. Attempts to run the analysis and export its statistics on a separate thread.
+     */
+    @Override
+    public void execute() {
+        new Thread(task).start();
+    }
+
+    /**
+     * Stops the analysis after the shuffles being done
+     */
+    public void cancel() {
+        task.cancel();
+    }
+
+    /**
+     * @return The share of the shuffles done, between 0 and 1, or -1 until the analysis starts
+     */
+    public ReadOnlyDoubleProperty progressProperty() { return task.progressProperty(); }
+
+    /**
+     * Where the analysis actually happens
+     *
+     * @param progress Receives the progress of the analysis, and cancels it
+     * @throws Exception If the analysis could not be run or its statistics written, so that the thread will execute
+     *                   the onFail() method from the callback provided by the developer
+     */
+    private void runAnalysis(StillFaceAnalysisProgress progress) throws Exception {
+        logger.info("Running a lag " + lag + " sequential analysis of " + importIDs.length + " imports with " +
+                permutations + " permutations (seed " + seed + ")...");
+        StillFaceLagSequentialResult result = analyzer.analyze(importIDs, segment, lag, permutations, seed,
+                progress);
+        if(progress.isCancelled()){
+            return;
+        }
+        if(result == null){
+            throw new Exception("Failed to run the lag sequential analysis. See log for details.");
+        }
+        if(!new StillFaceCSVParser().serializeLagSequentialToCSV(result, filepath)){
+            logger.warning("Lag sequential export failed");
+            throw new Exception("Failed to export the lag sequential statistics. See log for more information.");
+        }
+    }
+
+    /**
+     * The thread work of the analysis, which forwards the progress of the analysis to the progress of the task
+     */
+    private class AnalysisTask extends Task<Void> implements StillFaceAnalysisProgress {
+
+        @Override
+        protected Void call() throws Exception {
+            runAnalysis(this);
+            return null;
+        }
+
+        @Override
+        protected void succeeded() {
+            callback.onSuccess();
+            super.succeeded();
+        }
+
+        @Override
+        protected void failed() {
+            callback.onFail(this.getException());
+            super.failed();
+        }
+
+        @Override
+        protected void cancelled() {
+            callback.onFail(new CancellationException("The lag sequential analysis was cancelled"));
+            super.cancelled();
+        }
+
+        @Override
+        public void update(long done, long total) {
+            updateProgress(done, total);
+        }
+    }
+}
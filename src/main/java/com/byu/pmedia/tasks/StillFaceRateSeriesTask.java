@@ -0,0 +1,106 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.analytics.StillFaceRateAnalyzer;
+import com.byu.pmedia.analytics.StillFaceRateSeries;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+import javafx.concurrent.Task;
+
+import java.util.logging.Logger;
+
+/**
+ * StillFaceRateSeriesTask
+ * Implementation of the IStillFaceTask interface. Wraps building the rate series of one or more imports, and
+ * optionally writing it to a CSV file. Imports that are not in the analyzer's cache have to be binned, so this task is
+ * executed on a separate thread from the GUI. The series can be read with getSeries() once the task succeeds.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceRateSeriesTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The analyzer that builds and caches the series */
+    private StillFaceRateAnalyzer analyzer;
+    /* The imports to build the series of, and the width of each bin in milliseconds */
+    private int[] importIDs;
+    private int binWidth;
+    /* The file to write the series to, or null to only build it */
+    private String filepath;
+    /* Callback method provided by developer to be executed on success or fail of the task */
+    private StillFaceTaskCallback callback;
+    /* The series built by the task */
+    private volatile StillFaceRateSeries series;
+
+    public StillFaceRateSeriesTask(StillFaceRateAnalyzer analyzer, int[] importIDs, int binWidth, String filepath,
+                                   StillFaceTaskCallback callback){
+        this.analyzer = analyzer;
+        this.importIDs = importIDs;
+        this.binWidth = binWidth;
+        this.filepath = filepath;
+        this.callback = callback;
+    }
+
+    /**
+     * Executes the task, building the series on a separate thread
+     */
+    @Override
+    public void execute() {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                buildSeries();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                callback.onSuccess();
+                super.succeeded();
+            }
+
+            @Override
+            protected void failed() {
+                callback.onFail(this.getException());
+                super.failed();
+            }
+        };
+        new Thread(task).start();
+    }
+
+    /**
+     * @return The series built by the task, or null if it has not succeeded
+     */
+    public StillFaceRateSeries getSeries() { return series; }
+
+    /**
+     * Where the series is actually built, and written if a file was provided
+     *
+     * @throws Exception If the series could not be built or written, so that the thread will execute the onFail()
+     *                   method from the callback provided by the developer
+     */
+    private void buildSeries() throws Exception {
+        logger.fine("Building the rate series of " + importIDs.length + " imports...");
+        StillFaceRateSeries result = analyzer.getSeries(importIDs, binWidth);
+        if(result == null){
+            throw new Exception("Failed to build the rate series. See log for details.");
+        }
+        if(filepath != null && !new StillFaceCSVParser().serializeRateSeriesToCSV(result, filepath)){
+            logger.warning("Rate series export failed");
+            throw new Exception("Failed to export the rate series. See log for more information.");
+        }
+        this.series = result;
+        logger.fine("Rate series built");
+    }
+}
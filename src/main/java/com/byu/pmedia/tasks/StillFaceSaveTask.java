@@ -16,7 +16,7 @@ import com.byu.pmedia.model.StillFaceData;
 import com.byu.pmedia.model.StillFaceModel;
 import javafx.concurrent.Task;
 
-import java.util.Map;
+import java.util.List;
 import java.util.logging.Logger;
 
 /**
@@ -78,17 +78,18 @@ public class StillFaceSaveTask implements IStillFaceTask {
      */
     private void saveData() throws Exception {
         logger.info("Beginning save data task...");
-        Map<Integer, StillFaceData> dataMap = StillFaceModel.getInstance().getEditedDataMap();
-        if(StillFaceModel.getInstance().getEditedDataMap().size() != 0){
-            for(int key : dataMap.keySet()){
-                boolean success = dao.updateCodeData(dataMap.get(key));
-                if(!success){
-                    logger.warning("Save data task fail");
-                    throw new Exception("Failed to update data in database. See log for more details.");
-                }
+        // Take a copy of the edits, since the user can keep editing while the save runs
+        List<StillFaceData> edits = StillFaceModel.getInstance().getEdits();
+        if(edits.size() != 0){
+            // The edits and the statistics of their imports are written in one transaction
+            if(!dao.updateCodeData(edits)){
+                logger.warning("Save data task fail");
+                throw new Exception("Failed to update data in database. See log for more details.");
             }
-            StillFaceModel.getInstance().clearEdits();
-            StillFaceModel.getInstance().refreshCodeData();
+            // Swap the saved copies into the model in place of the entries they were edited from, then drop only the
+            // edits that were saved
+            StillFaceModel.getInstance().updateData(edits);
+            StillFaceModel.getInstance().clearEdits(edits);
         }
     }
 }
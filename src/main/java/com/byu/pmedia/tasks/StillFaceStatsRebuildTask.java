@@ -0,0 +1,87 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.database.StillFaceDAO;
+import com.byu.pmedia.model.StillFaceModel;
+import javafx.concurrent.Task;
+
+import java.util.logging.Logger;
+
+/**
+ * StillFaceStatsRebuildTask
+ * Implementation of the IStillFaceTask interface. Wraps recomputing the statistics of every import in the database,
+ * which is needed whenever the delimiter codes change, since the delimiters decide which segment of the experiment each
+ * entry falls into. Rebuilding reads every data entry, so this task is executed on a separate thread from the GUI.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceStatsRebuildTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The callback object whose implementation is provided by the user */
+    private StillFaceTaskCallback callback;
+    /* The database access object used to rebuild the statistics */
+    private StillFaceDAO dao;
+
+    public StillFaceStatsRebuildTask(StillFaceTaskCallback callback){
+        this.callback = callback;
+        this.dao = StillFaceDAO.generateFromConfig();
+    }
+
+    /**
+     * Executes the task, rebuilding the sf_import_stats table from the sf_data table
+     */
+    @Override
+    public void execute() {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                onRebuildStats();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                callback.onSuccess();
+                super.succeeded();
+            }
+
+            @Override
+            protected void failed() {
+                callback.onFail(this.getException());
+                super.failed();
+            }
+        };
+        new Thread(task).start();
+    }
+
+    /**
+     * Where the rebuild actually happens. The imports are rebuilt a batch at a time, each batch in its own
+     * transaction, so an import never has a mix of old and new statistics. If the rebuild fails, running it again
+     * rebuilds every import.
+     *
+     * @throws Exception If the rebuild fails, throw an exception so that the thread will execute the onFail() method
+     *                   from the callback provided by the developer
+     */
+    private void onRebuildStats() throws Exception {
+        logger.fine("Rebuilding import statistics...");
+        if(!dao.rebuildImportStats()){
+            logger.severe("Unable to rebuild import statistics");
+            throw new Exception("Failed to rebuild import statistics. See log for details.");
+        }
+        StillFaceModel.getInstance().statisticsRebuilt();
+        logger.fine("Import statistics rebuilt");
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.analytics.StillFaceTimingAnalyzer;
+import com.byu.pmedia.analytics.StillFaceTimingSketches;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+import javafx.concurrent.Task;
+
+import java.util.logging.Logger;
+
+/**
+ * StillFaceTimingExportTask
+ * Implementation of the IStillFaceTask interface. Wraps merging the timing sketches of a set of imports and writing
+ * the percentiles of their timings to a CSV file. The stored sketches are read from the database the first time, so
+ * this task is executed on a separate thread from the GUI.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTimingExportTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The analyzer that merges the sketches */
+    private StillFaceTimingAnalyzer analyzer;
+    /* The IDs of the imports to export the timings of */
+    private int[] importIDs;
+    /* The full path (filename included) to write the file to */
+    private String filepath;
+    /* Callback method provided by developer to be executed on success or fail of the task */
+    private StillFaceTaskCallback callback;
+
+    public StillFaceTimingExportTask(StillFaceTimingAnalyzer analyzer, int[] importIDs, String filepath,
+                                     StillFaceTaskCallback callback){
+        this.analyzer = analyzer;
+        this.importIDs = importIDs;
+        this.filepath = filepath;
+        this.callback = callback;
+    }
+
+    /**
+     * Executes the task. Attempts to merge and export the timings on a separate thread.
+     */
+    @Override
+    public void execute() {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                exportTimings();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                callback.onSuccess();
+                super.succeeded();
+            }
+
+            @Override
+            protected void failed() {
+                callback.onFail(this.getException());
+                super.failed();
+            }
+        };
+        new Thread(task).start();
+    }
+
+    /**
+     * Where the export actually happens
+     *
+     * @throws Exception If the sketches could not be read or written, so that the thread will execute the onFail()
+     *                   method from the callback provided by the developer
+     */
+    private void exportTimings() throws Exception {
+        logger.info("Exporting the timings of " + importIDs.length + " imports...");
+        StillFaceTimingSketches sketches = analyzer.getSketches(importIDs);
+        if(sketches == null){
+            throw new Exception("Failed to read timing statistics. See log for details.");
+        }
+        if(!new StillFaceCSVParser().serializeTimingPercentilesToCSV(sketches, filepath)){
+            logger.warning("Timing export failed");
+            throw new Exception("Failed to export timings. See log for more information.");
+        }
+    }
+}
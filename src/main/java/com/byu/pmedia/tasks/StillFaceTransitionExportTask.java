@@ -0,0 +1,98 @@
+/*
+ * ---------------------------------------------------------------------------------------------------------------------
+ *                            Brigham Young University - Project MEDIA StillFace DataCenter
+ * ---------------------------------------------------------------------------------------------------------------------
+ * The contents of this file contribute to the ProjectMEDIA DataCenter for managing and analyzing data obtained from the
+ * results of StillFace observational experiments.
+ *
+ * This code is free, open-source software. You may distribute or modify the code, but Brigham Young University or any
+ * parties involved in the development and production of this code as downloaded from the remote repository are not
+ * responsible for any repercussions that come as a result of the modifications.
+ */
+package com.byu.pmedia.tasks;
+
+import com.byu.pmedia.analytics.StillFaceTiePolicy;
+import com.byu.pmedia.analytics.StillFaceTransitionAnalyzer;
+import com.byu.pmedia.analytics.StillFaceTransitionMatrix;
+import com.byu.pmedia.parser.StillFaceCSVParser;
+import javafx.concurrent.Task;
+
+import java.util.logging.Logger;
+
+/**
+ * StillFaceTransitionExportTask
+ * Implementation of the IStillFaceTask interface. Wraps counting the code-to-code transitions of each of a set of
+ * imports and writing their matrices to a CSV file. Counting goes over every entry of the imports, so this task is
+ * executed on a separate thread from the GUI.
+ *
+ * @author Braden Hitchcock
+ */
+public class StillFaceTransitionExportTask implements IStillFaceTask {
+
+    /* Grab an instance of the logger */
+    private final static Logger logger =Logger.getLogger(Logger.GLOBAL_LOGGER_NAME);
+
+    /* The analyzer that counts the transitions */
+    private StillFaceTransitionAnalyzer analyzer;
+    /* The imports to count, and how entries coded at the same time are handled */
+    private int[] importIDs;
+    private StillFaceTiePolicy policy;
+    /* The full path (filename included) to write the file to */
+    private String filepath;
+    /* Callback method provided by developer to be executed on success or fail of the task */
+    private StillFaceTaskCallback callback;
+
+    public StillFaceTransitionExportTask(StillFaceTransitionAnalyzer analyzer, int[] importIDs,
+                                         StillFaceTiePolicy policy, String filepath, StillFaceTaskCallback callback){
+        this.analyzer = analyzer;
+        this.importIDs = importIDs;
+        this.policy = policy;
+        this.filepath = filepath;
+        this.callback = callback;
+    }
+
+    /**
+     * Executes the task. Attempts to count and export the transitions on a separate thread.
+     */
+    @Override
+    public void execute() {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() throws Exception {
+                exportTransitions();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                callback.onSuccess();
+                super.succeeded();
+            }
+
+            @Override
+            protected void failed() {
+                callback.onFail(this.getException());
+                super.failed();
+            }
+        };
+        new Thread(task).start();
+    }
+
+    /**
+     * Where the export actually happens
+     *
+     * @throws Exception If the transitions could not be counted or written, so that the thread will execute the
+     *                   onFail() method from the callback provided by the developer
+     */
+    private void exportTransitions() throws Exception {
+        logger.info("Exporting the transitions of " + importIDs.length + " imports...");
+        StillFaceTransitionMatrix[] matrices = analyzer.getMatrices(importIDs, policy);
+        if(matrices == null){
+            throw new Exception("Failed to count transitions. See log for details.");
+        }
+        if(!new StillFaceCSVParser().serializeTransitionsToCSV(importIDs, matrices, filepath)){
+            logger.warning("Transition export failed");
+            throw new Exception("Failed to export transitions. See log for more information.");
+        }
+    }
+}